@@ -0,0 +1,92 @@
+package com.ielia.cron;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark of CompiledCron against the cron it was compiled from,
+ * matching minutes and finding next fires.
+ * <p/>
+ * <p>Run it with <code>mvn -P jmh test-compile exec:exec
+ * -Djmh.benchmarks=CompiledCron</code>.</p>
+ *
+ * @author ielia
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompiledCronBenchmark {
+	protected static final int REFERENCES = 1024;
+	@Param({"0 9 * * 1-5", "*/5 * * * *", "30 2 1 * *", "0,30 8-18 * * 1-5"})
+	String expression;
+	FixedPeriodCron cron;
+	CompiledCron compiled;
+	TimeZone zone;
+	Calendar calendar;
+	int[] fields;
+	long[] references;
+	Calendar[] calendars;
+	int index;
+
+	@Setup
+	public void setUp() {
+		this.cron = new FixedPeriodCron(this.expression);
+		this.compiled = CompiledCron.compile(this.cron);
+		this.zone = TimeZone.getTimeZone("UTC");
+		this.calendar = new GregorianCalendar(this.zone);
+		this.fields = new int[FixedPeriodCron.NUMBER_OF_FIELDS];
+		Random random = new Random(20130601);
+		this.references = new long[REFERENCES];
+		this.calendars = new Calendar[REFERENCES];
+		/* Random minutes of 2013 */
+		long start = new GregorianCalendar(2013, 0, 1).getTimeInMillis();
+		for (int i = 0; i < REFERENCES; ++i) {
+			this.references[i] = start + random.nextInt(365 * 24 * 60) * 60000L;
+			this.calendars[i] = new GregorianCalendar(this.zone);
+			this.calendars[i].setTimeInMillis(this.references[i]);
+		}
+	}
+
+	protected int next() {
+		return this.index = (this.index + 1) & (REFERENCES - 1);
+	}
+
+	@Benchmark
+	public long nextFireCron() {
+		return this.cron.findDateAfter(this.references[this.next()],
+				this.calendar, this.fields, 0, 0);
+	}
+
+	@Benchmark
+	public long nextFireCompiled() {
+		return this.compiled.nextFire(this.references[this.next()], this.zone);
+	}
+
+	@Benchmark
+	public boolean matchesCron() {
+		return this.cron.matches(this.calendars[this.next()]);
+	}
+
+	@Benchmark
+	public boolean matchesCompiled() {
+		return this.compiled.matches(this.calendars[this.next()]);
+	}
+}
@@ -0,0 +1,113 @@
+package com.ielia.cron;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark of CronColumns (scalar and with the Vector API, if enabled)
+ * against calling FixedPeriodCron#matches on every cron, finding the crons
+ * matching a minute, and the crons firing within an hour.
+ * <p/>
+ * <p>Run it with <code>mvn -P jmh test-compile exec:exec</code>.</p>
+ *
+ * @author ielia
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class CronColumnsBenchmark {
+	protected static final String[] FIELD_VALUES = {"*", "*/15", "0", "5-10",
+			"1,2,3", "*/2", "7"};
+	@Param({"1000", "100000"})
+	int size;
+	List<FixedPeriodCron> crons;
+	CronColumns scalarColumns;
+	CronColumns columns;
+	Calendar reference;
+	Calendar end;
+
+	@Setup
+	public void setUp() {
+		Random random = new Random(20130531);
+		this.crons = new ArrayList<FixedPeriodCron>();
+		for (int i = 0; i < this.size; ++i) {
+			StringBuilder expression = new StringBuilder();
+			for (int field = 0; field < FixedPeriodCron.NUMBER_OF_FIELDS;
+				 ++field) {
+				expression.append(field > 0 ? " " : "").append(
+						FIELD_VALUES[random.nextInt(FIELD_VALUES.length)]);
+			}
+			this.crons.add(new FixedPeriodCron(expression.toString()));
+		}
+		this.scalarColumns = new CronColumns(this.crons);
+		this.columns = CronColumns.create(this.crons);
+		/* Friday, 24th of May, 2013, 09:00 */
+		this.reference = new GregorianCalendar(2013, 4, 24, 9, 0);
+		this.end = new GregorianCalendar(2013, 4, 24, 10, 0);
+	}
+
+	@Benchmark
+	public BitSet matchesLoop() {
+		BitSet matches = new BitSet(this.size);
+		for (int i = 0; i < this.size; ++i) {
+			if (this.crons.get(i).matches(this.reference)) {
+				matches.set(i);
+			}
+		}
+		return matches;
+	}
+
+	@Benchmark
+	public BitSet matchesScalarColumns() {
+		return this.scalarColumns.matches(this.reference);
+	}
+
+	@Benchmark
+	public BitSet matchesColumns() {
+		return this.columns.matches(this.reference);
+	}
+
+	@Benchmark
+	public BitSet firesWithinAnHourLoop() {
+		BitSet fires = new BitSet(this.size);
+		Calendar minute = (Calendar) this.reference.clone();
+		for (; minute.before(this.end); minute.add(Calendar.MINUTE, 1)) {
+			for (int i = 0; i < this.size; ++i) {
+				if (!fires.get(i) && this.crons.get(i).matches(minute)) {
+					fires.set(i);
+				}
+			}
+		}
+		return fires;
+	}
+
+	@Benchmark
+	public BitSet firesWithinAnHourScalarColumns() {
+		return this.scalarColumns.firesBetween(this.reference, this.end);
+	}
+
+	@Benchmark
+	public BitSet firesWithinAnHourColumns() {
+		return this.columns.firesBetween(this.reference, this.end);
+	}
+}
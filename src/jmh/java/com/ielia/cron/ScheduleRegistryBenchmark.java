@@ -0,0 +1,176 @@
+package com.ielia.cron;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark of ScheduleRegistry against a map behind a global lock (the
+ * way CronPartitioner keeps its schedules), with readers looking schedules
+ * up (a tick at a time) while a writer changes them, and of a burst of changes published as a
+ * single batch against the same changes published one by one.
+ * <p/>
+ * <p>Run it with <code>mvn -P jmh test-compile exec:exec
+ * -Djmh.benchmarks=ScheduleRegistry</code>.</p>
+ *
+ * @author ielia
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScheduleRegistryBenchmark {
+	protected static final FixedPeriodCron[] CRONS = {
+			new FixedPeriodCron("0 9 * * 1-5"), new FixedPeriodCron("*/5 * * * *"),
+			new FixedPeriodCron("30 2 1 * *"), new FixedPeriodCron("0 * * * *")};
+	protected static final int SCHEDULES_PER_TICK = 64;
+	@Param({"1000000"})
+	int size;
+	String[] ids;
+	ScheduleRegistry registry;
+	Map<String, FixedPeriodCron> lockedSchedules;
+
+	@Setup
+	public void setUp() {
+		this.ids = new String[this.size];
+		this.registry = new ScheduleRegistry();
+		this.lockedSchedules = new HashMap<String, FixedPeriodCron>();
+		ScheduleRegistry.Batch batch = this.registry.batch();
+		for (int i = 0; i < this.size; ++i) {
+			this.ids[i] = "tenant-" + (i % 1000) + "/schedule-" + i;
+			batch.put(this.ids[i], CRONS[i % CRONS.length]);
+			this.lockedSchedules.put(this.ids[i], CRONS[i % CRONS.length]);
+		}
+		batch.publish();
+	}
+
+	/**
+	 * Position of the next schedule of each thread (a cheap pseudo-random
+	 * walk over the identifiers).
+	 */
+	@State(Scope.Thread)
+	public static class Cursor {
+		int position;
+
+		int next(int size) {
+			this.position = (this.position + 0x9e3779b1) & 0x7fffffff;
+			return this.position % size;
+		}
+	}
+
+	/**
+	 * A tick of a dispatcher: a few schedules read from the same snapshot.
+	 */
+	@Benchmark
+	@Group("registry")
+	@GroupThreads(3)
+	public int registryRead(Cursor cursor) {
+		ScheduleSnapshot snapshot = this.registry.snapshot();
+		int found = 0;
+		for (int i = 0; i < SCHEDULES_PER_TICK; ++i) {
+			if (snapshot.get(this.ids[cursor.next(this.size)]) != null) {
+				++found;
+			}
+		}
+		return found;
+	}
+
+	@Benchmark
+	@Group("registry")
+	@GroupThreads(1)
+	public FixedPeriodCron registryWrite(Cursor cursor) {
+		int position = cursor.next(this.size);
+		return this.registry.put(this.ids[position],
+				CRONS[(position + 1) % CRONS.length]);
+	}
+
+	/**
+	 * A tick of a dispatcher: a few schedules read under the lock, so that
+	 * they are consistent.
+	 */
+	@Benchmark
+	@Group("locked")
+	@GroupThreads(3)
+	public int lockedRead(Cursor cursor) {
+		int found = 0;
+		synchronized (this.lockedSchedules) {
+			for (int i = 0; i < SCHEDULES_PER_TICK; ++i) {
+				if (this.lockedSchedules.get(
+						this.ids[cursor.next(this.size)]) != null) {
+					++found;
+				}
+			}
+		}
+		return found;
+	}
+
+	@Benchmark
+	@Group("locked")
+	@GroupThreads(1)
+	public FixedPeriodCron lockedWrite(Cursor cursor) {
+		int position = cursor.next(this.size);
+		synchronized (this.lockedSchedules) {
+			return this.lockedSchedules.put(this.ids[position],
+					CRONS[(position + 1) % CRONS.length]);
+		}
+	}
+
+	/**
+	 * A burst of changes to a registry.
+	 */
+	@State(Scope.Thread)
+	public static class Burst {
+		@Param({"100000"})
+		int changes;
+		int round;
+
+		@Setup(Level.Invocation)
+		public void nextRound() {
+			++this.round;
+		}
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	@Measurement(iterations = 10)
+	public ScheduleSnapshot burstAsBatch(Burst burst) {
+		ScheduleRegistry.Batch batch = this.registry.batch();
+		for (int i = 0; i < burst.changes; ++i) {
+			int position = (burst.round * burst.changes + i) % this.size;
+			batch.put(this.ids[position], CRONS[(position + burst.round) %
+					CRONS.length]);
+		}
+		return batch.publish();
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	@Measurement(iterations = 10)
+	public ScheduleSnapshot burstOneByOne(Burst burst) {
+		for (int i = 0; i < burst.changes; ++i) {
+			int position = (burst.round * burst.changes + i) % this.size;
+			this.registry.put(this.ids[position], CRONS[(position +
+					burst.round) % CRONS.length]);
+		}
+		return this.registry.snapshot();
+	}
+}
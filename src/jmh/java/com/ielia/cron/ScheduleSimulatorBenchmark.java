@@ -0,0 +1,115 @@
+package com.ielia.cron;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark simulating a year of a scheduler running a large set of
+ * schedules with ScheduleSimulator, with a mix of hourly, daily, weekly and
+ * monthly expressions, in a time zone with daylight saving time.
+ * <p/>
+ * <p>Every schedule is evaluated on its own, which takes minutes per
+ * simulation; the <code>merging</code> parameter merges schedules with the
+ * same expression (see ScheduleSimulator.setMerging), for a quick view of the
+ * load only. Run it with <code>mvn -P jmh test-compile exec:exec
+ * -Djmh.benchmarks=ScheduleSimulator</code>. Besides the time of the
+ * simulation, JMH reports the figures of the last simulation of each
+ * iteration (see Counters).</p>
+ *
+ * @author ielia
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ScheduleSimulatorBenchmark {
+	protected static final String[] HOURS = {"*", "*/6", "9-17", "0", "3",
+			"9", "12", "18", "22"};
+	protected static final String[] DAYS = {"*", "*", "*", "1", "15", "28"};
+	protected static final String[] DAYS_OF_WEEK = {"*", "*", "1-5", "0",
+			"6"};
+	@Param({"1000000"})
+	int size;
+	@Param({"false"})
+	boolean merging;
+	List<FixedPeriodCron> crons;
+	ScheduleSimulator simulator;
+	long start;
+	long end;
+
+	@Setup
+	public void setUp() {
+		Random random = new Random(20130602);
+		this.crons = new ArrayList<FixedPeriodCron>();
+		for (int i = 0; i < this.size; ++i) {
+			this.crons.add(new FixedPeriodCron(random.nextInt(60) + " " +
+					HOURS[random.nextInt(HOURS.length)] + " " +
+					DAYS[random.nextInt(DAYS.length)] + " * " +
+					DAYS_OF_WEEK[random.nextInt(DAYS_OF_WEEK.length)]));
+		}
+		TimeZone zone = TimeZone.getTimeZone("Europe/Madrid");
+		GregorianCalendar calendar = new GregorianCalendar(zone);
+		calendar.clear();
+		calendar.set(2013, 0, 1);
+		this.start = calendar.getTimeInMillis();
+		calendar.add(GregorianCalendar.YEAR, 1);
+		this.end = calendar.getTimeInMillis();
+	}
+
+	@Setup(Level.Invocation)
+	public void setUpSimulator() {
+		this.simulator = new ScheduleSimulator(new VirtualClock(this.start,
+				TimeZone.getTimeZone("Europe/Madrid").toZoneId()));
+		this.simulator.setDispatchNanos(50000);
+		this.simulator.setMerging(this.merging);
+		for (FixedPeriodCron cron : this.crons) {
+			this.simulator.add(cron);
+		}
+	}
+
+	@Benchmark
+	public SimulationReport simulateAYear(Counters counters) {
+		SimulationReport report = this.simulator.run(this.end);
+		counters.fires = report.getTotalFires();
+		counters.evaluations = report.getEvaluations();
+		counters.meanEvaluationNanos = report.getMeanEvaluationNanos();
+		counters.maxEvaluationNanos = report.getMaxEvaluationNanos();
+		counters.meanDispatchLagNanos = report.getMeanDispatchLagNanos();
+		counters.maxDispatchLagNanos = report.getMaxDispatchLagNanos();
+		return report;
+	}
+
+	/**
+	 * Figures of the simulation, reported by JMH as secondary results.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class Counters {
+		public long fires;
+		public long evaluations;
+		public double meanEvaluationNanos;
+		public long maxEvaluationNanos;
+		public double meanDispatchLagNanos;
+		public long maxDispatchLagNanos;
+	}
+}
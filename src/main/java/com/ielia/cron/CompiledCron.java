@@ -0,0 +1,297 @@
+package com.ielia.cron;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+/**
+ * A matcher and next fire function specialized for a single cron, like a
+ * regular expression engine compiling its patterns (see compile).
+ * <p/>
+ * <p>The field tests are generated as the bytecode of a class of their own
+ * (see CompiledCronGenerator): fields matching every value ("*") are left
+ * out, single values become comparisons against constants, ranges two of
+ * them, and steps ("&#42;&#47;15") a little arithmetic. Only the rest are
+ * tested against their masks. When a cron is hot, the JIT inlines them into
+ * its callers with the constants in place.</p>
+ * <p/>
+ * <p>Next fires are searched in wall-clock fields computed with the
+ * arithmetic of the proleptic Gregorian calendar, instead of with a Calendar.
+ * Matches close to a transition of the offset of the time zone are left to
+ * the search of the cron, so both give the same results.</p>
+ * <p/>
+ * <p>The tests of every compiled cron are called from the same search, so it
+ * is only worth compiling the hottest crons: with many of them, those calls
+ * are no longer inlined. Crons with exclusions and unions cannot be compiled.
+ * Instances are immutable.</p>
+ *
+ * @author ielia
+ */
+public abstract class CompiledCron {
+	protected static final int NONE = -1;
+	protected static final long MILLIS_PER_MINUTE = 60 * 1000;
+	protected static final int MINUTES_PER_HOUR = 60;
+	protected static final int MINUTES_PER_DAY = 24 * MINUTES_PER_HOUR;
+	protected static final long MILLIS_PER_DAY = MINUTES_PER_DAY *
+			MILLIS_PER_MINUTE;
+	/**
+	 * Days from the 1st of March of year 0 to the 1st of January, 1970.
+	 */
+	protected static final long DAYS_TO_EPOCH = 719468;
+	protected static final int DAYS_PER_ERA = 146097;
+	/**
+	 * The cron it was compiled from.
+	 */
+	protected final FixedPeriodCron cron;
+	/**
+	 * Whether the cron has an empty field, so it never matches.
+	 */
+	protected final boolean empty;
+
+	/**
+	 * Constructor for the generated classes.
+	 *
+	 * @param cron The cron compiled.
+	 */
+	protected CompiledCron(FixedPeriodCron cron) {
+		this.cron = cron;
+		boolean empty = false;
+		for (int field = 0; field < FixedPeriodCron.NUMBER_OF_FIELDS; ++field) {
+			empty |= (cron.getFieldMask(field) &
+					FixedPeriodCron.getRangeMask(field)) == 0;
+		}
+		this.empty = empty;
+	}
+
+	/**
+	 * Compiles a cron into a class of its own.
+	 *
+	 * @param cron The cron.
+	 * @return The compiled cron.
+	 */
+	public static CompiledCron compile(FixedPeriodCron cron) {
+		if (cron == null) {
+			throw new IllegalArgumentException("Cron cannot be null.");
+		} else if (cron.getExclusions() != null) {
+			throw new IllegalArgumentException(
+					"Crons with exclusions cannot be compiled.");
+		} else if (cron instanceof CompositeCron) {
+			throw new IllegalArgumentException(
+					"Unions must be compiled as their members.");
+		}
+		return new CompiledCronGenerator(cron).newInstance();
+	}
+
+	/**
+	 * The cron it was compiled from.
+	 *
+	 * @return The cron.
+	 */
+	public FixedPeriodCron getCron() {
+		return this.cron;
+	}
+
+	/**
+	 * Tells whether the cron matches the wall-clock minute of a calendar.
+	 *
+	 * @param reference The calendar (seconds and milliseconds are ignored).
+	 * @return True if the cron matches, false if not.
+	 */
+	public boolean matches(Calendar reference) {
+		return this.matches(reference.get(Calendar.MINUTE),
+				reference.get(Calendar.HOUR_OF_DAY), reference.get(Calendar.DATE),
+				reference.get(Calendar.MONTH) + 1,
+				reference.get(Calendar.DAY_OF_WEEK) - 1);
+	}
+
+	/**
+	 * Tells whether the cron matches a wall-clock minute.
+	 *
+	 * @param minute    Minute.
+	 * @param hour      Hour of the day.
+	 * @param day       Day of the month.
+	 * @param month     Month (1 to 12).
+	 * @param dayOfWeek Day of the week (Sunday = 0).
+	 * @return True if the cron matches, false if not.
+	 */
+	public abstract boolean matches(int minute, int hour, int day, int month,
+									int dayOfWeek);
+
+	/**
+	 * Returns the closest match after an instant (running at 0 seconds,
+	 * 0 milliseconds), like FixedPeriodCron#getClosestDateAfter.
+	 *
+	 * @param millis The instant, in milliseconds.
+	 * @param zone   Time zone the cron is evaluated in.
+	 * @return The match, in milliseconds (or FixedPeriodCron.NO_DATE).
+	 */
+	public long nextFire(long millis, TimeZone zone) {
+		if (this.empty) {
+			return FixedPeriodCron.NO_DATE;
+		}
+		int offset = zone.getOffset(millis);
+		long minute = Math.floorDiv(millis + offset, MILLIS_PER_MINUTE) + 1;
+		long day = Math.floorDiv(minute, MINUTES_PER_DAY);
+		int minuteOfDay = (int) (minute - day * MINUTES_PER_DAY);
+		/* The civil date of the day (see daysFromCivil) */
+		long shifted = day + DAYS_TO_EPOCH;
+		long era = Math.floorDiv(shifted, DAYS_PER_ERA);
+		int dayOfEra = (int) (shifted - era * DAYS_PER_ERA);
+		int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 -
+				dayOfEra / 146096) / 365;
+		int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 -
+				yearOfEra / 100);
+		int monthIndex = (5 * dayOfYear + 2) / 153;
+		int dayOfMonth = dayOfYear - (153 * monthIndex + 2) / 5 + 1;
+		int month = monthIndex < 10 ? monthIndex + 3 : monthIndex - 9;
+		int year = (int) (yearOfEra + era * 400) + (month <= 2 ? 1 : 0);
+		long localMinute = this.findMinute(year, month, dayOfMonth,
+				minuteOfDay / MINUTES_PER_HOUR, minuteOfDay % MINUTES_PER_HOUR);
+		if (localMinute == FixedPeriodCron.NO_DATE) {
+			return FixedPeriodCron.NO_DATE;
+		}
+		long date = localMinute * MILLIS_PER_MINUTE - offset;
+		/* Let the search of the cron deal with gaps and overlaps */
+		if (zone.getOffset(date) != offset ||
+				zone.getOffset(date - MILLIS_PER_DAY) != offset ||
+				zone.getOffset(date + MILLIS_PER_DAY) != offset) {
+			return this.cron.findDateAfter(millis, new GregorianCalendar(zone),
+					new int[FixedPeriodCron.NUMBER_OF_FIELDS], 0, 0);
+		}
+		return date;
+	}
+
+	/**
+	 * Finds the closest wall-clock minute (including the given one) matching
+	 * the cron, within the same number of years as the search of the cron.
+	 *
+	 * @param year   Year.
+	 * @param month  Month (1 to 12).
+	 * @param day    Day of the month.
+	 * @param hour   Hour of the day.
+	 * @param minute Minute.
+	 * @return The minute, counted from the 1st of January, 1970, 00:00 (or
+	 *         FixedPeriodCron.NO_DATE).
+	 */
+	protected long findMinute(int year, int month, int day, int hour,
+							  int minute) {
+		int lastYear = year + FixedPeriodCron.YEAR_CYCLES_FOR_WEEKDAY_MATCH;
+		while (year <= lastYear) {
+			int aMonth = this.nextMonth(month);
+			if (aMonth == NONE) {
+				++year;
+				month = FixedPeriodCron.MIN_MONTHS;
+				day = FixedPeriodCron.MIN_DAYS;
+				hour = FixedPeriodCron.MIN_HOURS;
+				minute = FixedPeriodCron.MIN_MINUTES;
+				continue;
+			} else if (aMonth != month) {
+				month = aMonth;
+				day = FixedPeriodCron.MIN_DAYS;
+				hour = FixedPeriodCron.MIN_HOURS;
+				minute = FixedPeriodCron.MIN_MINUTES;
+			}
+			int daysInMonth = FixedPeriodCron.getDaysInMonth(year, month);
+			int dayOfWeek = FixedPeriodCron.getDayOfWeek(year, month, day);
+			int aDay = day;
+			while (aDay <= daysInMonth && !this.matchesDay(aDay, dayOfWeek)) {
+				++aDay;
+				dayOfWeek = dayOfWeek == 6 ? 0 : dayOfWeek + 1;
+			}
+			if (aDay > daysInMonth) {
+				++month;
+				day = FixedPeriodCron.MIN_DAYS;
+				hour = FixedPeriodCron.MIN_HOURS;
+				minute = FixedPeriodCron.MIN_MINUTES;
+				continue;
+			} else if (aDay != day) {
+				day = aDay;
+				hour = FixedPeriodCron.MIN_HOURS;
+				minute = FixedPeriodCron.MIN_MINUTES;
+			}
+			int anHour = this.nextHour(hour);
+			if (anHour == NONE) {
+				++day;
+				hour = FixedPeriodCron.MIN_HOURS;
+				minute = FixedPeriodCron.MIN_MINUTES;
+				continue;
+			} else if (anHour != hour) {
+				hour = anHour;
+				minute = FixedPeriodCron.MIN_MINUTES;
+			}
+			int aMinute = this.nextMinute(minute);
+			if (aMinute == NONE) {
+				++hour;
+				minute = FixedPeriodCron.MIN_MINUTES;
+				continue;
+			}
+			return daysFromCivil(year, month, day) * MINUTES_PER_DAY +
+					hour * MINUTES_PER_HOUR + aMinute;
+		}
+		return FixedPeriodCron.NO_DATE;
+	}
+
+	/**
+	 * Returns the closest minute (including the given one) matching the cron.
+	 *
+	 * @param minute Minute to start from (0 to 60).
+	 * @return The minute, or NONE if there is none within the hour.
+	 */
+	protected abstract int nextMinute(int minute);
+
+	/**
+	 * Returns the closest hour (including the given one) matching the cron.
+	 *
+	 * @param hour Hour to start from (0 to 24).
+	 * @return The hour, or NONE if there is none within the day.
+	 */
+	protected abstract int nextHour(int hour);
+
+	/**
+	 * Returns the closest month (including the given one) matching the cron.
+	 *
+	 * @param month Month to start from (1 to 13).
+	 * @return The month, or NONE if there is none within the year.
+	 */
+	protected abstract int nextMonth(int month);
+
+	/**
+	 * Tells whether a day matches both the days and the days of the week of
+	 * the cron.
+	 *
+	 * @param day       Day of the month.
+	 * @param dayOfWeek Day of the week (Sunday = 0).
+	 * @return True if it matches, false if not.
+	 */
+	protected abstract boolean matchesDay(int day, int dayOfWeek);
+
+	/**
+	 * Counts the days from the 1st of January, 1970 to a date of the proleptic
+	 * Gregorian calendar (H. Hinnant's days_from_civil).
+	 *
+	 * @param year  Year.
+	 * @param month Month (1 to 12).
+	 * @param day   Day of the month.
+	 * @return Number of days (negative before 1970).
+	 */
+	protected static long daysFromCivil(int year, int month, int day) {
+		if (month <= 2) {
+			--year;
+		}
+		long era = Math.floorDiv(year, 400);
+		int yearOfEra = (int) (year - era * 400);
+		int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 +
+				day - 1;
+		int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 +
+				dayOfYear;
+		return era * DAYS_PER_ERA + dayOfEra - DAYS_TO_EPOCH;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		return this.cron.toString();
+	}
+}
@@ -0,0 +1,604 @@
+package com.ielia.cron;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates the class of a CompiledCron: the bytecode of its field tests,
+ * specialized for the shape of each field (see getShape).
+ * <p/>
+ * <p>Classes are written in the version 49 (Java 5) format, whose methods
+ * need no stack map frames, and each one is defined by a class loader of its
+ * own, so that it is unloaded along with its instances.</p>
+ *
+ * @author ielia
+ */
+public class CompiledCronGenerator {
+	/* Shapes of a field */
+	public static final int ALL = 0;
+	public static final int SINGLE = 1;
+	public static final int RANGE = 2;
+	public static final int STEP = 3;
+	public static final int MASK = 4;
+	public static final int EMPTY = 5;
+	protected static final String PACKAGE = "com/ielia/cron/generated/";
+	protected static final String SUPER_CLASS = "com/ielia/cron/CompiledCron";
+	protected static final String CRON_CLASS = "Lcom/ielia/cron/FixedPeriodCron;";
+	protected static final int CLASS_VERSION = 49;
+	protected static final int ACC_PUBLIC = 0x0001;
+	protected static final int ACC_PROTECTED = 0x0004;
+	protected static final int ACC_FINAL = 0x0010;
+	protected static final int ACC_SUPER = 0x0020;
+	/* Opcodes */
+	protected static final int ICONST_M1 = 0x02;
+	protected static final int ICONST_0 = 0x03;
+	protected static final int ICONST_1 = 0x04;
+	protected static final int LCONST_0 = 0x09;
+	protected static final int BIPUSH = 0x10;
+	protected static final int LDC2_W = 0x14;
+	protected static final int ILOAD = 0x15;
+	protected static final int LLOAD = 0x16;
+	protected static final int ALOAD = 0x19;
+	protected static final int LSTORE = 0x37;
+	protected static final int IADD = 0x60;
+	protected static final int ISUB = 0x64;
+	protected static final int IMUL = 0x68;
+	protected static final int IDIV = 0x6c;
+	protected static final int IREM = 0x70;
+	protected static final int LSHL = 0x79;
+	protected static final int LUSHR = 0x7d;
+	protected static final int IAND = 0x7e;
+	protected static final int LAND = 0x7f;
+	protected static final int L2I = 0x88;
+	protected static final int LCMP = 0x94;
+	protected static final int IFEQ = 0x99;
+	protected static final int IFNE = 0x9a;
+	protected static final int IF_ICMPNE = 0xa0;
+	protected static final int IF_ICMPLT = 0xa1;
+	protected static final int IF_ICMPGT = 0xa3;
+	protected static final int GOTO = 0xa7;
+	protected static final int IRETURN = 0xac;
+	protected static final int RETURN = 0xb1;
+	protected static final int INVOKESTATIC = 0xb8;
+	protected static final int INVOKESPECIAL = 0xb7;
+	protected static final AtomicInteger COUNTER = new AtomicInteger();
+	protected final FixedPeriodCron cron;
+	/**
+	 * Constant pool entries (without the initial empty one), by their key.
+	 */
+	protected final Map<String, Integer> constantIndexes =
+			new HashMap<String, Integer>();
+	protected final ByteBuffer constants = new ByteBuffer();
+	protected int constantCount = 1;
+
+	/**
+	 * Creates a generator for a cron.
+	 *
+	 * @param cron The cron (without exclusions).
+	 */
+	protected CompiledCronGenerator(FixedPeriodCron cron) {
+		this.cron = cron;
+	}
+
+	/**
+	 * Generates, defines and instantiates the class of the cron.
+	 *
+	 * @return The compiled cron.
+	 */
+	protected CompiledCron newInstance() {
+		String name = PACKAGE + "CompiledCron" + COUNTER.incrementAndGet();
+		byte[] bytes = this.generate(name);
+		try {
+			Class<?> type = new GeneratedClassLoader(
+					CompiledCron.class.getClassLoader()).define(
+					name.replace('/', '.'), bytes);
+			return (CompiledCron) type.getConstructor(FixedPeriodCron.class)
+					.newInstance(this.cron);
+		} catch (ReflectiveOperationException exception) {
+			throw new IllegalStateException("Could not compile \"" +
+					this.cron + "\".", exception);
+		}
+	}
+
+	/**
+	 * Tells the shape of a field: ALL (every value of its range), SINGLE (one
+	 * value), RANGE (consecutive values), STEP (values at a constant distance),
+	 * MASK (anything else) or EMPTY (no value at all).
+	 *
+	 * @param field One of FixedPeriodCron.MINUTES, HOURS, DAYS, MONTHS or
+	 *              DAYS_OF_WEEK.
+	 * @param mask  The mask of the field.
+	 * @return The shape.
+	 */
+	public static int getShape(int field, long mask) {
+		long rangeMask = getFieldRangeMask(field);
+		mask &= rangeMask;
+		if (mask == 0) {
+			return EMPTY;
+		} else if (mask == rangeMask) {
+			return ALL;
+		} else if (Long.bitCount(mask) == 1) {
+			return SINGLE;
+		}
+		int first = Long.numberOfTrailingZeros(mask);
+		int last = 63 - Long.numberOfLeadingZeros(mask);
+		if (Long.bitCount(mask) == last - first + 1) {
+			return RANGE;
+		}
+		int step = Long.numberOfTrailingZeros(mask >>> (first + 1)) + 1;
+		long steps = 0;
+		for (int value = first; value <= last; value += step) {
+			steps |= 1L << value;
+		}
+		return steps == mask ? STEP : MASK;
+	}
+
+	/**
+	 * The mask of the valid values of a field (days of the week go from 0 to
+	 * 6, as 7 is stored as 0).
+	 *
+	 * @param field The field.
+	 * @return The mask.
+	 */
+	protected static long getFieldRangeMask(int field) {
+		long rangeMask = FixedPeriodCron.getRangeMask(field);
+		if (field == FixedPeriodCron.DAYS_OF_WEEK) {
+			rangeMask &= ~(1L << FixedPeriodCron.MAX_DAYS_OF_WEEK);
+		}
+		return rangeMask;
+	}
+
+	/**
+	 * Generates the class file.
+	 *
+	 * @param name Internal name of the class.
+	 * @return The class file.
+	 */
+	protected byte[] generate(String name) {
+		int thisClass = this.classConstant(name);
+		int superClass = this.classConstant(SUPER_CLASS);
+		List<byte[]> methods = new ArrayList<byte[]>();
+		methods.add(this.constructor());
+		methods.add(this.matches());
+		methods.add(this.nextValue("nextMinute", FixedPeriodCron.MINUTES));
+		methods.add(this.nextValue("nextHour", FixedPeriodCron.HOURS));
+		methods.add(this.nextValue("nextMonth", FixedPeriodCron.MONTHS));
+		methods.add(this.matchesDay());
+		ByteBuffer file = new ByteBuffer();
+		file.putInt(0xCAFEBABE);
+		file.putShort(0);
+		file.putShort(CLASS_VERSION);
+		file.putShort(this.constantCount);
+		file.put(this.constants.toByteArray());
+		file.putShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+		file.putShort(thisClass);
+		file.putShort(superClass);
+		file.putShort(0); // Interfaces
+		file.putShort(0); // Fields
+		file.putShort(methods.size());
+		for (byte[] method : methods) {
+			file.put(method);
+		}
+		file.putShort(0); // Attributes
+		return file.toByteArray();
+	}
+
+	protected byte[] constructor() {
+		Code code = new Code(2, 2);
+		code.op(ALOAD, 0);
+		code.op(ALOAD, 1);
+		code.op(INVOKESPECIAL);
+		code.putShort(this.methodConstant(SUPER_CLASS, "<init>",
+				"(" + CRON_CLASS + ")V"));
+		code.op(RETURN);
+		return this.method(ACC_PUBLIC, "<init>", "(" + CRON_CLASS + ")V", code);
+	}
+
+	/**
+	 * matches(minute, hour, day, month, dayOfWeek): the tests of the fields
+	 * one after the other, the first failing one returning false.
+	 *
+	 * @return The method.
+	 */
+	protected byte[] matches() {
+		Code code = new Code(4, 6);
+		Label noMatch = new Label();
+		int[] fields = {FixedPeriodCron.MINUTES, FixedPeriodCron.HOURS,
+				FixedPeriodCron.DAYS, FixedPeriodCron.MONTHS,
+				FixedPeriodCron.DAYS_OF_WEEK};
+		for (int i = 0; i < fields.length; ++i) {
+			this.test(code, fields[i], i + 1, noMatch);
+		}
+		code.op(ICONST_1);
+		code.op(IRETURN);
+		code.mark(noMatch);
+		code.op(ICONST_0);
+		code.op(IRETURN);
+		return this.method(ACC_PUBLIC, "matches", "(IIIII)Z", code);
+	}
+
+	/**
+	 * matchesDay(day, dayOfWeek).
+	 *
+	 * @return The method.
+	 */
+	protected byte[] matchesDay() {
+		Code code = new Code(4, 3);
+		Label noMatch = new Label();
+		this.test(code, FixedPeriodCron.DAYS, 1, noMatch);
+		this.test(code, FixedPeriodCron.DAYS_OF_WEEK, 2, noMatch);
+		code.op(ICONST_1);
+		code.op(IRETURN);
+		code.mark(noMatch);
+		code.op(ICONST_0);
+		code.op(IRETURN);
+		return this.method(ACC_PROTECTED, "matchesDay", "(II)Z", code);
+	}
+
+	/**
+	 * Generates the test of a field against the value of a local variable,
+	 * jumping to a label when it fails.
+	 *
+	 * @param code    Where to generate it.
+	 * @param field   The field.
+	 * @param local   The local variable with its value.
+	 * @param noMatch The label.
+	 */
+	protected void test(Code code, int field, int local, Label noMatch) {
+		long mask = this.cron.getFieldMask(field) & getFieldRangeMask(field);
+		int first = Long.numberOfTrailingZeros(mask);
+		int last = 63 - Long.numberOfLeadingZeros(mask);
+		switch (getShape(field, mask)) {
+			case ALL:
+				break;
+			case SINGLE:
+				code.op(ILOAD, local);
+				code.push(first);
+				code.jump(IF_ICMPNE, noMatch);
+				break;
+			case RANGE:
+				code.op(ILOAD, local);
+				code.push(first);
+				code.jump(IF_ICMPLT, noMatch);
+				code.op(ILOAD, local);
+				code.push(last);
+				code.jump(IF_ICMPGT, noMatch);
+				break;
+			case STEP:
+				/* first <= value <= last && (value - first) % step == 0 */
+				int step = Long.numberOfTrailingZeros(mask >>> (first + 1)) + 1;
+				code.op(ILOAD, local);
+				code.push(first);
+				code.jump(IF_ICMPLT, noMatch);
+				code.op(ILOAD, local);
+				code.push(last);
+				code.jump(IF_ICMPGT, noMatch);
+				code.op(ILOAD, local);
+				code.push(first);
+				code.op(ISUB);
+				code.push(step);
+				code.op(IREM);
+				code.jump(IFNE, noMatch);
+				break;
+			default:
+				/* MASK and EMPTY: (mask >>> value) & 1 */
+				code.op(LDC2_W);
+				code.putShort(this.longConstant(mask));
+				code.op(ILOAD, local);
+				code.op(LUSHR);
+				code.op(L2I);
+				code.op(ICONST_1);
+				code.op(IAND);
+				code.jump(IFEQ, noMatch);
+		}
+	}
+
+	/**
+	 * nextMinute, nextHour or nextMonth(value): the closest value of the
+	 * field (including the given one), or NONE.
+	 *
+	 * @param name  Name of the method.
+	 * @param field The field.
+	 * @return The method.
+	 */
+	protected byte[] nextValue(String name, int field) {
+		long mask = this.cron.getFieldMask(field) & getFieldRangeMask(field);
+		int first = Long.numberOfTrailingZeros(mask);
+		int last = 63 - Long.numberOfLeadingZeros(mask);
+		int shape = getShape(field, mask);
+		Code code = new Code(6, 4);
+		Label none = new Label();
+		if (shape == EMPTY) {
+			code.jump(GOTO, none);
+		} else {
+			/* Values past the last one have none */
+			code.op(ILOAD, 1);
+			code.push(last);
+			code.jump(IF_ICMPGT, none);
+		}
+		switch (shape) {
+			case EMPTY:
+				break;
+			case ALL:
+			case RANGE:
+				/* max(value, first) */
+				Label value = new Label();
+				code.op(ILOAD, 1);
+				code.push(first);
+				code.jump(IF_ICMPGT, value);
+				code.push(first);
+				code.op(IRETURN);
+				code.mark(value);
+				code.op(ILOAD, 1);
+				code.op(IRETURN);
+				break;
+			case SINGLE:
+				code.push(first);
+				code.op(IRETURN);
+				break;
+			case STEP:
+				/* first + ceil((value - first) / step) * step */
+				int step = Long.numberOfTrailingZeros(mask >>> (first + 1)) + 1;
+				Label after = new Label();
+				code.op(ILOAD, 1);
+				code.push(first);
+				code.jump(IF_ICMPGT, after);
+				code.push(first);
+				code.op(IRETURN);
+				code.mark(after);
+				code.push(first);
+				code.op(ILOAD, 1);
+				code.push(first);
+				code.op(ISUB);
+				code.push(step - 1);
+				code.op(IADD);
+				code.push(step);
+				code.op(IDIV);
+				code.push(step);
+				code.op(IMUL);
+				code.op(IADD);
+				code.op(IRETURN);
+				break;
+			default:
+				/* numberOfTrailingZeros(mask & (-1L << value)), if not 0 */
+				code.op(LDC2_W);
+				code.putShort(this.longConstant(mask));
+				code.op(LDC2_W);
+				code.putShort(this.longConstant(-1L));
+				code.op(ILOAD, 1);
+				code.op(LSHL);
+				code.op(LAND);
+				code.op(LSTORE, 2);
+				code.op(LLOAD, 2);
+				code.op(LCONST_0);
+				code.op(LCMP);
+				code.jump(IFEQ, none);
+				code.op(LLOAD, 2);
+				code.op(INVOKESTATIC);
+				code.putShort(this.methodConstant("java/lang/Long",
+						"numberOfTrailingZeros", "(J)I"));
+				code.op(IRETURN);
+		}
+		code.mark(none);
+		code.op(ICONST_M1);
+		code.op(IRETURN);
+		return this.method(ACC_PROTECTED, name, "(I)I", code);
+	}
+
+	protected byte[] method(int access, String name, String descriptor,
+							Code code) {
+		byte[] bytecode = code.toByteArray();
+		ByteBuffer method = new ByteBuffer();
+		method.putShort(access);
+		method.putShort(this.utf8Constant(name));
+		method.putShort(this.utf8Constant(descriptor));
+		method.putShort(1);
+		method.putShort(this.utf8Constant("Code"));
+		method.putInt(12 + bytecode.length);
+		method.putShort(code.maxStack);
+		method.putShort(code.maxLocals);
+		method.putInt(bytecode.length);
+		method.put(bytecode);
+		method.putShort(0); // Exception table
+		method.putShort(0); // Attributes
+		return method.toByteArray();
+	}
+
+	protected int utf8Constant(String value) {
+		Integer index = this.constantIndexes.get("U" + value);
+		if (index == null) {
+			this.constants.putByte(1);
+			this.constants.putUtf8(value);
+			index = this.addConstant("U" + value, 1);
+		}
+		return index;
+	}
+
+	protected int classConstant(String name) {
+		Integer index = this.constantIndexes.get("C" + name);
+		if (index == null) {
+			int nameIndex = this.utf8Constant(name);
+			this.constants.putByte(7);
+			this.constants.putShort(nameIndex);
+			index = this.addConstant("C" + name, 1);
+		}
+		return index;
+	}
+
+	protected int methodConstant(String owner, String name, String descriptor) {
+		String key = "M" + owner + "." + name + descriptor;
+		Integer index = this.constantIndexes.get(key);
+		if (index == null) {
+			int ownerIndex = this.classConstant(owner);
+			int nameIndex = this.utf8Constant(name);
+			int descriptorIndex = this.utf8Constant(descriptor);
+			this.constants.putByte(12);
+			this.constants.putShort(nameIndex);
+			this.constants.putShort(descriptorIndex);
+			int nameAndType = this.addConstant("N" + key, 1);
+			this.constants.putByte(10);
+			this.constants.putShort(ownerIndex);
+			this.constants.putShort(nameAndType);
+			index = this.addConstant(key, 1);
+		}
+		return index;
+	}
+
+	protected int longConstant(long value) {
+		Integer index = this.constantIndexes.get("J" + value);
+		if (index == null) {
+			this.constants.putByte(5);
+			this.constants.putInt((int) (value >>> 32));
+			this.constants.putInt((int) value);
+			/* Longs take two entries */
+			index = this.addConstant("J" + value, 2);
+		}
+		return index;
+	}
+
+	protected int addConstant(String key, int entries) {
+		int index = this.constantCount;
+		this.constantIndexes.put(key, index);
+		this.constantCount += entries;
+		return index;
+	}
+
+	/**
+	 * A growable array of bytes, written in big-endian order.
+	 */
+	protected static class ByteBuffer {
+		protected byte[] bytes = new byte[256];
+		protected int size;
+
+		protected void putByte(int value) {
+			if (this.size == this.bytes.length) {
+				this.bytes = Arrays.copyOf(this.bytes, this.size * 2);
+			}
+			this.bytes[this.size++] = (byte) value;
+		}
+
+		protected void putShort(int value) {
+			this.putByte(value >>> 8);
+			this.putByte(value);
+		}
+
+		protected void putInt(int value) {
+			this.putShort(value >>> 16);
+			this.putShort(value);
+		}
+
+		protected void put(byte[] values) {
+			for (byte value : values) {
+				this.putByte(value);
+			}
+		}
+
+		/**
+		 * Appends an ASCII string as modified UTF-8, with its length.
+		 *
+		 * @param value The string (names and descriptors are ASCII).
+		 */
+		protected void putUtf8(String value) {
+			this.putShort(value.length());
+			for (int i = 0; i < value.length(); ++i) {
+				this.putByte(value.charAt(i));
+			}
+		}
+
+		protected byte[] toByteArray() {
+			return Arrays.copyOf(this.bytes, this.size);
+		}
+	}
+
+	/**
+	 * A position in the bytecode of a method, which may be jumped to before
+	 * it is known.
+	 */
+	protected static class Label {
+		protected int position = -1;
+	}
+
+	/**
+	 * The bytecode of a method.
+	 */
+	protected static class Code extends ByteBuffer {
+		protected final int maxStack;
+		protected final int maxLocals;
+		/**
+		 * Positions of the jump instructions, with the labels they jump to.
+		 */
+		protected final List<Integer> jumps = new ArrayList<Integer>();
+		protected final List<Label> jumpLabels = new ArrayList<Label>();
+
+		protected Code(int maxStack, int maxLocals) {
+			this.maxStack = maxStack;
+			this.maxLocals = maxLocals;
+		}
+
+		protected void op(int opcode) {
+			this.putByte(opcode);
+		}
+
+		protected void op(int opcode, int operand) {
+			this.putByte(opcode);
+			this.putByte(operand);
+		}
+
+		/**
+		 * Pushes a small constant (-1 to 127).
+		 *
+		 * @param value The constant.
+		 */
+		protected void push(int value) {
+			if (value >= -1 && value <= 5) {
+				this.op(ICONST_0 + value);
+			} else {
+				this.op(BIPUSH, value);
+			}
+		}
+
+		protected void jump(int opcode, Label label) {
+			this.jumps.add(this.size);
+			this.jumpLabels.add(label);
+			this.putByte(opcode);
+			this.putShort(0);
+		}
+
+		protected void mark(Label label) {
+			label.position = this.size;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		protected byte[] toByteArray() {
+			byte[] code = super.toByteArray();
+			/* Every label is marked once the method is complete */
+			for (int i = 0; i < this.jumps.size(); ++i) {
+				int jump = this.jumps.get(i);
+				int offset = this.jumpLabels.get(i).position - jump;
+				code[jump + 1] = (byte) (offset >>> 8);
+				code[jump + 2] = (byte) offset;
+			}
+			return code;
+		}
+	}
+
+	/**
+	 * A class loader defining a single generated class.
+	 */
+	protected static class GeneratedClassLoader extends ClassLoader {
+		protected GeneratedClassLoader(ClassLoader parent) {
+			super(parent);
+		}
+
+		protected Class<?> define(String name, byte[] bytes) {
+			return this.defineClass(name, bytes, 0, bytes.length);
+		}
+	}
+}
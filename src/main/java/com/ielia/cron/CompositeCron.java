@@ -0,0 +1,346 @@
+package com.ielia.cron;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Unions and intersections of crons (e.g. "0 9 * * 1-5" plus "0 12 * * 6,0"),
+ * answering the queries of FixedPeriodCron as a single schedule.
+ * <p/>
+ * <p>Intersections are always a single cron, with the fields of the members
+ * intersected. Unions merge members that only differ in one field (or that are
+ * included in another member) into a single cron. When there is more than one
+ * member left, the result is a CompositeCron, whose search goes through the
+ * union of the fields of every member and, at each candidate day, picks the
+ * closest time of the members that match the day. Both cost about as much as
+ * the search of a single cron, instead of one search per member.</p>
+ * <p/>
+ * <p>The field masks of a CompositeCron (see getFieldMask) are the union of
+ * the masks of its members, a superset of its matches. Members cannot have
+ * exclusion calendars.</p>
+ *
+ * @author ielia
+ */
+public class CompositeCron extends FixedPeriodCron {
+	/**
+	 * The members of the union, none of them included in another one.
+	 */
+	protected final FixedPeriodCron[] members;
+
+	/**
+	 * Creates the union of crons that cannot be merged.
+	 *
+	 * @param members The members (two or more).
+	 */
+	protected CompositeCron(FixedPeriodCron[] members) {
+		super(toExpression(unionMasks(members)));
+		this.members = members;
+		StringBuilder expression = new StringBuilder();
+		for (FixedPeriodCron member : members) {
+			if (expression.length() > 0) {
+				expression.append(" | ");
+			}
+			expression.append(member);
+		}
+		this.expression = expression.toString();
+		/* The union of the fields may have a fixed period, but not the union */
+		this.fixedPeriodMinutes = 0;
+		this.fixedPeriodPhase = 0;
+		this.fixedPeriodMillis = null;
+	}
+
+	/**
+	 * Builds a schedule that fires whenever any of the crons fires.
+	 *
+	 * @param crons The crons.
+	 * @return A single cron, if the crons can be merged into one, or a
+	 *         CompositeCron.
+	 */
+	public static FixedPeriodCron union(FixedPeriodCron... crons) {
+		List<long[]> masks = new ArrayList<long[]>();
+		for (long[] cronMasks : getMasks(crons)) {
+			if (!isEmpty(cronMasks)) {
+				masks.add(cronMasks);
+			}
+		}
+		boolean merged = true;
+		while (merged) {
+			merged = false;
+			for (int i = 0; i < masks.size() && !merged; ++i) {
+				for (int j = i + 1; j < masks.size() && !merged; ++j) {
+					long[] union = merge(masks.get(i), masks.get(j));
+					if (union != null) {
+						masks.set(i, union);
+						masks.remove(j);
+						merged = true;
+					}
+				}
+			}
+		}
+		if (masks.size() <= 1) {
+			return new FixedPeriodCron(toExpression(masks.isEmpty() ?
+					new long[NUMBER_OF_FIELDS] : masks.get(0)));
+		}
+		FixedPeriodCron[] members = new FixedPeriodCron[masks.size()];
+		for (int i = 0; i < members.length; ++i) {
+			members[i] = new FixedPeriodCron(toExpression(masks.get(i)));
+		}
+		return new CompositeCron(members);
+	}
+
+	/**
+	 * Builds a schedule that fires whenever all of the crons fire.
+	 *
+	 * @param crons The crons.
+	 * @return A single cron.
+	 */
+	public static FixedPeriodCron intersection(FixedPeriodCron... crons) {
+		long[] masks = new long[NUMBER_OF_FIELDS];
+		Arrays.fill(masks, -1L);
+		for (long[] cronMasks : getMasks(crons)) {
+			for (int field = 0; field < NUMBER_OF_FIELDS; ++field) {
+				masks[field] &= cronMasks[field];
+			}
+		}
+		return new FixedPeriodCron(toExpression(masks));
+	}
+
+	/**
+	 * The members of the union.
+	 *
+	 * @return Crons, none of them included in another one.
+	 */
+	public List<FixedPeriodCron> getMembers() {
+		return Collections.unmodifiableList(Arrays.asList(this.members));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected boolean isMatch(Calendar reference, int cronRunSeconds,
+							  int cronRunMillis, boolean matchAllUnderMinute) {
+		for (FixedPeriodCron member : this.members) {
+			if (member.isMatch(reference, cronRunSeconds, cronRunMillis,
+					matchAllUnderMinute)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Moves the fields to the closest wall-clock minute matching any member.
+	 * The union of the fields of the members finds candidate days; then, the
+	 * closest time of the members matching each of them is taken, and days
+	 * without any are skipped.
+	 *
+	 * @param direction 1 or -1, indicating forwards or backwards, respectively.
+	 * @param fields    Fields to start from (modified by the search).
+	 * @param lastYear  Last year to be searched.
+	 * @return True if a matching minute was found before passing the last
+	 *         year, false if not.
+	 */
+	@Override
+	protected boolean findFields(int direction, int[] fields, int lastYear) {
+		while (super.findFields(direction, fields, lastYear)) {
+			int year = fields[YEAR_REFERENCE_FIELD];
+			int month = fields[MONTHS];
+			int day = fields[DAYS];
+			int dayOfWeek = getDayOfWeek(year, month, day);
+			int closest = NONE;
+			for (FixedPeriodCron member : this.members) {
+				if ((member.crontabMasks[MONTHS] & (1L << month)) == 0 ||
+						(member.crontabMasks[DAYS] & (1L << day)) == 0 ||
+						(member.crontabMasks[DAYS_OF_WEEK] &
+								(1L << dayOfWeek)) == 0) {
+					continue;
+				}
+				int minuteOfDay = this.nextMinuteOfDay(member, fields[HOURS],
+						fields[MINUTES], direction);
+				if (minuteOfDay != NONE && (closest == NONE ||
+						(minuteOfDay - closest) * direction < 0)) {
+					closest = minuteOfDay;
+				}
+			}
+			if (closest != NONE) {
+				fields[HOURS] = closest / MINUTES_PER_HOUR;
+				fields[MINUTES] = closest % MINUTES_PER_HOUR;
+				return true;
+			}
+			/* No member matches the rest of the day: go to the next one */
+			fields[HOURS] = direction > 0 ? MAX_HOURS : MIN_HOURS;
+			fields[MINUTES] = direction > 0 ? MAX_MINUTES : MIN_MINUTES;
+			this.addMinute(fields, direction);
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the closest time of the day (including the given one) matching
+	 * the hours and minutes of a member, forwards or backwards.
+	 *
+	 * @param member    The member.
+	 * @param hour      Hour to start from.
+	 * @param minute    Minute to start from.
+	 * @param direction 1 or -1, indicating forwards or backwards, respectively.
+	 * @return The minute of the day, or NONE if there is none within the day.
+	 */
+	protected int nextMinuteOfDay(FixedPeriodCron member, int hour, int minute,
+								  int direction) {
+		int anHour = member.nextValue(HOURS, hour, direction);
+		if (anHour != hour) {
+			minute = direction > 0 ? MIN_MINUTES : MAX_MINUTES;
+		}
+		int aMinute = anHour == NONE ? NONE :
+				member.nextValue(MINUTES, minute, direction);
+		if (anHour == hour && aMinute == NONE) {
+			anHour = member.nextValue(HOURS, hour + direction, direction);
+			aMinute = member.nextValue(MINUTES,
+					direction > 0 ? MIN_MINUTES : MAX_MINUTES, direction);
+		}
+		if (anHour == NONE || aMinute == NONE) {
+			return NONE;
+		}
+		return anHour * MINUTES_PER_HOUR + aMinute;
+	}
+
+	/**
+	 * Returns the masks of crons, which must not have exclusions.
+	 *
+	 * @param crons The crons (one or more).
+	 * @return Masks of each cron.
+	 */
+	protected static List<long[]> getMasks(FixedPeriodCron... crons) {
+		if (crons == null || crons.length == 0) {
+			throw new IllegalArgumentException("There must be some cron.");
+		}
+		List<long[]> masks = new ArrayList<long[]>();
+		for (FixedPeriodCron cron : crons) {
+			if (cron == null) {
+				throw new IllegalArgumentException("Cron cannot be null.");
+			} else if (cron.getExclusions() != null) {
+				throw new IllegalArgumentException(
+						"Crons with exclusions cannot be combined.");
+			} else if (cron instanceof CompositeCron) {
+				masks.addAll(getMasks(((CompositeCron) cron).members));
+			} else {
+				masks.add(cron.crontabMasks.clone());
+			}
+		}
+		return masks;
+	}
+
+	/**
+	 * Merges the masks of two crons into the masks of their union, if it is a
+	 * single cron: when one includes the other or they only differ in one
+	 * field.
+	 *
+	 * @param masks      Masks of a cron.
+	 * @param otherMasks Masks of the other cron.
+	 * @return Masks of the union (or null if it is not a single cron).
+	 */
+	protected static long[] merge(long[] masks, long[] otherMasks) {
+		boolean includes = true;
+		boolean included = true;
+		int differences = 0;
+		for (int field = 0; field < NUMBER_OF_FIELDS; ++field) {
+			long union = masks[field] | otherMasks[field];
+			includes &= union == masks[field];
+			included &= union == otherMasks[field];
+			if (masks[field] != otherMasks[field]) {
+				++differences;
+			}
+		}
+		if (includes) {
+			return masks;
+		} else if (included) {
+			return otherMasks;
+		} else if (differences > 1) {
+			return null;
+		}
+		long[] union = new long[NUMBER_OF_FIELDS];
+		for (int field = 0; field < NUMBER_OF_FIELDS; ++field) {
+			union[field] = masks[field] | otherMasks[field];
+		}
+		return union;
+	}
+
+	protected static long[] unionMasks(FixedPeriodCron[] crons) {
+		long[] masks = new long[NUMBER_OF_FIELDS];
+		for (FixedPeriodCron cron : crons) {
+			for (int field = 0; field < NUMBER_OF_FIELDS; ++field) {
+				masks[field] |= cron.crontabMasks[field];
+			}
+		}
+		return masks;
+	}
+
+	protected static boolean isEmpty(long[] masks) {
+		for (long mask : masks) {
+			if (mask == 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Renders field masks as a crontab expression. Empty fields are rendered
+	 * as the value after their range, which never matches.
+	 *
+	 * @param masks Masks of each field.
+	 * @return The expression.
+	 */
+	protected static String toExpression(long[] masks) {
+		StringBuilder expression = new StringBuilder();
+		for (int field = 0; field < NUMBER_OF_FIELDS; ++field) {
+			if (field > 0) {
+				expression.append(' ');
+			}
+			long rangeMask = getRangeMask(field);
+			if (field == DAYS_OF_WEEK) {
+				/* Sunday = 7 is stored as 0 */
+				rangeMask &= ~(1L << MAX_DAYS_OF_WEEK);
+			}
+			long mask = masks[field] & rangeMask;
+			if (mask == rangeMask) {
+				expression.append('*');
+			} else if (mask == 0) {
+				expression.append(RANGES[field * 2 + 1] + 1);
+			} else {
+				appendValues(expression, mask);
+			}
+		}
+		return expression.toString();
+	}
+
+	/**
+	 * Appends the values of a mask as a list of values and ranges.
+	 *
+	 * @param expression Where to append them.
+	 * @param mask       A non empty mask.
+	 */
+	protected static void appendValues(StringBuilder expression, long mask) {
+		boolean first = true;
+		while (mask != 0) {
+			int start = Long.numberOfTrailingZeros(mask);
+			int end = start;
+			while (end < 63 && (mask & (1L << (end + 1))) != 0) {
+				++end;
+			}
+			mask &= ~((-1L >>> (63 - end)) & (-1L << start));
+			if (!first) {
+				expression.append(',');
+			}
+			expression.append(start);
+			if (end > start) {
+				expression.append('-').append(end);
+			}
+			first = false;
+		}
+	}
+}
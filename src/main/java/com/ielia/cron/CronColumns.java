@@ -0,0 +1,309 @@
+package com.ielia.cron;
+
+import java.util.BitSet;
+import java.util.Calendar;
+import java.util.Collection;
+
+/**
+ * The field masks of a large set of crons laid out in columns (one array per
+ * field), to find out which of them fire at a given minute, or at any minute
+ * of a range, with a single pass over the arrays.
+ * <p/>
+ * <p>Every query is broken into boxes: the set of minutes whose fields belong
+ * to five given masks. The match set of a cron is a box as well, so a cron
+ * fires within a box if, and only if, every one of its field masks intersects
+ * the mask of the box. A minute is a box, and a range of minutes is at most
+ * three boxes per day (the rest of its first hour, its whole hours and the
+ * beginning of its last hour). Minutes are wall-clock minutes, so daylight
+ * saving transitions are not taken into account.</p>
+ * <p/>
+ * <p>This class goes through the crons one by one. The instances returned by
+ * create use the Vector API (jdk.incubator.vector) to go through several crons
+ * at once, if it is available (see VectorCronColumns, compiled with the
+ * "vector" profile on JDK 17 and later, and enabled with
+ * <code>--add-modules jdk.incubator.vector</code>).</p>
+ * <p/>
+ * <p>Crons are selected by their position in the collection they were given
+ * in. Crons with exclusions and unions (CompositeCron) are not accepted, but
+ * the members of a union may be added one by one. Instances are immutable.</p>
+ *
+ * @author ielia
+ */
+public class CronColumns {
+	/**
+	 * The class of the columns using the Vector API.
+	 */
+	protected static final String VECTOR_COLUMNS_CLASS =
+			"com.ielia.cron.vector.VectorCronColumns";
+	protected static final long ALL_MINUTES = range(FixedPeriodCron.MIN_MINUTES,
+			FixedPeriodCron.MAX_MINUTES);
+	protected static final long ALL_HOURS = range(FixedPeriodCron.MIN_HOURS,
+			FixedPeriodCron.MAX_HOURS);
+	protected static final int MINUTES_PER_HOUR = 60;
+	protected static final int MINUTES_PER_DAY = 24 * MINUTES_PER_HOUR;
+	/**
+	 * The crons, in order.
+	 */
+	protected final FixedPeriodCron[] crons;
+	/**
+	 * Minutes masks of each cron.
+	 */
+	protected final long[] minutes;
+	/**
+	 * Hours masks of each cron.
+	 */
+	protected final long[] hours;
+	/**
+	 * Days (of the month) masks of each cron.
+	 */
+	protected final long[] days;
+	/**
+	 * Months masks of each cron.
+	 */
+	protected final long[] months;
+	/**
+	 * Days of the week masks of each cron (Sunday = 0).
+	 */
+	protected final long[] daysOfWeek;
+
+	/**
+	 * Lays out the masks of crons in columns.
+	 *
+	 * @param crons The crons.
+	 */
+	public CronColumns(Collection<? extends FixedPeriodCron> crons) {
+		if (crons == null) {
+			throw new IllegalArgumentException("Crons cannot be null.");
+		}
+		this.crons = crons.toArray(new FixedPeriodCron[crons.size()]);
+		int size = this.crons.length;
+		this.minutes = new long[size];
+		this.hours = new long[size];
+		this.days = new long[size];
+		this.months = new long[size];
+		this.daysOfWeek = new long[size];
+		for (int i = 0; i < size; ++i) {
+			FixedPeriodCron cron = this.crons[i];
+			if (cron == null) {
+				throw new IllegalArgumentException("Cron cannot be null.");
+			} else if (cron.getExclusions() != null) {
+				throw new IllegalArgumentException(
+						"Crons with exclusions cannot be laid out in columns.");
+			} else if (cron instanceof CompositeCron) {
+				throw new IllegalArgumentException(
+						"Unions must be laid out as their members.");
+			}
+			this.minutes[i] = cron.getFieldMask(FixedPeriodCron.MINUTES);
+			this.hours[i] = cron.getFieldMask(FixedPeriodCron.HOURS);
+			this.days[i] = cron.getFieldMask(FixedPeriodCron.DAYS);
+			this.months[i] = cron.getFieldMask(FixedPeriodCron.MONTHS);
+			this.daysOfWeek[i] = cron.getFieldMask(FixedPeriodCron.DAYS_OF_WEEK);
+		}
+	}
+
+	/**
+	 * Lays out the masks of crons in columns, to be evaluated with the Vector
+	 * API if it is available, or one by one if not.
+	 *
+	 * @param crons The crons.
+	 * @return The columns.
+	 */
+	public static CronColumns create(Collection<? extends FixedPeriodCron> crons) {
+		try {
+			Class<?> vectorColumns = Class.forName(VECTOR_COLUMNS_CLASS);
+			if ((Boolean) vectorColumns.getMethod("isSupported").invoke(null)) {
+				return (CronColumns) vectorColumns
+						.getConstructor(Collection.class).newInstance(crons);
+			}
+		} catch (LinkageError error) {
+			/* The Vector API module is not present: go on with the scalar one */
+		} catch (ReflectiveOperationException exception) {
+			if (exception.getCause() instanceof IllegalArgumentException) {
+				throw (IllegalArgumentException) exception.getCause();
+			}
+		}
+		return new CronColumns(crons);
+	}
+
+	/**
+	 * Number of crons.
+	 *
+	 * @return The number of crons.
+	 */
+	public int size() {
+		return this.crons.length;
+	}
+
+	/**
+	 * The cron at a position.
+	 *
+	 * @param index The position of the cron.
+	 * @return The cron.
+	 */
+	public FixedPeriodCron get(int index) {
+		return this.crons[index];
+	}
+
+	/**
+	 * Finds the crons matching the wall-clock minute of a reference.
+	 *
+	 * @param reference Reference calendar (seconds and milliseconds are
+	 *                  ignored).
+	 * @return Positions of the matching crons.
+	 */
+	public BitSet matches(Calendar reference) {
+		long[] selection = new long[this.getSelectionLength()];
+		this.select(1L << reference.get(Calendar.MINUTE),
+				1L << reference.get(Calendar.HOUR_OF_DAY),
+				1L << reference.get(Calendar.DATE),
+				1L << (reference.get(Calendar.MONTH) + 1),
+				1L << (reference.get(Calendar.DAY_OF_WEEK) - 1), selection);
+		return BitSet.valueOf(selection);
+	}
+
+	/**
+	 * Finds the crons firing (running at 0 seconds, 0 milliseconds) at any
+	 * wall-clock minute of a range.
+	 *
+	 * @param start Start of the range (inclusive).
+	 * @param end   End of the range (exclusive).
+	 * @return Positions of the crons firing within the range.
+	 */
+	public BitSet firesBetween(Calendar start, Calendar end) {
+		/* The first and last runs that may be within the range */
+		Calendar first = (Calendar) start.clone();
+		if (first.get(Calendar.SECOND) != 0 ||
+				first.get(Calendar.MILLISECOND) != 0) {
+			first.set(Calendar.SECOND, 0);
+			first.set(Calendar.MILLISECOND, 0);
+			first.add(Calendar.MINUTE, 1);
+		}
+		if (!first.before(end)) {
+			return new BitSet();
+		}
+		Calendar last = (Calendar) first.clone();
+		last.setTimeInMillis(end.getTimeInMillis() - 1);
+		long[] selection = new long[this.getSelectionLength()];
+		int year = first.get(Calendar.YEAR);
+		int month = first.get(Calendar.MONTH) + 1;
+		int day = first.get(Calendar.DATE);
+		int fromMinute = first.get(Calendar.HOUR_OF_DAY) * MINUTES_PER_HOUR +
+				first.get(Calendar.MINUTE);
+		int lastYear = last.get(Calendar.YEAR);
+		int lastMonth = last.get(Calendar.MONTH) + 1;
+		int lastDay = last.get(Calendar.DATE);
+		int lastMinute = last.get(Calendar.HOUR_OF_DAY) * MINUTES_PER_HOUR +
+				last.get(Calendar.MINUTE);
+		int remaining = this.crons.length;
+		while (remaining > 0) {
+			boolean isLastDay = year == lastYear && month == lastMonth &&
+					day == lastDay;
+			this.selectMinutesOfDay(month, day,
+					FixedPeriodCron.getDayOfWeek(year, month, day), fromMinute,
+					isLastDay ? lastMinute : MINUTES_PER_DAY - 1, selection);
+			if (isLastDay) {
+				break;
+			}
+			remaining = this.crons.length - count(selection);
+			fromMinute = 0;
+			if (++day > FixedPeriodCron.getDaysInMonth(year, month)) {
+				day = 1;
+				if (++month > FixedPeriodCron.MAX_MONTHS) {
+					month = 1;
+					++year;
+				}
+			}
+		}
+		return BitSet.valueOf(selection);
+	}
+
+	/**
+	 * Selects the crons firing within a range of minutes of a day.
+	 *
+	 * @param month      Month.
+	 * @param day        Day of the month.
+	 * @param dayOfWeek  Day of the week (Sunday = 0).
+	 * @param fromMinute First minute of the day of the range.
+	 * @param toMinute   Last minute of the day of the range.
+	 * @param selection  Bits of the crons, where the selected ones are set.
+	 */
+	protected void selectMinutesOfDay(int month, int day, int dayOfWeek,
+									  int fromMinute, int toMinute,
+									  long[] selection) {
+		int fromHour = fromMinute / MINUTES_PER_HOUR;
+		int toHour = toMinute / MINUTES_PER_HOUR;
+		long days = 1L << day;
+		long months = 1L << month;
+		long daysOfWeek = 1L << dayOfWeek;
+		if (fromHour == toHour) {
+			this.select(range(fromMinute % MINUTES_PER_HOUR,
+					toMinute % MINUTES_PER_HOUR), 1L << fromHour, days, months,
+					daysOfWeek, selection);
+			return;
+		}
+		if (fromMinute % MINUTES_PER_HOUR != 0) {
+			this.select(range(fromMinute % MINUTES_PER_HOUR,
+					FixedPeriodCron.MAX_MINUTES), 1L << fromHour, days, months,
+					daysOfWeek, selection);
+			++fromHour;
+		}
+		if (toMinute % MINUTES_PER_HOUR != FixedPeriodCron.MAX_MINUTES) {
+			this.select(range(FixedPeriodCron.MIN_MINUTES,
+					toMinute % MINUTES_PER_HOUR), 1L << toHour, days, months,
+					daysOfWeek, selection);
+			--toHour;
+		}
+		if (fromHour <= toHour) {
+			this.select(ALL_MINUTES, range(fromHour, toHour) & ALL_HOURS, days,
+					months, daysOfWeek, selection);
+		}
+	}
+
+	/**
+	 * Selects the crons firing within a box: every one of their field masks
+	 * intersects the corresponding mask of the box.
+	 *
+	 * @param minutes    Minutes of the box.
+	 * @param hours      Hours of the box.
+	 * @param days       Days of the month of the box.
+	 * @param months     Months of the box.
+	 * @param daysOfWeek Days of the week of the box (Sunday = 0).
+	 * @param selection  Bits of the crons, where the selected ones are set
+	 *                   (the others are left as they are).
+	 */
+	protected void select(long minutes, long hours, long days, long months,
+						  long daysOfWeek, long[] selection) {
+		for (int i = 0; i < this.crons.length; ++i) {
+			if ((this.minutes[i] & minutes) != 0 &&
+					(this.hours[i] & hours) != 0 &&
+					(this.days[i] & days) != 0 &&
+					(this.months[i] & months) != 0 &&
+					(this.daysOfWeek[i] & daysOfWeek) != 0) {
+				selection[i >>> 6] |= 1L << i;
+			}
+		}
+	}
+
+	protected int getSelectionLength() {
+		return (this.crons.length + 63) >>> 6;
+	}
+
+	/**
+	 * Bit mask of a range of values.
+	 *
+	 * @param from First value (0 to 63).
+	 * @param to   Last value (from to 63).
+	 * @return The mask.
+	 */
+	protected static long range(int from, int to) {
+		return (-1L >>> (63 - to)) & (-1L << from);
+	}
+
+	protected static int count(long[] selection) {
+		int count = 0;
+		for (long word : selection) {
+			count += Long.bitCount(word);
+		}
+		return count;
+	}
+}
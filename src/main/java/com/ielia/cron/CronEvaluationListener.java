@@ -0,0 +1,69 @@
+package com.ielia.cron;
+
+/**
+ * Listener notified of the work done by crons (see
+ * FixedPeriodCron#setEvaluationListener), e.g. to emit profiling events.
+ * <p/>
+ * <p>Every notification comes in two calls: "begin", before the work, which
+ * returns a context of the listener's own (e.g. a started event, or null), and
+ * "end", after the work, which gets that context back along with the details.
+ * Listeners are called from the threads that query the crons.</p>
+ *
+ * @author ielia
+ */
+public interface CronEvaluationListener {
+	/**
+	 * Called before an expression is parsed.
+	 *
+	 * @return A context for endParse (or null).
+	 */
+	Object beginParse();
+
+	/**
+	 * Called after an expression is parsed.
+	 *
+	 * @param context    The context returned by beginParse.
+	 * @param expression The expression.
+	 * @param valid      Whether the expression was valid or not.
+	 */
+	void endParse(Object context, String expression, boolean valid);
+
+	/**
+	 * Called before a search for a matching date.
+	 *
+	 * @return A context for endSearch (or null).
+	 */
+	Object beginSearch();
+
+	/**
+	 * Called after a search for a matching date.
+	 *
+	 * @param context      The context returned by beginSearch.
+	 * @param cron         The cron.
+	 * @param direction    1 or -1, forwards or backwards, respectively.
+	 * @param yearsScanned Number of years the search went through.
+	 * @param result       The date found, in milliseconds (or
+	 *                     FixedPeriodCron.NO_DATE).
+	 */
+	void endSearch(Object context, FixedPeriodCron cron, int direction,
+				   int yearsScanned, long result);
+
+	/**
+	 * Called before a cron is matched against a date (usually, at every tick
+	 * of a scheduler).
+	 *
+	 * @return A context for endMatch (or null).
+	 */
+	Object beginMatch();
+
+	/**
+	 * Called after a cron is matched against a date.
+	 *
+	 * @param context   The context returned by beginMatch.
+	 * @param cron      The cron.
+	 * @param reference The date, in milliseconds.
+	 * @param matched   Whether the cron matched or not.
+	 */
+	void endMatch(Object context, FixedPeriodCron cron, long reference,
+				  boolean matched);
+}
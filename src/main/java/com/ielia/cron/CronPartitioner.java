@@ -0,0 +1,330 @@
+package com.ielia.cron;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Splits the evaluation of a collection of crons among the nodes of a cluster,
+ * so that each node only evaluates its own shard and no database lock is
+ * needed to deduplicate fires.
+ * <p/>
+ * <p>Schedules are assigned to nodes through a consistent hash ring with a
+ * number of virtual nodes per member. When a member joins or leaves, only the
+ * schedules whose ring segment changes hands move (about 1/n of them).</p>
+ * <p/>
+ * <p>Membership changes are versioned by the instant they become effective:
+ * the owner of a fire is decided by the membership in effect at the time of
+ * the fire, not at the time the fire is evaluated. Every node that was given
+ * the same memberships therefore agrees on the owner of every fire, and the
+ * handover around a rebalance has neither gaps nor duplicates, as long as the
+ * new membership is distributed before its effective instant.</p>
+ * <p/>
+ * <p>Instances are thread-safe.</p>
+ *
+ * @author ielia
+ */
+public class CronPartitioner {
+	public static final int DEFAULT_VIRTUAL_NODES = 160;
+	protected static final Charset UTF_8 = Charset.forName("UTF-8");
+	protected static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	protected static final long FNV_PRIME = 0x100000001b3L;
+	/**
+	 * Number of points each member has on the ring.
+	 */
+	protected final int virtualNodes;
+	/**
+	 * The schedules to be distributed, by identifier.
+	 */
+	protected final Map<String, FixedPeriodCron> schedules =
+			new LinkedHashMap<String, FixedPeriodCron>();
+	/**
+	 * The rings of every membership, by the instant (in milliseconds) they
+	 * become effective.
+	 */
+	protected final TreeMap<Long, Ring> epochs = new TreeMap<Long, Ring>();
+
+	/**
+	 * Creates a partitioner with DEFAULT_VIRTUAL_NODES virtual nodes per
+	 * member.
+	 */
+	public CronPartitioner() {
+		this(DEFAULT_VIRTUAL_NODES);
+	}
+
+	/**
+	 * Creates a partitioner.
+	 *
+	 * @param virtualNodes Number of points each member has on the ring (more
+	 *                     points spread the schedules more evenly).
+	 */
+	public CronPartitioner(int virtualNodes) {
+		if (virtualNodes < 1) {
+			throw new IllegalArgumentException(
+					"Virtual nodes must be positive.");
+		}
+		this.virtualNodes = virtualNodes;
+	}
+
+	/**
+	 * Adds (or replaces) a schedule.
+	 *
+	 * @param id   Identifier of the schedule, the same on every node.
+	 * @param cron The cron of the schedule.
+	 */
+	public synchronized void add(String id, FixedPeriodCron cron) {
+		if (id == null || cron == null) {
+			throw new IllegalArgumentException(
+					"Identifier and cron cannot be null.");
+		}
+		this.schedules.put(id, cron);
+	}
+
+	/**
+	 * Removes a schedule.
+	 *
+	 * @param id Identifier of the schedule.
+	 * @return The cron of the schedule (or null if there was none).
+	 */
+	public synchronized FixedPeriodCron remove(String id) {
+		return this.schedules.remove(id);
+	}
+
+	/**
+	 * The cron of a schedule.
+	 *
+	 * @param id Identifier of the schedule.
+	 * @return The cron (or null if there is no such schedule).
+	 */
+	public synchronized FixedPeriodCron get(String id) {
+		return this.schedules.get(id);
+	}
+
+	/**
+	 * Sets the members of the cluster from an instant on. Fires previous to
+	 * that instant keep the owners of the previous membership.
+	 *
+	 * @param members         Names of the nodes, the same on every node.
+	 * @param effectiveMillis Instant (in milliseconds) from which the
+	 *                        membership applies.
+	 */
+	public synchronized void setMembers(Collection<String> members,
+										long effectiveMillis) {
+		if (members == null || members.contains(null)) {
+			throw new IllegalArgumentException("Members cannot be null.");
+		}
+		this.epochs.put(effectiveMillis,
+				new Ring(new TreeSet<String>(members), this.virtualNodes));
+	}
+
+	/**
+	 * The members in effect at an instant.
+	 *
+	 * @param millis The instant, in milliseconds.
+	 * @return Names of the nodes (empty if there is no membership yet).
+	 */
+	public synchronized SortedSet<String> getMembers(long millis) {
+		Map.Entry<Long, Ring> epoch = this.epochs.floorEntry(millis);
+		if (epoch == null) {
+			return Collections.unmodifiableSortedSet(new TreeSet<String>());
+		}
+		return Collections.unmodifiableSortedSet(epoch.getValue().members);
+	}
+
+	/**
+	 * Forgets the memberships that cannot decide the owner of any fire at or
+	 * after an instant.
+	 *
+	 * @param millis The instant, in milliseconds.
+	 */
+	public synchronized void forgetBefore(long millis) {
+		Long effective = this.epochs.floorKey(millis);
+		if (effective != null) {
+			this.epochs.headMap(effective).clear();
+		}
+	}
+
+	/**
+	 * The node that must run a fire of a schedule.
+	 *
+	 * @param id         Identifier of the schedule.
+	 * @param fireMillis Instant of the fire, in milliseconds.
+	 * @return Name of the node (or null if there are no members then).
+	 */
+	public synchronized String getOwner(String id, long fireMillis) {
+		Map.Entry<Long, Ring> epoch = this.epochs.floorEntry(fireMillis);
+		if (epoch == null) {
+			return null;
+		}
+		return epoch.getValue().getOwner(hash(id));
+	}
+
+	/**
+	 * Tells whether a node must run a fire of a schedule.
+	 *
+	 * @param node       Name of the node.
+	 * @param id         Identifier of the schedule.
+	 * @param fireMillis Instant of the fire, in milliseconds.
+	 * @return true iff the node owns the fire.
+	 */
+	public boolean isOwner(String node, String id, long fireMillis) {
+		return node.equals(this.getOwner(id, fireMillis));
+	}
+
+	/**
+	 * The schedules a node owns at an instant.
+	 *
+	 * @param node   Name of the node.
+	 * @param millis The instant, in milliseconds.
+	 * @return Identifiers of the schedules, in order of addition.
+	 */
+	public synchronized List<String> getShard(String node, long millis) {
+		List<String> shard = new ArrayList<String>();
+		Map.Entry<Long, Ring> epoch = this.epochs.floorEntry(millis);
+		if (epoch != null) {
+			for (String id : this.schedules.keySet()) {
+				if (node.equals(epoch.getValue().getOwner(hash(id)))) {
+					shard.add(id);
+				}
+			}
+		}
+		return shard;
+	}
+
+	/**
+	 * Searches for the closest fire of a schedule after a reference that a
+	 * node owns (running at 0 seconds, 0 milliseconds).
+	 *
+	 * @param node      Name of the node.
+	 * @param id        Identifier of the schedule.
+	 * @param reference Reference calendar (usually, "now").
+	 * @return The closest owned fire (or null if there is none).
+	 */
+	public Calendar getClosestOwnedDateAfter(String node, String id,
+											 Calendar reference) {
+		return this.getClosestOwnedDateAfter(node, id, reference, 0, 0);
+	}
+
+	/**
+	 * Searches for the closest fire of a schedule after a reference that a
+	 * node owns. Fires owned by other nodes are skipped a membership at a
+	 * time, so the search takes at most one cron search per membership.
+	 *
+	 * @param node           Name of the node.
+	 * @param id             Identifier of the schedule.
+	 * @param reference      Reference calendar (usually, "now").
+	 * @param cronRunSeconds Seconds after the minute when the cron engine runs.
+	 * @param cronRunMillis  Milliseconds after the second when the cron engine
+	 *                       runs.
+	 * @return The closest owned fire (or null if there is none).
+	 */
+	public Calendar getClosestOwnedDateAfter(String node, String id,
+											 Calendar reference,
+											 int cronRunSeconds,
+											 int cronRunMillis) {
+		FixedPeriodCron cron = this.get(id);
+		if (cron == null) {
+			throw new IllegalArgumentException("Unknown schedule: " + id);
+		}
+		long hash = hash(id);
+		Calendar fire = cron.getClosestDateAfter(reference, cronRunSeconds,
+				cronRunMillis);
+		while (fire != null) {
+			long fireMillis = fire.getTimeInMillis();
+			Long nextEffective;
+			synchronized (this) {
+				Map.Entry<Long, Ring> epoch = this.epochs.floorEntry(fireMillis);
+				if (epoch != null &&
+						node.equals(epoch.getValue().getOwner(hash))) {
+					return fire;
+				}
+				nextEffective = this.epochs.higherKey(fireMillis);
+			}
+			if (nextEffective == null) {
+				return null;
+			}
+			/* The owner cannot change until the next membership. */
+			fire.setTimeInMillis(nextEffective - 1);
+			fire = cron.getClosestDateAfter(fire, cronRunSeconds,
+					cronRunMillis);
+		}
+		return null;
+	}
+
+	/**
+	 * Hashes a key to a position on the ring (64-bit FNV-1a of its UTF-8
+	 * bytes, followed by a finalizer to spread similar keys).
+	 *
+	 * @param key The key.
+	 * @return The position on the ring.
+	 */
+	protected static long hash(String key) {
+		long hash = FNV_OFFSET_BASIS;
+		for (byte b : key.getBytes(UTF_8)) {
+			hash ^= b & 0xff;
+			hash *= FNV_PRIME;
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+	/**
+	 * A consistent hash ring for a membership.
+	 */
+	protected static class Ring {
+		protected final SortedSet<String> members;
+		/**
+		 * Owner of each point of the ring, by position.
+		 */
+		protected final TreeMap<Long, String> points =
+				new TreeMap<Long, String>();
+
+		/**
+		 * Places the virtual nodes of every member on the ring. Should two
+		 * points collide, the smallest member name keeps it, so the ring does
+		 * not depend on the order of the members.
+		 *
+		 * @param members      Names of the nodes.
+		 * @param virtualNodes Number of points of each member.
+		 */
+		protected Ring(SortedSet<String> members, int virtualNodes) {
+			this.members = members;
+			for (String member : members) {
+				for (int i = 0; i < virtualNodes; ++i) {
+					long point = hash(member + '#' + i);
+					if (!this.points.containsKey(point)) {
+						this.points.put(point, member);
+					}
+				}
+			}
+		}
+
+		/**
+		 * The member owning a position: the one with the first point at or
+		 * after it (wrapping around).
+		 *
+		 * @param hash The position.
+		 * @return Name of the member (or null if there are no members).
+		 */
+		protected String getOwner(long hash) {
+			if (this.points.isEmpty()) {
+				return null;
+			}
+			Map.Entry<Long, String> point = this.points.ceilingEntry(hash);
+			return point == null ? this.points.firstEntry().getValue() :
+					point.getValue();
+		}
+	}
+}
@@ -0,0 +1,109 @@
+package com.ielia.cron;
+
+import java.util.Calendar;
+
+/**
+ * The closest matches of a cron previous (or equal) to and after a reference,
+ * as returned by FixedPeriodCron#window(Calendar, int, int). Instances are
+ * immutable.
+ *
+ * @author ielia
+ */
+public class CronWindow {
+	/**
+	 * The reference calendar (a private copy).
+	 */
+	protected final Calendar reference;
+	protected final int cronRunSeconds;
+	protected final int cronRunMillis;
+	/**
+	 * The closest match previous (or equal) to the reference, in milliseconds
+	 * (or FixedPeriodCron.NO_DATE).
+	 */
+	protected final long previous;
+	/**
+	 * The closest match after the reference, in milliseconds (or
+	 * FixedPeriodCron.NO_DATE).
+	 */
+	protected final long next;
+
+	/**
+	 * Creates a window.
+	 *
+	 * @param reference      The reference calendar (not copied).
+	 * @param cronRunSeconds Seconds after the minute when the cron engine runs.
+	 * @param cronRunMillis  Milliseconds after the second when the cron engine
+	 *                       runs.
+	 * @param previous       The previous (or same) match, in milliseconds.
+	 * @param next           The next match, in milliseconds.
+	 */
+	protected CronWindow(Calendar reference, int cronRunSeconds,
+						 int cronRunMillis, long previous, long next) {
+		this.reference = reference;
+		this.cronRunSeconds = cronRunSeconds;
+		this.cronRunMillis = cronRunMillis;
+		this.previous = previous;
+		this.next = next;
+	}
+
+	/**
+	 * The reference the window was calculated for.
+	 *
+	 * @return A copy of the reference calendar.
+	 */
+	public Calendar getReference() {
+		return (Calendar) this.reference.clone();
+	}
+
+	/**
+	 * The closest match previous (or equal) to the reference.
+	 *
+	 * @return A calendar like the reference set to the match (or null).
+	 */
+	public Calendar getPrevious() {
+		return this.toCalendar(this.previous);
+	}
+
+	/**
+	 * The closest match after the reference.
+	 *
+	 * @return A calendar like the reference set to the match (or null).
+	 */
+	public Calendar getNext() {
+		return this.toCalendar(this.next);
+	}
+
+	/**
+	 * Returns the number of milliseconds from the reference to the next match.
+	 *
+	 * @return Number of milliseconds to the next match (or null).
+	 */
+	public Long nextMatchInMillis() {
+		if (this.next == FixedPeriodCron.NO_DATE) {
+			return null;
+		}
+		return this.next - this.reference.getTimeInMillis();
+	}
+
+	/**
+	 * Returns the number of milliseconds between both matches.
+	 *
+	 * @return Period span in milliseconds (or null).
+	 */
+	public Long periodInMillis() {
+		if (this.previous == FixedPeriodCron.NO_DATE ||
+				this.next == FixedPeriodCron.NO_DATE) {
+			return null;
+		}
+		return this.next - this.previous;
+	}
+
+	protected Calendar toCalendar(long millis) {
+		if (millis == FixedPeriodCron.NO_DATE) {
+			return null;
+		}
+		Calendar date = (Calendar) this.reference.clone();
+		date.setTimeInMillis(millis);
+		return date;
+	}
+}
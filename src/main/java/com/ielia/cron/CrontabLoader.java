@@ -0,0 +1,546 @@
+package com.ielia.cron;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Loads crontab files (lines like "m h dom mon dow command", see
+ * <i>crontab(5)</i> manpage) into compiled schedules.
+ * <p/>
+ * <p>The file is memory-mapped and split into chunks at line boundaries, which
+ * are scanned in parallel. The scanner works on the bytes of the mapping: the
+ * five fields are copied (with single spaces between them) into a per-chunk
+ * scratch array, which is looked up as is among the expressions already seen
+ * in the chunk, so a repeated expression costs neither a String nor a parse.
+ * New expressions are compiled once per load and shared by every chunk; the
+ * loader keeps nothing between loads.</p>
+ * <p/>
+ * <p>Blank lines, comments and environment settings ("NAME=value") are skipped.
+ * The "@yearly", "@annually", "@monthly", "@weekly", "@daily", "@midnight" and
+ * "@hourly" shortcuts are supported. Lines that cannot be loaded are reported
+ * with their line number and do not stop the load.</p>
+ *
+ * @author ielia
+ */
+public class CrontabLoader {
+	public static final int DEFAULT_CHUNK_BYTES = 1 << 20;
+	protected static final Charset UTF_8 = Charset.forName("UTF-8");
+	protected static final Charset US_ASCII = Charset.forName("US-ASCII");
+	protected static final Map<String, String> SHORTCUTS =
+			new HashMap<String, String>();
+
+	static {
+		SHORTCUTS.put("@yearly", "0 0 1 1 *");
+		SHORTCUTS.put("@annually", "0 0 1 1 *");
+		SHORTCUTS.put("@monthly", "0 0 1 * *");
+		SHORTCUTS.put("@weekly", "0 0 * * 0");
+		SHORTCUTS.put("@daily", "0 0 * * *");
+		SHORTCUTS.put("@midnight", "0 0 * * *");
+		SHORTCUTS.put("@hourly", "0 * * * *");
+	}
+
+	/**
+	 * The executor the chunks are parsed in (or null to use a pool of one
+	 * thread per processor for each load).
+	 */
+	protected final ExecutorService executor;
+	protected final int chunkBytes;
+
+	/**
+	 * Creates a loader that parses chunks of DEFAULT_CHUNK_BYTES in a pool of
+	 * one thread per processor.
+	 */
+	public CrontabLoader() {
+		this(null, DEFAULT_CHUNK_BYTES);
+	}
+
+	/**
+	 * Creates a loader.
+	 *
+	 * @param executor   Executor the chunks are parsed in (or null to use a
+	 *                   pool of one thread per processor for each load).
+	 * @param chunkBytes Approximate size of the chunks, in bytes.
+	 */
+	public CrontabLoader(ExecutorService executor, int chunkBytes) {
+		if (chunkBytes < 1) {
+			throw new IllegalArgumentException("Chunk size must be positive.");
+		}
+		this.executor = executor;
+		this.chunkBytes = chunkBytes;
+	}
+
+	/**
+	 * Loads a crontab file.
+	 *
+	 * @param file The crontab file.
+	 * @return The schedules and the errors, in order of line.
+	 * @throws IOException If the file cannot be read or mapped.
+	 */
+	public Result load(File file) throws IOException {
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = randomAccessFile.getChannel();
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Crontab too large: " + file);
+			}
+			return this.load(channel.map(FileChannel.MapMode.READ_ONLY, 0,
+					channel.size()));
+		} finally {
+			randomAccessFile.close();
+		}
+	}
+
+	/**
+	 * Loads a crontab from the remaining bytes of a buffer (which is not
+	 * modified).
+	 *
+	 * @param buffer The crontab contents.
+	 * @return The schedules and the errors, in order of line.
+	 * @throws IOException If the load is interrupted.
+	 */
+	public Result load(ByteBuffer buffer) throws IOException {
+		List<Chunk> chunks = new ArrayList<Chunk>();
+		ConcurrentMap<String, Compiled> compiled =
+				new ConcurrentHashMap<String, Compiled>();
+		int start = buffer.position();
+		while (start < buffer.limit()) {
+			int end = (int) Math.min((long) start + this.chunkBytes,
+					buffer.limit());
+			while (end < buffer.limit() && buffer.get(end - 1) != '\n') {
+				++end;
+			}
+			chunks.add(new Chunk(buffer, start, end, compiled));
+			start = end;
+		}
+		if (chunks.size() <= 1) {
+			for (Chunk chunk : chunks) {
+				chunk.call();
+			}
+		} else {
+			this.parallelize(chunks);
+		}
+		Result result = new Result(compiled.size());
+		int lines = 0;
+		for (Chunk chunk : chunks) {
+			for (Schedule schedule : chunk.schedules) {
+				schedule.line += lines;
+				result.schedules.add(schedule);
+			}
+			for (LineError error : chunk.errors) {
+				error.line += lines;
+				result.errors.add(error);
+			}
+			lines += chunk.lines;
+		}
+		return result;
+	}
+
+	protected void parallelize(List<Chunk> chunks) throws IOException {
+		ExecutorService executor = this.executor;
+		if (executor == null) {
+			executor = Executors.newFixedThreadPool(
+					Runtime.getRuntime().availableProcessors());
+		}
+		try {
+			List<Future<Chunk>> futures = new ArrayList<Future<Chunk>>();
+			for (Chunk chunk : chunks) {
+				futures.add(executor.submit(chunk));
+			}
+			for (Future<Chunk> future : futures) {
+				future.get();
+			}
+		} catch (InterruptedException exception) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Crontab load interrupted.", exception);
+		} catch (ExecutionException exception) {
+			if (exception.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) exception.getCause();
+			}
+			throw new IOException(exception.getCause());
+		} finally {
+			if (executor != this.executor) {
+				executor.shutdown();
+			}
+		}
+	}
+
+	/**
+	 * Compiles an expression, unless it was compiled before in the same load.
+	 *
+	 * @param expression  The normalized expression.
+	 * @param expressions The expressions compiled so far in the load, by their
+	 *                    normalized text.
+	 * @return The cron or the error it produced.
+	 */
+	protected Compiled compile(String expression,
+							   ConcurrentMap<String, Compiled> expressions) {
+		Compiled compiled = expressions.get(expression);
+		if (compiled == null) {
+			try {
+				compiled = new Compiled(new FixedPeriodCron(expression), null);
+			} catch (IllegalArgumentException exception) {
+				compiled = new Compiled(null, exception.getMessage());
+			}
+			Compiled previous = expressions.putIfAbsent(expression, compiled);
+			if (previous != null) {
+				compiled = previous;
+			}
+		}
+		return compiled;
+	}
+
+	/**
+	 * The result of a load.
+	 */
+	public static class Result {
+		protected final List<Schedule> schedules = new ArrayList<Schedule>();
+		protected final List<LineError> errors = new ArrayList<LineError>();
+		protected final int distinctExpressions;
+
+		protected Result(int distinctExpressions) {
+			this.distinctExpressions = distinctExpressions;
+		}
+
+		/**
+		 * The schedules loaded.
+		 *
+		 * @return Schedules, in order of line.
+		 */
+		public List<Schedule> getSchedules() {
+			return this.schedules;
+		}
+
+		/**
+		 * The lines that could not be loaded.
+		 *
+		 * @return Errors, in order of line.
+		 */
+		public List<LineError> getErrors() {
+			return this.errors;
+		}
+
+		/**
+		 * The number of distinct expressions (valid or not) compiled.
+		 *
+		 * @return Number of distinct expressions.
+		 */
+		public int getDistinctExpressions() {
+			return this.distinctExpressions;
+		}
+	}
+
+	/**
+	 * A crontab line loaded.
+	 */
+	public static class Schedule {
+		protected int line;
+		protected final FixedPeriodCron cron;
+		protected final String command;
+
+		protected Schedule(int line, FixedPeriodCron cron, String command) {
+			this.line = line;
+			this.cron = cron;
+			this.command = command;
+		}
+
+		/**
+		 * The line number (starting at 1).
+		 *
+		 * @return Line number.
+		 */
+		public int getLine() {
+			return this.line;
+		}
+
+		/**
+		 * The cron, shared by every schedule with the same expression.
+		 *
+		 * @return The cron.
+		 */
+		public FixedPeriodCron getCron() {
+			return this.cron;
+		}
+
+		public String getCommand() {
+			return this.command;
+		}
+	}
+
+	/**
+	 * A crontab line that could not be loaded.
+	 */
+	public static class LineError {
+		protected int line;
+		protected final String message;
+
+		protected LineError(int line, String message) {
+			this.line = line;
+			this.message = message;
+		}
+
+		/**
+		 * The line number (starting at 1).
+		 *
+		 * @return Line number.
+		 */
+		public int getLine() {
+			return this.line;
+		}
+
+		public String getMessage() {
+			return this.message;
+		}
+
+		@Override
+		public String toString() {
+			return "line " + this.line + ": " + this.message;
+		}
+	}
+
+	/**
+	 * A compiled expression: either a cron or the reason it is not valid.
+	 */
+	protected static class Compiled {
+		protected final FixedPeriodCron cron;
+		protected final String error;
+
+		protected Compiled(FixedPeriodCron cron, String error) {
+			this.cron = cron;
+			this.error = error;
+		}
+	}
+
+	/**
+	 * The bytes of a normalized expression, used as a key of the expressions
+	 * seen in a chunk. Lookups are made with the scratch array of the chunk,
+	 * which is only copied when the expression is new.
+	 */
+	protected static class Key {
+		protected byte[] bytes;
+		protected int length;
+		protected int hash;
+
+		protected Key(byte[] bytes, int length) {
+			this.bytes = bytes;
+			this.length = length;
+			this.rehash();
+		}
+
+		protected void rehash() {
+			int hash = 1;
+			for (int i = 0; i < this.length; ++i) {
+				hash = 31 * hash + this.bytes[i];
+			}
+			this.hash = hash;
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hash;
+		}
+
+		@Override
+		public boolean equals(Object object) {
+			if (!(object instanceof Key)) {
+				return false;
+			}
+			Key key = (Key) object;
+			if (key.length != this.length || key.hash != this.hash) {
+				return false;
+			}
+			for (int i = 0; i < this.length; ++i) {
+				if (key.bytes[i] != this.bytes[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * A part of the crontab made of whole lines, scanned by a single thread.
+	 */
+	protected class Chunk implements Callable<Chunk> {
+		protected final ByteBuffer buffer;
+		protected final int start;
+		protected final int end;
+		/**
+		 * Expressions compiled in the load, shared by every chunk.
+		 */
+		protected final ConcurrentMap<String, Compiled> compiled;
+		protected final List<Schedule> schedules = new ArrayList<Schedule>();
+		protected final List<LineError> errors = new ArrayList<LineError>();
+		/**
+		 * Number of lines of the chunk.
+		 */
+		protected int lines;
+		/**
+		 * Expressions seen in the chunk.
+		 */
+		protected final Map<Key, Compiled> seen = new HashMap<Key, Compiled>();
+		protected byte[] scratch = new byte[64];
+		protected final Key probe = new Key(this.scratch, 0);
+
+		protected Chunk(ByteBuffer buffer, int start, int end,
+						ConcurrentMap<String, Compiled> compiled) {
+			this.buffer = buffer;
+			this.start = start;
+			this.end = end;
+			this.compiled = compiled;
+		}
+
+		public Chunk call() {
+			int position = this.start;
+			while (position < this.end) {
+				int lineEnd = position;
+				while (lineEnd < this.end && this.buffer.get(lineEnd) != '\n') {
+					++lineEnd;
+				}
+				int contentEnd = lineEnd;
+				if (contentEnd > position &&
+						this.buffer.get(contentEnd - 1) == '\r') {
+					--contentEnd;
+				}
+				++this.lines;
+				this.parseLine(position, contentEnd);
+				position = lineEnd + 1;
+			}
+			return this;
+		}
+
+		/**
+		 * Parses a line (without its line break).
+		 *
+		 * @param position Offset of the line.
+		 * @param end      Offset after the line.
+		 */
+		protected void parseLine(int position, int end) {
+			position = this.skipBlanks(position, end);
+			if (position == end || this.buffer.get(position) == '#') {
+				return;
+			}
+			byte first = this.buffer.get(position);
+			Compiled compiled;
+			if (first == '@') {
+				int tokenEnd = this.skipNonBlanks(position, end);
+				String token = this.decode(position, tokenEnd, US_ASCII);
+				String expression = SHORTCUTS.get(token);
+				if (expression == null) {
+					this.error("Unsupported special string: " + token);
+					return;
+				}
+				compiled = CrontabLoader.this.compile(expression,
+						this.compiled);
+				position = this.skipBlanks(tokenEnd, end);
+			} else if (first == '*' || (first >= '0' && first <= '9')) {
+				int length = 0;
+				for (int field = 0; field < FixedPeriodCron.NUMBER_OF_FIELDS;
+					 ++field) {
+					if (position == end) {
+						this.error("Malformed crontab expression. " +
+								"Wrong number of fields.");
+						return;
+					}
+					int fieldEnd = this.skipNonBlanks(position, end);
+					if (field > 0) {
+						this.append(length++, (byte) ' ');
+					}
+					for (int i = position; i < fieldEnd; ++i) {
+						this.append(length++, this.buffer.get(i));
+					}
+					position = this.skipBlanks(fieldEnd, end);
+				}
+				compiled = this.lookUp(length);
+			} else {
+				for (int i = position; i < end; ++i) {
+					if (this.buffer.get(i) == '=') {
+						return;
+					}
+				}
+				this.error("Neither a schedule nor an environment setting.");
+				return;
+			}
+			if (compiled.error != null) {
+				this.error(compiled.error);
+			} else if (position == end) {
+				this.error("Missing command.");
+			} else {
+				this.schedules.add(new Schedule(this.lines, compiled.cron,
+						this.decode(position, end, UTF_8)));
+			}
+		}
+
+		/**
+		 * Finds the compiled expression held in the scratch array.
+		 *
+		 * @param length Length of the expression.
+		 * @return The compiled expression.
+		 */
+		protected Compiled lookUp(int length) {
+			this.probe.bytes = this.scratch;
+			this.probe.length = length;
+			this.probe.rehash();
+			Compiled compiled = this.seen.get(this.probe);
+			if (compiled == null) {
+				byte[] bytes = Arrays.copyOf(this.scratch, length);
+				compiled = CrontabLoader.this.compile(
+						new String(bytes, US_ASCII), this.compiled);
+				this.seen.put(new Key(bytes, length), compiled);
+			}
+			return compiled;
+		}
+
+		protected void append(int index, byte b) {
+			if (index == this.scratch.length) {
+				this.scratch = Arrays.copyOf(this.scratch, index * 2);
+			}
+			this.scratch[index] = b;
+		}
+
+		protected String decode(int position, int end, Charset charset) {
+			byte[] bytes = new byte[end - position];
+			for (int i = 0; i < bytes.length; ++i) {
+				bytes[i] = this.buffer.get(position + i);
+			}
+			return new String(bytes, charset);
+		}
+
+		protected void error(String message) {
+			this.errors.add(new LineError(this.lines, message));
+		}
+
+		protected int skipBlanks(int position, int end) {
+			while (position < end && this.isBlank(this.buffer.get(position))) {
+				++position;
+			}
+			return position;
+		}
+
+		protected int skipNonBlanks(int position, int end) {
+			while (position < end && !this.isBlank(this.buffer.get(position))) {
+				++position;
+			}
+			return position;
+		}
+
+		protected boolean isBlank(byte b) {
+			return b == ' ' || b == '\t';
+		}
+	}
+}
@@ -0,0 +1,303 @@
+package com.ielia.cron;
+
+import java.util.Arrays;
+import java.util.Calendar;
+
+/**
+ * Days and time ranges in which crons must not fire (e.g. holidays and
+ * maintenance blackouts), to be combined with a FixedPeriodCron.
+ * <p/>
+ * <p>Excluded days are wall-clock days (in the time zone of the reference of
+ * each query), kept as a bitmap of the days of each year. Excluded time ranges
+ * are absolute ([start, end) in milliseconds), kept merged and sorted, so the
+ * range containing an instant is found by a binary search and the cron search
+ * can jump over it at once, no matter how long it is.</p>
+ * <p/>
+ * <p>Exclusions may be modified while crons using them are being queried by
+ * other threads: every modification publishes a new immutable Snapshot of the
+ * exclusions, and every lookup reads a single snapshot, so it sees the
+ * exclusions either before or after a modification, never a mix of both. A
+ * query running concurrently with a modification may thus answer as if it had
+ * run before or after it. Modifications are serialized (synchronized).</p>
+ *
+ * @author ielia
+ */
+public class ExclusionCalendar {
+	protected static final int NONE = -1;
+	/**
+	 * Number of longs in the bitmap of the days of a year.
+	 */
+	protected static final int WORDS_PER_YEAR = (366 + 63) / 64;
+	/**
+	 * Days of the year before the 1st of each month (of non leap years).
+	 */
+	protected static final int[] DAYS_BEFORE_MONTH = {0, 0, 31, 59, 90, 120,
+			151, 181, 212, 243, 273, 304, 334};
+	/**
+	 * The current exclusions, replaced as a whole by every modification.
+	 */
+	protected volatile Snapshot snapshot = new Snapshot(0, new long[0][],
+			new long[0], new long[0], 0);
+
+	/**
+	 * The current exclusions.
+	 *
+	 * @return The snapshot of the exclusions.
+	 */
+	protected Snapshot getSnapshot() {
+		return this.snapshot;
+	}
+
+	/**
+	 * Excludes a wall-clock day.
+	 *
+	 * @param year  Year.
+	 * @param month Month (1 to 12).
+	 * @param day   Day of the month.
+	 */
+	public synchronized void excludeDay(int year, int month, int day) {
+		if (month < 1 || month > 12 || day < 1 ||
+				day > FixedPeriodCron.getDaysInMonth(year, month)) {
+			throw new IllegalArgumentException("Invalid date: " + year + "-" +
+					month + "-" + day);
+		}
+		int dayOfYear = getDayOfYear(year, month, day);
+		Snapshot snapshot = this.snapshot;
+		int firstYear = snapshot.days.length == 0 ? year : snapshot.firstYear;
+		long[][] days;
+		if (year < firstYear) {
+			days = new long[snapshot.days.length + firstYear - year][];
+			System.arraycopy(snapshot.days, 0, days, firstYear - year,
+					snapshot.days.length);
+			firstYear = year;
+		} else {
+			days = Arrays.copyOf(snapshot.days, Math.max(snapshot.days.length,
+					year - firstYear + 1));
+		}
+		long[] bitmap = days[year - firstYear];
+		bitmap = bitmap == null ? new long[WORDS_PER_YEAR] : bitmap.clone();
+		bitmap[dayOfYear >>> 6] |= 1L << dayOfYear;
+		days[year - firstYear] = bitmap;
+		this.snapshot = new Snapshot(firstYear, days, snapshot.starts,
+				snapshot.ends, snapshot.modifications + 1);
+	}
+
+	/**
+	 * Excludes a wall-clock day.
+	 *
+	 * @param date Any moment of the day.
+	 */
+	public void excludeDay(Calendar date) {
+		this.excludeDay(date.get(Calendar.YEAR), date.get(Calendar.MONTH) + 1,
+				date.get(Calendar.DATE));
+	}
+
+	/**
+	 * Tells whether a wall-clock day is excluded.
+	 *
+	 * @param year  Year.
+	 * @param month Month (1 to 12).
+	 * @param day   Day of the month.
+	 * @return True if it is excluded, false if not.
+	 */
+	public boolean isExcludedDay(int year, int month, int day) {
+		return (this.snapshot.getExcludedDays(year, month) & (1L << day)) != 0;
+	}
+
+	/**
+	 * The excluded wall-clock days of a month.
+	 *
+	 * @param year  Year.
+	 * @param month Month (1 to 12).
+	 * @return Mask of the excluded days, where bit <i>n</i> is the day
+	 *         <i>n</i> of the month.
+	 */
+	protected long getExcludedDays(int year, int month) {
+		return this.snapshot.getExcludedDays(year, month);
+	}
+
+	/**
+	 * Excludes a time range, merging it with the ranges it overlaps or
+	 * touches.
+	 *
+	 * @param startMillis Start of the range (inclusive), in milliseconds.
+	 * @param endMillis   End of the range (exclusive), in milliseconds.
+	 */
+	public synchronized void excludeRange(long startMillis, long endMillis) {
+		if (startMillis >= endMillis) {
+			throw new IllegalArgumentException(
+					"Range start must be before its end.");
+		}
+		Snapshot snapshot = this.snapshot;
+		/* Ranges overlapping or touching the new one are merged into it */
+		int first = search(snapshot.ends, startMillis);
+		int last = searchAfter(snapshot.starts, endMillis);
+		if (first < last) {
+			startMillis = Math.min(startMillis, snapshot.starts[first]);
+			endMillis = Math.max(endMillis, snapshot.ends[last - 1]);
+		}
+		int size = snapshot.starts.length - (last - first) + 1;
+		long[] starts = new long[size];
+		long[] ends = new long[size];
+		System.arraycopy(snapshot.starts, 0, starts, 0, first);
+		System.arraycopy(snapshot.ends, 0, ends, 0, first);
+		starts[first] = startMillis;
+		ends[first] = endMillis;
+		System.arraycopy(snapshot.starts, last, starts, first + 1,
+				snapshot.starts.length - last);
+		System.arraycopy(snapshot.ends, last, ends, first + 1,
+				snapshot.ends.length - last);
+		this.snapshot = new Snapshot(snapshot.firstYear, snapshot.days, starts,
+				ends, snapshot.modifications + 1);
+	}
+
+	/**
+	 * Excludes a time range.
+	 *
+	 * @param start Start of the range (inclusive).
+	 * @param end   End of the range (exclusive).
+	 */
+	public void excludeRange(Calendar start, Calendar end) {
+		this.excludeRange(start.getTimeInMillis(), end.getTimeInMillis());
+	}
+
+	/**
+	 * Tells whether an instant belongs to an excluded time range (excluded
+	 * days are not taken into account).
+	 *
+	 * @param millis The instant, in milliseconds.
+	 * @return True if it is excluded, false if not.
+	 */
+	public boolean isExcludedTime(long millis) {
+		return this.snapshot.findRange(millis) != NONE;
+	}
+
+	/**
+	 * Finds the first position of a sorted array whose value is at or after
+	 * a key.
+	 *
+	 * @param values The sorted array.
+	 * @param key    The key.
+	 * @return The position (the length of the array if there is none).
+	 */
+	protected static int search(long[] values, long key) {
+		int low = 0;
+		int high = values.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (values[middle] < key) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Finds the first position of a sorted array whose value is after a key.
+	 *
+	 * @param values The sorted array.
+	 * @param key    The key.
+	 * @return The position (the length of the array if there is none).
+	 */
+	protected static int searchAfter(long[] values, long key) {
+		return key == Long.MAX_VALUE ? values.length :
+				search(values, key + 1);
+	}
+
+	/**
+	 * Returns the day of the year (starting at 0) of a date.
+	 *
+	 * @param year  Year.
+	 * @param month Month (1 to 12).
+	 * @param day   Day of the month.
+	 * @return Day of the year (0 to 365).
+	 */
+	protected static int getDayOfYear(int year, int month, int day) {
+		int dayOfYear = DAYS_BEFORE_MONTH[month] + day - 1;
+		if (month > 2 && FixedPeriodCron.getDaysInMonth(year, 2) == 29) {
+			++dayOfYear;
+		}
+		return dayOfYear;
+	}
+
+	/**
+	 * The exclusions at some point in time. Instances are immutable (their
+	 * arrays are never modified once published).
+	 */
+	protected static final class Snapshot {
+		/**
+		 * The year of the first bitmap.
+		 */
+		protected final int firstYear;
+		/**
+		 * Bitmaps of the excluded days of each year from the first one (or
+		 * null if there are none), where bit <i>n</i> is the day of the year
+		 * <i>n</i> + 1.
+		 */
+		protected final long[][] days;
+		/**
+		 * Starts of the excluded ranges (inclusive), in milliseconds, sorted.
+		 */
+		protected final long[] starts;
+		/**
+		 * Ends of the excluded ranges (exclusive), in milliseconds, in the
+		 * same order as the starts. Ranges never overlap nor touch.
+		 */
+		protected final long[] ends;
+		/**
+		 * Number of modifications made to the exclusions, which tells crons
+		 * whether the windows they remember are still valid.
+		 */
+		protected final int modifications;
+
+		protected Snapshot(int firstYear, long[][] days, long[] starts,
+						   long[] ends, int modifications) {
+			this.firstYear = firstYear;
+			this.days = days;
+			this.starts = starts;
+			this.ends = ends;
+			this.modifications = modifications;
+		}
+
+		/**
+		 * The excluded wall-clock days of a month, taken from the bitmap of
+		 * its year a word at a time.
+		 *
+		 * @param year  Year.
+		 * @param month Month (1 to 12).
+		 * @return Mask of the excluded days, where bit <i>n</i> is the day
+		 *         <i>n</i> of the month.
+		 */
+		protected long getExcludedDays(int year, int month) {
+			int index = year - this.firstYear;
+			if (index < 0 || index >= this.days.length ||
+					this.days[index] == null) {
+				return 0;
+			}
+			long[] bitmap = this.days[index];
+			int first = getDayOfYear(year, month, 1);
+			int word = first >>> 6;
+			int shift = first & 63;
+			long bits = bitmap[word] >>> shift;
+			if (shift > 0 && word + 1 < bitmap.length) {
+				bits |= bitmap[word + 1] << (64 - shift);
+			}
+			int daysInMonth = FixedPeriodCron.getDaysInMonth(year, month);
+			return (bits << 1) & ((2L << daysInMonth) - 2);
+		}
+
+		/**
+		 * Finds the excluded range an instant belongs to.
+		 *
+		 * @param millis The instant, in milliseconds.
+		 * @return The index of the range, or NONE if the instant is not
+		 *         excluded.
+		 */
+		protected int findRange(long millis) {
+			int index = searchAfter(this.starts, millis) - 1;
+			return index >= 0 && millis < this.ends[index] ? index : NONE;
+		}
+	}
+}
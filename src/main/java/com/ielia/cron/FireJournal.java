@@ -0,0 +1,658 @@
+package com.ielia.cron;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only, memory-mapped journal of the last fire and the precomputed next
+ * fire of every schedule, so a scheduler can resume after a restart without
+ * searching again for the fires of the schedules that did not change.
+ * <p/>
+ * <p>The file starts with a header (magic number and version) followed by
+ * records, each one holding:</p>
+ * <ul>
+ * <li>its length in bytes (int),</li>
+ * <li>its kind: PUT or REMOVE (int),</li>
+ * <li>the fingerprint of the cron the fires were calculated for: its five
+ * field masks (longs),</li>
+ * <li>the last fire, in milliseconds (long),</li>
+ * <li>the next fire, in milliseconds (long),</li>
+ * <li>the seconds and milliseconds after the minute when the cron engine runs
+ * (ints),</li>
+ * <li>the length of the time zone identifier (short),</li>
+ * <li>the UTF-8 bytes of the identifier of the time zone the fires were
+ * calculated in,</li>
+ * <li>the UTF-8 bytes of the schedule identifier and</li>
+ * <li>the CRC-32 of all the above (int).</li>
+ * </ul>
+ * <p>A new journal is only written to an empty (or missing) file: any other
+ * file must start with the header of this version.</p>
+ * <p>Opening the journal scans the records once to rebuild the index of the
+ * latest record of each schedule, stopping at the first torn or corrupt
+ * record (which is overwritten by the next append). Once superseded records
+ * outnumber the live ones, the journal is compacted into a new file that
+ * atomically replaces the old one.</p>
+ * <p/>
+ * <p>Instants are stored as milliseconds, with FixedPeriodCron.NO_DATE meaning
+ * "none". Instances are not thread-safe.</p>
+ *
+ * @author ielia
+ */
+public class FireJournal implements Closeable {
+	public static final int MAGIC = 0x43524f4e;
+	public static final int VERSION = 3;
+	public static final int PUT = 0;
+	public static final int REMOVE = 1;
+	public static final int MAX_ID_BYTES = 0xffff;
+	public static final int MAX_ZONE_BYTES = 0xffff;
+	protected static final int HEADER_SIZE = 8;
+	/**
+	 * Size of a record without its time zone and schedule identifiers.
+	 */
+	protected static final int RECORD_OVERHEAD = 4 + 4 +
+			8 * FixedPeriodCron.NUMBER_OF_FIELDS + 8 + 8 + 4 + 4 + 2 + 4;
+	/**
+	 * Offsets of the fields of a record.
+	 */
+	protected static final int FINGERPRINT_OFFSET = 8;
+	protected static final int LAST_FIRE_OFFSET = FINGERPRINT_OFFSET +
+			8 * FixedPeriodCron.NUMBER_OF_FIELDS;
+	protected static final int NEXT_FIRE_OFFSET = LAST_FIRE_OFFSET + 8;
+	protected static final int RUN_SECONDS_OFFSET = NEXT_FIRE_OFFSET + 8;
+	protected static final int RUN_MILLIS_OFFSET = RUN_SECONDS_OFFSET + 4;
+	protected static final int ZONE_LENGTH_OFFSET = RUN_MILLIS_OFFSET + 4;
+	protected static final int ZONE_OFFSET = ZONE_LENGTH_OFFSET + 2;
+	protected static final int INITIAL_CAPACITY = 1 << 16;
+	/**
+	 * Number of records below which the journal is never compacted.
+	 */
+	protected static final int MIN_COMPACTION_RECORDS = 1024;
+	protected static final Charset UTF_8 = Charset.forName("UTF-8");
+	protected final File file;
+	protected RandomAccessFile randomAccessFile;
+	protected FileChannel channel;
+	protected MappedByteBuffer buffer;
+	/**
+	 * Offset where the next record is appended.
+	 */
+	protected int position;
+	/**
+	 * Number of records in the file (live or superseded).
+	 */
+	protected int records;
+	/**
+	 * The latest entry of each schedule, by identifier.
+	 */
+	protected final Map<String, Entry> entries = new HashMap<String, Entry>();
+	/**
+	 * Scratch buffer for checksums.
+	 */
+	protected byte[] bytes = new byte[RECORD_OVERHEAD + 64];
+	protected final CRC32 crc = new CRC32();
+
+	/**
+	 * Opens (or creates) a journal, rebuilding its index. Files that are not
+	 * empty are left untouched unless they are journals of this version.
+	 *
+	 * @param file The journal file.
+	 * @throws IOException If the file cannot be read, written or mapped, or
+	 *                     if it is not a journal (of this version).
+	 */
+	public FireJournal(File file) throws IOException {
+		this.file = file;
+		boolean created = file.length() == 0;
+		if (!created) {
+			this.checkHeader();
+		}
+		this.open();
+		if (created) {
+			this.buffer.putInt(0, MAGIC);
+			this.buffer.putInt(4, VERSION);
+		}
+		this.scan();
+	}
+
+	/**
+	 * Calculates the fingerprint of a cron, which tells whether the fires of a
+	 * schedule were calculated for its current cron: its exact field masks,
+	 * so that any change to the fields is told apart, while equivalent
+	 * expressions (e.g. "0-59/5" and "*&#47;5") have the same fingerprint.
+	 * Crons with exclusions and unions (CompositeCron) do not match every
+	 * date of their masks, so they cannot be journaled.
+	 *
+	 * @param cron The cron.
+	 * @return The fingerprint.
+	 */
+	public static long[] fingerprint(FixedPeriodCron cron) {
+		if (cron == null) {
+			throw new IllegalArgumentException("Cron cannot be null.");
+		} else if (cron.getExclusions() != null) {
+			throw new IllegalArgumentException(
+					"Crons with exclusions cannot be journaled.");
+		} else if (cron instanceof CompositeCron) {
+			throw new IllegalArgumentException(
+					"Unions cannot be journaled.");
+		}
+		long[] fingerprint = new long[FixedPeriodCron.NUMBER_OF_FIELDS];
+		for (int field = 0; field < FixedPeriodCron.NUMBER_OF_FIELDS; ++field) {
+			fingerprint[field] = cron.getFieldMask(field);
+		}
+		return fingerprint;
+	}
+
+	/**
+	 * The latest entry of a schedule.
+	 *
+	 * @param id Identifier of the schedule.
+	 * @return The entry (or null if the schedule is not in the journal).
+	 */
+	public Entry get(String id) {
+		return this.entries.get(id);
+	}
+
+	/**
+	 * The latest entry of every schedule.
+	 *
+	 * @return Entries by schedule identifier.
+	 */
+	public Map<String, Entry> getEntries() {
+		return Collections.unmodifiableMap(this.entries);
+	}
+
+	/**
+	 * The number of records in the file, including superseded ones.
+	 *
+	 * @return Number of records.
+	 */
+	public int getRecords() {
+		return this.records;
+	}
+
+	/**
+	 * Records the fires of a schedule, calculated in the default time zone
+	 * with the cron engine running at 0 seconds, 0 milliseconds.
+	 *
+	 * @param id       Identifier of the schedule.
+	 * @param cron     The cron the fires were calculated for.
+	 * @param lastFire The last fire, in milliseconds (or NO_DATE).
+	 * @param nextFire The next fire, in milliseconds (or NO_DATE).
+	 * @return The new entry of the schedule.
+	 * @throws IOException If the journal cannot grow.
+	 */
+	public Entry put(String id, FixedPeriodCron cron, long lastFire,
+					 long nextFire) throws IOException {
+		return this.put(id, cron, TimeZone.getDefault(), 0, 0, lastFire,
+				nextFire);
+	}
+
+	/**
+	 * Records the fires of a schedule.
+	 *
+	 * @param id             Identifier of the schedule.
+	 * @param cron           The cron the fires were calculated for.
+	 * @param zone           The time zone the fires were calculated in.
+	 * @param cronRunSeconds Seconds after the minute when the cron engine runs.
+	 * @param cronRunMillis  Milliseconds after the second when the cron engine
+	 *                       runs.
+	 * @param lastFire       The last fire, in milliseconds (or NO_DATE).
+	 * @param nextFire       The next fire, in milliseconds (or NO_DATE).
+	 * @return The new entry of the schedule.
+	 * @throws IOException If the journal cannot grow.
+	 */
+	public Entry put(String id, FixedPeriodCron cron, TimeZone zone,
+					 int cronRunSeconds, int cronRunMillis, long lastFire,
+					 long nextFire) throws IOException {
+		long[] fingerprint = fingerprint(cron);
+		if (zone == null) {
+			throw new IllegalArgumentException("Time zone cannot be null.");
+		}
+		cron.validateSecondsAndMillis(cronRunSeconds, cronRunMillis);
+		Entry entry = new Entry(id, fingerprint, zone.getID(), cronRunSeconds,
+				cronRunMillis, lastFire, nextFire);
+		this.append(PUT, entry);
+		this.entries.put(id, entry);
+		this.compactIfNeeded();
+		return entry;
+	}
+
+	/**
+	 * Records that a schedule has just fired, precomputing its next fire with
+	 * the cron engine running at 0 seconds, 0 milliseconds.
+	 *
+	 * @param id   Identifier of the schedule.
+	 * @param cron The cron of the schedule.
+	 * @param fire The fire (in the time zone of the schedule).
+	 * @return The new entry of the schedule.
+	 * @throws IOException If the journal cannot grow.
+	 */
+	public Entry recordFire(String id, FixedPeriodCron cron, Calendar fire)
+			throws IOException {
+		return this.recordFire(id, cron, fire, 0, 0);
+	}
+
+	/**
+	 * Records that a schedule has just fired, precomputing its next fire.
+	 *
+	 * @param id             Identifier of the schedule.
+	 * @param cron           The cron of the schedule.
+	 * @param fire           The fire (in the time zone of the schedule).
+	 * @param cronRunSeconds Seconds after the minute when the cron engine runs.
+	 * @param cronRunMillis  Milliseconds after the second when the cron engine
+	 *                       runs.
+	 * @return The new entry of the schedule.
+	 * @throws IOException If the journal cannot grow.
+	 */
+	public Entry recordFire(String id, FixedPeriodCron cron, Calendar fire,
+							int cronRunSeconds, int cronRunMillis)
+			throws IOException {
+		Long next = cron.nextMatchInMillis(fire, cronRunSeconds, cronRunMillis);
+		long fireMillis = fire.getTimeInMillis();
+		return this.put(id, cron, fire.getTimeZone(), cronRunSeconds,
+				cronRunMillis, fireMillis,
+				next == null ? FixedPeriodCron.NO_DATE : fireMillis + next);
+	}
+
+	/**
+	 * Removes a schedule from the journal.
+	 *
+	 * @param id Identifier of the schedule.
+	 * @throws IOException If the journal cannot grow.
+	 */
+	public void remove(String id) throws IOException {
+		if (this.entries.remove(id) != null) {
+			this.append(REMOVE, new Entry(id,
+					new long[FixedPeriodCron.NUMBER_OF_FIELDS], "", 0, 0,
+					FixedPeriodCron.NO_DATE, FixedPeriodCron.NO_DATE));
+			this.compactIfNeeded();
+		}
+	}
+
+	/**
+	 * Resumes a schedule after a restart, with the cron engine running at 0
+	 * seconds, 0 milliseconds.
+	 *
+	 * @param id        Identifier of the schedule.
+	 * @param cron      The current cron of the schedule.
+	 * @param reference Reference calendar (usually, "now", in the time zone of
+	 *                  the schedule).
+	 * @return The entry of the schedule.
+	 * @throws IOException If the journal cannot grow.
+	 * @see #resume(String, FixedPeriodCron, Calendar, int, int)
+	 */
+	public Entry resume(String id, FixedPeriodCron cron, Calendar reference)
+			throws IOException {
+		return this.resume(id, cron, reference, 0, 0);
+	}
+
+	/**
+	 * Resumes a schedule after a restart. The journaled entry is returned as
+	 * is if it was calculated for the same cron, in the same time zone and
+	 * with the cron engine running at the same time, and its next fire is
+	 * still after the reference. Otherwise, the next fire is searched for
+	 * (keeping the journaled last fire, if any) and recorded.
+	 *
+	 * @param id             Identifier of the schedule.
+	 * @param cron           The current cron of the schedule.
+	 * @param reference      Reference calendar (usually, "now", in the time
+	 *                       zone of the schedule).
+	 * @param cronRunSeconds Seconds after the minute when the cron engine runs.
+	 * @param cronRunMillis  Milliseconds after the second when the cron engine
+	 *                       runs.
+	 * @return The entry of the schedule.
+	 * @throws IOException If the journal cannot grow.
+	 */
+	public Entry resume(String id, FixedPeriodCron cron, Calendar reference,
+						int cronRunSeconds, int cronRunMillis)
+			throws IOException {
+		Entry entry = this.entries.get(id);
+		long referenceMillis = reference.getTimeInMillis();
+		TimeZone zone = reference.getTimeZone();
+		if (entry != null && entry.nextFire > referenceMillis &&
+				entry.cronRunSeconds == cronRunSeconds &&
+				entry.cronRunMillis == cronRunMillis &&
+				entry.zoneId.equals(zone.getID()) &&
+				Arrays.equals(entry.fingerprint, fingerprint(cron))) {
+			return entry;
+		}
+		Long next = cron.nextMatchInMillis(reference, cronRunSeconds,
+				cronRunMillis);
+		return this.put(id, cron, zone, cronRunSeconds, cronRunMillis,
+				entry == null ? FixedPeriodCron.NO_DATE : entry.lastFire,
+				next == null ? FixedPeriodCron.NO_DATE : referenceMillis + next);
+	}
+
+	/**
+	 * Flushes the mapped records to the file.
+	 */
+	public void sync() {
+		this.buffer.force();
+	}
+
+	/**
+	 * Rewrites the journal with only the latest entry of each schedule, into
+	 * a temporary file that then replaces the journal.
+	 *
+	 * @throws IOException If the new file cannot be written or moved.
+	 */
+	public void compact() throws IOException {
+		File temporary = new File(this.file.getPath() + ".compact");
+		if (!temporary.delete() && temporary.exists()) {
+			throw new IOException("Cannot delete " + temporary);
+		}
+		FireJournal compacted = new FireJournal(temporary);
+		try {
+			for (Entry entry : this.entries.values()) {
+				compacted.append(PUT, entry);
+			}
+			compacted.sync();
+		} finally {
+			compacted.close();
+		}
+		this.sync();
+		this.close();
+		Files.move(temporary.toPath(), this.file.toPath(),
+				StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+		this.open();
+		this.position = compacted.position;
+		this.records = compacted.records;
+	}
+
+	/**
+	 * Flushes the journal and closes its file.
+	 *
+	 * @throws IOException If the file cannot be closed.
+	 */
+	public void close() throws IOException {
+		if (this.buffer != null) {
+			this.buffer.force();
+			this.buffer = null;
+		}
+		if (this.channel != null) {
+			this.channel.close();
+			this.channel = null;
+		}
+		if (this.randomAccessFile != null) {
+			this.randomAccessFile.close();
+			this.randomAccessFile = null;
+		}
+	}
+
+	/**
+	 * Checks the header of an existing file, without mapping (and thus
+	 * growing) it.
+	 *
+	 * @throws IOException If the file cannot be read, or if it is not a
+	 *                     journal of this version.
+	 */
+	protected void checkHeader() throws IOException {
+		RandomAccessFile header = new RandomAccessFile(this.file, "r");
+		try {
+			if (header.length() < HEADER_SIZE || header.readInt() != MAGIC) {
+				throw new IOException("Not a fire journal: " + this.file);
+			}
+			int version = header.readInt();
+			if (version != VERSION) {
+				throw new IOException("Unsupported fire journal version " +
+						version + ": " + this.file);
+			}
+		} finally {
+			header.close();
+		}
+	}
+
+	protected void open() throws IOException {
+		this.randomAccessFile = new RandomAccessFile(this.file, "rw");
+		this.channel = this.randomAccessFile.getChannel();
+		long size = Math.max(this.channel.size(), INITIAL_CAPACITY);
+		if (size > Integer.MAX_VALUE) {
+			this.close();
+			throw new IOException("Journal too large: " + this.file);
+		}
+		this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+	}
+
+	/**
+	 * Reads every valid record, rebuilding the index and leaving the append
+	 * position right after the last one.
+	 */
+	protected void scan() {
+		int offset = HEADER_SIZE;
+		this.records = 0;
+		this.entries.clear();
+		while (true) {
+			int length = offset + 4 <= this.buffer.capacity() ?
+					this.buffer.getInt(offset) : 0;
+			if (length < RECORD_OVERHEAD ||
+					length > RECORD_OVERHEAD + MAX_ZONE_BYTES + MAX_ID_BYTES ||
+					length > this.buffer.capacity() - offset ||
+					this.checksum(offset, length - 4) !=
+							this.buffer.getInt(offset + length - 4)) {
+				break;
+			}
+			int kind = this.buffer.getInt(offset + 4);
+			int zoneLength = this.buffer.getShort(offset + ZONE_LENGTH_OFFSET) &
+					0xffff;
+			if (zoneLength > length - RECORD_OVERHEAD) {
+				break;
+			}
+			String zoneId = new String(this.bytes, ZONE_OFFSET, zoneLength,
+					UTF_8);
+			String id = new String(this.bytes, ZONE_OFFSET + zoneLength,
+					length - RECORD_OVERHEAD - zoneLength, UTF_8);
+			if (kind == REMOVE) {
+				this.entries.remove(id);
+			} else {
+				long[] fingerprint = new long[FixedPeriodCron.NUMBER_OF_FIELDS];
+				for (int field = 0; field < fingerprint.length; ++field) {
+					fingerprint[field] = this.buffer.getLong(offset +
+							FINGERPRINT_OFFSET + 8 * field);
+				}
+				this.entries.put(id, new Entry(id, fingerprint, zoneId,
+						this.buffer.getInt(offset + RUN_SECONDS_OFFSET),
+						this.buffer.getInt(offset + RUN_MILLIS_OFFSET),
+						this.buffer.getLong(offset + LAST_FIRE_OFFSET),
+						this.buffer.getLong(offset + NEXT_FIRE_OFFSET)));
+			}
+			++this.records;
+			offset += length;
+		}
+		this.position = offset;
+	}
+
+	/**
+	 * Appends a record. The int after it is zeroed, so that a scan does not
+	 * mistake leftovers of a torn record for a valid one.
+	 *
+	 * @param kind  PUT or REMOVE.
+	 * @param entry The entry to record.
+	 * @throws IOException If the journal cannot grow.
+	 */
+	protected void append(int kind, Entry entry) throws IOException {
+		byte[] id = entry.id.getBytes(UTF_8);
+		if (id.length > MAX_ID_BYTES) {
+			throw new IllegalArgumentException("Identifier too long: " +
+					entry.id);
+		}
+		byte[] zoneId = entry.zoneId.getBytes(UTF_8);
+		if (zoneId.length > MAX_ZONE_BYTES) {
+			throw new IllegalArgumentException("Time zone identifier too " +
+					"long: " + entry.zoneId);
+		}
+		int length = RECORD_OVERHEAD + zoneId.length + id.length;
+		this.ensureCapacity(length + 4);
+		int offset = this.position;
+		this.buffer.putInt(offset, length);
+		this.buffer.putInt(offset + 4, kind);
+		for (int field = 0; field < entry.fingerprint.length; ++field) {
+			this.buffer.putLong(offset + FINGERPRINT_OFFSET + 8 * field,
+					entry.fingerprint[field]);
+		}
+		this.buffer.putLong(offset + LAST_FIRE_OFFSET, entry.lastFire);
+		this.buffer.putLong(offset + NEXT_FIRE_OFFSET, entry.nextFire);
+		this.buffer.putInt(offset + RUN_SECONDS_OFFSET, entry.cronRunSeconds);
+		this.buffer.putInt(offset + RUN_MILLIS_OFFSET, entry.cronRunMillis);
+		this.buffer.putShort(offset + ZONE_LENGTH_OFFSET,
+				(short) zoneId.length);
+		for (int i = 0; i < zoneId.length; ++i) {
+			this.buffer.put(offset + ZONE_OFFSET + i, zoneId[i]);
+		}
+		for (int i = 0; i < id.length; ++i) {
+			this.buffer.put(offset + ZONE_OFFSET + zoneId.length + i, id[i]);
+		}
+		this.buffer.putInt(offset + length - 4,
+				this.checksum(offset, length - 4));
+		this.buffer.putInt(offset + length, 0);
+		this.position += length;
+		++this.records;
+	}
+
+	/**
+	 * Calculates the CRC-32 of a part of the mapped file, leaving a copy of it
+	 * in the scratch buffer.
+	 *
+	 * @param offset Offset of the part.
+	 * @param length Length of the part.
+	 * @return The checksum.
+	 */
+	protected int checksum(int offset, int length) {
+		if (this.bytes.length < length) {
+			this.bytes = new byte[Math.max(length, this.bytes.length * 2)];
+		}
+		for (int i = 0; i < length; ++i) {
+			this.bytes[i] = this.buffer.get(offset + i);
+		}
+		this.crc.reset();
+		this.crc.update(this.bytes, 0, length);
+		return (int) this.crc.getValue();
+	}
+
+	/**
+	 * Remaps the file, doubling its size, until the given number of bytes
+	 * fits after the append position.
+	 *
+	 * @param bytes Number of bytes to fit.
+	 * @throws IOException If the file cannot be mapped.
+	 */
+	protected void ensureCapacity(int bytes) throws IOException {
+		long capacity = this.buffer.capacity();
+		if (this.position + (long) bytes <= capacity) {
+			return;
+		}
+		while (this.position + (long) bytes > capacity) {
+			capacity *= 2;
+		}
+		if (capacity > Integer.MAX_VALUE) {
+			throw new IOException("Journal too large: " + this.file);
+		}
+		this.buffer.force();
+		this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0,
+				capacity);
+	}
+
+	protected void compactIfNeeded() throws IOException {
+		if (this.records >= MIN_COMPACTION_RECORDS &&
+				this.records > 2 * this.entries.size()) {
+			this.compact();
+		}
+	}
+
+	/**
+	 * The fires recorded for a schedule. Instances are immutable.
+	 */
+	public static class Entry {
+		protected final String id;
+		protected final long[] fingerprint;
+		protected final String zoneId;
+		protected final int cronRunSeconds;
+		protected final int cronRunMillis;
+		protected final long lastFire;
+		protected final long nextFire;
+
+		protected Entry(String id, long[] fingerprint, String zoneId,
+						int cronRunSeconds, int cronRunMillis, long lastFire,
+						long nextFire) {
+			this.id = id;
+			this.fingerprint = fingerprint;
+			this.zoneId = zoneId;
+			this.cronRunSeconds = cronRunSeconds;
+			this.cronRunMillis = cronRunMillis;
+			this.lastFire = lastFire;
+			this.nextFire = nextFire;
+		}
+
+		public String getId() {
+			return this.id;
+		}
+
+		/**
+		 * The fingerprint of the cron the fires were calculated for.
+		 *
+		 * @return The fingerprint.
+		 */
+		public long[] getFingerprint() {
+			return this.fingerprint.clone();
+		}
+
+		/**
+		 * The identifier of the time zone the fires were calculated in.
+		 *
+		 * @return Time zone identifier.
+		 */
+		public String getZoneId() {
+			return this.zoneId;
+		}
+
+		/**
+		 * Seconds after the minute when the cron engine runs.
+		 *
+		 * @return Seconds.
+		 */
+		public int getCronRunSeconds() {
+			return this.cronRunSeconds;
+		}
+
+		/**
+		 * Milliseconds after the second when the cron engine runs.
+		 *
+		 * @return Milliseconds.
+		 */
+		public int getCronRunMillis() {
+			return this.cronRunMillis;
+		}
+
+		/**
+		 * The last fire.
+		 *
+		 * @return Instant in milliseconds (or null if there was none).
+		 */
+		public Long getLastFire() {
+			return this.lastFire == FixedPeriodCron.NO_DATE ? null :
+					this.lastFire;
+		}
+
+		/**
+		 * The next fire.
+		 *
+		 * @return Instant in milliseconds (or null if there is none).
+		 */
+		public Long getNextFire() {
+			return this.nextFire == FixedPeriodCron.NO_DATE ? null :
+					this.nextFire;
+		}
+	}
+}
@@ -0,0 +1,240 @@
+package com.ielia.cron;
+
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.zone.ZoneOffsetTransition;
+import java.util.Calendar;
+import java.util.Comparator;
+import java.util.GregorianCalendar;
+import java.util.Spliterator;
+import java.util.TimeZone;
+import java.util.function.LongConsumer;
+
+/**
+ * Spliterator over the matches of a cron within a time range [from, to), in
+ * milliseconds, as returned by FixedPeriodCron#fireTimes.
+ * <p/>
+ * <p>Splits happen at the beginning (midnight, wall-clock) of a year, or of a
+ * month for ranges shorter than a couple of years, close to the middle of the
+ * range. Both parts are independent: each one searches its own matches with a
+ * calendar of its own, so parallel streams need no coordination at all. Parts
+ * shorter than a couple of months are not split.</p>
+ * <p/>
+ * <p>The number of matches is exact (SIZED and SUBSIZED) for crons with a
+ * fixed period evaluated in a time zone with no offset transitions around the
+ * range. Otherwise, it is estimated from the density of the field masks.</p>
+ *
+ * @author ielia
+ */
+public class FireTimeSpliterator implements Spliterator.OfLong {
+	protected static final long MILLIS_PER_MINUTE = 60 * 1000;
+	protected static final long MILLIS_PER_DAY = 24 * 60 * MILLIS_PER_MINUTE;
+	/**
+	 * Ranges shorter than this are split at the beginning of a month, and not
+	 * at the beginning of a year.
+	 */
+	protected static final long MIN_YEAR_SPLIT_MILLIS = 2 * 366 * MILLIS_PER_DAY;
+	/**
+	 * Ranges shorter than this are not split.
+	 */
+	protected static final long MIN_MONTH_SPLIT_MILLIS = 2 * 31 * MILLIS_PER_DAY;
+	protected final FixedPeriodCron cron;
+	protected final TimeZone zone;
+	protected final int cronRunSeconds;
+	protected final int cronRunMillis;
+	/**
+	 * Where the next match is searched from (inclusive), in milliseconds.
+	 */
+	protected long from;
+	/**
+	 * End of the range (exclusive), in milliseconds.
+	 */
+	protected long to;
+	/**
+	 * Whether the number of matches is exact.
+	 */
+	protected final boolean sized;
+	/**
+	 * Calendar used by the search (in the time zone).
+	 */
+	protected final Calendar calendar;
+	/**
+	 * Fields used by the search.
+	 */
+	protected final int[] fields = new int[FixedPeriodCron.NUMBER_OF_FIELDS];
+
+	/**
+	 * Creates a spliterator over the matches of a cron within a range.
+	 *
+	 * @param cron           The cron.
+	 * @param from           Start of the range (inclusive), in milliseconds.
+	 * @param to             End of the range (exclusive), in milliseconds.
+	 * @param zone           Time zone the cron is evaluated in.
+	 * @param cronRunSeconds Seconds after the minute when the cron engine runs.
+	 * @param cronRunMillis  Milliseconds after the second when the cron engine
+	 *                       runs.
+	 */
+	protected FireTimeSpliterator(FixedPeriodCron cron, long from, long to,
+								  TimeZone zone, int cronRunSeconds,
+								  int cronRunMillis) {
+		this(cron, from, to, zone, cronRunSeconds, cronRunMillis,
+				isSized(cron, from, to, zone));
+	}
+
+	protected FireTimeSpliterator(FixedPeriodCron cron, long from, long to,
+								  TimeZone zone, int cronRunSeconds,
+								  int cronRunMillis, boolean sized) {
+		this.cron = cron;
+		this.from = from;
+		this.to = to;
+		this.zone = zone;
+		this.cronRunSeconds = cronRunSeconds;
+		this.cronRunMillis = cronRunMillis;
+		this.sized = sized;
+		this.calendar = new GregorianCalendar(zone);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean tryAdvance(LongConsumer action) {
+		if (this.from >= this.to) {
+			return false;
+		}
+		long date = this.cron.findDateAfter(this.from - 1, this.calendar,
+				this.fields, this.cronRunSeconds, this.cronRunMillis);
+		if (date == FixedPeriodCron.NO_DATE || date >= this.to) {
+			this.from = this.to;
+			return false;
+		}
+		this.from = date + 1;
+		action.accept(date);
+		return true;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Spliterator.OfLong trySplit() {
+		long length = this.to - this.from;
+		if (length < MIN_MONTH_SPLIT_MILLIS) {
+			return null;
+		}
+		/* The beginning of the year (or month) of the middle of the range */
+		this.calendar.setTimeInMillis(this.from + length / 2);
+		if (length < MIN_YEAR_SPLIT_MILLIS) {
+			this.calendar.set(Calendar.DATE, 1);
+		} else {
+			this.calendar.set(Calendar.DAY_OF_YEAR, 1);
+		}
+		this.calendar.set(Calendar.HOUR_OF_DAY, 0);
+		this.calendar.set(Calendar.MINUTE, 0);
+		this.calendar.set(Calendar.SECOND, 0);
+		this.calendar.set(Calendar.MILLISECOND, 0);
+		long split = this.calendar.getTimeInMillis();
+		if (split <= this.from || split >= this.to) {
+			return null;
+		}
+		FireTimeSpliterator prefix = new FireTimeSpliterator(this.cron,
+				this.from, split, this.zone, this.cronRunSeconds,
+				this.cronRunMillis, this.sized);
+		this.from = split;
+		return prefix;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long estimateSize() {
+		if (this.from >= this.to) {
+			return 0;
+		}
+		if (this.sized) {
+			return this.countFixedPeriodMatches();
+		}
+		/* The fraction of the minutes matching every field */
+		double density = 1;
+		for (int field = 0; field < FixedPeriodCron.NUMBER_OF_FIELDS; ++field) {
+			int size = field == FixedPeriodCron.DAYS_OF_WEEK ? 7 :
+					FixedPeriodCron.RANGES[field * 2 + 1] -
+							FixedPeriodCron.RANGES[field * 2] + 1;
+			density *= (double) Long.bitCount(FixedPeriodCron.getRangeMask(
+					field) & this.cron.getFieldMask(field)) / size;
+		}
+		return (long) Math.ceil(density * (this.to - this.from) /
+				MILLIS_PER_MINUTE);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int characteristics() {
+		return ORDERED | DISTINCT | SORTED | NONNULL | IMMUTABLE |
+				(this.sized ? SIZED | SUBSIZED : 0);
+	}
+
+	/**
+	 * Matches are sorted in their natural order.
+	 *
+	 * @return null.
+	 */
+	@Override
+	public Comparator<? super Long> getComparator() {
+		return null;
+	}
+
+	/**
+	 * Counts the matches of a cron with a fixed period within the range, as
+	 * the number of periods started in it, in wall-clock time (which is the
+	 * same as time for the offset of the zone does not change).
+	 *
+	 * @return The number of matches.
+	 */
+	protected long countFixedPeriodMatches() {
+		long period = this.cron.fixedPeriodMillis;
+		long phase = this.cron.fixedPeriodPhase * MILLIS_PER_MINUTE +
+				this.cronRunSeconds * 1000L + this.cronRunMillis -
+				this.zone.getOffset(this.from);
+		return ceilDiv(this.to - phase, period) -
+				ceilDiv(this.from - phase, period);
+	}
+
+	/**
+	 * Tells whether the number of matches of a cron within a range can be
+	 * calculated: it has a fixed period and the offset of the zone does not
+	 * change around the range (see FixedPeriodCron#findFixedPeriodDate).
+	 *
+	 * @param cron The cron.
+	 * @param from Start of the range (inclusive), in milliseconds.
+	 * @param to   End of the range (exclusive), in milliseconds.
+	 * @param zone Time zone the cron is evaluated in.
+	 * @return True if the number of matches is exact, false if not.
+	 */
+	protected static boolean isSized(FixedPeriodCron cron, long from, long to,
+									 TimeZone zone) {
+		if (!cron.isFixedPeriod() || from >= to) {
+			return false;
+		}
+		try {
+			ZoneOffsetTransition transition = zone.toZoneId().getRules()
+					.nextTransition(Instant.ofEpochMilli(from - MILLIS_PER_DAY));
+			return transition == null || transition.getInstant()
+					.toEpochMilli() > to + MILLIS_PER_DAY;
+		} catch (DateTimeException exception) {
+			/* Custom zones without rules */
+			return false;
+		}
+	}
+
+	protected static long ceilDiv(long dividend, long divisor) {
+		long quotient = dividend / divisor;
+		if (dividend % divisor > 0) {
+			++quotient;
+		}
+		return quotient;
+	}
+}
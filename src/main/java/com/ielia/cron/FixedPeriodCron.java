@@ -1,11 +1,13 @@
 package com.ielia.cron;
 
-import java.util.ArrayList;
+import java.time.Clock;
 import java.util.Calendar;
-import java.util.Collections;
-import java.util.List;
+import java.util.GregorianCalendar;
 import java.util.SortedSet;
+import java.util.TimeZone;
 import java.util.TreeSet;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
 
 /**
  * This class can parse a subset of crontab expressions and return useful
@@ -42,11 +44,61 @@ public class FixedPeriodCron {
 					MIN_MONTHS, MAX_MONTHS,
 					MIN_DAYS_OF_WEEK, MAX_DAYS_OF_WEEK};
 	protected static final int YEAR_REFERENCE_FIELD = MONTHS + 1;
-	protected static final int YEAR_CYCLES_FOR_WEEKDAY_MATCH = 14;
 	/**
-	 * Type parameter for the method List.toArray(T[] a).
+	 * Number of years searched (after or before the year of the reference)
+	 * for a match. Days of the week and leap years repeat every 28 years
+	 * (between 1901 and 2099), so any possible date is found.
 	 */
-	protected static final Integer[] ARRAY_OF_INTEGERS = new Integer[0];
+	protected static final int YEAR_CYCLES_FOR_WEEKDAY_MATCH = 28;
+	/**
+	 * Value returned by the search helpers when there is no matching value.
+	 */
+	protected static final int NONE = -1;
+	/**
+	 * Value used for dates (in milliseconds) when there is no matching date.
+	 */
+	public static final long NO_DATE = Long.MIN_VALUE;
+	protected static final int MINUTES_PER_HOUR = 60;
+	protected static final int MINUTES_PER_DAY = 24 * MINUTES_PER_HOUR;
+	protected static final int MINUTES_PER_WEEK = 7 * MINUTES_PER_DAY;
+	protected static final long MILLIS_PER_MINUTE = 60 * 1000;
+	protected static final long MILLIS_PER_DAY =
+			MINUTES_PER_DAY * MILLIS_PER_MINUTE;
+	/**
+	 * Day of the week of the 1st of January, 1970 (Thursday).
+	 */
+	protected static final int EPOCH_DAY_OF_WEEK = 4;
+	/**
+	 * Bits 0, 7, 14, 21 and 28: multiplying a 7-bit mask of the days of a week
+	 * by it repeats the mask over the 5 weeks a month may span.
+	 */
+	protected static final long EVERY_WEEK = 0x10204081L;
+	/**
+	 * Days of each month in a non-leap year, indexed by month (1 to 12).
+	 */
+	protected static final int[] DAYS_IN_MONTH =
+			{0, 31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31};
+	/**
+	 * Offsets of each month used to calculate the day of the week.
+	 */
+	protected static final int[] DAY_OF_WEEK_OFFSETS =
+			{0, 3, 2, 5, 0, 3, 5, 1, 4, 6, 2, 4};
+	/**
+	 * Per-thread objects used by the search, so that queries do not allocate
+	 * memory besides their results.
+	 */
+	protected static final ThreadLocal<Scratch> SCRATCH =
+			new ThreadLocal<Scratch>() {
+				@Override
+				protected Scratch initialValue() {
+					return new Scratch();
+				}
+			};
+	/**
+	 * Listener notified of parses, searches and matches (or null, so that
+	 * nothing but this field is read when nobody is listening).
+	 */
+	protected static volatile CronEvaluationListener evaluationListener;
 	/**
 	 * The crontab expression. See <i>crontab(5)</i> manpage.
 	 */
@@ -58,6 +110,37 @@ public class FixedPeriodCron {
 	@SuppressWarnings("unchecked")
 	protected SortedSet<Integer>[] crontabSpec =
 			new SortedSet[NUMBER_OF_FIELDS];
+	/**
+	 * The parsed crontab expression fields as bit masks, where bit <i>n</i> is
+	 * set if the value <i>n</i> belongs to the field. Values out of the field
+	 * range never match, so they are left out.
+	 */
+	protected long[] crontabMasks = new long[NUMBER_OF_FIELDS];
+	/**
+	 * The constant period of the cron in minutes, if every match is at the
+	 * same wall-clock distance from the previous one, or 0.
+	 */
+	protected int fixedPeriodMinutes;
+	/**
+	 * The wall-clock minute (counted from the 1st of January, 1970, 00:00) of
+	 * any match modulo the fixed period.
+	 */
+	protected int fixedPeriodPhase;
+	/**
+	 * The fixed period in milliseconds (or null).
+	 */
+	protected Long fixedPeriodMillis;
+	/**
+	 * Days and time ranges in which the cron does not fire (or null).
+	 */
+	protected ExclusionCalendar exclusions;
+	/**
+	 * The last window found, so that queries with references falling in it
+	 * are answered without searching (or null). Windows are immutable, so
+	 * threads share them without locking: a thread may only overwrite the
+	 * window of another one with a newer one.
+	 */
+	protected volatile MemoizedWindow lastWindow;
 
 	/**
 	 * Creates a cron line object out of an expression.
@@ -72,6 +155,23 @@ public class FixedPeriodCron {
 	public FixedPeriodCron(String crontabExpression)
 			throws IllegalArgumentException {
 		this.expression = crontabExpression;
+		CronEvaluationListener listener = evaluationListener;
+		Object context = listener == null ? null : listener.beginParse();
+		boolean parsed = false;
+		try {
+			this.parse();
+			parsed = true;
+		} finally {
+			if (listener != null) {
+				listener.endParse(context, crontabExpression, parsed);
+			}
+		}
+	}
+
+	/**
+	 * Parses the expression into the fields of the cron.
+	 */
+	protected void parse() throws IllegalArgumentException {
 		String[] crontabElements = this.expression.split(" ");
 		if (crontabElements.length != NUMBER_OF_FIELDS) {
 			this.throwIllegalArgumentExceptionMalformedCrontab(
@@ -127,23 +227,125 @@ public class FixedPeriodCron {
 						}
 					}
 				}
-				/* Workaround for Sunday = 7 */
-				if (field == DAYS_OF_WEEK) {
-					if (rangeEnd == 7) {
-						if (rangeStart == rangeEnd) {
-							rangeStart = 0;
-							rangeEnd = 0;
-						} else {
-							rangeEnd = 6;
-							this.crontabSpec[field].add(0);
-						}
-					}
-				}
 				for (int i = rangeStart; i <= rangeEnd; i += step) {
 					this.crontabSpec[field].add(i);
 				}
 			}
+			/* Sunday = 0 and 7 */
+			if (field == DAYS_OF_WEEK &&
+					this.crontabSpec[field].remove(MAX_DAYS_OF_WEEK)) {
+				this.crontabSpec[field].add(MIN_DAYS_OF_WEEK);
+			}
+			for (Integer value : this.crontabSpec[field]) {
+				if (value >= RANGES[field * 2] && value <= RANGES[field * 2 + 1]) {
+					this.crontabMasks[field] |= 1L << value;
+				}
+			}
+		}
+		this.detectFixedPeriod();
+	}
+
+	/**
+	 * Creates a cron line object out of an expression that does not fire on
+	 * the days and time ranges of an exclusion calendar. Exclusions are taken
+	 * into account by the search itself, and they disable the fixed period
+	 * shortcut (see isFixedPeriod).
+	 *
+	 * @param crontabExpression Crontab expression
+	 *                          (see <i>crontab(5)</i> manpage).
+	 * @param exclusions        Days and time ranges in which the cron does
+	 *                          not fire (or null).
+	 */
+	public FixedPeriodCron(String crontabExpression,
+						   ExclusionCalendar exclusions)
+			throws IllegalArgumentException {
+		this(crontabExpression);
+		this.exclusions = exclusions;
+		if (exclusions != null) {
+			this.fixedPeriodMinutes = 0;
+			this.fixedPeriodPhase = 0;
+			this.fixedPeriodMillis = null;
+		}
+	}
+
+	/**
+	 * Sets the fixed period of the cron if the days, months and days of the
+	 * week are all valid, and the minutes of the day form an arithmetic
+	 * progression that divides the day (e.g. "&#42;&#47;5 &#42; &#42; &#42;
+	 * &#42;" or "0 &#42;&#47;6 &#42; &#42; &#42;"), or if the cron runs once a
+	 * week (e.g. "0 0 &#42; &#42; 1").
+	 */
+	protected void detectFixedPeriod() {
+		if (this.crontabMasks[DAYS] != getRangeMask(DAYS) ||
+				this.crontabMasks[MONTHS] != getRangeMask(MONTHS)) {
+			return;
+		}
+		long minutes = this.crontabMasks[MINUTES];
+		long hours = this.crontabMasks[HOURS];
+		long daysOfWeek = this.crontabMasks[DAYS_OF_WEEK];
+		int minuteStep = getDivisorStep(minutes, MAX_MINUTES + 1);
+		int hourStep = getDivisorStep(hours, MAX_HOURS + 1);
+		int firstMinuteOfDay = Long.numberOfTrailingZeros(hours) *
+				MINUTES_PER_HOUR + Long.numberOfTrailingZeros(minutes);
+		/* Sunday = 7 is stored as 0 */
+		if (daysOfWeek == (getRangeMask(DAYS_OF_WEEK) &
+				~(1L << MAX_DAYS_OF_WEEK))) {
+			if (hourStep == 1 && minuteStep != NONE) {
+				this.fixedPeriodMinutes = minuteStep;
+			} else if (Long.bitCount(minutes) == 1 && hourStep != NONE) {
+				this.fixedPeriodMinutes = hourStep * MINUTES_PER_HOUR;
+			}
+			this.fixedPeriodPhase = firstMinuteOfDay;
+		} else if (Long.bitCount(daysOfWeek) == 1 &&
+				Long.bitCount(minutes) == 1 && Long.bitCount(hours) == 1) {
+			this.fixedPeriodMinutes = MINUTES_PER_WEEK;
+			this.fixedPeriodPhase = (Long.numberOfTrailingZeros(daysOfWeek) -
+					EPOCH_DAY_OF_WEEK + 7) % 7 * MINUTES_PER_DAY +
+					firstMinuteOfDay;
+		}
+		if (this.fixedPeriodMinutes > 0) {
+			this.fixedPeriodPhase %= this.fixedPeriodMinutes;
+			this.fixedPeriodMillis =
+					this.fixedPeriodMinutes * MILLIS_PER_MINUTE;
+		}
+	}
+
+	/**
+	 * Returns the mask with every value of the range of a field.
+	 *
+	 * @param field One of MINUTES, HOURS, DAYS, MONTHS or DAYS_OF_WEEK.
+	 * @return Mask of the range.
+	 */
+	protected static long getRangeMask(int field) {
+		long mask = -1L >>> (63 - RANGES[field * 2 + 1]);
+		return mask & (-1L << RANGES[field * 2]);
+	}
+
+	/**
+	 * Returns the step of a mask whose values (from 0 to size - 1) are evenly
+	 * spaced and keep that spacing when wrapping around, e.g. {5, 20, 35, 50}
+	 * for a size of 60.
+	 *
+	 * @param mask A mask.
+	 * @param size Number of possible values.
+	 * @return The step, or NONE if the mask is not evenly spaced.
+	 */
+	protected static int getDivisorStep(long mask, int size) {
+		int count = Long.bitCount(mask);
+		if (count == 0 || size % count != 0) {
+			return NONE;
+		}
+		int step = size / count;
+		int first = Long.numberOfTrailingZeros(mask);
+		if (first >= step) {
+			return NONE;
+		}
+		for (int value = first; value < size; value += step) {
+			if ((mask & (1L << value)) == 0) {
+				return NONE;
+			}
 		}
+		return step;
 	}
 
 	/**
@@ -219,6 +421,67 @@ public class FixedPeriodCron {
 		return this.crontabSpec[DAYS_OF_WEEK];
 	}
 
+	/**
+	 * Tells whether every match of the cron is at the same wall-clock distance
+	 * from the previous one. For these crons, matches are calculated
+	 * arithmetically instead of searched, as long as the offset of the time
+	 * zone does not change in between.
+	 *
+	 * @return True if the cron has a fixed period, false if not.
+	 */
+	public boolean isFixedPeriod() {
+		return this.fixedPeriodMinutes > 0;
+	}
+
+	/**
+	 * The fixed period of the cron in milliseconds (see isFixedPeriod).
+	 *
+	 * @return The fixed period in milliseconds (or null).
+	 */
+	public Long fixedPeriodMillis() {
+		return this.fixedPeriodMillis;
+	}
+
+	/**
+	 * The bit mask of a field of the parsed crontab expression, where bit
+	 * <i>n</i> is set if the value <i>n</i> belongs to the field.
+	 *
+	 * @param field One of MINUTES, HOURS, DAYS, MONTHS or DAYS_OF_WEEK.
+	 * @return Bit mask of the field.
+	 */
+	public long getFieldMask(int field) {
+		return this.crontabMasks[field];
+	}
+
+	/**
+	 * The days and time ranges in which the cron does not fire.
+	 *
+	 * @return The exclusion calendar (or null).
+	 */
+	public ExclusionCalendar getExclusions() {
+		return this.exclusions;
+	}
+
+	/**
+	 * Sets the listener notified of the parses, searches and matches of every
+	 * cron (e.g. to emit profiling events).
+	 *
+	 * @param listener The listener (or null to stop notifying).
+	 */
+	public static void setEvaluationListener(CronEvaluationListener listener) {
+		evaluationListener = listener;
+	}
+
+	/**
+	 * The listener notified of the parses, searches and matches of every
+	 * cron.
+	 *
+	 * @return The listener (or null).
+	 */
+	public static CronEvaluationListener getEvaluationListener() {
+		return evaluationListener;
+	}
+
 	/**
 	 * Tells whether the cron runs exactly at the reference or not (running at 0
 	 * seconds, 0 milliseconds).
@@ -230,6 +493,17 @@ public class FixedPeriodCron {
 		return this.matches(reference, 0, 0);
 	}
 
+	/**
+	 * Tells whether the cron runs exactly at the current time of a clock or
+	 * not (running at 0 seconds, 0 milliseconds).
+	 *
+	 * @param clock Clock giving "now" and the time zone.
+	 * @return True if it matches, false if not.
+	 */
+	public boolean matches(Clock clock) {
+		return this.matches(getCalendar(clock));
+	}
+
 	/**
 	 * Tells whether the cron runs exactly at the reference or not (running at 0
 	 * seconds, 0 milliseconds).
@@ -276,23 +550,66 @@ public class FixedPeriodCron {
 	public boolean matches(Calendar reference, int cronRunSeconds,
 						   int cronRunMillis, boolean matchAllUnderMinute) {
 		this.validateSecondsAndMillis(cronRunSeconds, cronRunMillis);
+		CronEvaluationListener listener = evaluationListener;
+		if (listener == null) {
+			return this.isMatch(reference, cronRunSeconds, cronRunMillis,
+					matchAllUnderMinute);
+		}
+		Object context = listener.beginMatch();
+		boolean matches = false;
+		try {
+			matches = this.isMatch(reference, cronRunSeconds, cronRunMillis,
+					matchAllUnderMinute);
+		} finally {
+			listener.endMatch(context, this, reference.getTimeInMillis(),
+					matches);
+		}
+		return matches;
+	}
 
+	/**
+	 * Tells whether the cron runs exactly at the reference or not.
+	 *
+	 * @param reference           Reference calendar.
+	 * @param cronRunSeconds      Seconds after the minute when the cron engine
+	 *                            runs.
+	 * @param cronRunMillis       Milliseconds after the second when the cron
+	 *                            engine runs.
+	 * @param matchAllUnderMinute Indicates whether the match would take the
+	 *                            fields smaller than the minute into
+	 *                            consideration or not.
+	 * @return True if it matches, false if not.
+	 */
+	protected boolean isMatch(Calendar reference, int cronRunSeconds,
+							  int cronRunMillis, boolean matchAllUnderMinute) {
 		if (matchAllUnderMinute &&
 				(reference.get(Calendar.SECOND) != cronRunSeconds ||
 						reference.get(Calendar.MILLISECOND) != cronRunMillis)) {
 			return false;
 		}
 
-		Integer[] fields = this.getReferenceFields(reference, cronRunSeconds,
-				cronRunMillis, 0);
-		for (int field = 0; field < NUMBER_OF_FIELDS - 1; ++field) {
-			if (!this.crontabSpec[field].contains(fields[field])) {
-				return false;
-			}
+		boolean matches = (this.crontabMasks[MINUTES] &
+				(1L << reference.get(Calendar.MINUTE))) != 0 &&
+				(this.crontabMasks[HOURS] &
+						(1L << reference.get(Calendar.HOUR_OF_DAY))) != 0 &&
+				(this.crontabMasks[DAYS] &
+						(1L << reference.get(Calendar.DATE))) != 0 &&
+				(this.crontabMasks[MONTHS] &
+						(1L << (reference.get(Calendar.MONTH) + 1))) != 0 &&
+				(this.crontabMasks[DAYS_OF_WEEK] &
+						(1L << (reference.get(Calendar.DAY_OF_WEEK) - 1))) != 0;
+		if (matches && this.exclusions != null) {
+			/* The run of the minute of the reference */
+			long run = reference.getTimeInMillis() +
+					(cronRunSeconds - reference.get(Calendar.SECOND)) * 1000L +
+					cronRunMillis - reference.get(Calendar.MILLISECOND);
+			matches = !this.exclusions.isExcludedDay(
+					reference.get(Calendar.YEAR),
+					reference.get(Calendar.MONTH) + 1,
+					reference.get(Calendar.DATE)) &&
+					!this.exclusions.isExcludedTime(run);
 		}
-
-		return this.crontabSpec[DAYS_OF_WEEK].contains(
-				reference.get(Calendar.DAY_OF_WEEK) - 1);
+		return matches;
 	}
 
 	/**
@@ -308,6 +625,19 @@ public class FixedPeriodCron {
 		return this.getClosestDateBeforeOrSame(reference, 0, 0);
 	}
 
+	/**
+	 * Returns the closest calendar previous (or equal) to the current time of
+	 * a clock, in relation to the cron expression (running at 0 seconds,
+	 * 0 milliseconds).
+	 *
+	 * @param clock Clock giving "now" and the time zone.
+	 * @return The closest calendar previous (or equal) to "now", in relation to
+	 *         the cron expression.
+	 */
+	public Calendar getClosestDateBeforeOrSame(Clock clock) {
+		return this.getClosestDateBeforeOrSame(getCalendar(clock));
+	}
+
 	/**
 	 * Returns the closest calendar previous (or equal) to the reference, in
 	 * relation to the cron expression.
@@ -319,54 +649,13 @@ public class FixedPeriodCron {
 	 * @return The closest calendar previous (or equal) to the reference, in
 	 *         relation to the cron expression.
 	 */
-	// TODO: Re-think this method to make it shorter and faster.
 	public Calendar getClosestDateBeforeOrSame(Calendar reference,
 											   int cronRunSeconds,
 											   int cronRunMillis) {
 		this.validateSecondsAndMillis(cronRunSeconds, cronRunMillis);
 
-		Integer[] fields = this.getReferenceFields(reference, cronRunSeconds,
-				cronRunMillis, -1);
-
-		Integer[][][] specsForReferenceParent =
-				new Integer[NUMBER_OF_FIELDS - 2][][];
-		Integer[][] specsInOrder =
-				new Integer[NUMBER_OF_FIELDS - 1][];
-		for (int field = 0; field < NUMBER_OF_FIELDS - 2; ++field) {
-			specsForReferenceParent[field] = new Integer[2][];
-			/* first pass */
-			List<Integer> specs = new ArrayList<Integer>(
-					this.crontabSpec[field].headSet(fields[field] + 1));
-			Collections.reverse(specs);
-			specsForReferenceParent[field][0] = specs.toArray(ARRAY_OF_INTEGERS);
-			/* second pass */
-			specs = new ArrayList<Integer>(
-					this.crontabSpec[field].tailSet(fields[field]));
-			Collections.reverse(specs);
-			specsForReferenceParent[field][1] = specs.toArray(ARRAY_OF_INTEGERS);
-			/* general order of specs */
-			specs = new ArrayList<Integer>(this.crontabSpec[field]);
-			Collections.reverse(specs);
-			specsInOrder[field] = specs.toArray(ARRAY_OF_INTEGERS);
-		}
-		List<Integer> specs = new ArrayList<Integer>(
-				this.crontabSpec[MONTHS].headSet(fields[MONTHS] + 1));
-		Collections.reverse(specs);
-		List<Integer> specsTail = new ArrayList<Integer>(
-				this.crontabSpec[MONTHS].tailSet(fields[MONTHS]));
-		Collections.reverse(specsTail);
-		specs.addAll(specsTail);
-		specsInOrder[MONTHS] = specs.toArray(ARRAY_OF_INTEGERS);
-
-		int cycles = 0;
-		Calendar beforeOrSame = null;
-		while (beforeOrSame == null && cycles < YEAR_CYCLES_FOR_WEEKDAY_MATCH) {
-			beforeOrSame = this.findDate(-1, fields, specsInOrder,
-					specsForReferenceParent, cronRunSeconds, cronRunMillis);
-			--fields[YEAR_REFERENCE_FIELD];
-			++cycles;
-		}
-		return beforeOrSame;
+		return this.toCalendar(reference, this.findDate(-1, reference,
+				cronRunSeconds, cronRunMillis));
 	}
 
 	/**
@@ -381,6 +670,18 @@ public class FixedPeriodCron {
 		return this.getClosestDateAfter(reference, 0, 0);
 	}
 
+	/**
+	 * Returns the closest calendar after the current time of a clock, in
+	 * relation to the cron expression (running at 0 seconds, 0 milliseconds).
+	 *
+	 * @param clock Clock giving "now" and the time zone.
+	 * @return The closest calendar after "now", in relation to the cron
+	 *         expression.
+	 */
+	public Calendar getClosestDateAfter(Clock clock) {
+		return this.getClosestDateAfter(getCalendar(clock));
+	}
+
 	/**
 	 * Returns the closest calendar after the reference, in relation to the cron
 	 * expression.
@@ -392,48 +693,12 @@ public class FixedPeriodCron {
 	 * @return The closest calendar after the reference, in relation to the cron
 	 *         expression.
 	 */
-	// TODO: Re-think this method to make it shorter and faster.
 	public Calendar getClosestDateAfter(Calendar reference, int cronRunSeconds,
 										int cronRunMillis) {
 		this.validateSecondsAndMillis(cronRunSeconds, cronRunMillis);
 
-		Integer[] fields = this.getReferenceFields(reference, cronRunSeconds,
-				cronRunMillis, 1);
-
-		Integer[][][] specsForReferenceParent =
-				new Integer[NUMBER_OF_FIELDS - 2][][];
-		Integer[][] specsInOrder =
-				new Integer[NUMBER_OF_FIELDS - 1][];
-		for (int field = 0; field < NUMBER_OF_FIELDS - 2; ++field) {
-			specsForReferenceParent[field] = new Integer[2][];
-			/* first pass */
-			List<Integer> specs = new ArrayList<Integer>(
-					this.crontabSpec[field].tailSet(fields[field]));
-			specsForReferenceParent[field][0] = specs.toArray(ARRAY_OF_INTEGERS);
-			/* second pass */
-			specs = new ArrayList<Integer>(
-					this.crontabSpec[field].headSet(fields[field] + 1));
-			specsForReferenceParent[field][1] = specs.toArray(ARRAY_OF_INTEGERS);
-			/* general order of specs */
-			specs = new ArrayList<Integer>(this.crontabSpec[field]);
-			specsInOrder[field] = specs.toArray(ARRAY_OF_INTEGERS);
-		}
-		List<Integer> specs = new ArrayList<Integer>(
-				this.crontabSpec[MONTHS].tailSet(fields[MONTHS]));
-		List<Integer> specsTail = new ArrayList<Integer>(
-				this.crontabSpec[MONTHS].headSet(fields[MONTHS] + 1));
-		specs.addAll(specsTail);
-		specsInOrder[MONTHS] = specs.toArray(ARRAY_OF_INTEGERS);
-
-		int cycles = 0;
-		Calendar beforeOrSame = null;
-		while (beforeOrSame == null && cycles < YEAR_CYCLES_FOR_WEEKDAY_MATCH) {
-			beforeOrSame = this.findDate(1, fields, specsInOrder,
-					specsForReferenceParent, cronRunSeconds, cronRunMillis);
-			++fields[YEAR_REFERENCE_FIELD];
-			++cycles;
-		}
-		return beforeOrSame;
+		return this.toCalendar(reference, this.findDate(1, reference,
+				cronRunSeconds, cronRunMillis));
 	}
 
 	/**
@@ -447,6 +712,33 @@ public class FixedPeriodCron {
 		return this.nextMatchInMillis(reference, 0, 0);
 	}
 
+	/**
+	 * Returns the number of milliseconds to the next match/run, relative to
+	 * the current time of a clock (running at 0 seconds, 0 milliseconds).
+	 *
+	 * @param clock Clock giving "now" and the time zone.
+	 * @return Number of milliseconds to the next match/run (or null).
+	 */
+	public Long nextMatchInMillis(Clock clock) {
+		return this.nextMatchInMillis(getCalendar(clock), 0, 0);
+	}
+
+	/**
+	 * Returns the number of milliseconds to the next match/run, relative to
+	 * the current time of a clock.
+	 *
+	 * @param clock          Clock giving "now" and the time zone.
+	 * @param cronRunSeconds Seconds after the minute when the cron engine runs.
+	 * @param cronRunMillis  Milliseconds after the second when the cron engine
+	 *                       runs.
+	 * @return Number of milliseconds to the next match/run (or null).
+	 */
+	public Long nextMatchInMillis(Clock clock, int cronRunSeconds,
+								  int cronRunMillis) {
+		return this.nextMatchInMillis(getCalendar(clock), cronRunSeconds,
+				cronRunMillis);
+	}
+
 	/**
 	 * Returns the number of milliseconds to the next match/run, relative to a
 	 * calendar.
@@ -461,10 +753,10 @@ public class FixedPeriodCron {
 								  int cronRunMillis) {
 		this.validateSecondsAndMillis(cronRunSeconds, cronRunMillis);
 		Long millis = null;
-		Calendar next = this.getClosestDateAfter(reference, cronRunSeconds,
+		long[] window = this.findWindow(reference, cronRunSeconds,
 				cronRunMillis);
-		if (next != null) {
-			millis = next.getTimeInMillis() - reference.getTimeInMillis();
+		if (window[1] != NO_DATE) {
+			millis = window[1] - reference.getTimeInMillis();
 		}
 		return millis;
 	}
@@ -481,6 +773,17 @@ public class FixedPeriodCron {
 		return this.periodInMillis(reference, 0, 0);
 	}
 
+	/**
+	 * Returns the period span in milliseconds around the current time of a
+	 * clock (running at 0 seconds, 0 milliseconds).
+	 *
+	 * @param clock Clock giving "now" and the time zone.
+	 * @return Period span in milliseconds (or null).
+	 */
+	public Long periodInMillis(Clock clock) {
+		return this.periodInMillis(getCalendar(clock));
+	}
+
 	/**
 	 * Returns the period span in milliseconds given a reference date. Takes the
 	 * period where the date of the calendar is in.
@@ -495,18 +798,95 @@ public class FixedPeriodCron {
 							   int cronRunMillis) {
 		this.validateSecondsAndMillis(cronRunSeconds, cronRunMillis);
 		Long millis = null;
-		Calendar last = this.getClosestDateBeforeOrSame(reference,
-				cronRunSeconds, cronRunMillis);
-		if (last != null) {
-			Calendar next = this.getClosestDateAfter(reference, cronRunSeconds,
-					cronRunMillis);
-			if (next != null) {
-				millis = next.getTimeInMillis() - last.getTimeInMillis();
-			}
+		long[] window = this.findWindow(reference, cronRunSeconds,
+				cronRunMillis);
+		if (window[0] != NO_DATE && window[1] != NO_DATE) {
+			millis = window[1] - window[0];
 		}
 		return millis;
 	}
 
+	/**
+	 * Returns the closest matches previous (or equal) to and after the
+	 * reference (running at 0 seconds, 0 milliseconds).
+	 *
+	 * @param reference Reference calendar (usually, "now").
+	 * @return The window of matches around the reference.
+	 */
+	public CronWindow window(Calendar reference) {
+		return this.window(reference, 0, 0);
+	}
+
+	/**
+	 * Returns the closest matches previous (or equal) to and after the current
+	 * time of a clock (running at 0 seconds, 0 milliseconds).
+	 *
+	 * @param clock Clock giving "now" and the time zone.
+	 * @return The window of matches around "now".
+	 */
+	public CronWindow window(Clock clock) {
+		return this.window(getCalendar(clock));
+	}
+
+	/**
+	 * Returns the closest matches previous (or equal) to and after the
+	 * reference. Both are found from a single decomposition of the reference,
+	 * which makes it cheaper than calling getClosestDateBeforeOrSame and
+	 * getClosestDateAfter.
+	 *
+	 * @param reference      Reference calendar (usually, "now").
+	 * @param cronRunSeconds Seconds after the minute when the cron engine runs.
+	 * @param cronRunMillis  Milliseconds after the second when the cron engine
+	 *                       runs.
+	 * @return The window of matches around the reference.
+	 */
+	public CronWindow window(Calendar reference, int cronRunSeconds,
+							 int cronRunMillis) {
+		this.validateSecondsAndMillis(cronRunSeconds, cronRunMillis);
+		long[] window = this.findWindow(reference, cronRunSeconds,
+				cronRunMillis);
+		return new CronWindow((Calendar) reference.clone(), cronRunSeconds,
+				cronRunMillis, window[0], window[1]);
+	}
+
+	/**
+	 * Returns the matches within a time range, in milliseconds, in order
+	 * (running at 0 seconds, 0 milliseconds).
+	 *
+	 * @param fromMillis Start of the range (inclusive), in milliseconds.
+	 * @param toMillis   End of the range (exclusive), in milliseconds.
+	 * @param zone       Time zone the cron is evaluated in.
+	 * @return The matches (see FireTimeSpliterator).
+	 */
+	public LongStream fireTimes(long fromMillis, long toMillis, TimeZone zone) {
+		return this.fireTimes(fromMillis, toMillis, zone, 0, 0);
+	}
+
+	/**
+	 * Returns the matches within a time range, in milliseconds, in order. The
+	 * stream can be made parallel: it splits at the beginning of years and
+	 * months, and every part searches its own matches, so a long range is
+	 * enumerated by as many threads as there are with no coordination.
+	 *
+	 * @param fromMillis     Start of the range (inclusive), in milliseconds.
+	 * @param toMillis       End of the range (exclusive), in milliseconds.
+	 * @param zone           Time zone the cron is evaluated in.
+	 * @param cronRunSeconds Seconds after the minute when the cron engine runs.
+	 * @param cronRunMillis  Milliseconds after the second when the cron engine
+	 *                       runs.
+	 * @return The matches (see FireTimeSpliterator).
+	 */
+	public LongStream fireTimes(long fromMillis, long toMillis, TimeZone zone,
+								int cronRunSeconds, int cronRunMillis) {
+		this.validateSecondsAndMillis(cronRunSeconds, cronRunMillis);
+		if (zone == null) {
+			throw new IllegalArgumentException("Time zone cannot be null.");
+		}
+		return StreamSupport.longStream(new FireTimeSpliterator(this,
+				fromMillis, Math.max(fromMillis, toMillis), zone,
+				cronRunSeconds, cronRunMillis), false);
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -515,9 +895,25 @@ public class FixedPeriodCron {
 		return this.expression;
 	}
 
+	/**
+	 * Returns a calendar set to the current time of a clock, in its time zone.
+	 *
+	 * @param clock The clock.
+	 * @return The calendar.
+	 */
+	protected static Calendar getCalendar(Clock clock) {
+		if (clock == null) {
+			throw new IllegalArgumentException("Clock cannot be null.");
+		}
+		Calendar calendar = new GregorianCalendar(
+				TimeZone.getTimeZone(clock.getZone()));
+		calendar.setTimeInMillis(clock.millis());
+		return calendar;
+	}
+
 	/**
 	 * Returns the fields of a reference calendar plus the year: {minutes, hour,
-	 * day, month, year}. It shifts the calendar one minute if necessary.
+	 * day, month, year}. It shifts the fields one minute if necessary.
 	 *
 	 * @param reference      A calendar.
 	 * @param cronRunSeconds Seconds after the minute when the cron engine runs.
@@ -526,127 +922,601 @@ public class FixedPeriodCron {
 	 * @param direction      Indicates whether a difference in seconds and/or
 	 *                       milliseconds increments or decrements minutes in
 	 *                       1.
+	 * @param fields         Array where the fields are stored.
 	 * @return The fields of the calendar.
 	 */
-	// TODO: Refactor.
-	protected Integer[] getReferenceFields(Calendar reference,
-										   int cronRunSeconds,
-										   int cronRunMillis, int direction) {
-		Calendar calendar = reference;
-		if (direction > 0) {
-			int seconds = reference.get(Calendar.SECOND);
-			int millis = reference.get(Calendar.MILLISECOND);
-			if (seconds > cronRunSeconds ||
-					(seconds == cronRunSeconds && millis >= cronRunMillis)) {
-				calendar = (Calendar) reference.clone();
-				calendar.add(Calendar.MINUTE, 1);
-			}
-		} else if (direction < 0) {
+	protected int[] getReferenceFields(Calendar reference, int cronRunSeconds,
+									   int cronRunMillis, int direction,
+									   int[] fields) {
+		fields[MINUTES] = reference.get(Calendar.MINUTE);
+		fields[HOURS] = reference.get(Calendar.HOUR_OF_DAY);
+		fields[DAYS] = reference.get(Calendar.DATE);
+		fields[MONTHS] = reference.get(Calendar.MONTH) + 1;
+		fields[YEAR_REFERENCE_FIELD] = reference.get(Calendar.YEAR);
+		if (direction != 0) {
 			int seconds = reference.get(Calendar.SECOND);
 			int millis = reference.get(Calendar.MILLISECOND);
-			if (seconds < cronRunSeconds ||
-					(seconds == cronRunSeconds && millis < cronRunMillis)) {
-				calendar = (Calendar) reference.clone();
-				calendar.add(Calendar.MINUTE, -1);
+			boolean afterRun = seconds > cronRunSeconds ||
+					(seconds == cronRunSeconds && millis >= cronRunMillis);
+			if (afterRun == direction > 0) {
+				this.addMinute(fields, direction);
 			}
 		}
-		int minute = calendar.get(Calendar.MINUTE);
-		int hour = calendar.get(Calendar.HOUR_OF_DAY);
-		int day = calendar.get(Calendar.DATE);
-		int month = calendar.get(Calendar.MONTH) + 1;
-		int year = calendar.get(Calendar.YEAR);
-		return new Integer[]{minute, hour, day, month, year};
+		return fields;
+	}
+
+	/**
+	 * Moves the fields {minutes, hour, day, month, year} one minute forwards or
+	 * backwards, in wall-clock time.
+	 *
+	 * @param fields    Fields to be modified.
+	 * @param direction 1 or -1, indicating forwards or backwards, respectively.
+	 */
+	protected void addMinute(int[] fields, int direction) {
+		fields[MINUTES] += direction;
+		if (fields[MINUTES] >= MIN_MINUTES && fields[MINUTES] <= MAX_MINUTES) {
+			return;
+		}
+		fields[MINUTES] = direction > 0 ? MIN_MINUTES : MAX_MINUTES;
+		fields[HOURS] += direction;
+		if (fields[HOURS] >= MIN_HOURS && fields[HOURS] <= MAX_HOURS) {
+			return;
+		}
+		fields[HOURS] = direction > 0 ? MIN_HOURS : MAX_HOURS;
+		fields[DAYS] += direction;
+		if (fields[DAYS] >= MIN_DAYS && fields[DAYS] <=
+				getDaysInMonth(fields[YEAR_REFERENCE_FIELD], fields[MONTHS])) {
+			return;
+		}
+		fields[MONTHS] += direction;
+		if (fields[MONTHS] < MIN_MONTHS || fields[MONTHS] > MAX_MONTHS) {
+			fields[MONTHS] = direction > 0 ? MIN_MONTHS : MAX_MONTHS;
+			fields[YEAR_REFERENCE_FIELD] += direction;
+		}
+		fields[DAYS] = direction > 0 ? MIN_DAYS :
+				getDaysInMonth(fields[YEAR_REFERENCE_FIELD], fields[MONTHS]);
 	}
 
 	/**
 	 * Searches for a cron matching date, forwards or backwards in time, from a
-	 * given reference.
-	 *
-	 * @param direction               1 or -1, indicating forwards or backwards,
-	 *                                respectively.
-	 * @param fields                  Fields of the reference date {minutes,
-	 *                                hour, day, month, year}.
-	 * @param specsInOrder            Values coming from the crontab evaluation,
-	 *                                sorted to
-	 *                                be matched in order.
-	 * @param specsForReferenceParent Values coming from the crontab evaluation,
-	 *                                sorted to be matched in order, given that
-	 *                                the parent value matches the reference
-	 *                                date field. Each containing two lists for
-	 *                                the first and second passes (i.e. same
-	 *                                year and the year before/after--depending
-	 *                                on the direction).
-	 * @param cronRunSeconds          Seconds after the minute when the cron
-	 *                                engine runs.
-	 * @param cronRunMillis           Milliseconds after the second when the
-	 *                                cron engine runs.
-	 * @return The date looked for.
-	 */
-	// TODO: Re-think this method to make it shorter and faster.
-	protected Calendar findDate(int direction, Integer[] fields,
-								Integer[][] specsInOrder,
-								Integer[][][] specsForReferenceParent,
-								int cronRunSeconds, int cronRunMillis) {
-		int lastMonth;
+	 * given reference. It takes the date from the window of the reference (see
+	 * findWindow), so that further queries within the window are answered
+	 * from memory.
+	 *
+	 * @param direction      1 or -1, indicating forwards or backwards,
+	 *                       respectively.
+	 * @param reference      The reference calendar.
+	 * @param cronRunSeconds Seconds after the minute when the cron engine runs.
+	 * @param cronRunMillis  Milliseconds after the second when the cron engine
+	 *                       runs.
+	 * @return The date looked for, in milliseconds (or NO_DATE).
+	 */
+	protected long findDate(int direction, Calendar reference,
+							int cronRunSeconds, int cronRunMillis) {
+		long[] window = this.findWindow(reference, cronRunSeconds,
+				cronRunMillis);
+		return direction > 0 ? window[1] : window[0];
+	}
+
+	/**
+	 * Searches for the closest cron matching dates before (or same) and after
+	 * a reference. If the reference falls in the last window found, with the
+	 * same time zone, run seconds and milliseconds, and exclusions, the window
+	 * is answered with no search at all: there are no matches in between its
+	 * ends. Otherwise, both searches share the decomposition of the reference
+	 * (the forwards one starts one minute after the backwards one) and the
+	 * window found is remembered.
+	 *
+	 * @param reference      The reference calendar.
+	 * @param cronRunSeconds Seconds after the minute when the cron engine runs.
+	 * @param cronRunMillis  Milliseconds after the second when the cron engine
+	 *                       runs.
+	 * @return The dates {previous, next}, in milliseconds (or NO_DATE), in a
+	 *         per-thread array.
+	 */
+	protected long[] findWindow(Calendar reference, int cronRunSeconds,
+								int cronRunMillis) {
+		Scratch scratch = SCRATCH.get();
+		long[] window = scratch.window;
+		long time = reference.getTimeInMillis();
+		TimeZone zone = reference.getTimeZone();
+		int modifications = this.exclusions == null ? 0 :
+				this.exclusions.getSnapshot().modifications;
+		MemoizedWindow lastWindow = this.lastWindow;
+		if (lastWindow != null && lastWindow.contains(time, zone,
+				cronRunSeconds, cronRunMillis, modifications)) {
+			window[0] = lastWindow.previous;
+			window[1] = lastWindow.next;
+			return window;
+		}
+		this.searchWindow(reference, cronRunSeconds, cronRunMillis, scratch);
+		/* Windows without an end depend on how far the search goes */
+		if (window[0] != NO_DATE && window[1] != NO_DATE) {
+			/* Zones are mutable: share the copy of the last window, if equal */
+			TimeZone zoneCopy = lastWindow != null &&
+					zone.equals(lastWindow.zone) ? lastWindow.zone :
+					(TimeZone) zone.clone();
+			this.lastWindow = new MemoizedWindow(zoneCopy, cronRunSeconds,
+					cronRunMillis, modifications, window[0], window[1]);
+		}
+		return window;
+	}
+
+	/**
+	 * Searches for the closest cron matching dates before (or same) and after
+	 * a reference (see findWindow), with no memory of previous windows.
+	 *
+	 * @param reference      The reference calendar.
+	 * @param cronRunSeconds Seconds after the minute when the cron engine runs.
+	 * @param cronRunMillis  Milliseconds after the second when the cron engine
+	 *                       runs.
+	 * @param scratch        Objects of the current thread, whose window gets
+	 *                       the dates {previous, next}, in milliseconds (or
+	 *                       NO_DATE).
+	 */
+	protected void searchWindow(Calendar reference, int cronRunSeconds,
+								int cronRunMillis, Scratch scratch) {
+		long[] window = scratch.window;
+		if (this.fixedPeriodMinutes > 0) {
+			window[0] = this.findFixedPeriodDate(-1, reference, cronRunSeconds,
+					cronRunMillis);
+			window[1] = window[0] == NO_DATE ? NO_DATE :
+					this.findFixedPeriodDate(1, reference, cronRunSeconds,
+							cronRunMillis);
+			if (window[1] != NO_DATE) {
+				return;
+			}
+		}
+		Calendar calendar = scratch.getCalendar(reference);
+		int[] fields = this.getReferenceFields(calendar, cronRunSeconds,
+				cronRunMillis, -1, scratch.fields);
+		int[] nextFields = scratch.nextFields;
+		System.arraycopy(fields, 0, nextFields, 0, fields.length);
+		this.addMinute(nextFields, 1);
+		window[0] = this.findDate(-1, fields, calendar, cronRunSeconds,
+				cronRunMillis);
+		window[1] = this.findDate(1, nextFields, calendar, cronRunSeconds,
+				cronRunMillis);
+	}
+
+	/**
+	 * Searches for the closest cron matching date after an instant, with no
+	 * memory of windows (see findWindow), with objects of the caller's own.
+	 *
+	 * @param millis         The instant, in milliseconds.
+	 * @param calendar       A calendar in the time zone the cron is evaluated
+	 *                       in (modified by the search).
+	 * @param fields         Array for the fields of the dates searched.
+	 * @param cronRunSeconds Seconds after the minute when the cron engine runs.
+	 * @param cronRunMillis  Milliseconds after the second when the cron engine
+	 *                       runs.
+	 * @return The date looked for, in milliseconds (or NO_DATE).
+	 */
+	protected long findDateAfter(long millis, Calendar calendar, int[] fields,
+								 int cronRunSeconds, int cronRunMillis) {
+		calendar.setTimeInMillis(millis);
+		if (this.fixedPeriodMinutes > 0) {
+			long date = this.findFixedPeriodDate(1, calendar, cronRunSeconds,
+					cronRunMillis);
+			if (date != NO_DATE) {
+				return date;
+			}
+		}
+		this.getReferenceFields(calendar, cronRunSeconds, cronRunMillis, 1,
+				fields);
+		return this.findDate(1, fields, calendar, cronRunSeconds,
+				cronRunMillis);
+	}
+
+	/**
+	 * Calculates the cron matching date, forwards or backwards in time, of a
+	 * cron with a fixed period.
+	 *
+	 * @param direction      1 or -1, indicating forwards or backwards,
+	 *                       respectively.
+	 * @param reference      The reference calendar.
+	 * @param cronRunSeconds Seconds after the minute when the cron engine runs.
+	 * @param cronRunMillis  Milliseconds after the second when the cron engine
+	 *                       runs.
+	 * @return The date looked for, in milliseconds, or NO_DATE if the offset
+	 *         of the time zone changes in between or around it.
+	 */
+	protected long findFixedPeriodDate(int direction, Calendar reference,
+									   int cronRunSeconds, int cronRunMillis) {
+		TimeZone zone = reference.getTimeZone();
+		long time = reference.getTimeInMillis();
+		int offset = zone.getOffset(time);
+		long period = this.fixedPeriodMillis;
+		long phase = this.fixedPeriodPhase * MILLIS_PER_MINUTE +
+				cronRunSeconds * 1000L + cronRunMillis;
+		/* Wall-clock milliseconds since the first match after the epoch */
+		long local = time + offset - phase;
+		long periods = local / period;
+		if (local % period < 0) {
+			--periods;
+		}
+		long date = periods * period + phase - offset;
 		if (direction > 0) {
-			lastMonth = MIN_MONTHS - 1;
-		} else {
-			lastMonth = MAX_MONTHS + 1;
-		}
-		int pass = 0;
-		Calendar calendarHelper = Calendar.getInstance();
-		calendarHelper.set(Calendar.YEAR, fields[YEAR_REFERENCE_FIELD]);
-		for (Integer aMonth : specsInOrder[MONTHS]) {
-			if (aMonth.compareTo(lastMonth) != direction) {
-				calendarHelper.add(Calendar.YEAR, direction);
+			date += period;
+		}
+		/* Let the search deal with gaps and overlaps around transitions */
+		if (zone.getOffset(date) != offset ||
+				zone.getOffset(date - MILLIS_PER_DAY) != offset ||
+				zone.getOffset(date + MILLIS_PER_DAY) != offset) {
+			return NO_DATE;
+		}
+		return date;
+	}
+
+	/**
+	 * Searches for a cron matching date, forwards or backwards in time, from
+	 * the fields of a reference. Matches within excluded time ranges make the
+	 * search restart from the other end of the range.
+	 *
+	 * @param direction      1 or -1, indicating forwards or backwards,
+	 *                       respectively.
+	 * @param fields         Fields of the reference date {minutes, hour, day,
+	 *                       month, year} (modified by the search).
+	 * @param calendar       A calendar in the time zone of the reference, used
+	 *                       (and modified) to convert the fields found.
+	 * @param cronRunSeconds Seconds after the minute when the cron engine runs.
+	 * @param cronRunMillis  Milliseconds after the second when the cron engine
+	 *                       runs.
+	 * @return The date looked for, in milliseconds (or NO_DATE).
+	 */
+	protected long findDate(int direction, int[] fields, Calendar calendar,
+							int cronRunSeconds, int cronRunMillis) {
+		CronEvaluationListener listener = evaluationListener;
+		if (listener == null) {
+			return this.searchDate(direction, fields, calendar, cronRunSeconds,
+					cronRunMillis);
+		}
+		Object context = listener.beginSearch();
+		int firstYear = fields[YEAR_REFERENCE_FIELD];
+		long millis = NO_DATE;
+		try {
+			millis = this.searchDate(direction, fields, calendar,
+					cronRunSeconds, cronRunMillis);
+		} finally {
+			listener.endSearch(context, this, direction, millis == NO_DATE ?
+					YEAR_CYCLES_FOR_WEEKDAY_MATCH :
+					Math.abs(fields[YEAR_REFERENCE_FIELD] - firstYear), millis);
+		}
+		return millis;
+	}
+
+	/**
+	 * Searches for a cron matching date from the fields of a reference (see
+	 * findDate).
+	 *
+	 * @param direction      1 or -1, indicating forwards or backwards,
+	 *                       respectively.
+	 * @param fields         Fields of the reference date {minutes, hour, day,
+	 *                       month, year} (modified by the search).
+	 * @param calendar       A calendar in the time zone of the reference, used
+	 *                       (and modified) to convert the fields found.
+	 * @param cronRunSeconds Seconds after the minute when the cron engine runs.
+	 * @param cronRunMillis  Milliseconds after the second when the cron engine
+	 *                       runs.
+	 * @return The date looked for, in milliseconds (or NO_DATE).
+	 */
+	protected long searchDate(int direction, int[] fields, Calendar calendar,
+							  int cronRunSeconds, int cronRunMillis) {
+		int lastYear = fields[YEAR_REFERENCE_FIELD] +
+				direction * YEAR_CYCLES_FOR_WEEKDAY_MATCH;
+		while (this.findFields(direction, fields, lastYear)) {
+			calendar.clear();
+			calendar.set(fields[YEAR_REFERENCE_FIELD], fields[MONTHS] - 1,
+					fields[DAYS], fields[HOURS], fields[MINUTES],
+					cronRunSeconds);
+			calendar.set(Calendar.MILLISECOND, cronRunMillis);
+			long millis = calendar.getTimeInMillis();
+			/* Skip wall-clock times that do not exist (daylight saving gaps) */
+			if (calendar.get(Calendar.MINUTE) != fields[MINUTES] ||
+					calendar.get(Calendar.HOUR_OF_DAY) != fields[HOURS]) {
+				this.addMinute(fields, direction);
+				continue;
 			}
-			Integer[] specsForCurrentMonth;
-			if (aMonth.equals(fields[MONTHS])) {
-				if (aMonth.compareTo(lastMonth) != direction) {
-					calendarHelper.add(Calendar.YEAR, direction);
-					++pass;
-				}
-				specsForCurrentMonth = specsForReferenceParent[DAYS][pass];
-			} else {
-				specsForCurrentMonth = specsInOrder[DAYS];
+			ExclusionCalendar.Snapshot exclusions = this.exclusions == null ?
+					null : this.exclusions.getSnapshot();
+			int range = exclusions == null ? NONE :
+					exclusions.findRange(millis);
+			if (range == NONE) {
+				return millis;
 			}
-			lastMonth = aMonth;
-			for (Integer aDay : specsForCurrentMonth) {
-				/* Check month validity and matching day of the week */
-				calendarHelper.set(Calendar.MONTH, aMonth - 1);
-				calendarHelper.set(Calendar.DATE, aDay);
-				if (!aMonth.equals(calendarHelper.get(Calendar.MONTH) + 1) ||
-						!this.crontabSpec[DAYS_OF_WEEK].contains(
-								calendarHelper.get(Calendar.DAY_OF_WEEK) - 1)) {
-					continue;
-				}
-				Integer[] specsForCurrentDay;
-				if (aDay.equals(fields[DAYS])) {
-					specsForCurrentDay =
-							specsForReferenceParent[HOURS][pass];
-				} else {
-					specsForCurrentDay = specsInOrder[HOURS];
-				}
-				if (specsForCurrentDay.length > 0) {
-					Integer[] specsForCurrentHour;
-					if (specsForCurrentDay[0].equals(fields[HOURS])) {
-						specsForCurrentHour =
-								specsForReferenceParent[MINUTES][pass];
-					} else {
-						specsForCurrentHour = specsInOrder[MINUTES];
-					}
-					if (specsForCurrentHour.length > 0) {
-						calendarHelper.set(Calendar.MONTH, aMonth - 1);
-						calendarHelper.set(Calendar.DATE, aDay);
-						calendarHelper.set(Calendar.HOUR_OF_DAY, specsForCurrentDay[0]);
-						calendarHelper.set(Calendar.MINUTE, specsForCurrentHour[0]);
-						calendarHelper.set(Calendar.SECOND, cronRunSeconds);
-						calendarHelper.set(Calendar.MILLISECOND, cronRunMillis);
-						return calendarHelper;
-					}
-				}
+			/* Jump over the whole excluded range at once */
+			calendar.setTimeInMillis(direction > 0 ?
+					exclusions.ends[range] - 1 : exclusions.starts[range] - 1);
+			this.getReferenceFields(calendar, cronRunSeconds, cronRunMillis,
+					direction, fields);
+		}
+		return NO_DATE;
+	}
+
+	/**
+	 * Builds the calendar of a date found by findDate.
+	 *
+	 * @param reference The reference calendar, which is cloned.
+	 * @param millis    The date, in milliseconds (or NO_DATE).
+	 * @return The calendar (or null).
+	 */
+	protected Calendar toCalendar(Calendar reference, long millis) {
+		if (millis == NO_DATE) {
+			return null;
+		}
+		Calendar date = (Calendar) reference.clone();
+		date.setTimeInMillis(millis);
+		return date;
+	}
+
+	/**
+	 * Moves the fields {minutes, hour, day, month, year} to the closest
+	 * wall-clock minute (including the one they are set to) matching the cron
+	 * expression, forwards or backwards in time.
+	 *
+	 * @param direction 1 or -1, indicating forwards or backwards, respectively.
+	 * @param fields    Fields to start from (modified by the search).
+	 * @param lastYear  Last year to be searched.
+	 * @return True if a matching minute was found before passing the last
+	 *         year, false if not.
+	 */
+	protected boolean findFields(int direction, int[] fields, int lastYear) {
+		for (long mask : this.crontabMasks) {
+			if (mask == 0) {
+				return false;
+			}
+		}
+		int minute = fields[MINUTES];
+		int hour = fields[HOURS];
+		int day = fields[DAYS];
+		int month = fields[MONTHS];
+		int year = fields[YEAR_REFERENCE_FIELD];
+		int firstMinute = direction > 0 ? MIN_MINUTES : MAX_MINUTES;
+		int firstHour = direction > 0 ? MIN_HOURS : MAX_HOURS;
+		int firstDay = direction > 0 ? MIN_DAYS : MAX_DAYS;
+		int firstMonth = direction > 0 ? MIN_MONTHS : MAX_MONTHS;
+		while (year * direction <= lastYear * direction) {
+			int aMonth = this.nextValue(MONTHS, month, direction);
+			if (aMonth == NONE) {
+				year += direction;
+				month = firstMonth;
+				day = firstDay;
+				hour = firstHour;
+				minute = firstMinute;
+				continue;
+			} else if (aMonth != month) {
+				month = aMonth;
+				day = firstDay;
+				hour = firstHour;
+				minute = firstMinute;
 			}
+			int aDay = this.nextDay(year, month, day, direction);
+			if (aDay == NONE) {
+				month += direction;
+				day = firstDay;
+				hour = firstHour;
+				minute = firstMinute;
+				continue;
+			} else if (aDay != day) {
+				day = aDay;
+				hour = firstHour;
+				minute = firstMinute;
+			}
+			int anHour = this.nextValue(HOURS, hour, direction);
+			if (anHour == NONE) {
+				day += direction;
+				hour = firstHour;
+				minute = firstMinute;
+				continue;
+			} else if (anHour != hour) {
+				hour = anHour;
+				minute = firstMinute;
+			}
+			int aMinute = this.nextValue(MINUTES, minute, direction);
+			if (aMinute == NONE) {
+				hour += direction;
+				minute = firstMinute;
+				continue;
+			}
+			fields[MINUTES] = aMinute;
+			fields[HOURS] = hour;
+			fields[DAYS] = day;
+			fields[MONTHS] = month;
+			fields[YEAR_REFERENCE_FIELD] = year;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the closest value of a field (including the given one) that
+	 * belongs to the cron expression, forwards or backwards.
+	 *
+	 * @param field     MINUTES, HOURS or MONTHS.
+	 * @param value     Value to start from.
+	 * @param direction 1 or -1, indicating forwards or backwards, respectively.
+	 * @return The value, or NONE if there is none within the field range.
+	 */
+	protected int nextValue(int field, int value, int direction) {
+		if (value < RANGES[field * 2] || value > RANGES[field * 2 + 1]) {
+			return NONE;
+		}
+		long mask = this.crontabMasks[field];
+		if (direction > 0) {
+			mask &= -1L << value;
+			return mask == 0 ? NONE : Long.numberOfTrailingZeros(mask);
+		}
+		mask &= (2L << value) - 1;
+		return mask == 0 ? NONE : 63 - Long.numberOfLeadingZeros(mask);
+	}
+
+	/**
+	 * Returns the closest day of a month (including the given one) that
+	 * matches both the days and the days of the week of the cron expression,
+	 * and is not an excluded day, forwards or backwards.
+	 *
+	 * @param year      Year.
+	 * @param month     Month (1 to 12).
+	 * @param day       Day to start from (clamped to the month length when
+	 *                  going backwards).
+	 * @param direction 1 or -1, indicating forwards or backwards, respectively.
+	 * @return The day, or NONE if there is none within the month.
+	 */
+	protected int nextDay(int year, int month, int day, int direction) {
+		if (month < MIN_MONTHS || month > MAX_MONTHS) {
+			return NONE;
+		}
+		int daysInMonth = getDaysInMonth(year, month);
+		if (day > daysInMonth && direction < 0) {
+			day = daysInMonth;
+		}
+		if (day < MIN_DAYS || day > daysInMonth) {
+			return NONE;
+		}
+		/* The days of the week of the cron (Sunday as 0), rotated so that bit
+		 * 0 is the 1st of the month, repeated every week of the month and
+		 * shifted to the days of the month */
+		long daysOfWeek = this.crontabMasks[DAYS_OF_WEEK];
+		daysOfWeek = (daysOfWeek | daysOfWeek >>> 7) & 0x7f;
+		int firstDayOfWeek = getDayOfWeek(year, month, MIN_DAYS);
+		daysOfWeek = (daysOfWeek >>> firstDayOfWeek |
+				daysOfWeek << (7 - firstDayOfWeek)) & 0x7f;
+		long days = this.crontabMasks[DAYS] & (daysOfWeek * EVERY_WEEK) << 1 &
+				((2L << daysInMonth) - 2);
+		if (this.exclusions != null) {
+			days &= ~this.exclusions.getExcludedDays(year, month);
+		}
+		if (direction > 0) {
+			days &= -1L << day;
+			return days == 0 ? NONE : Long.numberOfTrailingZeros(days);
+		}
+		days &= (2L << day) - 1;
+		return days == 0 ? NONE : 63 - Long.numberOfLeadingZeros(days);
+	}
+
+	/**
+	 * Returns the number of days of a month of the (proleptic) Gregorian
+	 * calendar.
+	 *
+	 * @param year  Year.
+	 * @param month Month (1 to 12).
+	 * @return Number of days of the month.
+	 */
+	protected static int getDaysInMonth(int year, int month) {
+		if (month == 2 &&
+				(year % 4 == 0 && (year % 100 != 0 || year % 400 == 0))) {
+			return 29;
+		}
+		return DAYS_IN_MONTH[month];
+	}
+
+	/**
+	 * Returns the day of the week of a date of the (proleptic) Gregorian
+	 * calendar.
+	 *
+	 * @param year  Year.
+	 * @param month Month (1 to 12).
+	 * @param day   Day of the month.
+	 * @return Day of the week (Sunday = 0, ..., Saturday = 6).
+	 */
+	protected static int getDayOfWeek(int year, int month, int day) {
+		/* Sakamoto's method */
+		if (month < 3) {
+			--year;
+		}
+		return (year + year / 4 - year / 100 + year / 400 +
+				DAY_OF_WEEK_OFFSETS[month - 1] + day) % 7;
+	}
+
+	/**
+	 * Objects used by the search of a thread.
+	 */
+	protected static class Scratch {
+		/**
+		 * Fields of the reference date {minutes, hour, day, month, year}.
+		 */
+		protected int[] fields = new int[NUMBER_OF_FIELDS];
+		/**
+		 * Fields where the forwards search of a window starts.
+		 */
+		protected int[] nextFields = new int[NUMBER_OF_FIELDS];
+		/**
+		 * Dates {previous, next} of a window.
+		 */
+		protected long[] window = new long[2];
+		/**
+		 * Calendar used to read and convert dates.
+		 */
+		protected Calendar calendar = new GregorianCalendar();
+
+		/**
+		 * Sets the calendar to the time zone and time of a reference.
+		 *
+		 * @param reference The reference calendar.
+		 * @return The calendar.
+		 */
+		protected Calendar getCalendar(Calendar reference) {
+			this.calendar.setTimeZone(reference.getTimeZone());
+			this.calendar.setTimeInMillis(reference.getTimeInMillis());
+			return this.calendar;
+		}
+	}
+
+	/**
+	 * A window of matches [previous, next) remembered by a cron, along with
+	 * what it was found for. Instances are immutable.
+	 */
+	protected static class MemoizedWindow {
+		/**
+		 * Time zone of the reference (a private copy).
+		 */
+		protected final TimeZone zone;
+		protected final int cronRunSeconds;
+		protected final int cronRunMillis;
+		/**
+		 * Modifications of the exclusions when the window was found.
+		 */
+		protected final int modifications;
+		/**
+		 * The previous (or same) match, in milliseconds.
+		 */
+		protected final long previous;
+		/**
+		 * The next match, in milliseconds.
+		 */
+		protected final long next;
+
+		protected MemoizedWindow(TimeZone zone, int cronRunSeconds,
+								 int cronRunMillis, int modifications,
+								 long previous, long next) {
+			this.zone = zone;
+			this.cronRunSeconds = cronRunSeconds;
+			this.cronRunMillis = cronRunMillis;
+			this.modifications = modifications;
+			this.previous = previous;
+			this.next = next;
+		}
+
+		/**
+		 * Tells whether the window is the one of a reference.
+		 *
+		 * @param time           The reference, in milliseconds.
+		 * @param zone           The time zone of the reference.
+		 * @param cronRunSeconds Seconds after the minute when the cron engine
+		 *                       runs.
+		 * @param cronRunMillis  Milliseconds after the second when the cron
+		 *                       engine runs.
+		 * @param modifications  Modifications of the exclusions of the cron.
+		 * @return True if the reference falls in the window and everything
+		 *         else is the same, false if not.
+		 */
+		protected boolean contains(long time, TimeZone zone, int cronRunSeconds,
+								   int cronRunMillis, int modifications) {
+			return time >= this.previous && time < this.next &&
+					cronRunSeconds == this.cronRunSeconds &&
+					cronRunMillis == this.cronRunMillis &&
+					modifications == this.modifications &&
+					(zone == this.zone || zone.equals(this.zone));
 		}
-		return null;
 	}
 }
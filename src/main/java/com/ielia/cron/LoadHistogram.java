@@ -0,0 +1,256 @@
+package com.ielia.cron;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Per-minute load over a horizon, as computed by a ScheduleLoadAnalyzer. Each
+ * bin is a wall-clock minute counted from the midnight the horizon starts at.
+ *
+ * @author ielia
+ */
+public class LoadHistogram {
+	/**
+	 * The crons analyzed, in order of addition to the analyzer.
+	 */
+	protected List<FixedPeriodCron> crons;
+	/**
+	 * The weights of the crons analyzed, in the same order.
+	 */
+	protected double[] weights;
+	/**
+	 * Midnight of the first day of the horizon.
+	 */
+	protected Calendar start;
+	/**
+	 * {day, month, day of the week} of each day of the horizon.
+	 */
+	protected int[][] dayFields;
+	/**
+	 * Load of each minute of the horizon.
+	 */
+	protected double[] load;
+	/**
+	 * Sorted copy of the load, built on the first percentile query.
+	 */
+	protected double[] sortedLoad;
+
+	/**
+	 * Creates a histogram.
+	 *
+	 * @param crons     The crons analyzed (not copied).
+	 * @param weights   Their weights, in the same order (not copied).
+	 * @param start     Midnight of the first day of the horizon.
+	 * @param dayFields {day, month, day of the week} of each day.
+	 * @param load      Load of each minute of the horizon.
+	 */
+	protected LoadHistogram(List<FixedPeriodCron> crons, double[] weights,
+							Calendar start, int[][] dayFields, double[] load) {
+		this.crons = crons;
+		this.weights = weights;
+		this.start = start;
+		this.dayFields = dayFields;
+		this.load = load;
+	}
+
+	/**
+	 * The number of minutes (bins) of the horizon.
+	 *
+	 * @return Number of minutes.
+	 */
+	public int size() {
+		return this.load.length;
+	}
+
+	/**
+	 * The crons analyzed.
+	 *
+	 * @return Crons, in order of addition to the analyzer (unmodifiable).
+	 */
+	public List<FixedPeriodCron> getCrons() {
+		return Collections.unmodifiableList(this.crons);
+	}
+
+	/**
+	 * The weight a cron was analyzed with.
+	 *
+	 * @param index Position of the cron, in order of addition.
+	 * @return The weight of the cron.
+	 */
+	public double getWeight(int index) {
+		return this.weights[index];
+	}
+
+	/**
+	 * The load of a minute of the horizon.
+	 *
+	 * @param minute Minute, counted from the start of the horizon.
+	 * @return Sum of the weights of the crons firing at that minute.
+	 */
+	public double getLoad(int minute) {
+		return this.load[minute];
+	}
+
+	/**
+	 * The load of the whole horizon.
+	 *
+	 * @return Sum of the loads of every minute.
+	 */
+	public double getTotalLoad() {
+		double total = 0;
+		for (double minuteLoad : this.load) {
+			total += minuteLoad;
+		}
+		return total;
+	}
+
+	/**
+	 * The calendar of a minute of the horizon.
+	 *
+	 * @param minute Minute, counted from the start of the horizon.
+	 * @return Calendar set to that minute.
+	 */
+	public Calendar getTime(int minute) {
+		Calendar time = (Calendar) this.start.clone();
+		time.add(Calendar.DATE, minute / ScheduleLoadAnalyzer.MINUTES_PER_DAY);
+		int minuteOfDay = minute % ScheduleLoadAnalyzer.MINUTES_PER_DAY;
+		time.set(Calendar.HOUR_OF_DAY,
+				minuteOfDay / ScheduleLoadAnalyzer.MINUTES_PER_HOUR);
+		time.set(Calendar.MINUTE,
+				minuteOfDay % ScheduleLoadAnalyzer.MINUTES_PER_HOUR);
+		return time;
+	}
+
+	/**
+	 * Returns a percentile of the per-minute load (nearest-rank method).
+	 *
+	 * @param percentile Percentile, between 0 and 100.
+	 * @return Load that is not exceeded by that percentage of the minutes.
+	 */
+	public double getPercentile(double percentile) {
+		if (percentile < 0 || percentile > 100) {
+			throw new IllegalArgumentException("Percentile must be between 0 " +
+					"and 100.");
+		}
+		if (this.sortedLoad == null) {
+			double[] sorted = this.load.clone();
+			Arrays.sort(sorted);
+			this.sortedLoad = sorted;
+		}
+		int rank = (int) Math.ceil(percentile / 100 * this.sortedLoad.length);
+		return this.sortedLoad[Math.max(rank - 1, 0)];
+	}
+
+	/**
+	 * Returns the most loaded minutes of the horizon, most loaded first (and
+	 * earliest first, in case of a tie).
+	 *
+	 * @param count Maximum number of peaks.
+	 * @return The peaks.
+	 */
+	public List<Peak> getPeaks(int count) {
+		PriorityQueue<Peak> peaks = new PriorityQueue<Peak>();
+		for (int minute = 0; minute < this.load.length && count > 0; ++minute) {
+			if (peaks.size() < count) {
+				peaks.add(new Peak(minute, this.load[minute]));
+			} else if (this.load[minute] > peaks.peek().load) {
+				peaks.poll();
+				peaks.add(new Peak(minute, this.load[minute]));
+			}
+		}
+		List<Peak> result = new ArrayList<Peak>(peaks);
+		Collections.sort(result, Collections.reverseOrder());
+		return result;
+	}
+
+	/**
+	 * Returns the crons firing at a minute of the horizon.
+	 *
+	 * @param minute Minute, counted from the start of the horizon.
+	 * @return The crons, in order of addition to the analyzer.
+	 */
+	public List<FixedPeriodCron> getContributors(int minute) {
+		int[] fields =
+				this.dayFields[minute / ScheduleLoadAnalyzer.MINUTES_PER_DAY];
+		int minuteOfDay = minute % ScheduleLoadAnalyzer.MINUTES_PER_DAY;
+		long hourBit =
+				1L << (minuteOfDay / ScheduleLoadAnalyzer.MINUTES_PER_HOUR);
+		long minuteBit =
+				1L << (minuteOfDay % ScheduleLoadAnalyzer.MINUTES_PER_HOUR);
+		List<FixedPeriodCron> contributors = new ArrayList<FixedPeriodCron>();
+		for (FixedPeriodCron cron : this.crons) {
+			if ((cron.getFieldMask(FixedPeriodCron.MINUTES) & minuteBit) != 0 &&
+					(cron.getFieldMask(FixedPeriodCron.HOURS) & hourBit) != 0 &&
+					(cron.getFieldMask(FixedPeriodCron.DAYS) &
+							(1L << fields[0])) != 0 &&
+					(cron.getFieldMask(FixedPeriodCron.MONTHS) &
+							(1L << fields[1])) != 0 &&
+					(cron.getFieldMask(FixedPeriodCron.DAYS_OF_WEEK) &
+							(1L << fields[2])) != 0) {
+				contributors.add(cron);
+			}
+		}
+		return contributors;
+	}
+
+	/**
+	 * A minute of the horizon and its load. Peaks are ordered by load and then
+	 * (reversely) by minute, so the most loaded, earliest peak is the greatest.
+	 */
+	public class Peak implements Comparable<Peak> {
+		protected int minute;
+		protected double load;
+
+		protected Peak(int minute, double load) {
+			this.minute = minute;
+			this.load = load;
+		}
+
+		/**
+		 * The minute of the peak.
+		 *
+		 * @return Minute, counted from the start of the horizon.
+		 */
+		public int getMinute() {
+			return this.minute;
+		}
+
+		/**
+		 * The load of the peak.
+		 *
+		 * @return Sum of the weights of the crons firing at the peak.
+		 */
+		public double getLoad() {
+			return this.load;
+		}
+
+		/**
+		 * The calendar of the peak.
+		 *
+		 * @return Calendar set to the minute of the peak.
+		 */
+		public Calendar getTime() {
+			return LoadHistogram.this.getTime(this.minute);
+		}
+
+		/**
+		 * The crons firing at the peak.
+		 *
+		 * @return The crons, in order of addition to the analyzer.
+		 */
+		public List<FixedPeriodCron> getContributors() {
+			return LoadHistogram.this.getContributors(this.minute);
+		}
+
+		public int compareTo(Peak other) {
+			if (this.load != other.load) {
+				return this.load < other.load ? -1 : 1;
+			}
+			return other.minute - this.minute;
+		}
+	}
+}
@@ -0,0 +1,267 @@
+package com.ielia.cron;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Computes how many crons (optionally weighted by the expected cost of their
+ * jobs) fire at each minute of a horizon of a day, a week or a year.
+ * <p/>
+ * <p>Fires are not enumerated one by one. Crons are grouped by the shape of
+ * their day fields (months, days and days of the week) and, within each group,
+ * the outer product of the hours and minutes masks is accumulated into a
+ * minute-of-the-day profile. Every day of the horizon then adds the profiles of
+ * the groups that match it. Minutes are wall-clock minutes, so daylight saving
+ * transitions are not taken into account.</p>
+ *
+ * @author ielia
+ */
+public class ScheduleLoadAnalyzer {
+	public static final int MINUTES_PER_HOUR = 60;
+	public static final int MINUTES_PER_DAY = 24 * MINUTES_PER_HOUR;
+	/**
+	 * The crons to be analyzed.
+	 */
+	protected List<FixedPeriodCron> crons = new ArrayList<FixedPeriodCron>();
+	/**
+	 * The weights of the crons to be analyzed, in the same order.
+	 */
+	protected List<Double> weights = new ArrayList<Double>();
+
+	/**
+	 * Adds a cron with a weight of 1.
+	 *
+	 * @param cron The cron.
+	 */
+	public void add(FixedPeriodCron cron) {
+		this.add(cron, 1);
+	}
+
+	/**
+	 * Adds a cron weighted by the expected cost of its job. Crons with
+	 * exclusions and unions (CompositeCron) do not fire at every minute of
+	 * their masks, so they are not accepted (unions may be added as their
+	 * members).
+	 *
+	 * @param cron   The cron.
+	 * @param weight Load added by each of its fires.
+	 */
+	public void add(FixedPeriodCron cron, double weight) {
+		if (cron == null) {
+			throw new IllegalArgumentException("Cron cannot be null.");
+		} else if (cron.getExclusions() != null) {
+			throw new IllegalArgumentException(
+					"Crons with exclusions cannot be analyzed.");
+		} else if (cron instanceof CompositeCron) {
+			throw new IllegalArgumentException(
+					"Unions must be analyzed as their members.");
+		}
+		this.crons.add(cron);
+		this.weights.add(weight);
+	}
+
+	/**
+	 * The crons added so far.
+	 *
+	 * @return Crons to be analyzed (unmodifiable).
+	 */
+	public List<FixedPeriodCron> getCrons() {
+		return Collections.unmodifiableList(this.crons);
+	}
+
+	/**
+	 * The weight a cron was added with.
+	 *
+	 * @param index Position of the cron, in order of addition.
+	 * @return The weight of the cron.
+	 */
+	public double getWeight(int index) {
+		return this.weights.get(index);
+	}
+
+	/**
+	 * Computes the per-minute load histogram over a horizon. The histogram
+	 * keeps a copy of the crons and weights analyzed, so crons added later do
+	 * not show up in it.
+	 *
+	 * @param start   Any moment of the first day of the horizon (the horizon
+	 *                starts at its midnight).
+	 * @param horizon Calendar.DATE, Calendar.WEEK_OF_YEAR or Calendar.YEAR, for
+	 *                a horizon of a day, a week or a year, respectively.
+	 * @return The load histogram.
+	 */
+	public LoadHistogram analyze(Calendar start, int horizon) {
+		if (horizon != Calendar.DATE && horizon != Calendar.WEEK_OF_YEAR &&
+				horizon != Calendar.YEAR) {
+			throw new IllegalArgumentException("Horizon must be a day, a " +
+					"week or a year.");
+		}
+		Calendar day = (Calendar) start.clone();
+		day.set(Calendar.HOUR_OF_DAY, 0);
+		day.set(Calendar.MINUTE, 0);
+		day.set(Calendar.SECOND, 0);
+		day.set(Calendar.MILLISECOND, 0);
+		Calendar histogramStart = (Calendar) day.clone();
+		Calendar end = (Calendar) day.clone();
+		end.add(horizon, 1);
+		int numberOfDays = 0;
+		for (Calendar helper = (Calendar) day.clone(); helper.before(end);
+			 helper.add(Calendar.DATE, 1)) {
+			++numberOfDays;
+		}
+
+		List<DayShape> shapes = this.getDayShapes();
+		int[][] dayFields = new int[numberOfDays][];
+		double[] load = new double[numberOfDays * MINUTES_PER_DAY];
+		for (int dayIndex = 0; dayIndex < numberOfDays; ++dayIndex) {
+			int[] fields = {day.get(Calendar.DATE),
+					day.get(Calendar.MONTH) + 1,
+					day.get(Calendar.DAY_OF_WEEK) - 1};
+			dayFields[dayIndex] = fields;
+			int offset = dayIndex * MINUTES_PER_DAY;
+			for (DayShape shape : shapes) {
+				if (shape.matches(fields[0], fields[1], fields[2])) {
+					for (int minute = 0; minute < MINUTES_PER_DAY; ++minute) {
+						load[offset + minute] += shape.profile[minute];
+					}
+				}
+			}
+			day.add(Calendar.DATE, 1);
+		}
+		double[] weights = new double[this.weights.size()];
+		for (int i = 0; i < weights.length; ++i) {
+			weights[i] = this.weights.get(i);
+		}
+		return new LoadHistogram(new ArrayList<FixedPeriodCron>(this.crons),
+				weights, histogramStart, dayFields, load);
+	}
+
+	/**
+	 * Groups the crons by the shape of their day fields and accumulates the
+	 * minute-of-the-day profile of each group.
+	 *
+	 * @return The day shapes with their profiles.
+	 */
+	protected List<DayShape> getDayShapes() {
+		/* First, add up the weights of identical minute/hour masks. */
+		Map<DayShape, Map<TimeShape, Double>> weightsByShape =
+				new HashMap<DayShape, Map<TimeShape, Double>>();
+		for (int i = 0; i < this.crons.size(); ++i) {
+			FixedPeriodCron cron = this.crons.get(i);
+			DayShape dayShape = new DayShape(
+					cron.getFieldMask(FixedPeriodCron.DAYS),
+					cron.getFieldMask(FixedPeriodCron.MONTHS),
+					cron.getFieldMask(FixedPeriodCron.DAYS_OF_WEEK));
+			TimeShape timeShape = new TimeShape(
+					cron.getFieldMask(FixedPeriodCron.MINUTES),
+					cron.getFieldMask(FixedPeriodCron.HOURS));
+			Map<TimeShape, Double> timeWeights = weightsByShape.get(dayShape);
+			if (timeWeights == null) {
+				timeWeights = new HashMap<TimeShape, Double>();
+				weightsByShape.put(dayShape, timeWeights);
+			}
+			Double weight = timeWeights.get(timeShape);
+			timeWeights.put(timeShape,
+					(weight == null ? 0 : weight) + this.weights.get(i));
+		}
+		/* Then, convolve the minute and hour masks of each group. */
+		List<DayShape> shapes = new ArrayList<DayShape>();
+		for (Map.Entry<DayShape, Map<TimeShape, Double>> entry :
+				weightsByShape.entrySet()) {
+			DayShape shape = entry.getKey();
+			shape.profile = new double[MINUTES_PER_DAY];
+			for (Map.Entry<TimeShape, Double> timeEntry :
+					entry.getValue().entrySet()) {
+				long minutes = timeEntry.getKey().minutes;
+				long hours = timeEntry.getKey().hours;
+				double weight = timeEntry.getValue();
+				for (int hour = FixedPeriodCron.MIN_HOURS;
+					 hour <= FixedPeriodCron.MAX_HOURS; ++hour) {
+					if ((hours & (1L << hour)) == 0) {
+						continue;
+					}
+					for (int minute = FixedPeriodCron.MIN_MINUTES;
+						 minute <= FixedPeriodCron.MAX_MINUTES; ++minute) {
+						if ((minutes & (1L << minute)) != 0) {
+							shape.profile[hour * MINUTES_PER_HOUR + minute] +=
+									weight;
+						}
+					}
+				}
+			}
+			shapes.add(shape);
+		}
+		return shapes;
+	}
+
+	/**
+	 * The masks of the day fields (days, months and days of the week) and the
+	 * minute-of-the-day load profile of the crons sharing them.
+	 */
+	protected static class DayShape {
+		protected long days;
+		protected long months;
+		protected long daysOfWeek;
+		protected double[] profile;
+
+		protected DayShape(long days, long months, long daysOfWeek) {
+			this.days = days;
+			this.months = months;
+			this.daysOfWeek = daysOfWeek;
+		}
+
+		protected boolean matches(int day, int month, int dayOfWeek) {
+			return (this.days & (1L << day)) != 0 &&
+					(this.months & (1L << month)) != 0 &&
+					(this.daysOfWeek & (1L << dayOfWeek)) != 0;
+		}
+
+		@Override
+		public boolean equals(Object object) {
+			if (!(object instanceof DayShape)) {
+				return false;
+			}
+			DayShape other = (DayShape) object;
+			return this.days == other.days && this.months == other.months &&
+					this.daysOfWeek == other.daysOfWeek;
+		}
+
+		@Override
+		public int hashCode() {
+			long hash = this.days * 31 * 31 + this.months * 31 + this.daysOfWeek;
+			return (int) (hash ^ (hash >>> 32));
+		}
+	}
+
+	/**
+	 * The masks of the time fields (minutes and hours) of a cron.
+	 */
+	protected static class TimeShape {
+		protected long minutes;
+		protected long hours;
+
+		protected TimeShape(long minutes, long hours) {
+			this.minutes = minutes;
+			this.hours = hours;
+		}
+
+		@Override
+		public boolean equals(Object object) {
+			if (!(object instanceof TimeShape)) {
+				return false;
+			}
+			TimeShape other = (TimeShape) object;
+			return this.minutes == other.minutes && this.hours == other.hours;
+		}
+
+		@Override
+		public int hashCode() {
+			long hash = this.minutes * 31 + this.hours;
+			return (int) (hash ^ (hash >>> 32));
+		}
+	}
+}
@@ -0,0 +1,202 @@
+package com.ielia.cron;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Schedules (crons by identifier) that can be changed while they are read,
+ * with no locking: readers take the current ScheduleSnapshot, which never
+ * changes, and writers publish new snapshots through an atomic reference.
+ * <p/>
+ * <p>Snapshots share everything but the changed paths of their tries with the
+ * snapshots they come from, so a change costs a handful of small arrays
+ * whatever the number of schedules. Single changes (put and remove) are
+ * published one by one. Batches (see batch) are published at once: a burst
+ * of changes makes a single new snapshot, copying every node it touches only
+ * once.</p>
+ * <p/>
+ * <p>Writers never block either: when another writer publishes first, the
+ * changes are made again on its snapshot and published once more. Readers
+ * can tell whether anything changed by the version of the snapshots, which
+ * grows with every publish. Instances are thread-safe.</p>
+ *
+ * @author ielia
+ */
+public class ScheduleRegistry {
+	/**
+	 * The last snapshot published.
+	 */
+	protected final AtomicReference<ScheduleSnapshot> snapshot =
+			new AtomicReference<ScheduleSnapshot>(ScheduleSnapshot.EMPTY);
+
+	/**
+	 * The last snapshot published. It never changes, so it can be read for as
+	 * long as needed (e.g. a whole minute tick).
+	 *
+	 * @return The snapshot.
+	 */
+	public ScheduleSnapshot snapshot() {
+		return this.snapshot.get();
+	}
+
+	/**
+	 * The cron of a schedule in the last snapshot published.
+	 *
+	 * @param id Identifier of the schedule.
+	 * @return The cron (or null if there is no such schedule).
+	 */
+	public FixedPeriodCron get(String id) {
+		return this.snapshot.get().get(id);
+	}
+
+	/**
+	 * Adds (or replaces) a schedule and publishes it.
+	 *
+	 * @param id   Identifier of the schedule.
+	 * @param cron The cron of the schedule.
+	 * @return The previous cron of the schedule (or null).
+	 */
+	public FixedPeriodCron put(String id, FixedPeriodCron cron) {
+		while (true) {
+			ScheduleSnapshot base = this.snapshot.get();
+			ScheduleSnapshot.Editor editor = new ScheduleSnapshot.Editor(base);
+			FixedPeriodCron previous = editor.put(id, cron);
+			if (previous == cron || this.publish(base, editor)) {
+				return previous;
+			}
+		}
+	}
+
+	/**
+	 * Removes a schedule and publishes its removal.
+	 *
+	 * @param id Identifier of the schedule.
+	 * @return The cron of the schedule (or null if there was none).
+	 */
+	public FixedPeriodCron remove(String id) {
+		while (true) {
+			ScheduleSnapshot base = this.snapshot.get();
+			ScheduleSnapshot.Editor editor = new ScheduleSnapshot.Editor(base);
+			FixedPeriodCron previous = editor.remove(id);
+			if (previous == null || this.publish(base, editor)) {
+				return previous;
+			}
+		}
+	}
+
+	/**
+	 * Starts a batch of changes, published all at once.
+	 *
+	 * @return The batch.
+	 */
+	public Batch batch() {
+		return new Batch();
+	}
+
+	/**
+	 * Publishes the changes of an editor, unless another snapshot was
+	 * published after the one they were made on.
+	 *
+	 * @param base   The snapshot the changes were made on.
+	 * @param editor The changes.
+	 * @return True if they were published, false if not.
+	 */
+	protected boolean publish(ScheduleSnapshot base,
+							  ScheduleSnapshot.Editor editor) {
+		return this.snapshot.compareAndSet(base,
+				editor.toSnapshot(base.getVersion() + 1));
+	}
+
+	/**
+	 * Changes to the schedules of a registry, kept until they are published
+	 * all at once. Batches are not thread-safe: every writer uses its own.
+	 */
+	public class Batch {
+		/**
+		 * Identifiers of the schedules changed, in order.
+		 */
+		protected List<String> ids = new ArrayList<String>();
+		/**
+		 * Their new crons, in the same order (null for removals).
+		 */
+		protected List<FixedPeriodCron> crons = new ArrayList<FixedPeriodCron>();
+
+		protected Batch() {
+		}
+
+		/**
+		 * Adds (or replaces) a schedule.
+		 *
+		 * @param id   Identifier of the schedule.
+		 * @param cron The cron of the schedule.
+		 * @return This batch.
+		 */
+		public Batch put(String id, FixedPeriodCron cron) {
+			if (id == null || cron == null) {
+				throw new IllegalArgumentException(
+						"Identifier and cron cannot be null.");
+			}
+			this.ids.add(id);
+			this.crons.add(cron);
+			return this;
+		}
+
+		/**
+		 * Removes a schedule.
+		 *
+		 * @param id Identifier of the schedule.
+		 * @return This batch.
+		 */
+		public Batch remove(String id) {
+			if (id == null) {
+				throw new IllegalArgumentException("Identifier cannot be null.");
+			}
+			this.ids.add(id);
+			this.crons.add(null);
+			return this;
+		}
+
+		/**
+		 * Number of changes in the batch.
+		 *
+		 * @return The number of changes.
+		 */
+		public int size() {
+			return this.ids.size();
+		}
+
+		/**
+		 * Publishes the changes in a single snapshot, and empties the batch.
+		 *
+		 * @return The snapshot published (or the last one, if there were no
+		 *         changes).
+		 */
+		public ScheduleSnapshot publish() {
+			if (this.ids.isEmpty()) {
+				return ScheduleRegistry.this.snapshot();
+			}
+			while (true) {
+				ScheduleSnapshot base = ScheduleRegistry.this.snapshot.get();
+				ScheduleSnapshot.Editor editor =
+						new ScheduleSnapshot.Editor(base);
+				for (int i = 0; i < this.ids.size(); ++i) {
+					FixedPeriodCron cron = this.crons.get(i);
+					if (cron == null) {
+						editor.remove(this.ids.get(i));
+					} else {
+						editor.put(this.ids.get(i), cron);
+					}
+				}
+				ScheduleSnapshot published =
+						editor.toSnapshot(base.getVersion() + 1);
+				if (ScheduleRegistry.this.snapshot.compareAndSet(base,
+						published)) {
+					this.ids.clear();
+					this.crons.clear();
+					return published;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,340 @@
+package com.ielia.cron;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Discrete-event simulation of a scheduler running a set of crons, driven by
+ * a VirtualClock, so that the load of a large set of schedules over a long
+ * horizon (e.g. a year) can be reproduced offline in seconds.
+ * <p/>
+ * <p>The simulated scheduler keeps the next fire of every cron in a priority
+ * queue. It jumps the clock from one fire to the next, dispatches the fire
+ * and asks the cron for its next match with nextMatchInMillis, relative to
+ * the time of the clock, once per schedule, so a simulation of a million
+ * schedules evaluates a million crons. The simulation records (see
+ * SimulationReport):</p>
+ * <ul>
+ * <li>the number of fires of every simulated minute,</li>
+ * <li>the real time spent by the crons finding their next matches and</li>
+ * <li>the dispatch lag: fires are dispatched one by one, in order, by a single
+ * dispatcher taking a fixed simulated time per fire, so a fire waits for the
+ * ones before it when they are too close.</li>
+ * </ul>
+ * <p>Next matches are searched from the scheduled time of the fires, so the
+ * dispatch lag does not delay the schedules. Instances are not
+ * thread-safe.</p>
+ * <p>Schedules with the same expression (and no exclusions) can be merged
+ * with setMerging, to simulate the load of many schedules quickly: a merged
+ * cron is searched once, and fires as many times as it was added, so the
+ * evaluations of the report are those of the distinct crons only.</p>
+ *
+ * @author ielia
+ */
+public class ScheduleSimulator {
+	protected static final long MILLIS_PER_MINUTE = 60 * 1000;
+	protected static final long NANOS_PER_MILLI = 1000 * 1000;
+	/**
+	 * The clock the scheduler runs on.
+	 */
+	protected final VirtualClock clock;
+	protected final int cronRunSeconds;
+	protected final int cronRunMillis;
+	/**
+	 * Simulated time the dispatcher takes per fire, in nanoseconds.
+	 */
+	protected long dispatchNanos;
+	/**
+	 * Whether schedules with the same expression are merged.
+	 */
+	protected boolean merging;
+	/**
+	 * The crons added (only once each, when merged).
+	 */
+	protected List<FixedPeriodCron> crons = new ArrayList<FixedPeriodCron>();
+	/**
+	 * Number of times each cron was added, in the same order.
+	 */
+	protected int[] counts = new int[16];
+	/**
+	 * Positions of the mergeable crons, by expression (crons with exclusions
+	 * or unions are never merged).
+	 */
+	protected Map<String, Integer> positions = new HashMap<String, Integer>();
+
+	/**
+	 * Creates a simulator running at 0 seconds, 0 milliseconds.
+	 *
+	 * @param clock The clock the scheduler runs on (it starts at its current
+	 *              time).
+	 */
+	public ScheduleSimulator(VirtualClock clock) {
+		this(clock, 0, 0);
+	}
+
+	/**
+	 * Creates a simulator.
+	 *
+	 * @param clock          The clock the scheduler runs on (it starts at its
+	 *                       current time).
+	 * @param cronRunSeconds Seconds after the minute when the cron engine runs.
+	 * @param cronRunMillis  Milliseconds after the second when the cron engine
+	 *                       runs.
+	 */
+	public ScheduleSimulator(VirtualClock clock, int cronRunSeconds,
+							 int cronRunMillis) {
+		if (clock == null) {
+			throw new IllegalArgumentException("Clock cannot be null.");
+		}
+		this.clock = clock;
+		this.cronRunSeconds = cronRunSeconds;
+		this.cronRunMillis = cronRunMillis;
+	}
+
+	/**
+	 * The clock the scheduler runs on.
+	 *
+	 * @return The clock.
+	 */
+	public VirtualClock getClock() {
+		return this.clock;
+	}
+
+	/**
+	 * Sets the simulated time the dispatcher takes per fire (0 by default, so
+	 * there is no lag).
+	 *
+	 * @param dispatchNanos Time per fire, in nanoseconds.
+	 */
+	public void setDispatchNanos(long dispatchNanos) {
+		if (dispatchNanos < 0) {
+			throw new IllegalArgumentException("Dispatch time cannot be " +
+					"negative.");
+		}
+		this.dispatchNanos = dispatchNanos;
+	}
+
+	/**
+	 * Sets whether the schedules added afterwards are merged with those
+	 * added before with the same expression (and no exclusions), so that
+	 * they are searched once (false by default).
+	 *
+	 * @param merging Whether to merge schedules.
+	 */
+	public void setMerging(boolean merging) {
+		this.merging = merging;
+	}
+
+	/**
+	 * Adds a schedule.
+	 *
+	 * @param cron The cron of the schedule.
+	 */
+	public void add(FixedPeriodCron cron) {
+		if (cron == null) {
+			throw new IllegalArgumentException("Cron cannot be null.");
+		}
+		Integer position = null;
+		boolean mergeable = this.merging &&
+				cron.getClass() == FixedPeriodCron.class &&
+				cron.getExclusions() == null;
+		if (mergeable) {
+			position = this.positions.get(cron.toString());
+		}
+		if (position == null) {
+			position = this.crons.size();
+			this.crons.add(cron);
+			if (position == this.counts.length) {
+				this.counts = Arrays.copyOf(this.counts, position * 2);
+			}
+			if (mergeable) {
+				this.positions.put(cron.toString(), position);
+			}
+		}
+		++this.counts[position];
+	}
+
+	/**
+	 * Number of schedules added.
+	 *
+	 * @return The number of schedules.
+	 */
+	public int size() {
+		int size = 0;
+		for (int i = 0; i < this.crons.size(); ++i) {
+			size += this.counts[i];
+		}
+		return size;
+	}
+
+	/**
+	 * Runs the scheduler from the current time of the clock (inclusive) up to
+	 * a given time (exclusive), where the clock is left.
+	 *
+	 * @param toMillis End of the simulation, in milliseconds.
+	 * @return What happened.
+	 */
+	public SimulationReport run(long toMillis) {
+		long fromMillis = this.clock.millis();
+		if (toMillis < fromMillis) {
+			throw new IllegalArgumentException("The simulation cannot end " +
+					"before it starts.");
+		}
+		long minutes = (toMillis - fromMillis + MILLIS_PER_MINUTE - 1) /
+				MILLIS_PER_MINUTE;
+		if (minutes > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("The simulation is too long.");
+		}
+		long runStart = System.nanoTime();
+		SimulationReport report = new SimulationReport(fromMillis,
+				new int[(int) minutes]);
+		Calendar calendar = new GregorianCalendar(
+				TimeZone.getTimeZone(this.clock.getZone()));
+		EventQueue queue = new EventQueue(this.crons.size());
+		/* The first fires, at the start of the simulation or later */
+		for (int i = 0; i < this.crons.size(); ++i) {
+			this.schedule(i, fromMillis - 1, calendar, queue, report);
+		}
+		/* Time at which the dispatcher is free, in nanoseconds from the start */
+		long dispatcherFree = 0;
+		while (queue.size() > 0 && queue.peekTime() < toMillis) {
+			long fire = queue.peekTime();
+			int position = queue.poll();
+			this.clock.advanceTo(fire);
+			int count = this.counts[position];
+			report.fires[(int) ((fire - fromMillis) / MILLIS_PER_MINUTE)] +=
+					count;
+			report.totalFires += count;
+			long scheduled = (fire - fromMillis) * NANOS_PER_MILLI;
+			long dispatchStart = Math.max(scheduled, dispatcherFree);
+			long lag = dispatchStart - scheduled;
+			dispatcherFree = dispatchStart + count * this.dispatchNanos;
+			/* The lags of the fires of the cron: lag, lag + dispatch, ... */
+			report.totalDispatchLagNanos += (double) count * lag +
+					(double) this.dispatchNanos * count * (count - 1) / 2;
+			report.maxDispatchLagNanos = Math.max(report.maxDispatchLagNanos,
+					lag + (count - 1) * this.dispatchNanos);
+			this.schedule(position, this.clock.millis(), calendar, queue,
+					report);
+		}
+		this.clock.advanceTo(toMillis);
+		report.runNanos = System.nanoTime() - runStart;
+		return report;
+	}
+
+	/**
+	 * Finds the next fire of a cron and queues it, if there is any.
+	 *
+	 * @param position  Position of the cron.
+	 * @param reference Time the next fire is searched after, in milliseconds.
+	 * @param calendar  Calendar used as the reference (in the time zone of
+	 *                  the clock).
+	 * @param queue     The queue of fires.
+	 * @param report    The report, where the evaluation time is recorded.
+	 */
+	protected void schedule(int position, long reference, Calendar calendar,
+							EventQueue queue, SimulationReport report) {
+		calendar.setTimeInMillis(reference);
+		long start = System.nanoTime();
+		Long next = this.crons.get(position).nextMatchInMillis(calendar,
+				this.cronRunSeconds, this.cronRunMillis);
+		long cost = System.nanoTime() - start;
+		++report.evaluations;
+		report.evaluationNanos += cost;
+		report.maxEvaluationNanos = Math.max(report.maxEvaluationNanos, cost);
+		if (next != null) {
+			queue.add(reference + next, position);
+		}
+	}
+
+	/**
+	 * Binary min-heap of fires (time and position of the cron), ordered by
+	 * time and then by position, so that simulations are reproducible.
+	 */
+	protected static class EventQueue {
+		protected long[] times;
+		protected int[] positions;
+		protected int size;
+
+		protected EventQueue(int capacity) {
+			this.times = new long[Math.max(capacity, 1)];
+			this.positions = new int[this.times.length];
+		}
+
+		protected int size() {
+			return this.size;
+		}
+
+		protected long peekTime() {
+			return this.times[0];
+		}
+
+		protected void add(long time, int position) {
+			if (this.size == this.times.length) {
+				this.times = Arrays.copyOf(this.times, this.size * 2);
+				this.positions = Arrays.copyOf(this.positions, this.size * 2);
+			}
+			int index = this.size++;
+			while (index > 0) {
+				int parent = (index - 1) >>> 1;
+				if (!this.before(time, position, parent)) {
+					break;
+				}
+				this.times[index] = this.times[parent];
+				this.positions[index] = this.positions[parent];
+				index = parent;
+			}
+			this.times[index] = time;
+			this.positions[index] = position;
+		}
+
+		/**
+		 * Removes the earliest fire.
+		 *
+		 * @return The position of its cron.
+		 */
+		protected int poll() {
+			int first = this.positions[0];
+			long time = this.times[--this.size];
+			int position = this.positions[this.size];
+			int index = 0;
+			while (true) {
+				int child = index * 2 + 1;
+				if (child >= this.size) {
+					break;
+				}
+				if (child + 1 < this.size && this.before(this.times[child + 1],
+						this.positions[child + 1], child)) {
+					++child;
+				}
+				if (!this.before(this.times[child], this.positions[child], time,
+						position)) {
+					break;
+				}
+				this.times[index] = this.times[child];
+				this.positions[index] = this.positions[child];
+				index = child;
+			}
+			this.times[index] = time;
+			this.positions[index] = position;
+			return first;
+		}
+
+		protected boolean before(long time, int position, int index) {
+			return this.before(time, position, this.times[index],
+					this.positions[index]);
+		}
+
+		protected boolean before(long time, int position, long otherTime,
+								 int otherPosition) {
+			return time < otherTime ||
+					time == otherTime && position < otherPosition;
+		}
+	}
+}
@@ -0,0 +1,583 @@
+package com.ielia.cron;
+
+import java.util.AbstractMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Immutable set of schedules (crons by identifier), as published by a
+ * ScheduleRegistry.
+ * <p/>
+ * <p>Schedules are kept in a hash array mapped trie: every node has up to 32
+ * children, picked by 5 bits of the hash of the identifiers, and its array
+ * only holds the children present (as told by a bitmap). Changes copy the
+ * path from the root to the schedule changed, a handful of small arrays, and
+ * share the rest of the trie with the snapshot they come from. Identifiers
+ * with the same hash share a collision node.</p>
+ * <p/>
+ * <p>Batches of changes (see Editor) copy every node they touch only once,
+ * and then change it in place, until they are published: published nodes are
+ * never changed again. Instances can be read by any number of threads with
+ * no locking at all.</p>
+ *
+ * @author ielia
+ */
+public class ScheduleSnapshot implements Iterable<Map.Entry<String, FixedPeriodCron>> {
+	protected static final int BITS = 5;
+	protected static final int MASK = (1 << BITS) - 1;
+	/**
+	 * The snapshot without schedules.
+	 */
+	public static final ScheduleSnapshot EMPTY =
+			new ScheduleSnapshot(null, 0, 0);
+	/**
+	 * Root of the trie (or null, if there are no schedules).
+	 */
+	protected final Node root;
+	protected final int size;
+	/**
+	 * Number of publishes before this snapshot.
+	 */
+	protected final long version;
+
+	protected ScheduleSnapshot(Node root, int size, long version) {
+		this.root = root;
+		this.size = size;
+		this.version = version;
+	}
+
+	/**
+	 * The cron of a schedule.
+	 *
+	 * @param id Identifier of the schedule.
+	 * @return The cron (or null if there is no such schedule).
+	 */
+	public FixedPeriodCron get(String id) {
+		if (id == null || this.root == null) {
+			return null;
+		}
+		return this.root.find(0, hash(id), id);
+	}
+
+	/**
+	 * Number of schedules.
+	 *
+	 * @return The number of schedules.
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Number of publishes before this snapshot, so that readers can tell
+	 * whether the schedules changed since the last snapshot they saw.
+	 *
+	 * @return The version.
+	 */
+	public long getVersion() {
+		return this.version;
+	}
+
+	/**
+	 * Returns a snapshot with a schedule added (or replaced), sharing the
+	 * rest of the schedules with this one. The version is kept.
+	 *
+	 * @param id   Identifier of the schedule.
+	 * @param cron The cron of the schedule.
+	 * @return The snapshot (this one if nothing changed).
+	 */
+	public ScheduleSnapshot with(String id, FixedPeriodCron cron) {
+		Editor editor = new Editor(this);
+		editor.put(id, cron);
+		return editor.toSnapshot(this.version);
+	}
+
+	/**
+	 * Returns a snapshot with a schedule removed, sharing the rest of the
+	 * schedules with this one. The version is kept.
+	 *
+	 * @param id Identifier of the schedule.
+	 * @return The snapshot (this one if nothing changed).
+	 */
+	public ScheduleSnapshot without(String id) {
+		Editor editor = new Editor(this);
+		editor.remove(id);
+		return editor.toSnapshot(this.version);
+	}
+
+	/**
+	 * Iterates over the schedules, in no particular order.
+	 *
+	 * @return Iterator of (identifier, cron) entries.
+	 */
+	@Override
+	public Iterator<Map.Entry<String, FixedPeriodCron>> iterator() {
+		return new EntryIterator(this.root);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		return "ScheduleSnapshot[size=" + this.size + ",version=" +
+				this.version + "]";
+	}
+
+	/**
+	 * Hash of an identifier, with its bits spread so that identifiers with
+	 * close hashes do not share the lower levels of the trie.
+	 *
+	 * @param id The identifier.
+	 * @return The hash.
+	 */
+	protected static int hash(String id) {
+		int hash = id.hashCode();
+		return hash ^ (hash >>> 16) ^ (hash >>> 7);
+	}
+
+	/**
+	 * Changes made to a snapshot, in place on the nodes created by the editor
+	 * (which belong to it until toSnapshot is called), so that every node is
+	 * copied only once. Editors are not thread-safe.
+	 */
+	protected static class Editor {
+		/**
+		 * Marks the nodes this editor may change in place (or null, once the
+		 * changes are turned into a snapshot).
+		 */
+		protected Object owner = new Object();
+		protected Node root;
+		protected int size;
+		protected final ScheduleSnapshot base;
+		/**
+		 * Outcome of the last change.
+		 */
+		protected final Change change = new Change();
+
+		protected Editor(ScheduleSnapshot base) {
+			this.base = base;
+			this.root = base.root;
+			this.size = base.size;
+		}
+
+		/**
+		 * Adds (or replaces) a schedule.
+		 *
+		 * @param id   Identifier of the schedule.
+		 * @param cron The cron of the schedule.
+		 * @return The previous cron of the schedule (or null).
+		 */
+		protected FixedPeriodCron put(String id, FixedPeriodCron cron) {
+			if (id == null || cron == null) {
+				throw new IllegalArgumentException(
+						"Identifier and cron cannot be null.");
+			}
+			this.checkOwner();
+			this.change.reset();
+			int hash = hash(id);
+			if (this.root == null) {
+				this.root = new BitmapNode(this.owner, 0, new Object[0]);
+			}
+			this.root = this.root.put(this.owner, 0, hash, id, cron,
+					this.change);
+			if (this.change.previous == null) {
+				++this.size;
+			}
+			return this.change.previous;
+		}
+
+		/**
+		 * Removes a schedule.
+		 *
+		 * @param id Identifier of the schedule.
+		 * @return The cron of the schedule (or null if there was none).
+		 */
+		protected FixedPeriodCron remove(String id) {
+			if (id == null) {
+				throw new IllegalArgumentException("Identifier cannot be null.");
+			}
+			this.checkOwner();
+			this.change.reset();
+			if (this.root != null) {
+				this.root = this.root.remove(this.owner, 0, hash(id), id,
+						this.change);
+			}
+			if (this.change.previous != null) {
+				--this.size;
+			}
+			return this.change.previous;
+		}
+
+		/**
+		 * Turns the changes into a snapshot. The editor cannot be used any
+		 * longer.
+		 *
+		 * @param version Version of the snapshot.
+		 * @return The snapshot (the base one if nothing changed and the
+		 *         version is the same).
+		 */
+		protected ScheduleSnapshot toSnapshot(long version) {
+			this.checkOwner();
+			this.owner = null;
+			if (this.root == this.base.root && version == this.base.version) {
+				return this.base;
+			} else if (this.size == 0) {
+				return new ScheduleSnapshot(null, 0, version);
+			}
+			return new ScheduleSnapshot(this.root, this.size, version);
+		}
+
+		protected void checkOwner() {
+			if (this.owner == null) {
+				throw new IllegalStateException("The changes were published.");
+			}
+		}
+	}
+
+	/**
+	 * Outcome of a change: the previous cron of the schedule changed.
+	 */
+	protected static class Change {
+		protected FixedPeriodCron previous;
+
+		protected void reset() {
+			this.previous = null;
+		}
+	}
+
+	/**
+	 * A node of the trie. Its array holds pairs of entries: an identifier and
+	 * its cron, or null and a child node.
+	 */
+	protected abstract static class Node {
+		/**
+		 * The editor that may change the node in place (or null).
+		 */
+		protected final Object owner;
+		protected Object[] array;
+
+		protected Node(Object owner, Object[] array) {
+			this.owner = owner;
+			this.array = array;
+		}
+
+		protected abstract FixedPeriodCron find(int shift, int hash, String id);
+
+		/**
+		 * Adds (or replaces) a schedule.
+		 *
+		 * @return The node with the schedule (this one if it was changed in
+		 *         place or nothing changed).
+		 */
+		protected abstract Node put(Object owner, int shift, int hash,
+									String id, FixedPeriodCron cron,
+									Change change);
+
+		/**
+		 * Removes a schedule.
+		 *
+		 * @return The node without the schedule (or null if it is left
+		 *         empty).
+		 */
+		protected abstract Node remove(Object owner, int shift, int hash,
+									   String id, Change change);
+	}
+
+	/**
+	 * A node with up to 32 entries, one per 5 bits of the hash at its level.
+	 */
+	protected static class BitmapNode extends Node {
+		/**
+		 * Bit <i>n</i> is set if there is an entry for the value <i>n</i> of the
+		 * 5 bits of the hash.
+		 */
+		protected int bitmap;
+
+		protected BitmapNode(Object owner, int bitmap, Object[] array) {
+			super(owner, array);
+			this.bitmap = bitmap;
+		}
+
+		@Override
+		protected FixedPeriodCron find(int shift, int hash, String id) {
+			int bit = 1 << ((hash >>> shift) & MASK);
+			if ((this.bitmap & bit) == 0) {
+				return null;
+			}
+			int index = Integer.bitCount(this.bitmap & (bit - 1)) * 2;
+			Object key = this.array[index];
+			Object value = this.array[index + 1];
+			if (key == null) {
+				return ((Node) value).find(shift + BITS, hash, id);
+			}
+			return id.equals(key) ? (FixedPeriodCron) value : null;
+		}
+
+		@Override
+		protected Node put(Object owner, int shift, int hash, String id,
+						   FixedPeriodCron cron, Change change) {
+			int bit = 1 << ((hash >>> shift) & MASK);
+			int index = Integer.bitCount(this.bitmap & (bit - 1)) * 2;
+			if ((this.bitmap & bit) == 0) {
+				Object[] array = new Object[this.array.length + 2];
+				System.arraycopy(this.array, 0, array, 0, index);
+				array[index] = id;
+				array[index + 1] = cron;
+				System.arraycopy(this.array, index, array, index + 2,
+						this.array.length - index);
+				if (this.owner == owner) {
+					this.bitmap |= bit;
+					this.array = array;
+					return this;
+				}
+				return new BitmapNode(owner, this.bitmap | bit, array);
+			}
+			Object key = this.array[index];
+			Object value = this.array[index + 1];
+			if (key == null) {
+				Node child = ((Node) value).put(owner, shift + BITS, hash, id,
+						cron, change);
+				return child == value ? this :
+						this.edit(owner, index + 1, null, child);
+			} else if (id.equals(key)) {
+				change.previous = (FixedPeriodCron) value;
+				return value == cron ? this :
+						this.edit(owner, index + 1, null, cron);
+			}
+			/* Two identifiers with the same bits at this level */
+			return this.edit(owner, index, null, createNode(owner,
+					shift + BITS, (String) key, (FixedPeriodCron) value, hash,
+					id, cron));
+		}
+
+		@Override
+		protected Node remove(Object owner, int shift, int hash, String id,
+							  Change change) {
+			int bit = 1 << ((hash >>> shift) & MASK);
+			if ((this.bitmap & bit) == 0) {
+				return this;
+			}
+			int index = Integer.bitCount(this.bitmap & (bit - 1)) * 2;
+			Object key = this.array[index];
+			Object value = this.array[index + 1];
+			if (key == null) {
+				Node child = ((Node) value).remove(owner, shift + BITS, hash, id,
+						change);
+				if (child == value) {
+					return this;
+				} else if (child != null) {
+					return this.edit(owner, index + 1, null, child);
+				}
+			} else if (id.equals(key)) {
+				change.previous = (FixedPeriodCron) value;
+			} else {
+				return this;
+			}
+			if (this.bitmap == bit) {
+				return null;
+			}
+			Object[] array = new Object[this.array.length - 2];
+			System.arraycopy(this.array, 0, array, 0, index);
+			System.arraycopy(this.array, index + 2, array, index,
+					this.array.length - index - 2);
+			if (this.owner == owner) {
+				this.bitmap ^= bit;
+				this.array = array;
+				return this;
+			}
+			return new BitmapNode(owner, this.bitmap ^ bit, array);
+		}
+
+		/**
+		 * Sets an entry, in place if the node belongs to the editor, or in a
+		 * copy of the node if not.
+		 *
+		 * @return The node changed.
+		 */
+		protected Node edit(Object owner, int index, Object key, Object value) {
+			BitmapNode node = this;
+			if (this.owner != owner) {
+				node = new BitmapNode(owner, this.bitmap, this.array.clone());
+			}
+			if (index % 2 == 0) {
+				node.array[index] = key;
+				node.array[index + 1] = value;
+			} else {
+				node.array[index] = value;
+			}
+			return node;
+		}
+	}
+
+	/**
+	 * A node with the schedules whose identifiers have the same hash.
+	 */
+	protected static class CollisionNode extends Node {
+		protected final int hash;
+
+		protected CollisionNode(Object owner, int hash, Object[] array) {
+			super(owner, array);
+			this.hash = hash;
+		}
+
+		@Override
+		protected FixedPeriodCron find(int shift, int hash, String id) {
+			int index = this.indexOf(id);
+			return index < 0 ? null : (FixedPeriodCron) this.array[index + 1];
+		}
+
+		@Override
+		protected Node put(Object owner, int shift, int hash, String id,
+						   FixedPeriodCron cron, Change change) {
+			if (hash != this.hash) {
+				/* Move the node one level down, next to the new schedule */
+				return new BitmapNode(owner,
+						1 << ((this.hash >>> shift) & MASK),
+						new Object[]{null, this}).put(owner, shift, hash, id,
+						cron, change);
+			}
+			int index = this.indexOf(id);
+			Object[] array;
+			if (index >= 0) {
+				change.previous = (FixedPeriodCron) this.array[index + 1];
+				if (change.previous == cron) {
+					return this;
+				}
+				array = this.owner == owner ? this.array : this.array.clone();
+				array[index + 1] = cron;
+			} else {
+				array = new Object[this.array.length + 2];
+				System.arraycopy(this.array, 0, array, 0, this.array.length);
+				array[this.array.length] = id;
+				array[this.array.length + 1] = cron;
+			}
+			if (this.owner == owner) {
+				this.array = array;
+				return this;
+			}
+			return new CollisionNode(owner, this.hash, array);
+		}
+
+		@Override
+		protected Node remove(Object owner, int shift, int hash, String id,
+							  Change change) {
+			int index = this.indexOf(id);
+			if (index < 0) {
+				return this;
+			}
+			change.previous = (FixedPeriodCron) this.array[index + 1];
+			if (this.array.length == 2) {
+				return null;
+			}
+			Object[] array = new Object[this.array.length - 2];
+			System.arraycopy(this.array, 0, array, 0, index);
+			System.arraycopy(this.array, index + 2, array, index,
+					this.array.length - index - 2);
+			if (this.owner == owner) {
+				this.array = array;
+				return this;
+			}
+			return new CollisionNode(owner, this.hash, array);
+		}
+
+		protected int indexOf(String id) {
+			for (int index = 0; index < this.array.length; index += 2) {
+				if (id.equals(this.array[index])) {
+					return index;
+				}
+			}
+			return -1;
+		}
+	}
+
+	/**
+	 * Creates the node holding two schedules that share the bits of their
+	 * hashes up to a level.
+	 *
+	 * @return The node.
+	 */
+	protected static Node createNode(Object owner, int shift, String id1,
+									 FixedPeriodCron cron1, int hash2,
+									 String id2, FixedPeriodCron cron2) {
+		int hash1 = hash(id1);
+		if (hash1 == hash2) {
+			return new CollisionNode(owner, hash1,
+					new Object[]{id1, cron1, id2, cron2});
+		}
+		Change change = new Change();
+		return new BitmapNode(owner, 0, new Object[0])
+				.put(owner, shift, hash1, id1, cron1, change)
+				.put(owner, shift, hash2, id2, cron2, change);
+	}
+
+	/**
+	 * Depth-first iterator over the entries of the trie.
+	 */
+	protected static class EntryIterator
+			implements Iterator<Map.Entry<String, FixedPeriodCron>> {
+		/**
+		 * Nodes from the root down to the current one (the trie is at most 8
+		 * levels deep, collision nodes included).
+		 */
+		protected final Node[] nodes = new Node[8];
+		/**
+		 * Position of the next entry of each node in the path.
+		 */
+		protected final int[] indices = new int[8];
+		protected int depth = -1;
+		protected Map.Entry<String, FixedPeriodCron> next;
+
+		protected EntryIterator(Node root) {
+			if (root != null) {
+				this.nodes[0] = root;
+				this.depth = 0;
+			}
+			this.advance();
+		}
+
+		@Override
+		public boolean hasNext() {
+			return this.next != null;
+		}
+
+		@Override
+		public Map.Entry<String, FixedPeriodCron> next() {
+			if (this.next == null) {
+				throw new NoSuchElementException();
+			}
+			Map.Entry<String, FixedPeriodCron> next = this.next;
+			this.advance();
+			return next;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException("Snapshots are immutable.");
+		}
+
+		protected void advance() {
+			this.next = null;
+			while (this.depth >= 0) {
+				Node node = this.nodes[this.depth];
+				int index = this.indices[this.depth];
+				if (index >= node.array.length) {
+					this.indices[this.depth--] = 0;
+					continue;
+				}
+				this.indices[this.depth] = index + 2;
+				Object key = node.array[index];
+				Object value = node.array[index + 1];
+				if (key == null) {
+					this.nodes[++this.depth] = (Node) value;
+					this.indices[this.depth] = 0;
+				} else {
+					this.next = new AbstractMap.SimpleImmutableEntry<String,
+							FixedPeriodCron>((String) key, (FixedPeriodCron) value);
+					return;
+				}
+			}
+		}
+	}
+}
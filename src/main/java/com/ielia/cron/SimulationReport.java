@@ -0,0 +1,195 @@
+package com.ielia.cron;
+
+import java.util.Arrays;
+
+/**
+ * What happened during a simulation run by a ScheduleSimulator: the fires of
+ * every simulated minute (counted from the start of the simulation), the real
+ * time spent searching for next matches, and the simulated dispatch lag.
+ *
+ * @author ielia
+ */
+public class SimulationReport {
+	/**
+	 * Start of the simulation, in milliseconds.
+	 */
+	protected long startMillis;
+	/**
+	 * Number of fires of each simulated minute.
+	 */
+	protected int[] fires;
+	/**
+	 * Sorted copy of the fires, built on the first percentile query.
+	 */
+	protected int[] sortedFires;
+	protected long totalFires;
+	/**
+	 * Number of searches for a next match.
+	 */
+	protected long evaluations;
+	/**
+	 * Real time spent searching for next matches, in nanoseconds.
+	 */
+	protected long evaluationNanos;
+	protected long maxEvaluationNanos;
+	/**
+	 * Sum of the dispatch lags of every fire, in nanoseconds.
+	 */
+	protected double totalDispatchLagNanos;
+	protected long maxDispatchLagNanos;
+	/**
+	 * Real time the simulation took, in nanoseconds.
+	 */
+	protected long runNanos;
+
+	/**
+	 * Creates an empty report.
+	 *
+	 * @param startMillis Start of the simulation, in milliseconds.
+	 * @param fires       Fires of each simulated minute (all 0).
+	 */
+	protected SimulationReport(long startMillis, int[] fires) {
+		this.startMillis = startMillis;
+		this.fires = fires;
+	}
+
+	/**
+	 * Start of the simulation.
+	 *
+	 * @return The start, in milliseconds.
+	 */
+	public long getStartMillis() {
+		return this.startMillis;
+	}
+
+	/**
+	 * The number of simulated minutes.
+	 *
+	 * @return Number of minutes.
+	 */
+	public int size() {
+		return this.fires.length;
+	}
+
+	/**
+	 * The number of fires of a simulated minute.
+	 *
+	 * @param minute Minute, counted from the start of the simulation.
+	 * @return Number of fires.
+	 */
+	public int getFires(int minute) {
+		return this.fires[minute];
+	}
+
+	/**
+	 * The number of fires of the whole simulation.
+	 *
+	 * @return Number of fires.
+	 */
+	public long getTotalFires() {
+		return this.totalFires;
+	}
+
+	/**
+	 * Returns a percentile of the fires per minute (nearest-rank method).
+	 *
+	 * @param percentile Percentile, between 0 and 100.
+	 * @return Number of fires that is not exceeded by that percentage of the
+	 *         minutes.
+	 */
+	public int getFiresPercentile(double percentile) {
+		if (percentile < 0 || percentile > 100) {
+			throw new IllegalArgumentException("Percentile must be between 0 " +
+					"and 100.");
+		}
+		if (this.fires.length == 0) {
+			return 0;
+		}
+		if (this.sortedFires == null) {
+			int[] sorted = this.fires.clone();
+			Arrays.sort(sorted);
+			this.sortedFires = sorted;
+		}
+		int rank = (int) Math.ceil(percentile / 100 * this.sortedFires.length);
+		return this.sortedFires[Math.max(rank - 1, 0)];
+	}
+
+	/**
+	 * The number of searches for a next match.
+	 *
+	 * @return Number of searches.
+	 */
+	public long getEvaluations() {
+		return this.evaluations;
+	}
+
+	/**
+	 * The real time spent searching for next matches.
+	 *
+	 * @return Time, in nanoseconds.
+	 */
+	public long getEvaluationNanos() {
+		return this.evaluationNanos;
+	}
+
+	/**
+	 * The mean real time of a search for a next match.
+	 *
+	 * @return Time, in nanoseconds.
+	 */
+	public double getMeanEvaluationNanos() {
+		return this.evaluations == 0 ? 0 :
+				(double) this.evaluationNanos / this.evaluations;
+	}
+
+	/**
+	 * The longest real time of a search for a next match.
+	 *
+	 * @return Time, in nanoseconds.
+	 */
+	public long getMaxEvaluationNanos() {
+		return this.maxEvaluationNanos;
+	}
+
+	/**
+	 * The mean simulated time fires waited to be dispatched.
+	 *
+	 * @return Lag, in nanoseconds.
+	 */
+	public double getMeanDispatchLagNanos() {
+		return this.totalFires == 0 ? 0 :
+				this.totalDispatchLagNanos / this.totalFires;
+	}
+
+	/**
+	 * The longest simulated time a fire waited to be dispatched.
+	 *
+	 * @return Lag, in nanoseconds.
+	 */
+	public long getMaxDispatchLagNanos() {
+		return this.maxDispatchLagNanos;
+	}
+
+	/**
+	 * The real time the simulation took.
+	 *
+	 * @return Time, in nanoseconds.
+	 */
+	public long getRunNanos() {
+		return this.runNanos;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		return "SimulationReport[minutes=" + this.fires.length + ",fires=" +
+				this.totalFires + ",p99FiresPerMinute=" +
+				this.getFiresPercentile(99) + ",evaluations=" +
+				this.evaluations + ",meanEvaluationNanos=" +
+				Math.round(this.getMeanEvaluationNanos()) +
+				",maxDispatchLagNanos=" + this.maxDispatchLagNanos +
+				",runMillis=" + this.runNanos / 1000000 + "]";
+	}
+}
@@ -0,0 +1,121 @@
+package com.ielia.cron;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A clock whose time only moves when it is told to, so that code asking crons
+ * for "now" (see the Clock methods of FixedPeriodCron) can be tested and
+ * benchmarked without waiting for real minutes to pass (see
+ * ScheduleSimulator).
+ * <p/>
+ * <p>The clocks returned by withZone share the time of the clock they come
+ * from: moving any of them moves all of them. Instances are thread-safe.</p>
+ *
+ * @author ielia
+ */
+public class VirtualClock extends Clock {
+	/**
+	 * The current time, in milliseconds (shared with the clocks in other
+	 * zones).
+	 */
+	protected final AtomicLong millis;
+	protected final ZoneId zone;
+
+	/**
+	 * Creates a clock.
+	 *
+	 * @param millis The initial time, in milliseconds.
+	 * @param zone   The time zone.
+	 */
+	public VirtualClock(long millis, ZoneId zone) {
+		this(new AtomicLong(millis), zone);
+	}
+
+	protected VirtualClock(AtomicLong millis, ZoneId zone) {
+		if (zone == null) {
+			throw new IllegalArgumentException("Time zone cannot be null.");
+		}
+		this.millis = millis;
+		this.zone = zone;
+	}
+
+	/**
+	 * Sets the current time.
+	 *
+	 * @param millis The time, in milliseconds.
+	 */
+	public void setMillis(long millis) {
+		this.millis.set(millis);
+	}
+
+	/**
+	 * Moves the current time forwards (or backwards, if negative).
+	 *
+	 * @param millis Number of milliseconds to move.
+	 * @return The new time, in milliseconds.
+	 */
+	public long advance(long millis) {
+		return this.millis.addAndGet(millis);
+	}
+
+	/**
+	 * Moves the current time forwards to a given time, unless it is already
+	 * past it (so that concurrent callers never move it backwards).
+	 *
+	 * @param millis The time, in milliseconds.
+	 * @return The new time, in milliseconds.
+	 */
+	public long advanceTo(long millis) {
+		long current = this.millis.get();
+		while (current < millis && !this.millis.compareAndSet(current, millis)) {
+			current = this.millis.get();
+		}
+		return Math.max(current, millis);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long millis() {
+		return this.millis.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Instant instant() {
+		return Instant.ofEpochMilli(this.millis.get());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public ZoneId getZone() {
+		return this.zone;
+	}
+
+	/**
+	 * Returns a clock in another time zone sharing the time of this one.
+	 *
+	 * @param zone The time zone.
+	 * @return The clock.
+	 */
+	@Override
+	public VirtualClock withZone(ZoneId zone) {
+		return new VirtualClock(this.millis, zone);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		return "VirtualClock[" + this.instant() + "," + this.zone + "]";
+	}
+}
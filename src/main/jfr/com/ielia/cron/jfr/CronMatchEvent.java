@@ -0,0 +1,31 @@
+package com.ielia.cron.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timestamp;
+
+/**
+ * Flight Recorder event of the match of a cron against a date, as done by a
+ * scheduler at every tick.
+ *
+ * @author ielia
+ */
+@Name("com.ielia.cron.Match")
+@Label("Cron Match")
+@Description("Match of a cron against a date (scheduler tick)")
+@Category("Cron")
+@Enabled(false)
+@StackTrace(false)
+public class CronMatchEvent extends jdk.jfr.Event {
+	@Label("Expression")
+	protected String expression;
+	@Label("Reference")
+	@Timestamp(Timestamp.MILLISECONDS_SINCE_EPOCH)
+	protected long reference;
+	@Label("Matched")
+	protected boolean matched;
+}
@@ -0,0 +1,26 @@
+package com.ielia.cron.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event of the parse of a crontab expression.
+ *
+ * @author ielia
+ */
+@Name("com.ielia.cron.Parse")
+@Label("Cron Parse")
+@Description("Parse of a crontab expression")
+@Category("Cron")
+@Enabled(false)
+@StackTrace(false)
+public class CronParseEvent extends jdk.jfr.Event {
+	@Label("Expression")
+	protected String expression;
+	@Label("Valid")
+	protected boolean valid;
+}
@@ -0,0 +1,36 @@
+package com.ielia.cron.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timestamp;
+
+/**
+ * Flight Recorder event of the search of a cron for its closest matching date
+ * (the arithmetic shortcut of fixed period crons is not a search).
+ *
+ * @author ielia
+ */
+@Name("com.ielia.cron.Search")
+@Label("Cron Search")
+@Description("Search of a cron for its closest matching date")
+@Category("Cron")
+@Enabled(false)
+@StackTrace(false)
+public class CronSearchEvent extends jdk.jfr.Event {
+	@Label("Expression")
+	protected String expression;
+	@Label("Direction")
+	@Description("1 (forwards) or -1 (backwards)")
+	protected int direction;
+	@Label("Years Scanned")
+	protected int yearsScanned;
+	@Label("Found")
+	protected boolean found;
+	@Label("Result")
+	@Timestamp(Timestamp.MILLISECONDS_SINCE_EPOCH)
+	protected long result;
+}
@@ -0,0 +1,118 @@
+package com.ielia.cron.jfr;
+
+import com.ielia.cron.CronEvaluationListener;
+import com.ielia.cron.FixedPeriodCron;
+import jdk.jfr.EventType;
+
+/**
+ * Emits Flight Recorder events (CronParseEvent, CronSearchEvent and
+ * CronMatchEvent) for the work done by crons, so that the expressions
+ * responsible for the time spent searching can be told apart.
+ * <p/>
+ * <p>Events are disabled by default. Once the listener is installed, they are
+ * turned on like any other event, e.g. with
+ * <code>-XX:StartFlightRecording:settings=cron.jfc</code> or from JDK Mission
+ * Control, and they are only created while they are enabled in a recording:
+ * otherwise, the listener only reads the state of the event type, with no
+ * allocation. Without the listener installed, crons only read a null
+ * field.</p>
+ *
+ * @author ielia
+ */
+public class FlightRecorderCronListener implements CronEvaluationListener {
+	protected static final EventType PARSE_EVENT =
+			EventType.getEventType(CronParseEvent.class);
+	protected static final EventType SEARCH_EVENT =
+			EventType.getEventType(CronSearchEvent.class);
+	protected static final EventType MATCH_EVENT =
+			EventType.getEventType(CronMatchEvent.class);
+
+	/**
+	 * Installs a listener as the evaluation listener of every cron.
+	 */
+	public static void install() {
+		FixedPeriodCron.setEvaluationListener(new FlightRecorderCronListener());
+	}
+
+	/**
+	 * Removes the evaluation listener of every cron.
+	 */
+	public static void uninstall() {
+		FixedPeriodCron.setEvaluationListener(null);
+	}
+
+	@Override
+	public Object beginParse() {
+		if (!PARSE_EVENT.isEnabled()) {
+			return null;
+		}
+		CronParseEvent event = new CronParseEvent();
+		event.begin();
+		return event;
+	}
+
+	@Override
+	public void endParse(Object context, String expression, boolean valid) {
+		if (context != null) {
+			CronParseEvent event = (CronParseEvent) context;
+			event.end();
+			if (event.shouldCommit()) {
+				event.expression = expression;
+				event.valid = valid;
+				event.commit();
+			}
+		}
+	}
+
+	@Override
+	public Object beginSearch() {
+		if (!SEARCH_EVENT.isEnabled()) {
+			return null;
+		}
+		CronSearchEvent event = new CronSearchEvent();
+		event.begin();
+		return event;
+	}
+
+	@Override
+	public void endSearch(Object context, FixedPeriodCron cron, int direction,
+						  int yearsScanned, long result) {
+		if (context != null) {
+			CronSearchEvent event = (CronSearchEvent) context;
+			event.end();
+			if (event.shouldCommit()) {
+				event.expression = cron.toString();
+				event.direction = direction;
+				event.yearsScanned = yearsScanned;
+				event.found = result != FixedPeriodCron.NO_DATE;
+				event.result = event.found ? result : 0;
+				event.commit();
+			}
+		}
+	}
+
+	@Override
+	public Object beginMatch() {
+		if (!MATCH_EVENT.isEnabled()) {
+			return null;
+		}
+		CronMatchEvent event = new CronMatchEvent();
+		event.begin();
+		return event;
+	}
+
+	@Override
+	public void endMatch(Object context, FixedPeriodCron cron, long reference,
+						 boolean matched) {
+		if (context != null) {
+			CronMatchEvent event = (CronMatchEvent) context;
+			event.end();
+			if (event.shouldCommit()) {
+				event.expression = cron.toString();
+				event.reference = reference;
+				event.matched = matched;
+				event.commit();
+			}
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package com.ielia.cron.vector;
+
+import com.ielia.cron.CronColumns;
+import com.ielia.cron.FixedPeriodCron;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.util.Collection;
+
+/**
+ * CronColumns going through several crons at once with the Vector API: the
+ * masks of as many crons as lanes a vector of longs has are intersected with
+ * the masks of a box and compared to 0 with a few vector instructions, and the
+ * resulting lane mask is stored right into the bits of the selection.
+ * <p/>
+ * <p>The Vector API is an incubator module, so it must be enabled with
+ * <code>--add-modules jdk.incubator.vector</code>. CronColumns#create only
+ * uses this class when it is (see isSupported).</p>
+ *
+ * @author ielia
+ */
+public class VectorCronColumns extends CronColumns {
+	/**
+	 * The preferred vector of longs of the platform. Its number of lanes is a
+	 * power of two, so vectors never span two words of a selection.
+	 */
+	protected static final VectorSpecies<Long> SPECIES =
+			LongVector.SPECIES_PREFERRED;
+
+	/**
+	 * Lays out the masks of crons in columns.
+	 *
+	 * @param crons The crons.
+	 */
+	public VectorCronColumns(Collection<? extends FixedPeriodCron> crons) {
+		super(crons);
+	}
+
+	/**
+	 * Tells whether vectors hold more than one long in this platform, so that
+	 * this class is any faster than CronColumns.
+	 *
+	 * @return True if the crons can be evaluated several at once.
+	 */
+	public static boolean isSupported() {
+		return SPECIES.length() > 1;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void select(long minutes, long hours, long days, long months,
+						  long daysOfWeek, long[] selection) {
+		int size = this.size();
+		int lanes = SPECIES.length();
+		int bound = SPECIES.loopBound(size);
+		int i = 0;
+		for (; i < bound; i += lanes) {
+			VectorMask<Long> matches = LongVector.fromArray(SPECIES,
+					this.minutes, i).and(minutes)
+					.compare(VectorOperators.NE, 0);
+			matches = matches.and(LongVector.fromArray(SPECIES, this.hours, i)
+					.and(hours).compare(VectorOperators.NE, 0));
+			matches = matches.and(LongVector.fromArray(SPECIES, this.days, i)
+					.and(days).compare(VectorOperators.NE, 0));
+			matches = matches.and(LongVector.fromArray(SPECIES, this.months, i)
+					.and(months).compare(VectorOperators.NE, 0));
+			matches = matches.and(LongVector.fromArray(SPECIES,
+					this.daysOfWeek, i).and(daysOfWeek)
+					.compare(VectorOperators.NE, 0));
+			selection[i >>> 6] |= matches.toLong() << i;
+		}
+		for (; i < size; ++i) {
+			if ((this.minutes[i] & minutes) != 0 &&
+					(this.hours[i] & hours) != 0 &&
+					(this.days[i] & days) != 0 &&
+					(this.months[i] & months) != 0 &&
+					(this.daysOfWeek[i] & daysOfWeek) != 0) {
+				selection[i >>> 6] |= 1L << i;
+			}
+		}
+	}
+}
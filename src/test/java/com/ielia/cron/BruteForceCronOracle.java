@@ -0,0 +1,162 @@
+package com.ielia.cron;
+
+import java.util.Calendar;
+
+/**
+ * Reference implementation of the FixedPeriodCron queries that walks through
+ * time minute by minute. It is slow but simple enough to be obviously right,
+ * so the optimized search can be checked against it.
+ * <p/>
+ * <p>It does not parse expressions: it is built from the sets of values each
+ * field accepts. Whole days and hours that cannot match are skipped, assuming
+ * that every wall-clock day and hour lasts 1440 and 60 minutes, respectively,
+ * i.e. the zone of the reference must have a fixed offset.</p>
+ *
+ * @author ielia
+ */
+public class BruteForceCronOracle {
+	protected static final long MINUTE_MILLIS = 60 * 1000;
+	/**
+	 * Number of years searched (after or before the year of the reference).
+	 */
+	protected static final int HORIZON_YEARS = 28;
+	/**
+	 * Accepted values of each field ({minutes, hours, days, months,
+	 * weekdays}), indexed by value. Sunday is 0.
+	 */
+	protected boolean[][] values;
+
+	/**
+	 * Creates an oracle.
+	 *
+	 * @param values Accepted values of each field, indexed by value.
+	 */
+	public BruteForceCronOracle(boolean[][] values) {
+		this.values = values;
+	}
+
+	/**
+	 * See FixedPeriodCron#matches(Calendar, int, int, boolean).
+	 */
+	public boolean matches(Calendar reference, int cronRunSeconds,
+						   int cronRunMillis, boolean matchAllUnderMinute) {
+		if (matchAllUnderMinute &&
+				(reference.get(Calendar.SECOND) != cronRunSeconds ||
+						reference.get(Calendar.MILLISECOND) != cronRunMillis)) {
+			return false;
+		}
+		return this.dayMatches(reference) &&
+				this.values[FixedPeriodCron.HOURS][
+						reference.get(Calendar.HOUR_OF_DAY)] &&
+				this.values[FixedPeriodCron.MINUTES][
+						reference.get(Calendar.MINUTE)];
+	}
+
+	/**
+	 * See FixedPeriodCron#getClosestDateAfter(Calendar, int, int).
+	 */
+	public Calendar getClosestDateAfter(Calendar reference, int cronRunSeconds,
+										int cronRunMillis) {
+		long runMillis = cronRunSeconds * 1000L + cronRunMillis;
+		Calendar minute = this.getMinuteStart(reference);
+		if (minute.getTimeInMillis() + runMillis <=
+				reference.getTimeInMillis()) {
+			this.addMinutes(minute, 1);
+		}
+		int lastYear = minute.get(Calendar.YEAR) + HORIZON_YEARS;
+		while (minute.get(Calendar.YEAR) <= lastYear) {
+			int hour = minute.get(Calendar.HOUR_OF_DAY);
+			int minuteOfHour = minute.get(Calendar.MINUTE);
+			if (!this.dayMatches(minute)) {
+				this.addMinutes(minute, 24 * 60 - hour * 60 - minuteOfHour);
+			} else if (!this.values[FixedPeriodCron.HOURS][hour]) {
+				this.addMinutes(minute, 60 - minuteOfHour);
+			} else if (!this.values[FixedPeriodCron.MINUTES][minuteOfHour]) {
+				this.addMinutes(minute, 1);
+			} else {
+				minute.setTimeInMillis(minute.getTimeInMillis() + runMillis);
+				return minute;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * See FixedPeriodCron#getClosestDateBeforeOrSame(Calendar, int, int).
+	 */
+	public Calendar getClosestDateBeforeOrSame(Calendar reference,
+											   int cronRunSeconds,
+											   int cronRunMillis) {
+		long runMillis = cronRunSeconds * 1000L + cronRunMillis;
+		Calendar minute = this.getMinuteStart(reference);
+		if (minute.getTimeInMillis() + runMillis >
+				reference.getTimeInMillis()) {
+			this.addMinutes(minute, -1);
+		}
+		int lastYear = minute.get(Calendar.YEAR) - HORIZON_YEARS;
+		while (minute.get(Calendar.YEAR) >= lastYear) {
+			int hour = minute.get(Calendar.HOUR_OF_DAY);
+			int minuteOfHour = minute.get(Calendar.MINUTE);
+			if (!this.dayMatches(minute)) {
+				this.addMinutes(minute, -(hour * 60 + minuteOfHour + 1));
+			} else if (!this.values[FixedPeriodCron.HOURS][hour]) {
+				this.addMinutes(minute, -(minuteOfHour + 1));
+			} else if (!this.values[FixedPeriodCron.MINUTES][minuteOfHour]) {
+				this.addMinutes(minute, -1);
+			} else {
+				minute.setTimeInMillis(minute.getTimeInMillis() + runMillis);
+				return minute;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * See FixedPeriodCron#periodInMillis(Calendar, int, int).
+	 */
+	public Long periodInMillis(Calendar reference, int cronRunSeconds,
+							   int cronRunMillis) {
+		Calendar before = this.getClosestDateBeforeOrSame(reference,
+				cronRunSeconds, cronRunMillis);
+		Calendar after = this.getClosestDateAfter(reference, cronRunSeconds,
+				cronRunMillis);
+		if (before == null || after == null) {
+			return null;
+		}
+		return after.getTimeInMillis() - before.getTimeInMillis();
+	}
+
+	/**
+	 * See FixedPeriodCron#nextMatchInMillis(Calendar, int, int).
+	 */
+	public Long nextMatchInMillis(Calendar reference, int cronRunSeconds,
+								  int cronRunMillis) {
+		Calendar after = this.getClosestDateAfter(reference, cronRunSeconds,
+				cronRunMillis);
+		if (after == null) {
+			return null;
+		}
+		return after.getTimeInMillis() - reference.getTimeInMillis();
+	}
+
+	protected boolean dayMatches(Calendar calendar) {
+		return this.values[FixedPeriodCron.DAYS][calendar.get(Calendar.DATE)] &&
+				this.values[FixedPeriodCron.MONTHS][
+						calendar.get(Calendar.MONTH) + 1] &&
+				this.values[FixedPeriodCron.DAYS_OF_WEEK][
+						calendar.get(Calendar.DAY_OF_WEEK) - 1];
+	}
+
+	protected Calendar getMinuteStart(Calendar reference) {
+		Calendar minute = (Calendar) reference.clone();
+		minute.setTimeInMillis(reference.getTimeInMillis() -
+				reference.get(Calendar.SECOND) * 1000L -
+				reference.get(Calendar.MILLISECOND));
+		return minute;
+	}
+
+	protected void addMinutes(Calendar calendar, int minutes) {
+		calendar.setTimeInMillis(calendar.getTimeInMillis() +
+				minutes * MINUTE_MILLIS);
+	}
+}
@@ -0,0 +1,196 @@
+package com.ielia.cron;
+
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class (JUnit4) for CompiledCron (and CompiledCronGenerator).
+ *
+ * @author ielia
+ */
+public class CompiledCronTest {
+	protected static final String[] FIELD_VALUES = {"*", "*/15", "0", "5-10",
+			"1,2,3", "*/2", "7", "1,5,17", "10-20/3", "3-4,6"};
+	protected static final String[] EXPRESSIONS = {"0 9 * * 1-5",
+			"*/5 * * * *", "30 2 1 * *", "0,30 8-18 * * 1-5", "0 0 29 2 *",
+			"0 0 29 2 1", "0 0 30 2 *", "61 * * * *", "* * * * *",
+			"15 */6 1-7 * 1", "0 0 1 1 *", "59 23 31 12 *"};
+	protected static final String[] ZONES = {"UTC", "America/New_York",
+			"Australia/Lord_Howe", "GMT+05:45"};
+	/**
+	 * A field value of each shape (ALL, SINGLE, RANGE, STEP, MASK and EMPTY),
+	 * valid for every field.
+	 */
+	protected static final String[] SHAPE_VALUES = {"*", "5", "2-4", "1-6/2",
+			"1,2,5", "99"};
+
+	@Test
+	public void testGetShape() {
+		FixedPeriodCron cron = new FixedPeriodCron("0 8-18 */2 1,5,7 *");
+		assertEquals(CompiledCronGenerator.SINGLE, CompiledCronGenerator
+				.getShape(FixedPeriodCron.MINUTES, cron.getFieldMask(
+						FixedPeriodCron.MINUTES)));
+		assertEquals(CompiledCronGenerator.RANGE, CompiledCronGenerator
+				.getShape(FixedPeriodCron.HOURS, cron.getFieldMask(
+						FixedPeriodCron.HOURS)));
+		assertEquals(CompiledCronGenerator.STEP, CompiledCronGenerator
+				.getShape(FixedPeriodCron.DAYS, cron.getFieldMask(
+						FixedPeriodCron.DAYS)));
+		assertEquals(CompiledCronGenerator.MASK, CompiledCronGenerator
+				.getShape(FixedPeriodCron.MONTHS, cron.getFieldMask(
+						FixedPeriodCron.MONTHS)));
+		/* Both Sunday = 0 and Sunday = 7 are every day */
+		assertEquals(CompiledCronGenerator.ALL, CompiledCronGenerator
+				.getShape(FixedPeriodCron.DAYS_OF_WEEK, cron.getFieldMask(
+						FixedPeriodCron.DAYS_OF_WEEK)));
+		assertEquals(CompiledCronGenerator.ALL, CompiledCronGenerator
+				.getShape(FixedPeriodCron.DAYS_OF_WEEK, new FixedPeriodCron(
+						"* * * * 1-7").getFieldMask(FixedPeriodCron.DAYS_OF_WEEK)));
+		assertEquals(CompiledCronGenerator.EMPTY, CompiledCronGenerator
+				.getShape(FixedPeriodCron.MINUTES, new FixedPeriodCron(
+						"61 * * * *").getFieldMask(FixedPeriodCron.MINUTES)));
+	}
+
+	@Test
+	public void testCompile() {
+		FixedPeriodCron cron = new FixedPeriodCron("0 9 * * 1-5");
+		CompiledCron compiled = CompiledCron.compile(cron);
+		assertEquals(cron, compiled.getCron());
+		assertEquals("0 9 * * 1-5", compiled.toString());
+		/* Every cron gets a class of its own */
+		assertNotSame(compiled.getClass(),
+				CompiledCron.compile(cron).getClass());
+		/* Friday, 24th of May, 2013, 09:00 */
+		assertTrue(compiled.matches(0, 9, 24, 5, 5));
+		assertFalse(compiled.matches(0, 9, 25, 5, 6));
+		assertFalse(compiled.matches(1, 9, 24, 5, 5));
+		Calendar reference = new GregorianCalendar(2013, 4, 24, 9, 0);
+		assertEquals(new GregorianCalendar(2013, 4, 27, 9, 0)
+						.getTimeInMillis(),
+				compiled.nextFire(reference.getTimeInMillis(),
+						TimeZone.getTimeZone("UTC")));
+		assertEquals(FixedPeriodCron.NO_DATE, CompiledCron.compile(
+				new FixedPeriodCron("0 0 30 2 *")).nextFire(
+				reference.getTimeInMillis(), TimeZone.getTimeZone("UTC")));
+	}
+
+	/**
+	 * The class generated for every shape of every field must pass the
+	 * verifier (classes defined by class loaders other than the boot one are
+	 * always verified, as with -Xverify:all), and every method must agree
+	 * with the mask of the field.
+	 */
+	@Test
+	public void testEveryShape() {
+		for (int field = 0; field < FixedPeriodCron.NUMBER_OF_FIELDS; ++field) {
+			long rangeMask = CompiledCronGenerator.getFieldRangeMask(field);
+			int min = Long.numberOfTrailingZeros(rangeMask);
+			int max = 63 - Long.numberOfLeadingZeros(rangeMask);
+			for (int shape = 0; shape < SHAPE_VALUES.length; ++shape) {
+				StringBuilder expression = new StringBuilder();
+				for (int i = 0; i < FixedPeriodCron.NUMBER_OF_FIELDS; ++i) {
+					expression.append(i > 0 ? " " : "").append(
+							i == field ? SHAPE_VALUES[shape] : "*");
+				}
+				FixedPeriodCron cron = new FixedPeriodCron(
+						expression.toString());
+				long mask = cron.getFieldMask(field) & rangeMask;
+				assertEquals(expression.toString(), shape,
+						CompiledCronGenerator.getShape(field, mask));
+				CompiledCron compiled = CompiledCron.compile(cron);
+				for (int value = min; value <= max; ++value) {
+					String message = expression + " at " + value;
+					int[] values = {0, 0, 1, 1, 0};
+					values[field] = value;
+					boolean expected = (mask >>> value & 1) != 0;
+					assertEquals(message, expected, compiled.matches(values[0],
+							values[1], values[2], values[3], values[4]));
+					long following = mask & (-1L << value);
+					int next = following == 0 ? CompiledCron.NONE :
+							Long.numberOfTrailingZeros(following);
+					switch (field) {
+						case FixedPeriodCron.MINUTES:
+							assertEquals(message, next,
+									compiled.nextMinute(value));
+							break;
+						case FixedPeriodCron.HOURS:
+							assertEquals(message, next, compiled.nextHour(value));
+							break;
+						case FixedPeriodCron.MONTHS:
+							assertEquals(message, next,
+									compiled.nextMonth(value));
+							break;
+						default:
+							assertEquals(message, expected,
+									compiled.matchesDay(values[2], values[4]));
+					}
+				}
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testExclusionsAreRejected() {
+		CompiledCron.compile(new FixedPeriodCron("0 9 * * *",
+				new ExclusionCalendar()));
+	}
+
+	@Test
+	public void testDaysFromCivil() {
+		assertEquals(0, CompiledCron.daysFromCivil(1970, 1, 1));
+		assertEquals(-1, CompiledCron.daysFromCivil(1969, 12, 31));
+		assertEquals(11016, CompiledCron.daysFromCivil(2000, 2, 29));
+		assertEquals(-719468, CompiledCron.daysFromCivil(0, 3, 1));
+	}
+
+	/**
+	 * Compiled crons must give the same results as the crons they were
+	 * compiled from, including around daylight saving transitions.
+	 */
+	@Test
+	public void testAgainstCrons() {
+		Random random = new Random(20130601);
+		for (int i = 0; i < 400; ++i) {
+			String expression;
+			if (i < EXPRESSIONS.length) {
+				expression = EXPRESSIONS[i];
+			} else {
+				StringBuilder builder = new StringBuilder();
+				for (int field = 0; field < FixedPeriodCron.NUMBER_OF_FIELDS;
+					 ++field) {
+					builder.append(field > 0 ? " " : "").append(
+							FIELD_VALUES[random.nextInt(FIELD_VALUES.length)]);
+				}
+				expression = builder.toString();
+			}
+			FixedPeriodCron cron = new FixedPeriodCron(expression);
+			CompiledCron compiled = CompiledCron.compile(cron);
+			for (int j = 0; j < 50; ++j) {
+				TimeZone zone = TimeZone.getTimeZone(
+						ZONES[random.nextInt(ZONES.length)]);
+				Calendar reference = new GregorianCalendar(zone);
+				reference.clear();
+				reference.set(1990 + random.nextInt(50), random.nextInt(12),
+						1 + random.nextInt(31), random.nextInt(24),
+						random.nextInt(60), random.nextInt(2) * random.nextInt(60));
+				String message = expression + " at " + reference.getTime() +
+						" in " + zone.getID();
+				Calendar next = cron.getClosestDateAfter(reference);
+				assertEquals(message, next == null ? FixedPeriodCron.NO_DATE :
+								next.getTimeInMillis(),
+						compiled.nextFire(reference.getTimeInMillis(), zone));
+				assertEquals(message, cron.matches(reference, false),
+						compiled.matches(reference));
+			}
+		}
+	}
+}
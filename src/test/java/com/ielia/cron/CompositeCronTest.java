@@ -0,0 +1,139 @@
+package com.ielia.cron;
+
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class (JUnit4) for CompositeCron.
+ *
+ * @author ielia
+ */
+public class CompositeCronTest {
+	protected static final String[] EXPRESSIONS = {"0 9 * * 1-5",
+			"0 12 * * 6,0", "*/20 8-10 * * *", "30 23 31 * *", "0 0 29 2 *",
+			"15,45 */6 1-7 * 1", "5 4 * 12 *", "0 0 1 1 *"};
+	protected static final String[] ZONES = {"UTC", "America/New_York",
+			"Australia/Lord_Howe"};
+
+	@Test
+	public void testUnionMerges() {
+		FixedPeriodCron union = CompositeCron.union(
+				new FixedPeriodCron("0 9 * * 1-5"),
+				new FixedPeriodCron("0 12 * * 1-5"),
+				new FixedPeriodCron("0 13-17 * * 1-5"));
+		assertFalse(union instanceof CompositeCron);
+		assertEquals("0 9,12-17 * * 1-5", union.toString());
+		union = CompositeCron.union(new FixedPeriodCron("*/5 * * * *"),
+				new FixedPeriodCron("*/10 * * * 1"));
+		assertEquals("0,5,10,15,20,25,30,35,40,45,50,55 * * * *",
+				union.toString());
+		union = CompositeCron.union(new FixedPeriodCron("0 0 * * 0"),
+				new FixedPeriodCron("0 0 * * 1-6"));
+		assertEquals("0 0 * * *", union.toString());
+		assertTrue(union.isFixedPeriod());
+	}
+
+	@Test
+	public void testUnionOfShapes() {
+		FixedPeriodCron union = CompositeCron.union(
+				new FixedPeriodCron("0 9 * * 1-5"),
+				new FixedPeriodCron("0 12 * * 6,0"));
+		assertTrue(union instanceof CompositeCron);
+		assertFalse(union.isFixedPeriod());
+		assertEquals("0 9 * * 1-5 | 0 12 * * 0,6", union.toString());
+		assertEquals(2, ((CompositeCron) union).getMembers().size());
+		/* Friday, 24th of May, 2013, 10:00 */
+		Calendar reference = new GregorianCalendar(2013, 4, 24, 10, 0);
+		assertEquals(new GregorianCalendar(2013, 4, 25, 12, 0).getTime(),
+				union.getClosestDateAfter(reference).getTime());
+		assertEquals(new GregorianCalendar(2013, 4, 24, 9, 0).getTime(),
+				union.getClosestDateBeforeOrSame(reference).getTime());
+		assertTrue(union.matches(new GregorianCalendar(2013, 4, 26, 12, 0)));
+		assertFalse(union.matches(new GregorianCalendar(2013, 4, 26, 9, 0)));
+		assertFalse(union.matches(new GregorianCalendar(2013, 4, 24, 12, 0)));
+		/* Nested unions are flattened */
+		FixedPeriodCron nested = CompositeCron.union(union,
+				new FixedPeriodCron("0 12 * * 1-5"));
+		assertEquals(2, ((CompositeCron) nested).getMembers().size());
+	}
+
+	@Test
+	public void testIntersection() {
+		FixedPeriodCron intersection = CompositeCron.intersection(
+				new FixedPeriodCron("*/15 * * * *"),
+				new FixedPeriodCron("0-29 * * * 1-5"),
+				new FixedPeriodCron("* 9-17 * * 0-3"));
+		assertEquals("0,15 9-17 * * 1-3", intersection.toString());
+		intersection = CompositeCron.intersection(
+				new FixedPeriodCron("0 9 * * *"), new FixedPeriodCron("0 10 * * *"));
+		assertEquals("0 24 * * *", intersection.toString());
+		assertNull(intersection.getClosestDateAfter(new GregorianCalendar()));
+		assertNull(CompositeCron.union(intersection).getClosestDateAfter(
+				new GregorianCalendar()));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testExclusionsCannotBeCombined() {
+		CompositeCron.union(new FixedPeriodCron("0 9 * * *"),
+				new FixedPeriodCron("0 9 * * *", new ExclusionCalendar()));
+	}
+
+	/**
+	 * A union must give the same results as taking the closest result of its
+	 * members.
+	 */
+	@Test
+	public void testUnionAgainstMembers() {
+		Random random = new Random(20130528);
+		for (int i = 0; i < 300; ++i) {
+			FixedPeriodCron[] crons = new FixedPeriodCron[2 + random.nextInt(3)];
+			for (int j = 0; j < crons.length; ++j) {
+				crons[j] = new FixedPeriodCron(
+						EXPRESSIONS[random.nextInt(EXPRESSIONS.length)]);
+			}
+			FixedPeriodCron union = CompositeCron.union(crons);
+			Calendar reference = new GregorianCalendar(
+					TimeZone.getTimeZone(ZONES[random.nextInt(ZONES.length)]));
+			reference.clear();
+			reference.set(2000 + random.nextInt(30), random.nextInt(12),
+					1 + random.nextInt(31), random.nextInt(24),
+					random.nextInt(60), random.nextInt(60));
+			int seconds = random.nextInt(60);
+			String message = union + " at " + reference.getTime();
+			Calendar after = null;
+			Calendar beforeOrSame = null;
+			boolean matches = false;
+			for (FixedPeriodCron cron : crons) {
+				Calendar date = cron.getClosestDateAfter(reference, seconds, 0);
+				if (date != null && (after == null || date.before(after))) {
+					after = date;
+				}
+				date = cron.getClosestDateBeforeOrSame(reference, seconds, 0);
+				if (date != null &&
+						(beforeOrSame == null || date.after(beforeOrSame))) {
+					beforeOrSame = date;
+				}
+				matches |= cron.matches(reference, seconds, 0, false);
+			}
+			assertEquals(message, after.getTime(),
+					union.getClosestDateAfter(reference, seconds, 0).getTime());
+			assertEquals(message, beforeOrSame.getTime(),
+					union.getClosestDateBeforeOrSame(reference, seconds, 0)
+							.getTime());
+			assertEquals(message, matches,
+					union.matches(reference, seconds, 0, false));
+			assertEquals(message, after.getTimeInMillis() -
+							beforeOrSame.getTimeInMillis(),
+					(long) union.periodInMillis(reference, seconds, 0));
+		}
+	}
+}
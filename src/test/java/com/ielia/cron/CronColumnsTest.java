@@ -0,0 +1,127 @@
+package com.ielia.cron;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class (JUnit4) for CronColumns.
+ *
+ * @author ielia
+ */
+public class CronColumnsTest {
+	protected static final String[] FIELD_VALUES = {"*", "*/15", "0", "5-10",
+			"1,2,3", "*/2", "7"};
+
+	@Test
+	public void testMatches() {
+		CronColumns columns = new CronColumns(Arrays.asList(
+				new FixedPeriodCron("0 9 * * 1-5"),
+				new FixedPeriodCron("*/15 * * * *"),
+				new FixedPeriodCron("0 12 * * 6,0"),
+				new FixedPeriodCron("0 9 24 5 *")));
+		assertEquals(4, columns.size());
+		assertEquals("0 12 * * 6,0", columns.get(2).toString());
+		/* Friday, 24th of May, 2013, 09:00:30 */
+		BitSet matches = columns.matches(
+				new GregorianCalendar(2013, 4, 24, 9, 0, 30));
+		assertEquals("{0, 1, 3}", matches.toString());
+		/* Saturday, 25th of May, 2013, 12:00 */
+		matches = columns.matches(new GregorianCalendar(2013, 4, 25, 12, 0));
+		assertEquals("{1, 2}", matches.toString());
+	}
+
+	@Test
+	public void testFiresBetween() {
+		CronColumns columns = new CronColumns(Arrays.asList(
+				new FixedPeriodCron("0 9 * * 1-5"),
+				new FixedPeriodCron("30 10 * * *"),
+				new FixedPeriodCron("0 12 * * 6,0"),
+				new FixedPeriodCron("0 0 29 2 *")));
+		/* Friday, 24th of May, 2013, 09:00:00.001 to 10:30 */
+		Calendar start = new GregorianCalendar(2013, 4, 24, 9, 0, 0);
+		start.set(Calendar.MILLISECOND, 1);
+		Calendar end = new GregorianCalendar(2013, 4, 24, 10, 30);
+		assertEquals("{}", columns.firesBetween(start, end).toString());
+		end.add(Calendar.MILLISECOND, 1);
+		assertEquals("{1}", columns.firesBetween(start, end).toString());
+		start.add(Calendar.MILLISECOND, -1);
+		assertEquals("{0, 1}", columns.firesBetween(start, end).toString());
+		/* Until Saturday noon */
+		end = new GregorianCalendar(2013, 4, 25, 12, 0, 1);
+		assertEquals("{0, 1, 2}", columns.firesBetween(start, end).toString());
+		/* Until the next leap year */
+		end = new GregorianCalendar(2016, 1, 29, 0, 0, 1);
+		assertEquals("{0, 1, 2, 3}", columns.firesBetween(start, end)
+				.toString());
+		assertEquals("{}", columns.firesBetween(end, start).toString());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testExclusionsAreRejected() {
+		new CronColumns(Arrays.asList(new FixedPeriodCron("0 9 * * *",
+				new ExclusionCalendar())));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnionsAreRejected() {
+		CronColumns.create(Arrays.asList(CompositeCron.union(
+				new FixedPeriodCron("0 9 * * 1-5"),
+				new FixedPeriodCron("0 12 * * 6,0"))));
+	}
+
+	/**
+	 * Columns (including the ones of create, which may use the Vector API)
+	 * must give the same results as the crons.
+	 */
+	@Test
+	public void testAgainstCrons() {
+		Random random = new Random(20130529);
+		/* Not a multiple of any number of lanes */
+		List<FixedPeriodCron> crons = new ArrayList<FixedPeriodCron>();
+		for (int i = 0; i < 203; ++i) {
+			StringBuilder expression = new StringBuilder();
+			for (int field = 0; field < FixedPeriodCron.NUMBER_OF_FIELDS;
+				 ++field) {
+				expression.append(field > 0 ? " " : "").append(
+						FIELD_VALUES[random.nextInt(FIELD_VALUES.length)]);
+			}
+			crons.add(new FixedPeriodCron(expression.toString()));
+		}
+		CronColumns[] allColumns = {new CronColumns(crons),
+				CronColumns.create(crons)};
+		for (int i = 0; i < 200; ++i) {
+			Calendar start = new GregorianCalendar(2000 + random.nextInt(28),
+					random.nextInt(12), 1 + random.nextInt(28),
+					random.nextInt(24), random.nextInt(60));
+			Calendar end = (Calendar) start.clone();
+			end.add(Calendar.MINUTE, random.nextInt(3 * 24 * 60));
+			BitSet matches = new BitSet();
+			BitSet fires = new BitSet();
+			Calendar justBefore = (Calendar) start.clone();
+			justBefore.add(Calendar.MILLISECOND, -1);
+			for (int j = 0; j < crons.size(); ++j) {
+				FixedPeriodCron cron = crons.get(j);
+				matches.set(j, cron.matches(start));
+				Calendar next = cron.getClosestDateAfter(justBefore);
+				fires.set(j, next != null && next.before(end));
+			}
+			for (CronColumns columns : allColumns) {
+				String message = columns.getClass().getSimpleName() + " at " +
+						start.getTime() + " to " + end.getTime();
+				assertEquals(message, matches, columns.matches(start));
+				assertEquals(message, fires, columns.firesBetween(start, end));
+			}
+		}
+		assertTrue(allColumns[1].size() == crons.size());
+	}
+}
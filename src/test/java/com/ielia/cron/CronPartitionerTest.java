@@ -0,0 +1,190 @@
+package com.ielia.cron;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class (JUnit4) for CronPartitioner.
+ *
+ * @author ielia
+ */
+public class CronPartitionerTest {
+	protected static final int SCHEDULES = 2000;
+	protected static final String[] EXPRESSIONS = {"*/5 * * * *",
+			"0 * * * *", "7,37 */2 * * *", "* 10 * * *", "30 10 * * 1-5"};
+	protected static final List<String> MEMBERS =
+			Arrays.asList("node-a", "node-b", "node-c", "node-d");
+
+	/**
+	 * Creates a partitioner with the same schedules every simulated node has.
+	 */
+	protected static CronPartitioner createPartitioner() {
+		CronPartitioner partitioner = new CronPartitioner();
+		for (int i = 0; i < SCHEDULES; ++i) {
+			partitioner.add("job-" + i,
+					new FixedPeriodCron(EXPRESSIONS[i % EXPRESSIONS.length]));
+		}
+		return partitioner;
+	}
+
+	CronPartitioner partitioner;
+
+	@Before
+	public void setUp() {
+		this.partitioner = createPartitioner();
+		this.partitioner.setMembers(MEMBERS, Long.MIN_VALUE);
+	}
+
+	@Test
+	public void testBalance() {
+		int total = 0;
+		for (String member : MEMBERS) {
+			int size = this.partitioner.getShard(member, 0).size();
+			assertTrue(member + " owns " + size,
+					size > SCHEDULES / 8 && size < SCHEDULES * 3 / 8);
+			total += size;
+		}
+		assertEquals(SCHEDULES, total);
+	}
+
+	@Test
+	public void testOrderIndependence() {
+		CronPartitioner other = createPartitioner();
+		other.setMembers(Arrays.asList("node-d", "node-b", "node-a", "node-c"),
+				Long.MIN_VALUE);
+		for (int i = 0; i < SCHEDULES; ++i) {
+			assertEquals(this.partitioner.getOwner("job-" + i, 0),
+					other.getOwner("job-" + i, 0));
+		}
+	}
+
+	@Test
+	public void testMinimalMovementOnJoin() {
+		this.partitioner.setMembers(Arrays.asList("node-a", "node-b", "node-c",
+				"node-d", "node-e"), 1000);
+		int moved = 0;
+		for (int i = 0; i < SCHEDULES; ++i) {
+			String before = this.partitioner.getOwner("job-" + i, 999);
+			String after = this.partitioner.getOwner("job-" + i, 1000);
+			if (!before.equals(after)) {
+				assertEquals("node-e", after);
+				++moved;
+			}
+		}
+		assertTrue("moved: " + moved,
+				moved > SCHEDULES / 10 && moved < SCHEDULES * 3 / 10);
+	}
+
+	@Test
+	public void testMinimalMovementOnLeave() {
+		this.partitioner.setMembers(Arrays.asList("node-a", "node-c", "node-d"),
+				1000);
+		for (int i = 0; i < SCHEDULES; ++i) {
+			String before = this.partitioner.getOwner("job-" + i, 999);
+			String after = this.partitioner.getOwner("job-" + i, 1000);
+			if (!"node-b".equals(before)) {
+				assertEquals(before, after);
+			}
+		}
+		assertTrue(this.partitioner.getShard("node-b", 1000).isEmpty());
+	}
+
+	@Test
+	public void testNoMembers() {
+		CronPartitioner partitioner = createPartitioner();
+		assertNull(partitioner.getOwner("job-0", 0));
+		assertTrue(partitioner.getMembers(0).isEmpty());
+		partitioner.setMembers(MEMBERS, 0);
+		assertNull(partitioner.getOwner("job-0", -1));
+		assertNotNull(partitioner.getOwner("job-0", 0));
+		partitioner.setMembers(Arrays.<String>asList(), 1000);
+		assertNull(partitioner.getOwner("job-0", 1000));
+		Calendar reference = new GregorianCalendar(1970, 0, 1, 0, 0, 0);
+		String owner = partitioner.getOwner("job-0", 0);
+		assertNull(partitioner.getClosestOwnedDateAfter(owner, "job-0",
+				reference));
+	}
+
+	@Test
+	public void testForgetBefore() {
+		this.partitioner.setMembers(Arrays.asList("node-a"), 1000);
+		this.partitioner.setMembers(Arrays.asList("node-b"), 2000);
+		this.partitioner.forgetBefore(1500);
+		assertTrue(this.partitioner.getMembers(999).isEmpty());
+		assertEquals("node-a", this.partitioner.getOwner("job-0", 1500));
+		assertEquals("node-b", this.partitioner.getOwner("job-0", 2000));
+	}
+
+	/**
+	 * Simulates independent nodes (each with its own partitioner) that are
+	 * given the same membership changes, and checks that every fire in a span
+	 * of time around them is run exactly once.
+	 */
+	@Test
+	public void testHandoverWithSimulatedNodes() {
+		List<String> nodes = Arrays.asList("node-a", "node-b", "node-c",
+				"node-d", "node-e");
+		Calendar start = new GregorianCalendar(2013, 4, 27, 9, 0, 0);
+		Calendar end = new GregorianCalendar(2013, 4, 27, 12, 0, 0);
+		/* A rebalance between fires and another one right at a fire. */
+		Calendar join = new GregorianCalendar(2013, 4, 27, 10, 7, 30);
+		Calendar leave = new GregorianCalendar(2013, 4, 27, 11, 0, 0);
+		Map<String, CronPartitioner> cluster =
+				new HashMap<String, CronPartitioner>();
+		for (String node : nodes) {
+			CronPartitioner partitioner = createPartitioner();
+			partitioner.setMembers(MEMBERS, start.getTimeInMillis());
+			partitioner.setMembers(nodes, join.getTimeInMillis());
+			partitioner.setMembers(Arrays.asList("node-a", "node-c", "node-d",
+					"node-e"), leave.getTimeInMillis());
+			cluster.put(node, partitioner);
+		}
+		int schedules = SCHEDULES / 10;
+		Map<String, Integer> runs = new HashMap<String, Integer>();
+		for (String node : nodes) {
+			CronPartitioner partitioner = cluster.get(node);
+			for (int i = 0; i < schedules; ++i) {
+				String id = "job-" + i;
+				Calendar fire = partitioner.getClosestOwnedDateAfter(node, id,
+						start);
+				while (fire != null && !fire.after(end)) {
+					String key = id + "@" + fire.getTimeInMillis();
+					Integer count = runs.get(key);
+					runs.put(key, count == null ? 1 : count + 1);
+					fire = partitioner.getClosestOwnedDateAfter(node, id, fire);
+				}
+			}
+		}
+		int fires = 0;
+		for (int i = 0; i < schedules; ++i) {
+			String id = "job-" + i;
+			FixedPeriodCron cron = this.partitioner.get(id);
+			Calendar fire = cron.getClosestDateAfter(start);
+			while (!fire.after(end)) {
+				String key = id + "@" + fire.getTimeInMillis();
+				assertEquals(key, Integer.valueOf(1), runs.get(key));
+				++fires;
+				fire = cron.getClosestDateAfter(fire);
+			}
+		}
+		assertEquals(fires, runs.size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownSchedule() {
+		this.partitioner.getClosestOwnedDateAfter("node-a", "nope",
+				new GregorianCalendar());
+	}
+}
@@ -0,0 +1,176 @@
+package com.ielia.cron;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class (JUnit4) for CrontabLoader.
+ *
+ * @author ielia
+ */
+public class CrontabLoaderTest {
+	protected static final Charset UTF_8 = Charset.forName("UTF-8");
+	protected static final String CRONTAB = "" +
+			"# m h dom mon dow command\n" +
+			"SHELL=/bin/sh\n" +
+			"\n" +
+			"MAILTO = ops@example.com\n" +
+			"*/5 * * * * /usr/bin/poll --all\n" +
+			"0  0\t* * *   /usr/bin/backup \"/var/lib/data\"\r\n" +
+			"   @daily /usr/bin/rotate\n" +
+			"@reboot /usr/bin/start\n" +
+			"0 0 * *\n" +
+			"0 0 * * *\n" +
+			"1-2-3 * * * * /bin/true\n" +
+			"  # indented comment\n" +
+			"echo hello\n" +
+			"0 12 * * 1-5 /usr/bin/lunch ünicode";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	protected File write(String contents) throws IOException {
+		File file = this.folder.newFile();
+		OutputStream stream = new FileOutputStream(file);
+		try {
+			stream.write(contents.getBytes(UTF_8));
+		} finally {
+			stream.close();
+		}
+		return file;
+	}
+
+	@Test
+	public void testLoad() throws IOException {
+		CrontabLoader loader = new CrontabLoader();
+		CrontabLoader.Result result = loader.load(this.write(CRONTAB));
+		List<CrontabLoader.Schedule> schedules = result.getSchedules();
+		assertEquals(4, schedules.size());
+		assertEquals(5, schedules.get(0).getLine());
+		assertEquals("*/5 * * * *", schedules.get(0).getCron().toString());
+		assertEquals("/usr/bin/poll --all", schedules.get(0).getCommand());
+		assertEquals(6, schedules.get(1).getLine());
+		assertEquals("0 0 * * *", schedules.get(1).getCron().toString());
+		assertEquals("/usr/bin/backup \"/var/lib/data\"",
+				schedules.get(1).getCommand());
+		assertEquals(7, schedules.get(2).getLine());
+		assertSame(schedules.get(1).getCron(), schedules.get(2).getCron());
+		assertEquals("/usr/bin/rotate", schedules.get(2).getCommand());
+		assertEquals(14, schedules.get(3).getLine());
+		assertEquals("/usr/bin/lunch ünicode", schedules.get(3).getCommand());
+		List<CrontabLoader.LineError> errors = result.getErrors();
+		assertEquals(5, errors.size());
+		assertEquals(8, errors.get(0).getLine());
+		assertTrue(errors.get(0).getMessage().contains("@reboot"));
+		assertEquals(9, errors.get(1).getLine());
+		assertEquals(10, errors.get(2).getLine());
+		assertEquals("Missing command.", errors.get(2).getMessage());
+		assertEquals(11, errors.get(3).getLine());
+		assertEquals(13, errors.get(4).getLine());
+	}
+
+	/**
+	 * Loads must not keep the expressions of the previous ones.
+	 */
+	@Test
+	public void testLoadsAreIndependent() throws IOException {
+		CrontabLoader loader = new CrontabLoader();
+		CrontabLoader.Result first = loader.load(ByteBuffer.wrap(
+				"0 0 * * * /bin/a\n*/5 * * * * /bin/b\n".getBytes(UTF_8)));
+		assertEquals(2, first.getDistinctExpressions());
+		CrontabLoader.Result second = loader.load(ByteBuffer.wrap(
+				"0 0 * * * /bin/c\n".getBytes(UTF_8)));
+		assertEquals(1, second.getDistinctExpressions());
+		assertNotSame(first.getSchedules().get(0).getCron(),
+				second.getSchedules().get(0).getCron());
+	}
+
+	@Test
+	public void testMalformedExpressions() throws IOException {
+		String[] expressions = {"1- * * * *", "*/x * * * *", "1/2/3 * * * *",
+				"a * * * *", "1,,2 * * * *", "-1 * * * *", "5-1 * * * *"};
+		StringBuilder crontab = new StringBuilder();
+		for (String expression : expressions) {
+			crontab.append(expression).append(" /bin/true\n");
+		}
+		CrontabLoader.Result result = new CrontabLoader().load(
+				ByteBuffer.wrap(crontab.toString().getBytes(UTF_8)));
+		assertEquals(expressions.length, result.getSchedules().size() +
+				result.getErrors().size());
+	}
+
+	@Test
+	public void testEmpty() throws IOException {
+		CrontabLoader.Result result = new CrontabLoader().load(this.write(""));
+		assertTrue(result.getSchedules().isEmpty());
+		assertTrue(result.getErrors().isEmpty());
+	}
+
+	/**
+	 * A large crontab parsed in many small chunks must give the same result as
+	 * parsed in a single one, deduplicating its expressions.
+	 */
+	@Test
+	public void testParallelLoad() throws IOException {
+		String[] expressions = {"*/5 * * * *", "0 * * * *", "0 0 * * *",
+				"15 10 * * 1-5", "0 0 1 * *", "1-2-3 * * * *"};
+		StringBuilder crontab = new StringBuilder();
+		for (int i = 0; i < 200000; ++i) {
+			if (i % 1000 == 0) {
+				crontab.append("# block ").append(i / 1000).append('\n');
+			}
+			crontab.append(expressions[i % expressions.length])
+					.append(" /usr/bin/job ").append(i).append('\n');
+		}
+		File file = this.write(crontab.toString());
+		CrontabLoader.Result sequential = new CrontabLoader(null,
+				Integer.MAX_VALUE).load(file);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			CrontabLoader loader = new CrontabLoader(executor, 4096);
+			CrontabLoader.Result parallel = loader.load(file);
+			assertEquals(expressions.length, parallel.getDistinctExpressions());
+			assertEquals(sequential.getSchedules().size(),
+					parallel.getSchedules().size());
+			assertEquals(sequential.getErrors().size(),
+					parallel.getErrors().size());
+			IdentityHashMap<FixedPeriodCron, Boolean> crons =
+					new IdentityHashMap<FixedPeriodCron, Boolean>();
+			for (int i = 0; i < parallel.getSchedules().size(); ++i) {
+				CrontabLoader.Schedule expected = sequential.getSchedules().get(i);
+				CrontabLoader.Schedule actual = parallel.getSchedules().get(i);
+				assertEquals(expected.getLine(), actual.getLine());
+				assertEquals(expected.getCommand(), actual.getCommand());
+				assertEquals(expected.getCron().toString(),
+						actual.getCron().toString());
+				crons.put(actual.getCron(), true);
+			}
+			assertEquals(expressions.length - 1, crons.size());
+			for (int i = 0; i < parallel.getErrors().size(); ++i) {
+				assertEquals(sequential.getErrors().get(i).getLine(),
+						parallel.getErrors().get(i).getLine());
+			}
+			assertEquals(200000 / expressions.length,
+					parallel.getErrors().size());
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
@@ -0,0 +1,160 @@
+package com.ielia.cron;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.GregorianCalendar;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class (JUnit4) for ExclusionCalendar.
+ *
+ * @author ielia
+ */
+public class ExclusionCalendarTest {
+	ExclusionCalendar exclusions;
+
+	@Before
+	public void setUp() {
+		this.exclusions = new ExclusionCalendar();
+	}
+
+	@Test
+	public void testExcludeDay() {
+		this.exclusions.excludeDay(2012, 2, 29);
+		this.exclusions.excludeDay(2012, 12, 31);
+		this.exclusions.excludeDay(2013, 3, 1);
+		this.exclusions.excludeDay(new GregorianCalendar(2001, 0, 1, 13, 0));
+		assertTrue(this.exclusions.isExcludedDay(2012, 2, 29));
+		assertTrue(this.exclusions.isExcludedDay(2012, 12, 31));
+		assertTrue(this.exclusions.isExcludedDay(2013, 3, 1));
+		assertTrue(this.exclusions.isExcludedDay(2001, 1, 1));
+		assertFalse(this.exclusions.isExcludedDay(2012, 3, 1));
+		assertFalse(this.exclusions.isExcludedDay(2013, 2, 28));
+		assertFalse(this.exclusions.isExcludedDay(2013, 12, 31));
+		assertFalse(this.exclusions.isExcludedDay(2007, 6, 15));
+		assertFalse(this.exclusions.isExcludedDay(2000, 1, 1));
+		assertFalse(this.exclusions.isExcludedDay(2014, 3, 1));
+	}
+
+	@Test
+	public void testGetExcludedDays() {
+		/* The 5th of March, 2012, is the first day of the second word */
+		this.exclusions.excludeDay(2012, 3, 4);
+		this.exclusions.excludeDay(2012, 3, 5);
+		this.exclusions.excludeDay(2012, 3, 31);
+		this.exclusions.excludeDay(2012, 4, 1);
+		this.exclusions.excludeDay(2012, 2, 29);
+		assertEquals((1L << 4) | (1L << 5) | (1L << 31),
+				this.exclusions.getExcludedDays(2012, 3));
+		assertEquals(1L << 29, this.exclusions.getExcludedDays(2012, 2));
+		assertEquals(1L << 1, this.exclusions.getExcludedDays(2012, 4));
+		assertEquals(0, this.exclusions.getExcludedDays(2012, 1));
+		assertEquals(0, this.exclusions.getExcludedDays(2013, 3));
+		this.exclusions.excludeDay(2012, 12, 31);
+		assertEquals(1L << 31, this.exclusions.getExcludedDays(2012, 12));
+	}
+
+	/**
+	 * Lookups running while the exclusions change must see consistent
+	 * exclusions.
+	 */
+	@Test
+	public void testConcurrentModifications() throws InterruptedException {
+		final AtomicBoolean done = new AtomicBoolean();
+		final AtomicReference<Throwable> failure =
+				new AtomicReference<Throwable>();
+		Thread reader = new Thread() {
+			@Override
+			public void run() {
+				try {
+					long millis = 0;
+					while (!done.get()) {
+						ExclusionCalendarTest.this.exclusions.isExcludedTime(
+								millis);
+						millis = (millis + 7) % 100000;
+					}
+				} catch (Throwable throwable) {
+					failure.set(throwable);
+				}
+			}
+		};
+		reader.start();
+		for (int i = 0; i < 5000; ++i) {
+			this.exclusions.excludeRange(i * 5, i * 5 + 2);
+		}
+		done.set(true);
+		reader.join();
+		assertNull(failure.get());
+		assertEquals(5000, this.exclusions.getSnapshot().starts.length);
+		assertEquals(5000, this.exclusions.getSnapshot().modifications);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testExcludeInvalidDay() {
+		this.exclusions.excludeDay(2013, 2, 29);
+	}
+
+	@Test
+	public void testExcludeRange() {
+		this.exclusions.excludeRange(100, 200);
+		this.exclusions.excludeRange(400, 500);
+		this.exclusions.excludeRange(700, 800);
+		assertArrayEquals(new long[]{100, 400, 700},
+				this.exclusions.getSnapshot().starts);
+		/* Touching */
+		this.exclusions.excludeRange(200, 250);
+		assertArrayEquals(new long[]{100, 400, 700},
+				this.exclusions.getSnapshot().starts);
+		assertArrayEquals(new long[]{250, 500, 800},
+				this.exclusions.getSnapshot().ends);
+		/* Overlapping two */
+		this.exclusions.excludeRange(450, 750);
+		assertArrayEquals(new long[]{100, 400},
+				this.exclusions.getSnapshot().starts);
+		assertArrayEquals(new long[]{250, 800},
+				this.exclusions.getSnapshot().ends);
+		/* Disjoint, first */
+		this.exclusions.excludeRange(0, 50);
+		assertArrayEquals(new long[]{0, 100, 400},
+				this.exclusions.getSnapshot().starts);
+		assertArrayEquals(new long[]{50, 250, 800},
+				this.exclusions.getSnapshot().ends);
+		/* Contained */
+		this.exclusions.excludeRange(120, 130);
+		assertArrayEquals(new long[]{0, 100, 400},
+				this.exclusions.getSnapshot().starts);
+		/* Containing everything */
+		this.exclusions.excludeRange(-10, Long.MAX_VALUE);
+		assertArrayEquals(new long[]{-10},
+				this.exclusions.getSnapshot().starts);
+		assertArrayEquals(new long[]{Long.MAX_VALUE},
+				this.exclusions.getSnapshot().ends);
+	}
+
+	@Test
+	public void testIsExcludedTime() {
+		this.exclusions.excludeRange(100, 200);
+		this.exclusions.excludeRange(400, 500);
+		assertFalse(this.exclusions.isExcludedTime(99));
+		assertTrue(this.exclusions.isExcludedTime(100));
+		assertTrue(this.exclusions.isExcludedTime(199));
+		assertFalse(this.exclusions.isExcludedTime(200));
+		assertFalse(this.exclusions.isExcludedTime(399));
+		assertTrue(this.exclusions.isExcludedTime(450));
+		assertFalse(this.exclusions.isExcludedTime(Long.MAX_VALUE));
+		assertFalse(this.exclusions.isExcludedTime(Long.MIN_VALUE));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testExcludeEmptyRange() {
+		this.exclusions.excludeRange(100, 100);
+	}
+}
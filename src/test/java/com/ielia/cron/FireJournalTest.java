@@ -0,0 +1,340 @@
+package com.ielia.cron;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Test class (JUnit4) for FireJournal.
+ *
+ * @author ielia
+ */
+public class FireJournalTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	File file;
+	Calendar now;
+	int searches;
+
+	@Before
+	public void setUp() throws IOException {
+		this.file = new File(this.folder.getRoot(), "fires.journal");
+		/* Monday, 27th of May, 2013, 10:02:00 */
+		this.now = new GregorianCalendar(2013, 4, 27, 10, 2, 0);
+		this.searches = 0;
+	}
+
+	/**
+	 * A cron that counts how many times the next fire is searched for.
+	 */
+	protected FixedPeriodCron countingCron(String expression) {
+		return new FixedPeriodCron(expression) {
+			@Override
+			public Long nextMatchInMillis(Calendar reference,
+										  int cronRunSeconds,
+										  int cronRunMillis) {
+				++FireJournalTest.this.searches;
+				return super.nextMatchInMillis(reference, cronRunSeconds,
+						cronRunMillis);
+			}
+		};
+	}
+
+	@Test
+	public void testReopen() throws IOException {
+		FixedPeriodCron cron = new FixedPeriodCron("*/5 * * * *");
+		FireJournal journal = new FireJournal(this.file);
+		journal.recordFire("a", cron, this.now);
+		journal.put("b", cron, 1000, 2000);
+		journal.put("a", cron, 3000, 4000);
+		journal.put("c", cron, FixedPeriodCron.NO_DATE,
+				FixedPeriodCron.NO_DATE);
+		journal.remove("b");
+		journal.close();
+		journal = new FireJournal(this.file);
+		assertEquals(2, journal.getEntries().size());
+		assertEquals(Long.valueOf(3000), journal.get("a").getLastFire());
+		assertEquals(Long.valueOf(4000), journal.get("a").getNextFire());
+		assertNull(journal.get("b"));
+		assertNull(journal.get("c").getLastFire());
+		assertNull(journal.get("c").getNextFire());
+		assertEquals(5, journal.getRecords());
+		journal.close();
+	}
+
+	@Test
+	public void testRecordFire() throws IOException {
+		FireJournal journal = new FireJournal(this.file);
+		FireJournal.Entry entry = journal.recordFire("a",
+				new FixedPeriodCron("*/5 * * * *"), this.now);
+		assertEquals(Long.valueOf(this.now.getTimeInMillis()),
+				entry.getLastFire());
+		assertEquals(Long.valueOf(this.now.getTimeInMillis() + 3 * 60000),
+				entry.getNextFire());
+		entry = journal.recordFire("b", new FixedPeriodCron("0 0 30 2 *"),
+				this.now);
+		assertNull(entry.getNextFire());
+		journal.close();
+	}
+
+	@Test
+	public void testResumeOnlySearchesChangedSchedules() throws IOException {
+		FireJournal journal = new FireJournal(this.file);
+		Calendar before = (Calendar) this.now.clone();
+		before.add(Calendar.MINUTE, -1);
+		Calendar earlier = (Calendar) this.now.clone();
+		earlier.add(Calendar.HOUR_OF_DAY, -1);
+		for (int i = 0; i < 100; ++i) {
+			journal.recordFire("job-" + i, new FixedPeriodCron("0 * * * *"),
+					before);
+		}
+		journal.recordFire("stale", new FixedPeriodCron("*/5 * * * *"),
+				earlier);
+		journal.close();
+		journal = new FireJournal(this.file);
+		for (int i = 0; i < 100; ++i) {
+			FireJournal.Entry entry = journal.get("job-" + i);
+			assertSame(entry, journal.resume("job-" + i,
+					this.countingCron("0 * * * *"), this.now));
+		}
+		assertEquals(0, this.searches);
+		/* Equivalent expressions are not changes. */
+		journal.resume("job-0", this.countingCron("0 */1 * * *"), this.now);
+		assertEquals(0, this.searches);
+		/* A changed expression. */
+		FireJournal.Entry entry = journal.resume("job-1",
+				this.countingCron("30 * * * *"), this.now);
+		assertEquals(1, this.searches);
+		assertEquals(Long.valueOf(before.getTimeInMillis()),
+				entry.getLastFire());
+		assertEquals(Long.valueOf(this.now.getTimeInMillis() + 28 * 60000),
+				entry.getNextFire());
+		/* A next fire in the past. */
+		entry = journal.resume("stale", this.countingCron("*/5 * * * *"),
+				this.now);
+		assertEquals(2, this.searches);
+		assertEquals(Long.valueOf(this.now.getTimeInMillis() + 3 * 60000),
+				entry.getNextFire());
+		/* A new schedule. */
+		entry = journal.resume("new", this.countingCron("*/5 * * * *"),
+				this.now);
+		assertEquals(3, this.searches);
+		assertNull(entry.getLastFire());
+		journal.close();
+		journal = new FireJournal(this.file);
+		assertSame(journal.get("stale"), journal.resume("stale",
+				this.countingCron("*/5 * * * *"), this.now));
+		assertEquals(3, this.searches);
+		journal.close();
+	}
+
+	@Test
+	public void testTornRecord() throws IOException {
+		FixedPeriodCron cron = new FixedPeriodCron("* * * * *");
+		FireJournal journal = new FireJournal(this.file);
+		journal.put("a", cron, 1000, 2000);
+		journal.put("a", cron, 3000, 4000);
+		int torn = journal.position - 1;
+		journal.close();
+		RandomAccessFile raw = new RandomAccessFile(this.file, "rw");
+		raw.seek(torn);
+		int b = raw.read();
+		raw.seek(torn);
+		raw.write(b ^ 0xff);
+		raw.close();
+		journal = new FireJournal(this.file);
+		assertEquals(1, journal.getRecords());
+		assertEquals(Long.valueOf(1000), journal.get("a").getLastFire());
+		journal.put("b", cron, 5000, 6000);
+		journal.close();
+		journal = new FireJournal(this.file);
+		assertEquals(2, journal.getRecords());
+		assertEquals(Long.valueOf(5000), journal.get("b").getLastFire());
+		journal.close();
+	}
+
+	@Test
+	public void testCompaction() throws IOException {
+		FixedPeriodCron cron = new FixedPeriodCron("* * * * *");
+		FireJournal journal = new FireJournal(this.file);
+		for (int i = 0; i < 10000; ++i) {
+			journal.put("job-" + (i % 10), cron, i, i + 1);
+		}
+		journal.put("gone", cron, 0, 1);
+		journal.remove("gone");
+		assertTrue(journal.getRecords() < FireJournal.MIN_COMPACTION_RECORDS);
+		assertEquals(10, journal.getEntries().size());
+		journal.compact();
+		assertEquals(10, journal.getRecords());
+		assertTrue(!new File(this.file.getPath() + ".compact").exists());
+		journal.put("job-0", cron, 20000, 20001);
+		journal.close();
+		journal = new FireJournal(this.file);
+		assertEquals(11, journal.getRecords());
+		assertEquals(Long.valueOf(20000), journal.get("job-0").getLastFire());
+		assertEquals(Long.valueOf(9999), journal.get("job-9").getLastFire());
+		journal.close();
+	}
+
+	@Test
+	public void testGrowth() throws IOException {
+		FixedPeriodCron cron = new FixedPeriodCron("* * * * *");
+		FireJournal journal = new FireJournal(this.file);
+		for (int i = 0; i < 20000; ++i) {
+			journal.put("a-rather-long-schedule-identifier-" + i, cron, i, i);
+		}
+		journal.close();
+		assertTrue(this.file.length() > FireJournal.INITIAL_CAPACITY);
+		journal = new FireJournal(this.file);
+		assertEquals(20000, journal.getEntries().size());
+		assertEquals(Long.valueOf(12345), journal.get(
+				"a-rather-long-schedule-identifier-12345").getNextFire());
+		journal.close();
+	}
+
+	@Test
+	public void testFingerprint() {
+		assertArrayEquals(
+				FireJournal.fingerprint(new FixedPeriodCron("*/5 * * * *")),
+				FireJournal.fingerprint(new FixedPeriodCron("0-59/5 * * * *")));
+		assertArrayEquals(
+				FireJournal.fingerprint(new FixedPeriodCron("0 0 * * 7")),
+				FireJournal.fingerprint(new FixedPeriodCron("0 0 * * 0")));
+		assertFalse(Arrays.equals(
+				FireJournal.fingerprint(new FixedPeriodCron("0 0 * * *")),
+				FireJournal.fingerprint(new FixedPeriodCron("0 1 * * *"))));
+		/* Both had the same 32-bit hash */
+		assertFalse(Arrays.equals(
+				FireJournal.fingerprint(new FixedPeriodCron("0 5 * * *")),
+				FireJournal.fingerprint(new FixedPeriodCron("1 0 * * *"))));
+	}
+
+	@Test
+	public void testResumeAfterAnEdit() throws IOException {
+		FireJournal journal = new FireJournal(this.file);
+		journal.resume("a", new FixedPeriodCron("0 5 * * *"), this.now);
+		journal.close();
+		journal = new FireJournal(this.file);
+		FireJournal.Entry entry = journal.resume("a",
+				new FixedPeriodCron("1 0 * * *"), this.now);
+		/* Tuesday, 00:01, and not 05:00 */
+		assertEquals(Long.valueOf(new GregorianCalendar(2013, 4, 28, 0, 1, 0)
+				.getTimeInMillis()), entry.getNextFire());
+		journal.close();
+	}
+
+	/**
+	 * Next fires calculated in another time zone or for another run time of
+	 * the cron engine must be searched for again.
+	 */
+	@Test
+	public void testResumeInAnotherZoneOrRunTime() throws IOException {
+		TimeZone madrid = TimeZone.getTimeZone("Europe/Madrid");
+		TimeZone newYork = TimeZone.getTimeZone("America/New_York");
+		Calendar now = new GregorianCalendar(madrid);
+		now.setTimeInMillis(this.now.getTimeInMillis());
+		FireJournal journal = new FireJournal(this.file);
+		journal.resume("a", new FixedPeriodCron("0 9 * * *"), now);
+		journal.close();
+		journal = new FireJournal(this.file);
+		FireJournal.Entry entry = journal.get("a");
+		assertEquals("Europe/Madrid", entry.getZoneId());
+		assertEquals(0, entry.getCronRunSeconds());
+		assertSame(entry, journal.resume("a",
+				this.countingCron("0 9 * * *"), now));
+		assertEquals(0, this.searches);
+		Calendar there = new GregorianCalendar(newYork);
+		there.setTimeInMillis(this.now.getTimeInMillis());
+		entry = journal.resume("a", this.countingCron("0 9 * * *"), there);
+		assertEquals(1, this.searches);
+		assertEquals("America/New_York", entry.getZoneId());
+		Calendar expected = new GregorianCalendar(newYork);
+		expected.setTimeInMillis(entry.getNextFire());
+		assertEquals(9, expected.get(Calendar.HOUR_OF_DAY));
+		assertEquals(0, expected.get(Calendar.MINUTE));
+		/* The same zone, but the engine running at 30 seconds */
+		long nextFire = entry.getNextFire();
+		entry = journal.resume("a", this.countingCron("0 9 * * *"), there,
+				30, 0);
+		assertEquals(2, this.searches);
+		assertEquals(30, entry.getCronRunSeconds());
+		assertEquals(Long.valueOf(nextFire + 30000), entry.getNextFire());
+		journal.close();
+		journal = new FireJournal(this.file);
+		assertSame(journal.get("a"), journal.resume("a",
+				this.countingCron("0 9 * * *"), there, 30, 0));
+		assertEquals(2, this.searches);
+		journal.close();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnionsAreRejected() throws IOException {
+		FireJournal journal = new FireJournal(this.file);
+		try {
+			journal.recordFire("a", CompositeCron.union(
+					new FixedPeriodCron("0 9 * * 1"),
+					new FixedPeriodCron("0 12 * * 2")), this.now);
+		} finally {
+			journal.close();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testExclusionsAreRejected() throws IOException {
+		FireJournal journal = new FireJournal(this.file);
+		try {
+			journal.resume("a", new FixedPeriodCron("0 9 * * *",
+					new ExclusionCalendar()), this.now);
+		} finally {
+			journal.close();
+		}
+	}
+
+	@Test
+	public void testNotAJournal() throws IOException {
+		this.assertNotOpened(new byte[]{'0', ' ', '0', ' ', '*', '\n'});
+		/* Starting with a zero int, as an empty journal would */
+		this.assertNotOpened(new byte[]{0, 0, 0, 0, 'd', 'a', 't', 'a'});
+		this.assertNotOpened(new byte[]{0x43, 0x52});
+		/* A journal of another version */
+		this.assertNotOpened(new byte[]{0x43, 0x52, 0x4f, 0x4e, 0, 0, 0, 2});
+	}
+
+	/**
+	 * Opening a file that is not a journal must fail, leaving it untouched.
+	 */
+	protected void assertNotOpened(byte[] contents) throws IOException {
+		RandomAccessFile raw = new RandomAccessFile(this.file, "rw");
+		raw.setLength(0);
+		raw.write(contents);
+		raw.close();
+		try {
+			new FireJournal(this.file).close();
+			fail("Opened " + Arrays.toString(contents));
+		} catch (IOException exception) {
+			/* Expected */
+		}
+		raw = new RandomAccessFile(this.file, "r");
+		byte[] read = new byte[(int) raw.length()];
+		raw.readFully(read);
+		raw.close();
+		assertArrayEquals(contents, read);
+	}
+}
@@ -0,0 +1,155 @@
+package com.ielia.cron;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class (JUnit4) for FireTimeSpliterator (and FixedPeriodCron#fireTimes).
+ *
+ * @author ielia
+ */
+public class FireTimeSpliteratorTest {
+	protected static final String[] EXPRESSIONS = {"*/20 8-10 * * 1-5",
+			"30 2 * * *", "0 0 29 2 *", "15,45 */6 1-7 * 1", "*/15 * * * *",
+			"0 0 * * *", "0 9 * * 1-5 | 0 12 * * 6,0"};
+	protected static final String[] ZONES = {"UTC", "America/New_York",
+			"Australia/Lord_Howe"};
+
+	/**
+	 * Streams must give the same matches as calling getClosestDateAfter from
+	 * each match, both sequential and parallel.
+	 */
+	@Test
+	public void testAgainstClosestDateAfter() {
+		for (String expression : EXPRESSIONS) {
+			FixedPeriodCron cron = expression.contains("|") ?
+					CompositeCron.union(new FixedPeriodCron("0 9 * * 1-5"),
+							new FixedPeriodCron("0 12 * * 6,0")) :
+					new FixedPeriodCron(expression);
+			for (String zoneId : ZONES) {
+				TimeZone zone = TimeZone.getTimeZone(zoneId);
+				Calendar start = new GregorianCalendar(zone);
+				start.clear();
+				start.set(2011, 9, 15, 10, 20, 0);
+				Calendar end = (Calendar) start.clone();
+				end.add(Calendar.YEAR, 2);
+				long[] expected = this.enumerate(cron, start, end, 30);
+				String message = expression + " in " + zoneId;
+				assertArrayEquals(message, expected, cron.fireTimes(
+						start.getTimeInMillis(), end.getTimeInMillis(), zone, 30,
+						0).toArray());
+				assertArrayEquals(message, expected, cron.fireTimes(
+						start.getTimeInMillis(), end.getTimeInMillis(), zone, 30,
+						0).parallel().toArray());
+			}
+		}
+	}
+
+	@Test
+	public void testBounds() {
+		FixedPeriodCron cron = new FixedPeriodCron("0 9 * * 1-5");
+		TimeZone zone = TimeZone.getTimeZone("UTC");
+		/* Friday, 24th of May, 2013, 09:00 to Monday 27th, 09:00 */
+		long from = new GregorianCalendar(2013, 4, 24, 9, 0).getTimeInMillis();
+		long to = new GregorianCalendar(2013, 4, 27, 9, 0).getTimeInMillis();
+		assertArrayEquals(new long[]{from},
+				cron.fireTimes(from, to, zone).toArray());
+		assertArrayEquals(new long[]{to},
+				cron.fireTimes(from + 1, to + 1, zone).toArray());
+		assertEquals(0, cron.fireTimes(to, from, zone).count());
+		assertEquals(0, new FixedPeriodCron("0 0 30 2 *").fireTimes(from,
+				from + 30L * 366 * 86400000L, zone).count());
+	}
+
+	@Test
+	public void testSplitsAtYearsAndMonths() {
+		FixedPeriodCron cron = new FixedPeriodCron("0 9 * * 1-5");
+		TimeZone zone = TimeZone.getTimeZone("America/New_York");
+		Calendar start = new GregorianCalendar(zone);
+		start.clear();
+		start.set(2000, 5, 15, 10, 20);
+		Calendar end = (Calendar) start.clone();
+		end.add(Calendar.YEAR, 30);
+		FireTimeSpliterator suffix = new FireTimeSpliterator(cron,
+				start.getTimeInMillis(), end.getTimeInMillis(), zone, 0, 0);
+		assertFalse(suffix.hasCharacteristics(Spliterator.SIZED));
+		assertTrue(suffix.hasCharacteristics(Spliterator.SORTED));
+		FireTimeSpliterator prefix = (FireTimeSpliterator) suffix.trySplit();
+		assertNotNull(prefix);
+		Calendar split = new GregorianCalendar(zone);
+		split.setTimeInMillis(suffix.from);
+		assertEquals(prefix.to, suffix.from);
+		assertEquals(1, split.get(Calendar.DAY_OF_YEAR));
+		assertEquals(0, split.get(Calendar.HOUR_OF_DAY));
+		/* Down to months, and no further than that */
+		List<FireTimeSpliterator> parts = new ArrayList<FireTimeSpliterator>();
+		parts.add(prefix);
+		while (!parts.isEmpty()) {
+			FireTimeSpliterator part = parts.remove(parts.size() - 1);
+			FireTimeSpliterator next = (FireTimeSpliterator) part.trySplit();
+			if (next == null) {
+				assertTrue(part.to - part.from < 3 * 31 * 86400000L);
+				continue;
+			}
+			split.setTimeInMillis(part.from);
+			assertEquals(1, split.get(Calendar.DATE));
+			assertEquals(0, split.get(Calendar.MINUTE));
+			parts.add(part);
+			parts.add(next);
+		}
+	}
+
+	@Test
+	public void testExactSizes() {
+		TimeZone zone = TimeZone.getTimeZone("UTC");
+		long from = new GregorianCalendar(2000, 0, 1, 0, 0, 31).getTimeInMillis();
+		long to = new GregorianCalendar(2030, 0, 1).getTimeInMillis();
+		FixedPeriodCron cron = new FixedPeriodCron("*/15 * * * *");
+		Spliterator.OfLong spliterator = cron.fireTimes(from, to, zone, 30, 0)
+				.spliterator();
+		assertTrue(spliterator.hasCharacteristics(Spliterator.SIZED));
+		/* 10958 days of 96 matches, the first one of them before the range */
+		assertEquals(10958 * 96 - 1, spliterator.getExactSizeIfKnown());
+		Spliterator.OfLong prefix = spliterator.trySplit();
+		assertTrue(prefix.hasCharacteristics(Spliterator.SUBSIZED));
+		assertEquals(10958 * 96 - 1, prefix.getExactSizeIfKnown() +
+				spliterator.getExactSizeIfKnown());
+		assertEquals(10958 * 96 - 1, cron.fireTimes(from, to, zone, 30, 0)
+				.parallel().count());
+		/* Offset transitions make it an estimate */
+		assertEquals(-1, cron.fireTimes(from, to,
+				TimeZone.getTimeZone("Europe/Madrid")).spliterator()
+				.getExactSizeIfKnown());
+		assertNull(new FixedPeriodCron("0 0 1 * *").fireTimes(from, to, zone)
+				.spliterator().getComparator());
+	}
+
+	protected long[] enumerate(FixedPeriodCron cron, Calendar start,
+							   Calendar end, int cronRunSeconds) {
+		List<Long> dates = new ArrayList<Long>();
+		Calendar date = (Calendar) start.clone();
+		date.add(Calendar.MILLISECOND, -1);
+		while ((date = cron.getClosestDateAfter(date, cronRunSeconds, 0)) !=
+				null && date.before(end)) {
+			dates.add(date.getTimeInMillis());
+		}
+		long[] array = new long[dates.size()];
+		for (int i = 0; i < array.length; ++i) {
+			array[i] = dates.get(i);
+		}
+		return array;
+	}
+}
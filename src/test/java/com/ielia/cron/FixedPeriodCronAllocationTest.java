@@ -0,0 +1,182 @@
+package com.ielia.cron;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Allocation regression test class (JUnit4) for FixedPeriodCron. Every public
+ * query has a budget of bytes allocated per call, measured after a warm-up
+ * through com.sun.management.ThreadMXBean#getThreadAllocatedBytes.
+ * <p/>
+ * <p>Queries are measured twice: with the same reference on every call, which
+ * is answered by the window remembered by the cron, and with references
+ * falling in different windows, which are searched for. Queries returning
+ * milliseconds may only allocate the boxed result, and queries returning
+ * calendars may only allocate the result (a clone of the reference). Searches
+ * may also allocate the window they remember.</p>
+ *
+ * @author ielia
+ */
+public class FixedPeriodCronAllocationTest {
+	protected static final int WARM_UP_CALLS = 50000;
+	protected static final int MEASURED_CALLS = 20000;
+	protected static final long MATCHES_BUDGET = 0;
+	/**
+	 * A boxed Long.
+	 */
+	protected static final long MILLIS_BUDGET = 24;
+	/**
+	 * A clone of a GregorianCalendar.
+	 */
+	protected static final long CALENDAR_BUDGET = 640;
+	/**
+	 * The window remembered by a cron after a search (see
+	 * FixedPeriodCron.MemoizedWindow).
+	 */
+	protected static final long WINDOW_BUDGET = 48;
+	protected static final String[] EXPRESSIONS = {"*/5 * * * *",
+			"10-45/15 0 */2 * *", "0 0 29 2 1", "0 9 * * 1-5"};
+	com.sun.management.ThreadMXBean threadBean;
+	FixedPeriodCron[] crons;
+	Calendar reference;
+	/**
+	 * References alternating between windows of every cron, so that every
+	 * call searches.
+	 */
+	Calendar[] missReferences;
+
+	@Before
+	public void setUp() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+		this.threadBean = (com.sun.management.ThreadMXBean) bean;
+		assumeTrue(this.threadBean.isThreadAllocatedMemorySupported());
+		this.threadBean.setThreadAllocatedMemoryEnabled(true);
+		this.crons = new FixedPeriodCron[EXPRESSIONS.length];
+		for (int i = 0; i < EXPRESSIONS.length; ++i) {
+			this.crons[i] = new FixedPeriodCron(EXPRESSIONS[i]);
+		}
+		/* Wednesday, 28th of February, 2001, 23:59:30.500 */
+		this.reference = new GregorianCalendar(2001, 1, 28, 23, 59, 30);
+		this.reference.set(Calendar.MILLISECOND, 500);
+		this.reference.getTimeInMillis();
+		/* Saturday, 15th of June, 2030, 12:02:30.500 (28 years later, and
+		 * after the Feb 29th on a Monday of 2016) */
+		Calendar later = new GregorianCalendar(2030, 5, 15, 12, 2, 30);
+		later.set(Calendar.MILLISECOND, 500);
+		later.getTimeInMillis();
+		this.missReferences = new Calendar[]{this.reference, later};
+	}
+
+	@Test
+	public void testMatches() {
+		this.assertBudget("matches", MATCHES_BUDGET, this.missReferences,
+				new Operation() {
+					public Object run(FixedPeriodCron cron, Calendar reference) {
+						return cron.matches(reference, 30, 500, true);
+					}
+				});
+		this.assertBudget("matches (under minute)", MATCHES_BUDGET,
+				this.missReferences, new Operation() {
+					public Object run(FixedPeriodCron cron, Calendar reference) {
+						return cron.matches(reference, false);
+					}
+				});
+	}
+
+	@Test
+	public void testGetClosestDateAfter() {
+		this.assertQueryBudget("getClosestDateAfter", CALENDAR_BUDGET,
+				new Operation() {
+					public Object run(FixedPeriodCron cron, Calendar reference) {
+						return cron.getClosestDateAfter(reference);
+					}
+				});
+	}
+
+	@Test
+	public void testGetClosestDateBeforeOrSame() {
+		this.assertQueryBudget("getClosestDateBeforeOrSame", CALENDAR_BUDGET,
+				new Operation() {
+					public Object run(FixedPeriodCron cron, Calendar reference) {
+						return cron.getClosestDateBeforeOrSame(reference);
+					}
+				});
+	}
+
+	@Test
+	public void testNextMatchInMillis() {
+		this.assertQueryBudget("nextMatchInMillis", MILLIS_BUDGET,
+				new Operation() {
+					public Object run(FixedPeriodCron cron, Calendar reference) {
+						return cron.nextMatchInMillis(reference);
+					}
+				});
+	}
+
+	@Test
+	public void testPeriodInMillis() {
+		this.assertQueryBudget("periodInMillis", MILLIS_BUDGET,
+				new Operation() {
+					public Object run(FixedPeriodCron cron, Calendar reference) {
+						return cron.periodInMillis(reference);
+					}
+				});
+	}
+
+	/**
+	 * Measures a query answered by the remembered window and searching.
+	 *
+	 * @param name      Name of the query, for the assertion message.
+	 * @param budget    Maximum number of bytes allocated per call, besides
+	 *                  the window remembered by a search.
+	 * @param operation The query.
+	 */
+	protected void assertQueryBudget(String name, long budget,
+									 Operation operation) {
+		this.assertBudget(name, budget, new Calendar[]{this.reference},
+				operation);
+		this.assertBudget(name + " (searching)", budget + WINDOW_BUDGET,
+				this.missReferences, operation);
+	}
+
+	/**
+	 * Runs an operation on every cron, first to warm it up and then to
+	 * measure the bytes it allocates per call.
+	 *
+	 * @param name       Name of the operation, for the assertion message.
+	 * @param budget     Maximum number of bytes allocated per call.
+	 * @param references References the calls go through, in turns.
+	 * @param operation  The operation.
+	 */
+	protected void assertBudget(String name, long budget,
+								Calendar[] references, Operation operation) {
+		long threadId = Thread.currentThread().getId();
+		for (FixedPeriodCron cron : this.crons) {
+			for (int i = 0; i < WARM_UP_CALLS; ++i) {
+				operation.run(cron, references[i % references.length]);
+			}
+			long before = this.threadBean.getThreadAllocatedBytes(threadId);
+			for (int i = 0; i < MEASURED_CALLS; ++i) {
+				operation.run(cron, references[i % references.length]);
+			}
+			long after = this.threadBean.getThreadAllocatedBytes(threadId);
+			long bytesPerCall = (after - before) / MEASURED_CALLS;
+			assertTrue(name + " on \"" + cron + "\" allocates " + bytesPerCall +
+					" bytes per call (budget: " + budget + ")",
+					bytesPerCall <= budget);
+		}
+	}
+
+	protected interface Operation {
+		Object run(FixedPeriodCron cron, Calendar reference);
+	}
+}
@@ -0,0 +1,435 @@
+package com.ielia.cron;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Differential test class (JUnit4) that compares FixedPeriodCron against a
+ * BruteForceCronOracle for random expressions and references spread over a
+ * whole 28-year cycle of days of the week. Failures are shrunk to a minimal
+ * counterexample.
+ * <p/>
+ * <p>The seed and the number of cases can be set through the
+ * <i>fuzz.seed</i> and <i>fuzz.iterations</i> system properties.</p>
+ *
+ * @author ielia
+ */
+public class FixedPeriodCronDifferentialTest {
+	protected static final long DEFAULT_SEED = 20130526L;
+	protected static final int DEFAULT_ITERATIONS = 10000;
+	protected static final int MAX_SHRINK_STEPS = 1000;
+	/**
+	 * Zones with a fixed offset (see BruteForceCronOracle).
+	 */
+	protected static final String[] ZONES =
+			{"UTC", "GMT+05:45", "GMT-03:30", "GMT+14:00"};
+	/* 1st of January, 2000 to 1st of January, 2028 (UTC) */
+	protected static final long FIRST_REFERENCE = 946684800000L;
+	protected static final long LAST_REFERENCE = 1830297600000L;
+
+	@Test
+	public void testAgainstBruteForceOracle() {
+		long seed = Long.getLong("fuzz.seed", DEFAULT_SEED);
+		int iterations = Integer.getInteger("fuzz.iterations",
+				DEFAULT_ITERATIONS);
+		Harness harness = new Harness();
+		Random random = new Random(seed);
+		for (int i = 0; i < iterations; ++i) {
+			Case aCase = harness.randomCase(random);
+			String failure = harness.check(aCase);
+			if (failure != null) {
+				Case minimal = harness.shrink(aCase);
+				fail("Seed " + seed + ", iteration " + i + ". Minimal " +
+						"counterexample: " + minimal + ": " +
+						harness.check(minimal) + ". Original: " + aCase + ": " +
+						failure);
+			}
+		}
+	}
+
+	/**
+	 * Plants a bug (days of the week ignored by matches) and checks that the
+	 * harness finds it and shrinks it.
+	 */
+	@Test
+	public void testShrinksToMinimalCounterexample() {
+		Harness harness = new Harness() {
+			@Override
+			protected FixedPeriodCron compile(String expression) {
+				return new FixedPeriodCron(expression) {
+					@Override
+					public boolean matches(Calendar reference,
+										   int cronRunSeconds,
+										   int cronRunMillis,
+										   boolean matchAllUnderMinute) {
+						long daysOfWeek = this.crontabMasks[DAYS_OF_WEEK];
+						this.crontabMasks[DAYS_OF_WEEK] = 0x7F;
+						boolean matches = super.matches(reference,
+								cronRunSeconds, cronRunMillis,
+								matchAllUnderMinute);
+						this.crontabMasks[DAYS_OF_WEEK] = daysOfWeek;
+						return matches;
+					}
+				};
+			}
+		};
+		Random random = new Random(DEFAULT_SEED);
+		Case minimal = null;
+		for (int i = 0; i < DEFAULT_ITERATIONS && minimal == null; ++i) {
+			Case aCase = harness.randomCase(random);
+			if (harness.check(aCase) != null) {
+				minimal = harness.shrink(aCase);
+			}
+		}
+		assertNotNull(minimal);
+		String[] fields = minimal.getExpression().split(" ");
+		for (int field = 0; field < FixedPeriodCron.DAYS_OF_WEEK; ++field) {
+			assertEquals(minimal.toString(), "*", fields[field]);
+		}
+		assertEquals(minimal.toString(), 0, minimal.cronRunSeconds);
+		assertEquals(minimal.toString(), 0, minimal.cronRunMillis);
+		assertEquals(minimal.toString(), "UTC", minimal.zone);
+	}
+
+	/**
+	 * An expression, as the list of atoms of each field, plus a reference.
+	 * Atoms are {start, end, step, wildcard (1 or 0)}.
+	 */
+	protected static class Case {
+		protected List<List<int[]>> fields = new ArrayList<List<int[]>>();
+		protected long reference;
+		protected String zone;
+		protected int cronRunSeconds;
+		protected int cronRunMillis;
+
+		protected Case copy() {
+			Case copy = new Case();
+			for (List<int[]> atoms : this.fields) {
+				List<int[]> atomsCopy = new ArrayList<int[]>();
+				for (int[] atom : atoms) {
+					atomsCopy.add(atom.clone());
+				}
+				copy.fields.add(atomsCopy);
+			}
+			copy.reference = this.reference;
+			copy.zone = this.zone;
+			copy.cronRunSeconds = this.cronRunSeconds;
+			copy.cronRunMillis = this.cronRunMillis;
+			return copy;
+		}
+
+		protected String getExpression() {
+			StringBuilder expression = new StringBuilder();
+			for (List<int[]> atoms : this.fields) {
+				if (expression.length() > 0) {
+					expression.append(' ');
+				}
+				for (int i = 0; i < atoms.size(); ++i) {
+					int[] atom = atoms.get(i);
+					if (i > 0) {
+						expression.append(',');
+					}
+					if (atom[3] == 1) {
+						expression.append('*');
+					} else if (atom[0] == atom[1]) {
+						expression.append(atom[0]);
+					} else {
+						expression.append(atom[0]).append('-').append(atom[1]);
+					}
+					if (atom[2] > 1) {
+						expression.append('/').append(atom[2]);
+					}
+				}
+			}
+			return expression.toString();
+		}
+
+		protected boolean[][] getValues() {
+			boolean[][] values = new boolean[FixedPeriodCron.NUMBER_OF_FIELDS][];
+			for (int field = 0; field < values.length; ++field) {
+				values[field] = new boolean[
+						FixedPeriodCron.RANGES[field * 2 + 1] + 1];
+				for (int[] atom : this.fields.get(field)) {
+					int start = atom[3] == 1 ?
+							FixedPeriodCron.RANGES[field * 2] : atom[0];
+					int end = atom[3] == 1 ?
+							FixedPeriodCron.RANGES[field * 2 + 1] : atom[1];
+					for (int value = start; value <= end; value += atom[2]) {
+						values[field][value] = true;
+					}
+				}
+			}
+			/* Sunday = 0 and 7 */
+			if (values[FixedPeriodCron.DAYS_OF_WEEK][7]) {
+				values[FixedPeriodCron.DAYS_OF_WEEK][0] = true;
+			}
+			return values;
+		}
+
+		protected Calendar getReference() {
+			Calendar reference =
+					new GregorianCalendar(TimeZone.getTimeZone(this.zone));
+			reference.setTimeInMillis(this.reference);
+			return reference;
+		}
+
+		@Override
+		public String toString() {
+			return "\"" + this.getExpression() + "\" at " +
+					String.format("%tF %<tT.%<tL %<tZ", this.getReference()) +
+					" running at " + this.cronRunSeconds + "s " +
+					this.cronRunMillis + "ms";
+		}
+	}
+
+	/**
+	 * Generates, checks and shrinks cases.
+	 */
+	protected static class Harness {
+		protected FixedPeriodCron compile(String expression) {
+			return new FixedPeriodCron(expression);
+		}
+
+		protected Case randomCase(Random random) {
+			Case aCase = new Case();
+			for (int field = 0; field < FixedPeriodCron.NUMBER_OF_FIELDS;
+				 ++field) {
+				aCase.fields.add(this.randomAtoms(random, field));
+			}
+			aCase.zone = ZONES[random.nextInt(ZONES.length)];
+			aCase.reference = FIRST_REFERENCE + (long) (random.nextDouble() *
+					(LAST_REFERENCE - FIRST_REFERENCE));
+			if (random.nextInt(3) == 0) {
+				aCase.reference -= aCase.reference % 60000;
+			}
+			if (random.nextInt(10) < 3) {
+				aCase.cronRunSeconds = random.nextInt(60);
+				aCase.cronRunMillis = random.nextInt(1000);
+			}
+			if (random.nextInt(5) == 0) {
+				/* Close to (or exactly at) a match */
+				Calendar after = new BruteForceCronOracle(aCase.getValues())
+						.getClosestDateAfter(aCase.getReference(),
+								aCase.cronRunSeconds, aCase.cronRunMillis);
+				if (after != null) {
+					aCase.reference = after.getTimeInMillis() +
+							random.nextInt(3) - 1;
+				}
+			}
+			return aCase;
+		}
+
+		protected List<int[]> randomAtoms(Random random, int field) {
+			int min = FixedPeriodCron.RANGES[field * 2];
+			int max = FixedPeriodCron.RANGES[field * 2 + 1];
+			List<int[]> atoms = new ArrayList<int[]>();
+			int kind = random.nextInt(10);
+			if (kind < 4) {
+				atoms.add(new int[]{min, max, 1, 1});
+			} else if (kind < 5) {
+				atoms.add(new int[]{min, max,
+						2 + random.nextInt((max - min + 1) / 2), 1});
+			} else {
+				int count = 1 + random.nextInt(3);
+				for (int i = 0; i < count; ++i) {
+					int start = min + random.nextInt(max - min + 1);
+					int end = start;
+					int step = 1;
+					int shape = random.nextInt(3);
+					if (shape > 0) {
+						end = start + random.nextInt(max - start + 1);
+					}
+					if (shape > 1) {
+						step = 1 + random.nextInt(end - start + 1);
+					}
+					atoms.add(new int[]{start, end, step, 0});
+				}
+			}
+			return atoms;
+		}
+
+		/**
+		 * Runs every query against the oracle.
+		 *
+		 * @param aCase The case.
+		 * @return Description of the first difference, or null if there is
+		 *         none.
+		 */
+		protected String check(Case aCase) {
+			BruteForceCronOracle oracle =
+					new BruteForceCronOracle(aCase.getValues());
+			Calendar reference = aCase.getReference();
+			int seconds = aCase.cronRunSeconds;
+			int millis = aCase.cronRunMillis;
+			try {
+				FixedPeriodCron cron = this.compile(aCase.getExpression());
+				for (int all = 0; all < 2; ++all) {
+					boolean expected = oracle.matches(reference, seconds,
+							millis, all == 1);
+					boolean actual = cron.matches(reference, seconds, millis,
+							all == 1);
+					if (expected != actual) {
+						return "matches (" + (all == 1) + ") expected " +
+								expected + " but was " + actual;
+					}
+				}
+				String difference = this.compare("getClosestDateAfter",
+						oracle.getClosestDateAfter(reference, seconds, millis),
+						cron.getClosestDateAfter(reference, seconds, millis));
+				if (difference != null) {
+					return difference;
+				}
+				difference = this.compare("getClosestDateBeforeOrSame",
+						oracle.getClosestDateBeforeOrSame(reference, seconds,
+								millis),
+						cron.getClosestDateBeforeOrSame(reference, seconds,
+								millis));
+				if (difference != null) {
+					return difference;
+				}
+				difference = this.compare("periodInMillis",
+						oracle.periodInMillis(reference, seconds, millis),
+						cron.periodInMillis(reference, seconds, millis));
+				if (difference != null) {
+					return difference;
+				}
+				CronWindow window = cron.window(reference, seconds, millis);
+				difference = this.compare("window (previous)",
+						oracle.getClosestDateBeforeOrSame(reference, seconds,
+								millis), window.getPrevious());
+				if (difference != null) {
+					return difference;
+				}
+				difference = this.compare("window (next)",
+						oracle.getClosestDateAfter(reference, seconds, millis),
+						window.getNext());
+				if (difference != null) {
+					return difference;
+				}
+				return this.compare("nextMatchInMillis",
+						oracle.nextMatchInMillis(reference, seconds, millis),
+						cron.nextMatchInMillis(reference, seconds, millis));
+			} catch (RuntimeException exception) {
+				return "threw " + exception;
+			}
+		}
+
+		protected String compare(String query, Calendar expected,
+								 Calendar actual) {
+			if (expected == null ? actual == null : actual != null &&
+					expected.getTimeInMillis() == actual.getTimeInMillis()) {
+				return null;
+			}
+			return query + " expected " + this.format(expected) + " but was " +
+					this.format(actual);
+		}
+
+		protected String compare(String query, Long expected, Long actual) {
+			if (expected == null ? actual == null : expected.equals(actual)) {
+				return null;
+			}
+			return query + " expected " + expected + " but was " + actual;
+		}
+
+		protected String format(Calendar calendar) {
+			return calendar == null ? "null" :
+					String.format("%tF %<tT.%<tL %<tZ", calendar);
+		}
+
+		/**
+		 * Greedily applies simplifications to a failing case while it keeps
+		 * failing.
+		 *
+		 * @param aCase A failing case.
+		 * @return The minimal failing case found.
+		 */
+		protected Case shrink(Case aCase) {
+			boolean shrunk = true;
+			for (int steps = 0; shrunk && steps < MAX_SHRINK_STEPS; ++steps) {
+				shrunk = false;
+				for (Case candidate : this.simplify(aCase)) {
+					if (this.check(candidate) != null) {
+						aCase = candidate;
+						shrunk = true;
+						break;
+					}
+				}
+			}
+			return aCase;
+		}
+
+		protected List<Case> simplify(Case aCase) {
+			List<Case> candidates = new ArrayList<Case>();
+			for (int field = 0; field < FixedPeriodCron.NUMBER_OF_FIELDS;
+				 ++field) {
+				List<int[]> atoms = aCase.fields.get(field);
+				for (int i = 0; i < atoms.size(); ++i) {
+					int[] atom = atoms.get(i);
+					if (atoms.size() > 1) {
+						Case candidate = aCase.copy();
+						candidate.fields.get(field).remove(i);
+						candidates.add(candidate);
+					}
+					if (atom[3] == 0 || atom[2] > 1) {
+						Case candidate = aCase.copy();
+						candidate.fields.get(field).set(i, new int[]{
+								FixedPeriodCron.RANGES[field * 2],
+								FixedPeriodCron.RANGES[field * 2 + 1], 1, 1});
+						candidates.add(candidate);
+					}
+					if (atom[2] > 1) {
+						Case candidate = aCase.copy();
+						candidate.fields.get(field).get(i)[2] = 1;
+						candidates.add(candidate);
+					}
+					if (atom[3] == 0 && atom[0] != atom[1]) {
+						Case candidate = aCase.copy();
+						candidate.fields.get(field).set(i,
+								new int[]{atom[0], atom[0], 1, 0});
+						candidates.add(candidate);
+						candidate = aCase.copy();
+						candidate.fields.get(field).set(i,
+								new int[]{atom[1], atom[1], 1, 0});
+						candidates.add(candidate);
+					}
+				}
+			}
+			if (aCase.cronRunSeconds != 0 || aCase.cronRunMillis != 0) {
+				Case candidate = aCase.copy();
+				candidate.cronRunSeconds = 0;
+				candidate.cronRunMillis = 0;
+				candidates.add(candidate);
+			}
+			if (!"UTC".equals(aCase.zone)) {
+				Case candidate = aCase.copy();
+				candidate.zone = "UTC";
+				candidates.add(candidate);
+			}
+			int[] referenceFields = {Calendar.MILLISECOND, Calendar.SECOND,
+					Calendar.MINUTE, Calendar.HOUR_OF_DAY, Calendar.DATE,
+					Calendar.MONTH};
+			Calendar reference = aCase.getReference();
+			for (int field : referenceFields) {
+				int minimum = reference.getActualMinimum(field);
+				if (reference.get(field) != minimum) {
+					Calendar simpler = (Calendar) reference.clone();
+					simpler.set(field, minimum);
+					Case candidate = aCase.copy();
+					candidate.reference = simpler.getTimeInMillis();
+					candidates.add(candidate);
+				}
+			}
+			return candidates;
+		}
+	}
+}
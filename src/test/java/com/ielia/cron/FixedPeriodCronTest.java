@@ -3,11 +3,22 @@ package com.ielia.cron;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -321,6 +332,129 @@ public class FixedPeriodCronTest {
 		}
 	}
 
+	/**
+	 * Test method for {@link com.ielia.cron.FixedPeriodCron#window(java.util.Calendar, int, int)}.
+	 */
+	@Test
+	public void testWindow() {
+		for (int i = 0; i < CRONS; ++i) {
+			for (int j = 0; j < DATES; ++j) {
+				String message = "i: " + i + ", j: " + j;
+				CronWindow window = this.crons[i].window(this.referenceDates[j],
+						0, 500);
+				assertEquals(message, this.crons[i].getClosestDateBeforeOrSame(
+						this.referenceDates[j], 0, 500), window.getPrevious());
+				assertEquals(message, this.crons[i].getClosestDateAfter(
+						this.referenceDates[j], 0, 500), window.getNext());
+				window = this.crons[i].window(this.referenceDates[j]);
+				assertEquals(message, this.periodsInMillis[i][j],
+						window.periodInMillis());
+				assertEquals(message, this.nextMatchesInMillis[i][j],
+						window.nextMatchInMillis());
+				assertEquals(message, this.referenceDates[j],
+						window.getReference());
+			}
+		}
+	}
+
+	@Test
+	public void testMemoizedWindow() {
+		FixedPeriodCron cron = new FixedPeriodCron("0 9 * * 1-5");
+		/* Friday, 24th of May, 2013, 10:00 */
+		Calendar reference = new GregorianCalendar(2013, 4, 24, 10, 0);
+		Calendar next = new GregorianCalendar(2013, 4, 27, 9, 0);
+		Calendar previous = new GregorianCalendar(2013, 4, 24, 9, 0);
+		assertEquals(next, cron.getClosestDateAfter(reference));
+		FixedPeriodCron.MemoizedWindow window = cron.lastWindow;
+		assertEquals(previous.getTimeInMillis(), window.previous);
+		assertEquals(next.getTimeInMillis(), window.next);
+		/* References within [previous, next) are answered from memory */
+		Calendar within = new GregorianCalendar(2013, 4, 27, 8, 59, 59);
+		assertEquals(next, cron.getClosestDateAfter(within));
+		assertEquals(previous, cron.getClosestDateBeforeOrSame(within));
+		assertEquals(previous, cron.getClosestDateBeforeOrSame(previous));
+		assertEquals(Long.valueOf(next.getTimeInMillis() -
+				previous.getTimeInMillis()), cron.periodInMillis(reference));
+		assertEquals(Long.valueOf(1000), cron.nextMatchInMillis(within));
+		assertSame(window, cron.lastWindow);
+		/* The next match belongs to the following window */
+		assertEquals(new GregorianCalendar(2013, 4, 28, 9, 0),
+				cron.getClosestDateAfter(next));
+		assertNotSame(window, cron.lastWindow);
+		/* So do other run seconds and time zones */
+		window = cron.lastWindow;
+		cron.getClosestDateAfter(next, 30, 0);
+		assertNotSame(window, cron.lastWindow);
+		window = cron.lastWindow;
+		Calendar zoned = new GregorianCalendar(
+				TimeZone.getTimeZone("America/New_York"));
+		zoned.setTimeInMillis(next.getTimeInMillis());
+		Calendar zonedNext = cron.getClosestDateAfter(zoned, 30, 0);
+		assertEquals(9, zonedNext.get(Calendar.HOUR_OF_DAY));
+		assertNotSame(window, cron.lastWindow);
+	}
+
+	@Test
+	public void testMemoizedWindowWithExclusions() {
+		ExclusionCalendar exclusions = new ExclusionCalendar();
+		FixedPeriodCron cron = new FixedPeriodCron("0 9 * * 1-5", exclusions);
+		/* Friday, 24th of May, 2013, 10:00 */
+		Calendar reference = new GregorianCalendar(2013, 4, 24, 10, 0);
+		assertEquals(new GregorianCalendar(2013, 4, 27, 9, 0),
+				cron.getClosestDateAfter(reference));
+		exclusions.excludeDay(2013, 5, 27);
+		assertEquals(new GregorianCalendar(2013, 4, 28, 9, 0),
+				cron.getClosestDateAfter(reference));
+		exclusions.excludeRange(new GregorianCalendar(2013, 4, 28),
+				new GregorianCalendar(2013, 4, 29));
+		assertEquals(new GregorianCalendar(2013, 4, 29, 9, 0),
+				cron.getClosestDateAfter(reference));
+	}
+
+	/**
+	 * Threads sharing a cron must get the same results as with crons of their
+	 * own, while they replace the window of each other.
+	 */
+	@Test
+	public void testMemoizedWindowUnderConcurrency() throws Exception {
+		final FixedPeriodCron shared = new FixedPeriodCron("*/20 8-10 * * 1-5");
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<Void>> futures = new ArrayList<Future<Void>>();
+			for (int thread = 0; thread < 4; ++thread) {
+				final long seed = thread;
+				futures.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() {
+						Random random = new Random(seed);
+						Calendar reference = new GregorianCalendar(2013, 4, 20);
+						long start = reference.getTimeInMillis();
+						for (int i = 0; i < 20000; ++i) {
+							/* A few days, so that windows are hit and missed */
+							reference.setTimeInMillis(start +
+									(long) (random.nextDouble() * 4 * 86400000L));
+							FixedPeriodCron own = new FixedPeriodCron(
+									shared.toString());
+							String message = "at " + reference.getTime();
+							assertEquals(message, own.getClosestDateAfter(
+									reference), shared.getClosestDateAfter(
+									reference));
+							assertEquals(message,
+									own.getClosestDateBeforeOrSame(reference),
+									shared.getClosestDateBeforeOrSame(reference));
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
 	@Test
 	public void testSameMinuteAsTheMatch() {
 		FixedPeriodCron cron = new FixedPeriodCron("* * * * *");
@@ -418,4 +552,366 @@ public class FixedPeriodCronTest {
 			}
 		}
 	}
+
+	/**
+	 * Bugs of the former search (one case per bug).
+	 */
+	@Test
+	public void testDifferentialRegressions() {
+		/* Next hour of the same day */
+		Calendar reference = new GregorianCalendar(2001, 1, 1, 12, 45, 0);
+		Calendar after = new FixedPeriodCron("30 * * * *").getClosestDateAfter(
+				reference);
+		assertEquals(new GregorianCalendar(2001, 1, 1, 13, 30, 0).getTime(),
+				after.getTime());
+		/* Same day of the month as the reference, in the next month */
+		reference = new GregorianCalendar(2001, 1, 1, 12, 0, 0);
+		after = new FixedPeriodCron("0 0 1 * *").getClosestDateAfter(reference);
+		assertEquals(new GregorianCalendar(2001, 2, 1, 0, 0, 0).getTime(),
+				after.getTime());
+		/* Same day and month as the reference, in the next year */
+		reference = new GregorianCalendar(2000, 0, 3, 0, 0, 0);
+		after = new FixedPeriodCron("0 0 3 1 *").getClosestDateAfter(reference);
+		assertEquals(new GregorianCalendar(2001, 0, 3, 0, 0, 0).getTime(),
+				after.getTime());
+		/* A step over Sunday = 7 does not include Sunday */
+		reference = new GregorianCalendar(2005, 0, 2, 0, 0, 0);
+		assertFalse(new FixedPeriodCron("0 0 * * 4-7/2").matches(reference));
+		assertTrue(new FixedPeriodCron("0 0 * * 4-7/3").matches(reference));
+		/* The time zone of the reference is honoured */
+		reference = new GregorianCalendar(TimeZone.getTimeZone("GMT+05:45"));
+		reference.clear();
+		reference.set(2001, 1, 1, 12, 45, 0);
+		after = new FixedPeriodCron("30 13 * * *").getClosestDateAfter(
+				reference);
+		assertEquals(reference.getTimeInMillis() + 45 * 60 * 1000,
+				after.getTimeInMillis());
+		/* Feb 29th on a Monday happens once every 28 years */
+		reference = new GregorianCalendar(2016, 2, 1, 0, 0, 0);
+		after = new FixedPeriodCron("0 0 29 2 1").getClosestDateAfter(
+				reference);
+		assertEquals(new GregorianCalendar(2044, 1, 29, 0, 0, 0).getTime(),
+				after.getTime());
+	}
+
+	/**
+	 * Test method for {@link com.ielia.cron.FixedPeriodCron#isFixedPeriod()}.
+	 */
+	@Test
+	public void testIsFixedPeriod() {
+		String[] fixed = {"*/5 * * * *", "0 * * * *", "0 0 * * *",
+				"15 */6 * * *", "5,35 * * * *", "0 0 * * 7"};
+		long[] periods = {5 * 60 * 1000L, 60 * 60 * 1000L,
+				24 * 60 * 60 * 1000L, 6 * 60 * 60 * 1000L, 30 * 60 * 1000L,
+				7 * 24 * 60 * 60 * 1000L};
+		for (int i = 0; i < fixed.length; ++i) {
+			FixedPeriodCron cron = new FixedPeriodCron(fixed[i]);
+			assertTrue(fixed[i], cron.isFixedPeriod());
+			assertEquals(fixed[i], (Long) periods[i], cron.fixedPeriodMillis());
+		}
+		String[] notFixed = {"*/7 * * * *", "*/10 */2 * * *", "5,36 * * * *",
+				"48-59 * * * *", "0 0 1 * *", "0 9 * * 1-5", "0 0,12 * * 0"};
+		for (String expression : notFixed) {
+			FixedPeriodCron cron = new FixedPeriodCron(expression);
+			assertFalse(expression, cron.isFixedPeriod());
+			assertNull(expression, cron.fixedPeriodMillis());
+		}
+	}
+
+	/**
+	 * The fixed period shortcut must give the same results as the search,
+	 * including around daylight saving transitions.
+	 */
+	@Test
+	public void testFixedPeriodAgainstSearch() {
+		String[] expressions = {"*/5 * * * *", "0 * * * *", "45 1 * * *",
+				"30 2 * * *", "0 */6 * * *", "0 0 * * 0"};
+		String[] zones = {"America/New_York", "Australia/Lord_Howe",
+				"Europe/Amsterdam", "Asia/Kolkata"};
+		for (String expression : expressions) {
+			FixedPeriodCron fast = new FixedPeriodCron(expression);
+			FixedPeriodCron search = new FixedPeriodCron(expression) {
+				{
+					this.fixedPeriodMinutes = 0;
+				}
+			};
+			for (String zone : zones) {
+				Calendar reference =
+						new GregorianCalendar(TimeZone.getTimeZone(zone));
+				reference.clear();
+				reference.set(2021, Calendar.JANUARY, 1, 0, 0, 7);
+				for (int i = 0; i < 365 * 24 * 3; ++i) {
+					reference.add(Calendar.MINUTE, 20);
+					assertEquals(expression + " at " + reference.getTime(),
+							search.getClosestDateAfter(reference).getTime(),
+							fast.getClosestDateAfter(reference).getTime());
+					assertEquals(expression + " at " + reference.getTime(),
+							search.getClosestDateBeforeOrSame(reference)
+									.getTime(),
+							fast.getClosestDateBeforeOrSame(reference)
+									.getTime());
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testExclusions() {
+		ExclusionCalendar exclusions = new ExclusionCalendar();
+		/* Whit Monday, 20th of May, 2013 */
+		exclusions.excludeDay(2013, 5, 20);
+		/* Maintenance, Saturday, 25th of May, 2013, 22:00 to 26th, 02:10 */
+		exclusions.excludeRange(new GregorianCalendar(2013, 4, 25, 22, 0),
+				new GregorianCalendar(2013, 4, 26, 2, 10));
+		FixedPeriodCron cron = new FixedPeriodCron("0 9 * * 1-5", exclusions);
+		assertFalse(cron.isFixedPeriod());
+		assertEquals(new GregorianCalendar(2013, 4, 21, 9, 0).getTime(),
+				cron.getClosestDateAfter(
+						new GregorianCalendar(2013, 4, 17, 10, 0)).getTime());
+		assertEquals(new GregorianCalendar(2013, 4, 17, 9, 0).getTime(),
+				cron.getClosestDateBeforeOrSame(
+						new GregorianCalendar(2013, 4, 21, 8, 0)).getTime());
+		assertFalse(cron.matches(new GregorianCalendar(2013, 4, 20, 9, 0)));
+		assertTrue(cron.matches(new GregorianCalendar(2013, 4, 21, 9, 0)));
+		cron = new FixedPeriodCron("*/15 * * * *", exclusions);
+		assertFalse(cron.isFixedPeriod());
+		assertEquals(new GregorianCalendar(2013, 4, 26, 2, 15).getTime(),
+				cron.getClosestDateAfter(
+						new GregorianCalendar(2013, 4, 25, 21, 50)).getTime());
+		assertEquals(new GregorianCalendar(2013, 4, 25, 21, 45).getTime(),
+				cron.getClosestDateBeforeOrSame(
+						new GregorianCalendar(2013, 4, 26, 2, 14)).getTime());
+		assertFalse(cron.matches(new GregorianCalendar(2013, 4, 25, 22, 0)));
+		assertFalse(cron.matches(new GregorianCalendar(2013, 4, 26, 2, 0)));
+		assertTrue(cron.matches(new GregorianCalendar(2013, 4, 26, 2, 15)));
+		/* A range ending right at a match does not exclude it */
+		exclusions.excludeRange(new GregorianCalendar(2013, 4, 27, 0, 1),
+				new GregorianCalendar(2013, 4, 27, 0, 30));
+		assertEquals(new GregorianCalendar(2013, 4, 27, 0, 30).getTime(),
+				cron.getClosestDateAfter(
+						new GregorianCalendar(2013, 4, 27, 0, 0)).getTime());
+		assertEquals(Long.valueOf(30 * 60000), cron.periodInMillis(
+				new GregorianCalendar(2013, 4, 27, 0, 10)));
+	}
+
+	/**
+	 * The cost of a search does not depend on the length of the blackout.
+	 */
+	@Test(timeout = 5000)
+	public void testLongBlackout() {
+		ExclusionCalendar exclusions = new ExclusionCalendar();
+		for (int i = 0; i < 1000; ++i) {
+			exclusions.excludeRange(
+					new GregorianCalendar(2001 + i / 100, i % 12, 1, 0, 0),
+					new GregorianCalendar(2001 + i / 100, i % 12, 1, 0, 30));
+		}
+		exclusions.excludeRange(new GregorianCalendar(2000, 0, 1, 0, 0),
+				new GregorianCalendar(2020, 0, 1, 0, 0, 30));
+		FixedPeriodCron cron = new FixedPeriodCron("* * * * *", exclusions);
+		for (int i = 0; i < 10000; ++i) {
+			assertEquals(new GregorianCalendar(2020, 0, 1, 0, 1).getTime(),
+					cron.getClosestDateAfter(
+							new GregorianCalendar(2000, 0, 1, 0, i % 60))
+							.getTime());
+			assertEquals(new GregorianCalendar(1999, 11, 31, 23, 59).getTime(),
+					cron.getClosestDateBeforeOrSame(
+							new GregorianCalendar(2019, 11, 31, 0, i % 60))
+							.getTime());
+		}
+	}
+
+	/**
+	 * Excluded days are skipped a month at a time, so the number of lookups
+	 * does not depend on the length of a day blackout.
+	 */
+	@Test
+	public void testLongDayBlackout() {
+		final int[] lookups = new int[1];
+		ExclusionCalendar exclusions = new ExclusionCalendar() {
+			@Override
+			protected long getExcludedDays(int year, int month) {
+				++lookups[0];
+				return super.getExcludedDays(year, month);
+			}
+		};
+		/* Summer shutdown, from the 1st of June to the 30th of September */
+		for (Calendar day = new GregorianCalendar(2013, 5, 1);
+			 day.get(Calendar.MONTH) < 9; day.add(Calendar.DATE, 1)) {
+			exclusions.excludeDay(day);
+		}
+		FixedPeriodCron cron = new FixedPeriodCron("0 9 * * *", exclusions);
+		assertEquals(new GregorianCalendar(2013, 9, 1, 9, 0).getTime(),
+				cron.getClosestDateAfter(
+						new GregorianCalendar(2013, 4, 31, 10, 0)).getTime());
+		assertEquals(new GregorianCalendar(2013, 4, 31, 9, 0).getTime(),
+				cron.getClosestDateBeforeOrSame(
+						new GregorianCalendar(2013, 9, 1, 8, 0)).getTime());
+		/* Two searches each way, over at most six months */
+		assertTrue("Lookups: " + lookups[0], lookups[0] <= 4 * 6);
+		/* Weekdays only, with the 1st of October a Tuesday */
+		cron = new FixedPeriodCron("0 9 * * 2", exclusions);
+		assertEquals(new GregorianCalendar(2013, 9, 1, 9, 0).getTime(),
+				cron.getClosestDateAfter(
+						new GregorianCalendar(2013, 4, 29, 10, 0)).getTime());
+		assertEquals(new GregorianCalendar(2013, 4, 28, 9, 0).getTime(),
+				cron.getClosestDateBeforeOrSame(
+						new GregorianCalendar(2013, 9, 1, 8, 0)).getTime());
+	}
+
+	/**
+	 * Searching with exclusions must give the same results as filtering the
+	 * matches of the cron without them.
+	 */
+	@Test
+	public void testExclusionsAgainstFiltering() {
+		String[] expressions = {"*/5 * * * *", "0 9 * * 1-5", "30 */3 1,15 * *",
+				"0 0 29 2 *"};
+		Random random = new Random(20130527);
+		ExclusionCalendar exclusions = new ExclusionCalendar();
+		for (int i = 0; i < 300; ++i) {
+			exclusions.excludeDay(2010 + random.nextInt(8),
+					1 + random.nextInt(12), 1 + random.nextInt(28));
+			Calendar start = new GregorianCalendar(2010 + random.nextInt(8),
+					random.nextInt(12), 1 + random.nextInt(28),
+					random.nextInt(24), random.nextInt(60));
+			exclusions.excludeRange(start.getTimeInMillis(),
+					start.getTimeInMillis() +
+							random.nextInt(3 * 24 * 60) * 60000L + 1);
+		}
+		for (String expression : expressions) {
+			FixedPeriodCron plain = new FixedPeriodCron(expression);
+			FixedPeriodCron excluding = new FixedPeriodCron(expression,
+					exclusions);
+			for (int i = 0; i < 200; ++i) {
+				Calendar reference = new GregorianCalendar(
+						2010 + random.nextInt(8), random.nextInt(12),
+						1 + random.nextInt(28), random.nextInt(24),
+						random.nextInt(60), random.nextInt(60));
+				Calendar expected = plain.getClosestDateAfter(reference);
+				while (expected != null && this.isExcluded(exclusions,
+						expected)) {
+					expected = plain.getClosestDateAfter(expected);
+				}
+				Calendar actual = excluding.getClosestDateAfter(reference);
+				assertEquals(expression + " after " + reference.getTime(),
+						expected.getTime(), actual.getTime());
+				expected = plain.getClosestDateBeforeOrSame(reference);
+				while (expected != null && this.isExcluded(exclusions,
+						expected)) {
+					expected.add(Calendar.MILLISECOND, -1);
+					expected = plain.getClosestDateBeforeOrSame(expected);
+				}
+				actual = excluding.getClosestDateBeforeOrSame(reference);
+				assertEquals(expression + " before " + reference.getTime(),
+						expected.getTime(), actual.getTime());
+				assertEquals(expression + " at " + expected.getTime(),
+						!this.isExcluded(exclusions, reference) &&
+								plain.matches(reference, false),
+						excluding.matches(reference, false));
+			}
+		}
+	}
+
+	@Test
+	public void testEvaluationListener() {
+		final List<String> calls = new ArrayList<String>();
+		FixedPeriodCron.setEvaluationListener(new CronEvaluationListener() {
+			@Override
+			public Object beginParse() {
+				return "parse";
+			}
+
+			@Override
+			public void endParse(Object context, String expression,
+								 boolean valid) {
+				calls.add(context + " " + expression + " " + valid);
+			}
+
+			@Override
+			public Object beginSearch() {
+				return "search";
+			}
+
+			@Override
+			public void endSearch(Object context, FixedPeriodCron cron,
+								  int direction, int yearsScanned, long result) {
+				calls.add(context + " " + cron + " " + direction + " " +
+						yearsScanned + " " + (result != FixedPeriodCron.NO_DATE));
+			}
+
+			@Override
+			public Object beginMatch() {
+				return "match";
+			}
+
+			@Override
+			public void endMatch(Object context, FixedPeriodCron cron,
+								 long reference, boolean matched) {
+				calls.add(context + " " + cron + " " + matched);
+			}
+		});
+		try {
+			FixedPeriodCron cron = new FixedPeriodCron("0 0 29 2 1");
+			/* Monday, 1st of January, 2001 */
+			Calendar reference = new GregorianCalendar(2001, 0, 1);
+			cron.getClosestDateAfter(reference);
+			cron.getClosestDateBeforeOrSame(reference);
+			cron.matches(reference);
+			new FixedPeriodCron("0 0 30 2 *").getClosestDateAfter(reference);
+			/* Fixed periods are not searched */
+			new FixedPeriodCron("*/5 * * * *").getClosestDateAfter(reference);
+			try {
+				new FixedPeriodCron("1-2-3 * * * *");
+			} catch (IllegalArgumentException exception) {
+				/* Expected */
+			}
+			/* The window of the first search answers the second query */
+			assertEquals("[parse 0 0 29 2 1 true, search 0 0 29 2 1 -1 13 true, " +
+					"search 0 0 29 2 1 1 15 true, match 0 0 29 2 1 false, " +
+					"parse 0 0 30 2 * true, search 0 0 30 2 * -1 28 false, " +
+					"search 0 0 30 2 * 1 28 false, parse */5 * * * * true, " +
+					"parse 1-2-3 * * * * false]", calls.toString());
+		} finally {
+			FixedPeriodCron.setEvaluationListener(null);
+		}
+	}
+
+	@Test
+	public void testClock() {
+		TimeZone zone = TimeZone.getTimeZone("America/New_York");
+		Calendar reference = new GregorianCalendar(zone);
+		reference.clear();
+		reference.set(2013, Calendar.MAY, 24, 9, 0);
+		VirtualClock clock = new VirtualClock(reference.getTimeInMillis(),
+				zone.toZoneId());
+		FixedPeriodCron cron = new FixedPeriodCron("0 9 * * 1-5");
+		assertTrue(cron.matches(clock));
+		assertEquals(cron.getClosestDateBeforeOrSame(reference),
+				cron.getClosestDateBeforeOrSame(clock));
+		assertEquals(cron.getClosestDateAfter(reference),
+				cron.getClosestDateAfter(clock));
+		assertEquals(cron.periodInMillis(reference), cron.periodInMillis(clock));
+		assertEquals(cron.window(reference).getNext(),
+				cron.window(clock).getNext());
+		/* Friday, 09:00 to Monday, 09:00 */
+		assertEquals(Long.valueOf(3 * 24 * 3600000L),
+				cron.nextMatchInMillis(clock));
+		clock.advance(3600000L);
+		assertFalse(cron.matches(clock));
+		assertEquals(Long.valueOf(3 * 24 * 3600000L - 3600000L + 30000L),
+				cron.nextMatchInMillis(clock, 30, 0));
+		/* The same instant is 13:00 in UTC */
+		assertEquals(Long.valueOf(3 * 24 * 3600000L - 3600000L - 4 * 3600000L),
+				cron.nextMatchInMillis(clock.withZone(
+						TimeZone.getTimeZone("UTC").toZoneId())));
+	}
+
+	protected boolean isExcluded(ExclusionCalendar exclusions, Calendar date) {
+		Calendar run = (Calendar) date.clone();
+		run.set(Calendar.SECOND, 0);
+		run.set(Calendar.MILLISECOND, 0);
+		return exclusions.isExcludedDay(date.get(Calendar.YEAR),
+				date.get(Calendar.MONTH) + 1, date.get(Calendar.DATE)) ||
+				exclusions.isExcludedTime(run.getTimeInMillis());
+	}
 }
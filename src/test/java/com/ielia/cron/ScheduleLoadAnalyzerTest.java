@@ -0,0 +1,159 @@
+package com.ielia.cron;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * Test class (JUnit4) for ScheduleLoadAnalyzer and LoadHistogram.
+ *
+ * @author ielia
+ */
+public class ScheduleLoadAnalyzerTest {
+	protected static final double DELTA = 1e-9;
+	ScheduleLoadAnalyzer analyzer;
+	FixedPeriodCron everyQuarter, weekdaysAtNine, everyDayAtNine, monthly;
+	/* Monday, 1st of January, 2001, 13:45:00.000 */
+	Calendar start;
+
+	@Before
+	public void setUp() {
+		this.everyQuarter = new FixedPeriodCron("*/15 * * * *");
+		this.weekdaysAtNine = new FixedPeriodCron("0 9 * * 1-5");
+		this.everyDayAtNine = new FixedPeriodCron("0 9 * * *");
+		this.monthly = new FixedPeriodCron("30 0 1 * *");
+		this.analyzer = new ScheduleLoadAnalyzer();
+		this.analyzer.add(this.everyQuarter);
+		this.analyzer.add(this.weekdaysAtNine, 5);
+		this.analyzer.add(this.everyDayAtNine, 2);
+		this.analyzer.add(this.monthly);
+		this.start = new GregorianCalendar(2001, 0, 1, 13, 45, 0);
+	}
+
+	/**
+	 * Compares every minute of a week against a minute-by-minute evaluation
+	 * of the crons.
+	 */
+	@Test
+	public void testAnalyzeAgainstMatches() {
+		LoadHistogram histogram =
+				this.analyzer.analyze(this.start, Calendar.WEEK_OF_YEAR);
+		assertEquals(7 * 24 * 60, histogram.size());
+		Calendar minute = new GregorianCalendar(2001, 0, 1, 0, 0, 0);
+		for (int i = 0; i < histogram.size(); ++i) {
+			double expected = 0;
+			List<FixedPeriodCron> crons = histogram.getCrons();
+			for (int j = 0; j < crons.size(); ++j) {
+				if (crons.get(j).matches(minute)) {
+					expected += histogram.getWeight(j);
+				}
+			}
+			assertEquals("minute: " + i, expected, histogram.getLoad(i), DELTA);
+			minute.add(Calendar.MINUTE, 1);
+		}
+	}
+
+	@Test
+	public void testHorizons() {
+		assertEquals(24 * 60,
+				this.analyzer.analyze(this.start, Calendar.DATE).size());
+		LoadHistogram year = this.analyzer.analyze(this.start, Calendar.YEAR);
+		assertEquals(365 * 24 * 60, year.size());
+		/* 4 fires per hour, 5 * 52 + 1 weekdays, 365 days and 12 months */
+		assertEquals(4 * 24 * 365 + 5 * (5 * 52 + 1) + 2 * 365 + 12,
+				year.getTotalLoad(), DELTA);
+		Calendar leap = new GregorianCalendar(2004, 0, 1);
+		assertEquals(366 * 24 * 60,
+				this.analyzer.analyze(leap, Calendar.YEAR).size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testWrongHorizon() {
+		this.analyzer.analyze(this.start, Calendar.HOUR);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testExclusionsAreRejected() {
+		this.analyzer.add(new FixedPeriodCron("0 9 * * *",
+				new ExclusionCalendar()));
+	}
+
+	/**
+	 * The masks of a union are a superset of its fires (this one fires twice
+	 * a week, but its masks match four minutes).
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnionsAreRejected() {
+		this.analyzer.add(CompositeCron.union(new FixedPeriodCron("0 9 * * 1"),
+				new FixedPeriodCron("0 12 * * 2")));
+	}
+
+	@Test
+	public void testPeaks() {
+		LoadHistogram histogram =
+				this.analyzer.analyze(this.start, Calendar.WEEK_OF_YEAR);
+		List<LoadHistogram.Peak> peaks = histogram.getPeaks(6);
+		assertEquals(6, peaks.size());
+		/* Monday to Friday at 9:00, then the earliest quarter after them */
+		for (int day = 0; day < 5; ++day) {
+			LoadHistogram.Peak peak = peaks.get(day);
+			assertEquals(8, peak.getLoad(), DELTA);
+			assertEquals(day * 24 * 60 + 9 * 60, peak.getMinute());
+			assertEquals(9, peak.getTime().get(Calendar.HOUR_OF_DAY));
+			assertEquals(day + 1, peak.getTime().get(Calendar.DATE));
+			List<FixedPeriodCron> contributors = peak.getContributors();
+			assertEquals(3, contributors.size());
+			assertSame(this.everyQuarter, contributors.get(0));
+			assertSame(this.weekdaysAtNine, contributors.get(1));
+			assertSame(this.everyDayAtNine, contributors.get(2));
+		}
+		assertEquals(3, peaks.get(5).getLoad(), DELTA);
+		assertEquals(5 * 24 * 60 + 9 * 60, peaks.get(5).getMinute());
+		List<FixedPeriodCron> contributors = histogram.getContributors(30);
+		assertEquals(2, contributors.size());
+		assertSame(this.everyQuarter, contributors.get(0));
+		assertSame(this.monthly, contributors.get(1));
+	}
+
+	/**
+	 * Crons added after the analysis must not show up in its histogram, and
+	 * the checks of add must not be bypassed through getCrons.
+	 */
+	@Test
+	public void testHistogramIsASnapshot() {
+		LoadHistogram histogram =
+				this.analyzer.analyze(this.start, Calendar.DATE);
+		this.analyzer.add(new FixedPeriodCron("30 0 * * *"), 10);
+		assertEquals(5, this.analyzer.getCrons().size());
+		assertEquals(4, histogram.getCrons().size());
+		assertEquals(2, histogram.getContributors(30).size());
+		assertEquals(2, histogram.getLoad(30), DELTA);
+		assertEquals(5, histogram.getWeight(1), DELTA);
+		try {
+			this.analyzer.getCrons().add(CompositeCron.union(
+					new FixedPeriodCron("0 9 * * 1"),
+					new FixedPeriodCron("0 12 * * 2")));
+			fail("The crons of the analyzer can be modified.");
+		} catch (UnsupportedOperationException exception) {
+			/* Expected */
+		}
+	}
+
+	@Test
+	public void testPercentiles() {
+		LoadHistogram histogram =
+				this.analyzer.analyze(this.start, Calendar.DATE);
+		/* 96 quarters + the monthly cron at 00:30 out of 1440 minutes */
+		assertEquals(0, histogram.getPercentile(0), DELTA);
+		assertEquals(0, histogram.getPercentile(90), DELTA);
+		assertEquals(1, histogram.getPercentile(99), DELTA);
+		assertEquals(8, histogram.getPercentile(100), DELTA);
+	}
+}
@@ -0,0 +1,138 @@
+package com.ielia.cron;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class (JUnit4) for ScheduleRegistry.
+ *
+ * @author ielia
+ */
+public class ScheduleRegistryTest {
+	protected static final FixedPeriodCron CRON = new FixedPeriodCron("0 9 * * 1-5");
+	protected static final FixedPeriodCron OTHER_CRON =
+			new FixedPeriodCron("*/5 * * * *");
+
+	@Test
+	public void testPutAndRemove() {
+		ScheduleRegistry registry = new ScheduleRegistry();
+		ScheduleSnapshot empty = registry.snapshot();
+		assertNull(registry.put("a", CRON));
+		assertSame(CRON, registry.put("a", OTHER_CRON));
+		/* Nothing changes, nothing is published */
+		assertSame(OTHER_CRON, registry.put("a", OTHER_CRON));
+		assertNull(registry.remove("b"));
+		assertEquals(2, registry.snapshot().getVersion());
+		assertSame(OTHER_CRON, registry.get("a"));
+		assertSame(OTHER_CRON, registry.remove("a"));
+		assertEquals(3, registry.snapshot().getVersion());
+		assertEquals(0, registry.snapshot().size());
+		/* Published snapshots never change */
+		assertEquals(0, empty.size());
+		assertNull(empty.get("a"));
+	}
+
+	@Test
+	public void testBatch() {
+		ScheduleRegistry registry = new ScheduleRegistry();
+		registry.put("removed", CRON);
+		ScheduleSnapshot before = registry.snapshot();
+		ScheduleRegistry.Batch batch = registry.batch();
+		for (int i = 0; i < 100000; ++i) {
+			batch.put("schedule-" + i, i % 2 == 0 ? CRON : OTHER_CRON);
+		}
+		batch.remove("removed").remove("schedule-0");
+		assertEquals(100002, batch.size());
+		/* Nothing is published before publish */
+		assertSame(before, registry.snapshot());
+		ScheduleSnapshot published = batch.publish();
+		assertSame(published, registry.snapshot());
+		assertEquals(before.getVersion() + 1, published.getVersion());
+		assertEquals(99999, published.size());
+		assertNull(published.get("removed"));
+		assertNull(published.get("schedule-0"));
+		assertSame(OTHER_CRON, published.get("schedule-99999"));
+		assertEquals(0, batch.size());
+		assertSame(published, batch.publish());
+		assertEquals(1, before.size());
+	}
+
+	/**
+	 * Readers must always see whole batches, while writers publish theirs
+	 * concurrently, and no change may be lost.
+	 */
+	@Test
+	public void testUnderConcurrency() throws Exception {
+		final ScheduleRegistry registry = new ScheduleRegistry();
+		final int writers = 4;
+		final int batches = 50;
+		final int batchSize = 200;
+		final AtomicBoolean done = new AtomicBoolean();
+		ExecutorService executor = Executors.newFixedThreadPool(writers + 2);
+		try {
+			List<Future<Boolean>> readers = new ArrayList<Future<Boolean>>();
+			for (int reader = 0; reader < 2; ++reader) {
+				readers.add(executor.submit(new Callable<Boolean>() {
+					@Override
+					public Boolean call() {
+						long version = 0;
+						while (!done.get()) {
+							ScheduleSnapshot snapshot = registry.snapshot();
+							/* Every batch adds batchSize schedules */
+							if (snapshot.size() % batchSize != 0 ||
+									snapshot.getVersion() < version ||
+									snapshot.size() != snapshot.getVersion() *
+											batchSize) {
+								return false;
+							}
+							version = snapshot.getVersion();
+						}
+						return true;
+					}
+				}));
+			}
+			List<Future<Void>> futures = new ArrayList<Future<Void>>();
+			for (int writer = 0; writer < writers; ++writer) {
+				final String prefix = "writer-" + writer + "-";
+				futures.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() {
+						ScheduleRegistry.Batch batch = registry.batch();
+						for (int i = 0; i < batches; ++i) {
+							for (int j = 0; j < batchSize; ++j) {
+								batch.put(prefix + (i * batchSize + j), CRON);
+							}
+							batch.publish();
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> future : futures) {
+				future.get();
+			}
+			done.set(true);
+			for (Future<Boolean> reader : readers) {
+				assertTrue(reader.get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+		ScheduleSnapshot snapshot = registry.snapshot();
+		assertEquals(writers * batches * batchSize, snapshot.size());
+		assertEquals(writers * batches, snapshot.getVersion());
+		assertSame(CRON, snapshot.get("writer-3-9999"));
+	}
+}
@@ -0,0 +1,147 @@
+package com.ielia.cron;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test class (JUnit4) for ScheduleSimulator (and SimulationReport).
+ *
+ * @author ielia
+ */
+public class ScheduleSimulatorTest {
+	protected static final long MILLIS_PER_HOUR = 3600000L;
+	protected static final String[] FIELD_VALUES = {"*", "*/15", "0", "5-10",
+			"1,2,3", "*/2", "7"};
+
+	@Test
+	public void testRun() {
+		/* Friday, 24th of May, 2013, 00:00 (UTC), for three days */
+		long start = new GregorianCalendar(2013, 4, 24).getTimeInMillis();
+		VirtualClock clock = new VirtualClock(start,
+				TimeZone.getTimeZone("UTC").toZoneId());
+		ScheduleSimulator simulator = new ScheduleSimulator(clock);
+		for (int i = 0; i < 3; ++i) {
+			simulator.add(new FixedPeriodCron("0 * * * *"));
+		}
+		simulator.add(new FixedPeriodCron("*/15 * * * *"));
+		simulator.add(new FixedPeriodCron("0 9 * * 1-5"));
+		simulator.add(new FixedPeriodCron("0 0 30 2 *"));
+		assertEquals(6, simulator.size());
+		SimulationReport report = simulator.run(start + 72 * MILLIS_PER_HOUR);
+		assertEquals(start + 72 * MILLIS_PER_HOUR, clock.millis());
+		assertEquals(72 * 60, report.size());
+		assertEquals(3 * 72 + 4 * 72 + 1, report.getTotalFires());
+		assertEquals(4, report.getFires(0));
+		assertEquals(1, report.getFires(15));
+		assertEquals(0, report.getFires(16));
+		assertEquals(5, report.getFires(9 * 60));
+		/* Saturday, 09:00 */
+		assertEquals(4, report.getFires(33 * 60));
+		assertEquals(0, report.getFiresPercentile(50));
+		assertEquals(5, report.getFiresPercentile(100));
+		/* 6 crons, searched once at the start and once per fire */
+		assertEquals(6 + 3 * 72 + 4 * 72 + 1, report.getEvaluations());
+		assertEquals(0, report.getMaxDispatchLagNanos());
+	}
+
+	@Test
+	public void testMerging() {
+		long start = new GregorianCalendar(2013, 4, 24).getTimeInMillis();
+		ScheduleSimulator simulator = new ScheduleSimulator(new VirtualClock(
+				start, TimeZone.getTimeZone("UTC").toZoneId()));
+		simulator.setMerging(true);
+		for (int i = 0; i < 3; ++i) {
+			simulator.add(new FixedPeriodCron("0 * * * *"));
+		}
+		simulator.add(new FixedPeriodCron("*/15 * * * *"));
+		simulator.add(new FixedPeriodCron("0 9 * * 1-5"));
+		simulator.add(new FixedPeriodCron("0 0 30 2 *"));
+		assertEquals(6, simulator.size());
+		SimulationReport report = simulator.run(start + 72 * MILLIS_PER_HOUR);
+		assertEquals(3 * 72 + 4 * 72 + 1, report.getTotalFires());
+		assertEquals(4, report.getFires(0));
+		assertEquals(5, report.getFires(9 * 60));
+		/* 4 distinct crons, searched once at the start and once per fire */
+		assertEquals(4 + 72 + 4 * 72 + 1, report.getEvaluations());
+	}
+
+	@Test
+	public void testDispatchLag() {
+		long start = new GregorianCalendar(2013, 4, 24).getTimeInMillis();
+		ScheduleSimulator simulator = new ScheduleSimulator(new VirtualClock(
+				start, TimeZone.getTimeZone("UTC").toZoneId()));
+		simulator.setDispatchNanos(1000000);
+		for (int i = 0; i < 3; ++i) {
+			simulator.add(new FixedPeriodCron("0 * * * *"));
+		}
+		simulator.add(new FixedPeriodCron("0 */2 * * *"));
+		SimulationReport report = simulator.run(start + 24 * MILLIS_PER_HOUR);
+		/* Lags of 0, 1 and 2 ms every hour, plus 3 ms every other hour */
+		assertEquals(24 * 3 + 12, report.getTotalFires());
+		assertEquals(3000000, report.getMaxDispatchLagNanos());
+		assertEquals((24 * 3000000.0 + 12 * 3000000.0) / (24 * 3 + 12),
+				report.getMeanDispatchLagNanos(), 1e-6);
+	}
+
+	/**
+	 * The simulation must fire every schedule exactly at its fire times, also
+	 * across daylight saving transitions.
+	 */
+	@Test
+	public void testAgainstFireTimes() {
+		Random random = new Random(20130602);
+		TimeZone zone = TimeZone.getTimeZone("America/New_York");
+		Calendar from = new GregorianCalendar(zone);
+		from.clear();
+		from.set(2013, Calendar.MARCH, 1);
+		Calendar to = (Calendar) from.clone();
+		to.add(Calendar.MONTH, 9);
+		ScheduleSimulator simulator = new ScheduleSimulator(new VirtualClock(
+				from.getTimeInMillis(), zone.toZoneId()), 30, 0);
+		List<FixedPeriodCron> crons = new ArrayList<FixedPeriodCron>();
+		for (int i = 0; i < 50; ++i) {
+			StringBuilder expression = new StringBuilder();
+			for (int field = 0; field < FixedPeriodCron.NUMBER_OF_FIELDS;
+				 ++field) {
+				/* Sparse minutes and hours, so the test stays short */
+				String value = field < 2 ? String.valueOf(random.nextInt(
+						field == 0 ? 60 : 24)) :
+						FIELD_VALUES[random.nextInt(FIELD_VALUES.length)];
+				expression.append(field > 0 ? " " : "").append(value);
+			}
+			FixedPeriodCron cron = new FixedPeriodCron(expression.toString());
+			crons.add(cron);
+			simulator.add(cron);
+		}
+		SimulationReport report = simulator.run(to.getTimeInMillis());
+		int[] expected = new int[report.size()];
+		long total = 0;
+		for (FixedPeriodCron cron : crons) {
+			long[] fires = cron.fireTimes(from.getTimeInMillis(),
+					to.getTimeInMillis(), zone, 30, 0).toArray();
+			for (long fire : fires) {
+				++expected[(int) ((fire - from.getTimeInMillis()) / 60000)];
+			}
+			total += fires.length;
+		}
+		assertEquals(total, report.getTotalFires());
+		for (int minute = 0; minute < expected.length; ++minute) {
+			assertEquals("Minute " + minute, expected[minute],
+					report.getFires(minute));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testEndBeforeStart() {
+		new ScheduleSimulator(new VirtualClock(1000,
+				TimeZone.getTimeZone("UTC").toZoneId())).run(0);
+	}
+}
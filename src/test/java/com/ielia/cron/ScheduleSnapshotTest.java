@@ -0,0 +1,127 @@
+package com.ielia.cron;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Test class (JUnit4) for ScheduleSnapshot.
+ *
+ * @author ielia
+ */
+public class ScheduleSnapshotTest {
+	protected static final FixedPeriodCron[] CRONS = {
+			new FixedPeriodCron("0 9 * * 1-5"), new FixedPeriodCron("*/5 * * * *"),
+			new FixedPeriodCron("30 2 1 * *")};
+
+	@Test
+	public void testWithAndWithout() {
+		ScheduleSnapshot empty = ScheduleSnapshot.EMPTY;
+		ScheduleSnapshot one = empty.with("a", CRONS[0]);
+		ScheduleSnapshot two = one.with("b", CRONS[1]);
+		assertEquals(0, empty.size());
+		assertNull(empty.get("a"));
+		assertEquals(1, one.size());
+		assertSame(CRONS[0], one.get("a"));
+		assertNull(one.get("b"));
+		assertEquals(2, two.size());
+		assertSame(CRONS[1], two.get("b"));
+		/* Nothing changes */
+		assertSame(two, two.with("b", CRONS[1]));
+		assertSame(two, two.without("c"));
+		ScheduleSnapshot replaced = two.with("a", CRONS[2]);
+		assertEquals(2, replaced.size());
+		assertSame(CRONS[2], replaced.get("a"));
+		assertSame(CRONS[0], two.get("a"));
+		ScheduleSnapshot removed = replaced.without("a").without("b");
+		assertEquals(0, removed.size());
+		assertNull(removed.get("b"));
+		assertFalse(removed.iterator().hasNext());
+		assertNull(two.get(null));
+	}
+
+	@Test
+	public void testCollisions() {
+		/* "Aa" and "BB" have the same hash, and so do their concatenations */
+		String[] ids = {"AaAa", "AaBB", "BBAa", "BBBB"};
+		ScheduleSnapshot snapshot = ScheduleSnapshot.EMPTY;
+		for (int i = 0; i < ids.length; ++i) {
+			snapshot = snapshot.with(ids[i], CRONS[i % CRONS.length]);
+		}
+		/* An identifier with another hash next to the collision node */
+		snapshot = snapshot.with("C#Aa", CRONS[2]);
+		assertEquals(5, snapshot.size());
+		for (int i = 0; i < ids.length; ++i) {
+			assertSame(CRONS[i % CRONS.length], snapshot.get(ids[i]));
+		}
+		assertNull(snapshot.get("AaAaAa"));
+		snapshot = snapshot.without("AaBB").without("BBBB");
+		assertEquals(3, snapshot.size());
+		assertNull(snapshot.get("AaBB"));
+		assertSame(CRONS[2], snapshot.get("BBAa"));
+	}
+
+	/**
+	 * Snapshots must hold the same schedules as a map after the same random
+	 * changes, while the snapshots they come from stay the same.
+	 */
+	@Test
+	public void testAgainstMap() {
+		Random random = new Random(20130603);
+		Map<String, FixedPeriodCron> map = new HashMap<String, FixedPeriodCron>();
+		ScheduleSnapshot snapshot = ScheduleSnapshot.EMPTY;
+		ScheduleSnapshot old = snapshot;
+		Map<String, FixedPeriodCron> oldMap =
+				new HashMap<String, FixedPeriodCron>();
+		for (int i = 0; i < 20000; ++i) {
+			String id = "schedule-" + random.nextInt(5000);
+			if (random.nextInt(3) == 0) {
+				assertSame(map.remove(id), snapshot.get(id));
+				snapshot = snapshot.without(id);
+			} else {
+				FixedPeriodCron cron = CRONS[random.nextInt(CRONS.length)];
+				assertSame(map.put(id, cron), snapshot.get(id));
+				snapshot = snapshot.with(id, cron);
+			}
+			assertEquals(map.size(), snapshot.size());
+			if (i % 5000 == 0) {
+				assertEquals(oldMap, toMap(old));
+				old = snapshot;
+				oldMap = new HashMap<String, FixedPeriodCron>(map);
+			}
+		}
+		assertEquals(map, toMap(snapshot));
+		assertEquals(oldMap, toMap(old));
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testIteratorIsReadOnly() {
+		Iterator<Map.Entry<String, FixedPeriodCron>> iterator =
+				ScheduleSnapshot.EMPTY.with("a", CRONS[0]).iterator();
+		iterator.next();
+		iterator.remove();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullCron() {
+		ScheduleSnapshot.EMPTY.with("a", null);
+	}
+
+	protected static Map<String, FixedPeriodCron> toMap(
+			ScheduleSnapshot snapshot) {
+		Map<String, FixedPeriodCron> map = new HashMap<String, FixedPeriodCron>();
+		for (Map.Entry<String, FixedPeriodCron> entry : snapshot) {
+			assertNull(map.put(entry.getKey(), entry.getValue()));
+		}
+		assertEquals(snapshot.size(), map.size());
+		return map;
+	}
+}
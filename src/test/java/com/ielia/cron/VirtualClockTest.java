@@ -0,0 +1,79 @@
+package com.ielia.cron;
+
+import org.junit.Test;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test class (JUnit4) for VirtualClock.
+ *
+ * @author ielia
+ */
+public class VirtualClockTest {
+	@Test
+	public void testTime() {
+		VirtualClock clock = new VirtualClock(1000, ZoneId.of("UTC"));
+		assertEquals(1000, clock.millis());
+		assertEquals(Instant.ofEpochMilli(1000), clock.instant());
+		assertEquals(ZoneId.of("UTC"), clock.getZone());
+		assertEquals(1500, clock.advance(500));
+		assertEquals(1500, clock.millis());
+		/* advanceTo never moves the clock backwards */
+		assertEquals(1500, clock.advanceTo(1200));
+		assertEquals(2000, clock.advanceTo(2000));
+		clock.setMillis(0);
+		assertEquals(0, clock.millis());
+	}
+
+	@Test
+	public void testWithZone() {
+		VirtualClock clock = new VirtualClock(1000, ZoneId.of("UTC"));
+		VirtualClock other = clock.withZone(ZoneId.of("Australia/Lord_Howe"));
+		assertEquals(ZoneId.of("Australia/Lord_Howe"), other.getZone());
+		other.advance(500);
+		assertEquals(1500, clock.millis());
+		clock.advance(500);
+		assertEquals(2000, other.millis());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullZone() {
+		new VirtualClock(0, null);
+	}
+
+	@Test
+	public void testAdvanceToUnderConcurrency() throws Exception {
+		final VirtualClock clock = new VirtualClock(0, ZoneId.of("UTC"));
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<Void>> futures = new ArrayList<Future<Void>>();
+			for (int thread = 0; thread < 4; ++thread) {
+				final int first = thread;
+				futures.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() {
+						for (int millis = first; millis < 100000; millis += 4) {
+							clock.advanceTo(millis);
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+		assertEquals(99999, clock.millis());
+	}
+}
@@ -0,0 +1,25 @@
+package com.ielia.cron.jfr;
+
+import com.ielia.cron.FixedPeriodCronAllocationTest;
+import org.junit.After;
+import org.junit.Before;
+
+/**
+ * Allocation test (JUnit4) for FlightRecorderCronListener: with the listener
+ * installed but no recording enabling its events, crons must stay within the
+ * budgets of FixedPeriodCronAllocationTest.
+ *
+ * @author ielia
+ */
+public class FlightRecorderCronListenerAllocationTest extends
+		FixedPeriodCronAllocationTest {
+	@Before
+	public void installListener() {
+		FlightRecorderCronListener.install();
+	}
+
+	@After
+	public void uninstallListener() {
+		FlightRecorderCronListener.uninstall();
+	}
+}
@@ -0,0 +1,114 @@
+package com.ielia.cron.jfr;
+
+import com.ielia.cron.FixedPeriodCron;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.GregorianCalendar;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class (JUnit4) for FlightRecorderCronListener.
+ *
+ * @author ielia
+ */
+public class FlightRecorderCronListenerTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Before
+	public void setUp() {
+		FlightRecorderCronListener.install();
+	}
+
+	@After
+	public void tearDown() {
+		FlightRecorderCronListener.uninstall();
+	}
+
+	protected List<RecordedEvent> record(boolean enabled) throws IOException {
+		Path file = this.folder.newFile("cron.jfr").toPath();
+		Recording recording = new Recording();
+		try {
+			if (enabled) {
+				recording.enable("com.ielia.cron.Parse");
+				recording.enable("com.ielia.cron.Search");
+				recording.enable("com.ielia.cron.Match");
+			}
+			recording.start();
+			FixedPeriodCron cron = new FixedPeriodCron("0 0 29 2 1");
+			GregorianCalendar reference = new GregorianCalendar(2001, 0, 1);
+			cron.getClosestDateAfter(reference);
+			cron.getClosestDateBeforeOrSame(reference);
+			cron.matches(reference);
+			try {
+				new FixedPeriodCron("not a cron");
+			} catch (IllegalArgumentException exception) {
+				/* Expected */
+			}
+			recording.stop();
+			recording.dump(file);
+		} finally {
+			recording.close();
+		}
+		List<RecordedEvent> events = new ArrayList<RecordedEvent>();
+		for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+			if (event.getEventType().getName().startsWith("com.ielia.cron.")) {
+				events.add(event);
+			}
+		}
+		return events;
+	}
+
+	@Test
+	public void testEvents() throws IOException {
+		List<RecordedEvent> events = this.record(true);
+		List<String> names = new ArrayList<String>();
+		for (RecordedEvent event : events) {
+			names.add(event.getEventType().getName());
+		}
+		assertEquals(names.toString(), 5, events.size());
+		RecordedEvent parse = events.get(0);
+		assertEquals("com.ielia.cron.Parse", names.get(0));
+		assertEquals("0 0 29 2 1", parse.getString("expression"));
+		assertTrue(parse.getBoolean("valid"));
+		/* Both ends of the window are searched at once */
+		RecordedEvent before = events.get(1);
+		assertEquals("com.ielia.cron.Search", names.get(1));
+		assertEquals("0 0 29 2 1", before.getString("expression"));
+		assertEquals(-1, before.getInt("direction"));
+		/* Monday, 29th of February, 1988 */
+		assertEquals(13, before.getInt("yearsScanned"));
+		RecordedEvent after = events.get(2);
+		assertEquals(1, after.getInt("direction"));
+		/* Monday, 29th of February, 2016 */
+		assertEquals(15, after.getInt("yearsScanned"));
+		assertTrue(after.getBoolean("found"));
+		assertEquals(new GregorianCalendar(2016, 1, 29).getTimeInMillis(),
+				after.getLong("result"));
+		RecordedEvent match = events.get(3);
+		assertEquals("com.ielia.cron.Match", names.get(3));
+		assertFalse(match.getBoolean("matched"));
+		RecordedEvent invalid = events.get(4);
+		assertEquals("not a cron", invalid.getString("expression"));
+		assertFalse(invalid.getBoolean("valid"));
+	}
+
+	@Test
+	public void testDisabledByDefault() throws IOException {
+		assertTrue(this.record(false).isEmpty());
+	}
+}
@@ -0,0 +1,60 @@
+package com.ielia.cron.vector;
+
+import com.ielia.cron.CronColumns;
+import com.ielia.cron.FixedPeriodCron;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class (JUnit4) for VectorCronColumns.
+ *
+ * @author ielia
+ */
+public class VectorCronColumnsTest {
+	@Test
+	public void testCreate() {
+		CronColumns columns = CronColumns.create(Arrays.asList(
+				new FixedPeriodCron("0 9 * * 1-5")));
+		assertEquals(VectorCronColumns.isSupported(),
+				columns instanceof VectorCronColumns);
+	}
+
+	/**
+	 * Every size around the number of lanes and a word of the selection must
+	 * give the same results as the scalar columns.
+	 */
+	@Test
+	public void testAgainstScalarColumns() {
+		Random random = new Random(20130530);
+		List<FixedPeriodCron> crons = new ArrayList<FixedPeriodCron>();
+		for (int size = 0; size <= 130; ++size) {
+			CronColumns scalar = new CronColumns(crons);
+			CronColumns vector = new VectorCronColumns(crons);
+			for (int i = 0; i < 20; ++i) {
+				Calendar start = new GregorianCalendar(2013, random.nextInt(12),
+						1 + random.nextInt(28), random.nextInt(24),
+						random.nextInt(60));
+				Calendar end = (Calendar) start.clone();
+				end.add(Calendar.MINUTE, random.nextInt(600));
+				String message = "size " + size + " at " + start.getTime();
+				assertEquals(message, scalar.matches(start),
+						vector.matches(start));
+				assertEquals(message, scalar.firesBetween(start, end),
+						vector.firesBetween(start, end));
+			}
+			crons.add(new FixedPeriodCron(random.nextInt(60) + "-59/" +
+					(1 + random.nextInt(30)) + " " + random.nextInt(24) +
+					"-23 * * " + random.nextInt(7) + "-6"));
+		}
+		assertTrue(crons.size() > 2 * 64);
+	}
+}